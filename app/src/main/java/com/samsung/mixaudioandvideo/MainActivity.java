@@ -16,6 +16,8 @@ import com.samsung.mixaudioandvideo.databinding.ActivityMainBinding;
 import com.samsung.mixaudioandvideo.export.Export;
 import com.samsung.mixaudioandvideo.export.ExportAdapter;
 import com.samsung.mixaudioandvideo.export.ExportElement;
+import com.samsung.mixaudioandvideo.export.ExportJob;
+import com.samsung.mixaudioandvideo.export.ExportProgress;
 import com.samsung.mixaudioandvideo.models.MediaItem;
 import com.samsung.mixaudioandvideo.picker.PickerActivity;
 import com.samsung.mixaudioandvideo.utils.AppConstants;
@@ -120,8 +122,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         ExportElement exportParams = new ExportElement();
         exportParams.setVideoFilePath(mVideoItem.getFilePath());
         exportParams.setAudioFilePath(mAudioItem.getFilePath());
+        // an export stopped by onDestroy continues where it was when the same files are exported again
+        exportParams.setResumable(true);
+        // a regular MP4, when the codecs can't be written as fragmented MP4, gets its moov in front
+        exportParams.setFastStart(true);
 
-        Export.getInstance().startExport(this, exportParams, new ExportAdapter() {
+        ExportJob job = Export.getInstance().startExport(this, exportParams, new ExportAdapter() {
             @Override
             public void onExportComplete() {
                 Log.d(TAG, "Export complete.");
@@ -139,7 +145,18 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             public void onExportProgressUpdate(int progress) {
                 updateExportProgress(progress);
             }
+
+            @Override
+            public void onExportProgressUpdate(ExportProgress progress) {
+                updateExportProgress(progress.getPercent());
+                if (progress.getEtaMs() != ExportProgress.ETA_UNKNOWN) {
+                    mViewBinding.tvExportProgress.setText(progress.getPercent() + "% (" + (progress.getEtaMs() + 999) / 1000 + "s left)");
+                }
+            }
         });
+        if (job == null) {
+            prepareUIForExport(true, false, 0);
+        }
     }
 
     private void prepareUIForExport(boolean enableExportButton, boolean enableExportProgress, int progress) {
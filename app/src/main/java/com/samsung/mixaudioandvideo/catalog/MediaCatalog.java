@@ -0,0 +1,302 @@
+package com.samsung.mixaudioandvideo.catalog;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.samsung.mixaudioandvideo.models.MediaItem;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/***
+ * Media files of the media store and what is known about them, kept in SQLite, so the picker lists them
+ * with one indexed read and the export doesn't probe a file again. Rows are keyed by the media store id
+ * and kept up to date by {@link MediaCatalogSync}.
+ */
+public class MediaCatalog extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "media_catalog.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_MEDIA = "media";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_MEDIA_TYPE = "media_type";
+    private static final String COLUMN_PATH = "path";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_DATE_MODIFIED = "date_modified";
+    private static final String COLUMN_DURATION_US = "duration_us";
+    private static final String COLUMN_MIME_TYPE = "mime_type";
+    private static final String COLUMN_CONTAINER_TYPE = "container_type";
+    private static final String COLUMN_PROBED = "probed";
+    private static final String COLUMN_VIDEO_MIME_TYPE = "video_mime_type";
+    private static final String COLUMN_AUDIO_MIME_TYPE = "audio_mime_type";
+    private static final String COLUMN_WIDTH = "width";
+    private static final String COLUMN_HEIGHT = "height";
+    private static final String COLUMN_SAMPLE_RATE = "sample_rate";
+    private static final String COLUMN_CHANNEL_COUNT = "channel_count";
+    private static final String COLUMN_VERSION = "version";
+    private static final String COLUMN_GENERATION = "generation";
+    private static final String COLUMN_DATE_ADDED = "date_added";
+
+    private static final String[] MEDIA_COLUMNS = {
+            COLUMN_ID, COLUMN_MEDIA_TYPE, COLUMN_PATH, COLUMN_NAME, COLUMN_SIZE, COLUMN_DATE_MODIFIED,
+            COLUMN_DURATION_US, COLUMN_MIME_TYPE, COLUMN_CONTAINER_TYPE, COLUMN_PROBED, COLUMN_VIDEO_MIME_TYPE, COLUMN_AUDIO_MIME_TYPE,
+            COLUMN_WIDTH, COLUMN_HEIGHT, COLUMN_SAMPLE_RATE, COLUMN_CHANNEL_COUNT
+    };
+
+    private static MediaCatalog sInstance;
+
+    /***
+     * Where the last sync of a media type stopped
+     */
+    public static class SyncState {
+        private final String mVersion;
+        private final long mGeneration;
+        private final long mDateModified;
+        private final long mDateAdded;
+
+        public SyncState(String version, long generation, long dateModified, long dateAdded) {
+            mVersion = version;
+            mGeneration = generation;
+            mDateModified = dateModified;
+            mDateAdded = dateAdded;
+        }
+
+        /***
+         * get version of the media store, generations of another version can't be compared
+         */
+        public String getVersion() {
+            return mVersion;
+        }
+
+        public long getGeneration() {
+            return mGeneration;
+        }
+
+        public long getDateModified() {
+            return mDateModified;
+        }
+
+        public long getDateAdded() {
+            return mDateAdded;
+        }
+    }
+
+    private MediaCatalog(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized MediaCatalog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MediaCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MEDIA + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_MEDIA_TYPE + " INTEGER NOT NULL, "
+                + COLUMN_PATH + " TEXT NOT NULL, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_SIZE + " INTEGER, "
+                + COLUMN_DATE_MODIFIED + " INTEGER, "
+                + COLUMN_DURATION_US + " INTEGER, "
+                + COLUMN_MIME_TYPE + " TEXT, "
+                + COLUMN_CONTAINER_TYPE + " INTEGER, "
+                + COLUMN_PROBED + " INTEGER, "
+                + COLUMN_VIDEO_MIME_TYPE + " TEXT, "
+                + COLUMN_AUDIO_MIME_TYPE + " TEXT, "
+                + COLUMN_WIDTH + " INTEGER, "
+                + COLUMN_HEIGHT + " INTEGER, "
+                + COLUMN_SAMPLE_RATE + " INTEGER, "
+                + COLUMN_CHANNEL_COUNT + " INTEGER)");
+        db.execSQL("CREATE INDEX media_type_index ON " + TABLE_MEDIA + " (" + COLUMN_MEDIA_TYPE + ", " + COLUMN_ID + ")");
+        db.execSQL("CREATE INDEX media_path_index ON " + TABLE_MEDIA + " (" + COLUMN_PATH + ")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + COLUMN_MEDIA_TYPE + " INTEGER PRIMARY KEY, "
+                + COLUMN_VERSION + " TEXT, "
+                + COLUMN_GENERATION + " INTEGER, "
+                + COLUMN_DATE_MODIFIED + " INTEGER, "
+                + COLUMN_DATE_ADDED + " INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // everything is read from the media store and sniffed again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MEDIA);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+
+    /***
+     * get the items of a media type, in media store order
+     */
+    public List<MediaItem> getItems(int mediaType) {
+        List<MediaItem> items = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MEDIA, MEDIA_COLUMNS, COLUMN_MEDIA_TYPE + " = ?",
+                new String[]{String.valueOf(mediaType)}, null, null, COLUMN_ID)) {
+            while (cursor.moveToNext()) {
+                items.add(readItem(cursor));
+            }
+        }
+        return items;
+    }
+
+    /***
+     * get the item of a file if its tracks are known and the file hasn't changed since
+     *
+     * @return null if the file has to be probed
+     */
+    public MediaItem findProbedItem(String filePath) {
+        MediaItem item = null;
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MEDIA, MEDIA_COLUMNS, COLUMN_PATH + " = ?",
+                new String[]{filePath}, null, null, null, "1")) {
+            if (cursor.moveToNext()) {
+                item = readItem(cursor);
+            }
+        }
+        if (item == null || !item.isProbed()) {
+            return null;
+        }
+        File file = new File(filePath);
+        if (file.length() != item.getFileSize() || file.lastModified() / 1000 != item.getDateModified()) {
+            return null;
+        }
+        return item;
+    }
+
+    /***
+     * add or replace items, in one transaction
+     */
+    public void putItems(List<MediaItem> items) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement statement = db.compileStatement(buildInsertStatement());
+        try {
+            for (MediaItem item : items) {
+                statement.clearBindings();
+                statement.bindLong(1, item.getId());
+                statement.bindLong(2, item.getMediaType());
+                statement.bindString(3, item.getFilePath());
+                bindString(statement, 4, item.getFileName());
+                statement.bindLong(5, item.getFileSize());
+                statement.bindLong(6, item.getDateModified());
+                statement.bindLong(7, item.getDurationUs());
+                bindString(statement, 8, item.getMimeType());
+                statement.bindLong(9, item.getContainerType());
+                statement.bindLong(10, item.isProbed() ? 1 : 0);
+                bindString(statement, 11, item.getVideoMimeType());
+                bindString(statement, 12, item.getAudioMimeType());
+                statement.bindLong(13, item.getWidth());
+                statement.bindLong(14, item.getHeight());
+                statement.bindLong(15, item.getSampleRate());
+                statement.bindLong(16, item.getChannelCount());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            db.endTransaction();
+        }
+    }
+
+    /***
+     * get the ids of a media type, sorted
+     */
+    public long[] getIds(int mediaType) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MEDIA, new String[]{COLUMN_ID}, COLUMN_MEDIA_TYPE + " = ?",
+                new String[]{String.valueOf(mediaType)}, null, null, COLUMN_ID)) {
+            long[] ids = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < ids.length) {
+                ids[count++] = cursor.getLong(0);
+            }
+            return count == ids.length ? ids : Arrays.copyOf(ids, count);
+        }
+    }
+
+    public void deleteItems(long[] ids, int count) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement statement = db.compileStatement("DELETE FROM " + TABLE_MEDIA + " WHERE " + COLUMN_ID + " = ?");
+        try {
+            for (int i = 0; i < count; i++) {
+                statement.bindLong(1, ids[i]);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            db.endTransaction();
+        }
+    }
+
+    /***
+     * @return null if the media type was never synced
+     */
+    public SyncState getSyncState(int mediaType) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SYNC_STATE,
+                new String[]{COLUMN_VERSION, COLUMN_GENERATION, COLUMN_DATE_MODIFIED, COLUMN_DATE_ADDED}, COLUMN_MEDIA_TYPE + " = ?",
+                new String[]{String.valueOf(mediaType)}, null, null, null)) {
+            if (!cursor.moveToNext()) {
+                return null;
+            }
+            return new SyncState(cursor.getString(0), cursor.getLong(1), cursor.getLong(2), cursor.getLong(3));
+        }
+    }
+
+    public void setSyncState(int mediaType, SyncState state) {
+        getWritableDatabase().execSQL("INSERT OR REPLACE INTO " + TABLE_SYNC_STATE + " ("
+                        + COLUMN_MEDIA_TYPE + ", " + COLUMN_VERSION + ", " + COLUMN_GENERATION + ", " + COLUMN_DATE_MODIFIED
+                        + ", " + COLUMN_DATE_ADDED + ") VALUES (?, ?, ?, ?, ?)",
+                new Object[]{mediaType, state.getVersion(), state.getGeneration(), state.getDateModified(),
+                        state.getDateAdded()});
+    }
+
+    private static String buildInsertStatement() {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (String column : MEDIA_COLUMNS) {
+            columns.append(columns.length() > 0 ? ", " : "").append(column);
+            values.append(values.length() > 0 ? ", ?" : "?");
+        }
+        return "INSERT OR REPLACE INTO " + TABLE_MEDIA + " (" + columns + ") VALUES (" + values + ")";
+    }
+
+    private static MediaItem readItem(Cursor cursor) {
+        MediaItem item = new MediaItem();
+        item.setId(cursor.getLong(0));
+        item.setMediaType(cursor.getInt(1));
+        item.setFilePath(cursor.getString(2));
+        item.setFileName(cursor.getString(3));
+        item.setFileSize(cursor.getLong(4));
+        item.setDateModified(cursor.getLong(5));
+        item.setDurationUs(cursor.getLong(6));
+        item.setMimeType(cursor.getString(7));
+        item.setContainerType(cursor.getInt(8));
+        item.setProbed(cursor.getInt(9) != 0);
+        item.setVideoMimeType(cursor.getString(10));
+        item.setAudioMimeType(cursor.getString(11));
+        item.setWidth(cursor.getInt(12));
+        item.setHeight(cursor.getInt(13));
+        item.setSampleRate(cursor.getInt(14));
+        item.setChannelCount(cursor.getInt(15));
+        return item;
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
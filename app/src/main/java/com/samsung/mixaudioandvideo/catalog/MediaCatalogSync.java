@@ -0,0 +1,226 @@
+package com.samsung.mixaudioandvideo.catalog;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.samsung.mixaudioandvideo.models.MediaItem;
+import com.samsung.mixaudioandvideo.models.MediaType;
+import com.samsung.mixaudioandvideo.utils.MediaSniffer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Brings the catalog up to date with the media store, reading only the rows changed since the last sync:
+ * rows of a newer generation from Android 11 on, rows added or modified since the last sync before.
+ * Deleted files are found by comparing the ids, a read of one indexed column.
+ * New and changed files are sniffed once, when they enter the catalog, a batch at a time on a small pool of workers.
+ */
+public class MediaCatalogSync {
+    private static final String TAG = "MediaCatalogSync";
+    private static final int FIRST_BATCH_SIZE = 30;
+    private static final int BATCH_SIZE = 500;
+    private static final int SNIFF_THREAD_COUNT = 4;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 5L;
+
+    public interface BatchListener {
+        /***
+         * called on the syncing thread with every batch of added or changed items once it is in the catalog
+         */
+        void onBatch(List<MediaItem> items);
+    }
+
+    private final Context mContext;
+    private final MediaCatalog mCatalog;
+    private final ThreadPoolExecutor mSniffExecutor;
+
+    public MediaCatalogSync(Context context, MediaCatalog catalog) {
+        mContext = context.getApplicationContext();
+        mCatalog = catalog;
+        // sniffing waits on the disk more than on the CPU
+        mSniffExecutor = new ThreadPoolExecutor(SNIFF_THREAD_COUNT, SNIFF_THREAD_COUNT,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        mSniffExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /***
+     * sync the items of a media type, on a background thread
+     *
+     * @param mediaType {@link MediaType#VIDEO} or {@link MediaType#AUDIO}
+     * @param listener  may be null
+     * @return number of items added, changed or removed
+     */
+    public int sync(int mediaType, BatchListener listener) {
+        long startTime = System.currentTimeMillis();
+        boolean video = mediaType == MediaType.VIDEO;
+        Uri uri = video ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI : MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        boolean useGeneration = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+        String version = useGeneration ? MediaStore.getVersion(mContext) : "";
+
+        MediaCatalog.SyncState state = mCatalog.getSyncState(mediaType);
+        String selection = null;
+        String[] selectionArgs = null;
+        long maxGeneration = 0;
+        long maxDateModified = 0;
+        long maxDateAdded = 0;
+        if (state != null && version.equals(state.getVersion())) {
+            maxGeneration = state.getGeneration();
+            maxDateModified = state.getDateModified();
+            maxDateAdded = state.getDateAdded();
+            if (useGeneration) {
+                selection = MediaStore.MediaColumns.GENERATION_MODIFIED + " > ?";
+                selectionArgs = new String[]{String.valueOf(maxGeneration)};
+            } else {
+                // a file copied or moved in keeps its old modification time, only its added time is new;
+                // rows of the second of the last sync are read again, which does no harm
+                selection = MediaStore.MediaColumns.DATE_ADDED + " >= ? OR " + MediaStore.MediaColumns.DATE_MODIFIED + " >= ?";
+                selectionArgs = new String[]{String.valueOf(maxDateAdded), String.valueOf(maxDateModified)};
+            }
+        }
+
+        String[] projection = useGeneration
+                ? new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.SIZE,
+                MediaStore.MediaColumns.DATE_MODIFIED, MediaStore.MediaColumns.DURATION, MediaStore.MediaColumns.MIME_TYPE,
+                MediaStore.MediaColumns.DATE_ADDED, MediaStore.MediaColumns.GENERATION_MODIFIED}
+                : new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.SIZE,
+                MediaStore.MediaColumns.DATE_MODIFIED, MediaStore.MediaColumns.DURATION, MediaStore.MediaColumns.MIME_TYPE,
+                MediaStore.MediaColumns.DATE_ADDED};
+        int changeCount = 0;
+        List<Long> missingIds = new ArrayList<>();
+        try (Cursor cursor = mContext.getContentResolver().query(uri, projection, selection, selectionArgs, null)) {
+            if (cursor == null) {
+                return 0;
+            }
+            List<MediaItem> batch = new ArrayList<>(FIRST_BATCH_SIZE);
+            int batchSize = FIRST_BATCH_SIZE;
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                String filePath = cursor.getString(1);
+                maxDateModified = Math.max(maxDateModified, cursor.getLong(3));
+                maxDateAdded = Math.max(maxDateAdded, cursor.getLong(6));
+                if (useGeneration) {
+                    maxGeneration = Math.max(maxGeneration, cursor.getLong(7));
+                }
+                if (filePath == null || !new File(filePath).exists()) {
+                    // a row of a file which is gone, its old item is dropped
+                    missingIds.add(id);
+                    continue;
+                }
+
+                MediaItem item = new MediaItem();
+                item.setId(id);
+                item.setMediaType(mediaType);
+                item.setFilePath(filePath);
+                item.setFileName(filePath.substring(filePath.lastIndexOf("/") + 1));
+                item.setFileSize(cursor.getLong(2));
+                item.setDateModified(cursor.getLong(3));
+                item.setDurationUs(cursor.getLong(4) * 1000);
+                item.setMimeType(cursor.getString(5));
+                batch.add(item);
+                if (batch.size() >= batchSize) {
+                    flushBatch(batch, listener);
+                    changeCount += batch.size();
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    batchSize = BATCH_SIZE;
+                }
+            }
+            flushBatch(batch, listener);
+            changeCount += batch.size();
+        } catch (Exception e) {
+            // the sync state isn't saved, the next sync reads the same rows again
+            e.printStackTrace();
+            return changeCount;
+        }
+
+        changeCount += removeDeletedItems(mediaType, uri, missingIds);
+        mCatalog.setSyncState(mediaType, new MediaCatalog.SyncState(version, maxGeneration, maxDateModified, maxDateAdded));
+        Log.i(TAG, "synced " + changeCount + " changes of media type " + mediaType + " in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        return changeCount;
+    }
+
+    private void flushBatch(List<MediaItem> batch, BatchListener listener) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        sniffItems(batch);
+        mCatalog.putItems(batch);
+        if (listener != null) {
+            listener.onBatch(batch);
+        }
+    }
+
+    /***
+     * remove items whose id the media store doesn't have any more, or whose file is gone
+     *
+     * @return number of items removed
+     */
+    private int removeDeletedItems(int mediaType, Uri uri, List<Long> missingIds) {
+        long[] storeIds;
+        try (Cursor cursor = mContext.getContentResolver().query(uri, new String[]{MediaStore.MediaColumns._ID},
+                null, null, MediaStore.MediaColumns._ID)) {
+            if (cursor == null) {
+                return 0;
+            }
+            storeIds = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < storeIds.length) {
+                storeIds[count++] = cursor.getLong(0);
+            }
+            // sorted already, unless the provider ignored the order
+            Arrays.sort(storeIds, 0, count);
+            storeIds = Arrays.copyOf(storeIds, count);
+        }
+
+        // both id lists are sorted, walk them side by side
+        long[] catalogIds = mCatalog.getIds(mediaType);
+        long[] deletedIds = new long[catalogIds.length + missingIds.size()];
+        int deletedCount = 0;
+        int storeIndex = 0;
+        for (long id : catalogIds) {
+            while (storeIndex < storeIds.length && storeIds[storeIndex] < id) {
+                storeIndex++;
+            }
+            if (storeIndex >= storeIds.length || storeIds[storeIndex] != id) {
+                deletedIds[deletedCount++] = id;
+            }
+        }
+        for (Long id : missingIds) {
+            deletedIds[deletedCount++] = id;
+        }
+        if (deletedCount > 0) {
+            mCatalog.deleteItems(deletedIds, deletedCount);
+        }
+        return deletedCount;
+    }
+
+    /***
+     * sniff the files of a batch on the workers, each worker takes the next file until none is left
+     */
+    private void sniffItems(List<MediaItem> items) throws InterruptedException {
+        AtomicInteger nextIndex = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>(SNIFF_THREAD_COUNT);
+        for (int i = 0; i < Math.min(SNIFF_THREAD_COUNT, items.size()); i++) {
+            tasks.add(() -> {
+                MediaSniffer sniffer = new MediaSniffer();
+                int index;
+                while ((index = nextIndex.getAndIncrement()) < items.size()) {
+                    sniffer.sniff(items.get(index));
+                }
+                return null;
+            });
+        }
+        mSniffExecutor.invokeAll(tasks);
+    }
+}
@@ -0,0 +1,74 @@
+package com.samsung.mixaudioandvideo.export;
+
+/***
+ * One audio file of a mix, see {@link ExportElement#addAudioTrack}
+ */
+public class AudioTrackElement {
+    private String filePath;
+    private float gain = 1f;
+    private long startOffsetUs;
+    private long fadeInUs;
+    private long fadeOutUs;
+    private boolean loop;
+
+    public AudioTrackElement(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    /***
+     * linear gain applied to the track, 1 keeps the volume
+     */
+    public float getGain() {
+        return gain;
+    }
+
+    public void setGain(float gain) {
+        this.gain = gain;
+    }
+
+    /***
+     * time of the video at which the track starts
+     */
+    public long getStartOffsetUs() {
+        return startOffsetUs;
+    }
+
+    public void setStartOffsetUs(long startOffsetUs) {
+        this.startOffsetUs = startOffsetUs;
+    }
+
+    public long getFadeInUs() {
+        return fadeInUs;
+    }
+
+    public void setFadeInUs(long fadeInUs) {
+        this.fadeInUs = fadeInUs;
+    }
+
+    public long getFadeOutUs() {
+        return fadeOutUs;
+    }
+
+    public void setFadeOutUs(long fadeOutUs) {
+        this.fadeOutUs = fadeOutUs;
+    }
+
+    /***
+     * repeat the track until the end of the video
+     */
+    public boolean isLoop() {
+        return loop;
+    }
+
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+}
@@ -0,0 +1,129 @@
+package com.samsung.mixaudioandvideo.export;
+
+import android.util.Log;
+
+import com.samsung.mixaudioandvideo.utils.MediaUtils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Codec instances the device runs at once, one count per codec type shared by every export.
+ * An export reserves the codecs it can't do without and waits for them, extra codecs such as
+ * the ones of parallel segments are only taken if they are free, so a batch of exports never
+ * asks the device for more codecs than it has.
+ * Required codecs are reserved encoders first, then decoders by mime type, so two exports never wait on each other.
+ */
+public class CodecBudget {
+    private static final String TAG = "CodecBudget";
+    private static final long ACQUIRE_POLL_MS = 100L;
+    private static CodecBudget _instance = new CodecBudget();
+
+    private final Map<String, Semaphore> mSlots = new HashMap<>();
+    private final Map<String, Integer> mCapacities = new HashMap<>();
+
+    public interface StopSignal {
+        boolean isStopped();
+    }
+
+    /***
+     * Codecs taken out of the budget, given back with {@link #release()}
+     */
+    public static class Reservation {
+        private final Semaphore mSlots;
+        private int mCount;
+
+        Reservation(Semaphore slots, int count) {
+            mSlots = slots;
+            mCount = count;
+        }
+
+        public synchronized int getCount() {
+            return mCount;
+        }
+
+        /***
+         * give back the codecs beyond count
+         */
+        public synchronized void trimTo(int count) {
+            if (count < mCount) {
+                mSlots.release(mCount - count);
+                mCount = count;
+            }
+        }
+
+        public void release() {
+            trimTo(0);
+        }
+    }
+
+    public static CodecBudget getInstance() {
+        return _instance;
+    }
+
+    /***
+     * get number of instances of a codec the device runs at once
+     */
+    public synchronized int getCapacity(String mimeType, boolean encoder) {
+        String key = getKey(mimeType, encoder);
+        Integer capacity = mCapacities.get(key);
+        if (capacity == null) {
+            capacity = MediaUtils.getMaxCodecInstances(mimeType, encoder);
+            mCapacities.put(key, capacity);
+        }
+        return capacity;
+    }
+
+    /***
+     * reserve codecs, waiting until they are free
+     *
+     * @param count codecs needed, more than the device has are not waited for
+     * @return the reservation, null if the export was stopped while waiting
+     * @throws InterruptedException
+     */
+    public Reservation acquire(String mimeType, boolean encoder, int count, StopSignal stopSignal) throws InterruptedException {
+        int capacity = getCapacity(mimeType, encoder);
+        int budgeted = Math.min(count, capacity);
+        if (budgeted < count) {
+            Log.i(TAG, count + " " + mimeType + (encoder ? " encoders" : " decoders") + " wanted, the device has " + capacity);
+        }
+        Semaphore slots = getSlots(mimeType, encoder);
+        while (!slots.tryAcquire(budgeted, ACQUIRE_POLL_MS, TimeUnit.MILLISECONDS)) {
+            if (stopSignal.isStopped()) {
+                return null;
+            }
+        }
+        return new Reservation(slots, budgeted);
+    }
+
+    /***
+     * reserve as many free codecs as there are, up to maxCount, without waiting
+     *
+     * @return the reservation, which may hold no codec at all
+     */
+    public Reservation tryAcquire(String mimeType, boolean encoder, int maxCount) {
+        Semaphore slots = getSlots(mimeType, encoder);
+        int count = 0;
+        while (count < maxCount && slots.tryAcquire()) {
+            count++;
+        }
+        return new Reservation(slots, count);
+    }
+
+    private synchronized Semaphore getSlots(String mimeType, boolean encoder) {
+        String key = getKey(mimeType, encoder);
+        Semaphore slots = mSlots.get(key);
+        if (slots == null) {
+            slots = new Semaphore(getCapacity(mimeType, encoder));
+            mSlots.put(key, slots);
+        }
+        return slots;
+    }
+
+    private static String getKey(String mimeType, boolean encoder) {
+        return (encoder ? "encoder:" : "decoder:") + mimeType.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,8 @@
+package com.samsung.mixaudioandvideo.export;
+
+public class ContainerFormat {
+    // MediaMuxer, sample tables are kept in memory and the moov is written when the export ends
+    public static final int MP4 = 1;
+    // FragmentedMp4Writer, moof/mdat fragments written as the export goes, H.264 and AAC only
+    public static final int FRAGMENTED_MP4 = 2;
+}
@@ -4,41 +4,99 @@ import com.samsung.mixaudioandvideo.utils.ToastUtils;
 
 import android.app.Activity;
 import android.os.Environment;
+import android.util.Log;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Export {
+    private static final String TAG = "Export";
     private static final String ROOT_FOLDER = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM) + File.separator;
     private static Export _instance = new Export();
-    private ExportService mExportService;
+    private final AtomicInteger mOutputFileCounter = new AtomicInteger();
+    private ExportQueue mExportQueue;
 
     public static Export getInstance() {
         return _instance;
     }
 
+    /***
+     * get export queue, created on first use with the default concurrency
+     *
+     * @return export queue
+     */
+    public synchronized ExportQueue getExportQueue() {
+        if (mExportQueue == null) {
+            mExportQueue = new ExportQueue(ExportQueue.getDefaultConcurrency());
+        }
+        return mExportQueue;
+    }
+
     /***
      * start export video
      *
      * @param exportElement
      * @param exportAdapter
+     * @return queued export job, null if the output file can't be created
+     * or a resumable export of the same inputs is already queued
      */
-    public void startExport(Activity activity, ExportElement exportElement, ExportAdapter exportAdapter){
-        File outputFile = createOutputFile();
+    public ExportJob startExport(Activity activity, ExportElement exportElement, ExportAdapter exportAdapter){
+        File outputFile = exportElement.isResumable() ? findResumableOutputFile(activity, exportElement) : null;
+        if(outputFile == null)
+            outputFile = createOutputFile();
         if(outputFile == null){
             ToastUtils.showShortToast(activity, "Can't export video.");
-        } else {
-            mExportService = new ExportService();
-            mExportService.startExport(activity, outputFile, exportElement, exportAdapter);
+            return null;
         }
+
+        ExportJob job = getExportQueue().submit(activity, exportElement, outputFile, exportAdapter);
+        if(job == null)
+            ToastUtils.showShortToast(activity, "This video is already being exported.");
+        return job;
+    }
+
+    /***
+     * add many exports to the queue at once
+     *
+     * @param exportElements
+     * @param exportAdapter adapter shared by all exports
+     * @return number of exports which were queued
+     */
+    public int startExports(Activity activity, List<ExportElement> exportElements, ExportAdapter exportAdapter) {
+        int queued = 0;
+        for (ExportElement exportElement : exportElements) {
+            if (startExport(activity, exportElement, exportAdapter) != null) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /***
+     * get output file of an interrupted export of the same inputs, which the export continues
+     *
+     * @return null if there is nothing to resume
+     */
+    private File findResumableOutputFile(Activity activity, ExportElement exportElement){
+        ExportCheckpoint checkpoint = ExportCheckpoint.load(ExportCheckpoint.getFile(activity.getFilesDir(), exportElement));
+        if(checkpoint == null)
+            return null;
+
+        File outputFile = new File(checkpoint.getOutputPath());
+        if(!outputFile.exists())
+            return null;
+
+        Log.i(TAG, "resume export into " + outputFile.getPath());
+        return outputFile;
     }
 
     private File createOutputFile(){
         Date date = new Date();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
-        String fileName = dateFormat.format(date) + "_" + TimeUnit.MICROSECONDS.toSeconds(System.currentTimeMillis()) + ".mp4";
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
+        String fileName = dateFormat.format(date) + "_" + mOutputFileCounter.incrementAndGet() + ".mp4";
         String exportPath = ROOT_FOLDER + fileName;
         File outputFile = new File(exportPath);
 
@@ -49,16 +107,16 @@ public class Export {
     }
 
     public void stopExport() {
-        if(mExportService == null)
+        if(mExportQueue == null)
             return;
 
-        mExportService.stopExport();
+        mExportQueue.cancelAll();
     }
 
     public boolean isExportRunning() {
-        if(mExportService == null)
+        if(mExportQueue == null)
             return false;
 
-        return mExportService.isExportRunning();
+        return mExportQueue.getActiveJobCount() > 0;
     }
 }
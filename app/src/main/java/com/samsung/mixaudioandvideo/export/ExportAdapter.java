@@ -1,9 +1,25 @@
 package com.samsung.mixaudioandvideo.export;
 
+import java.io.File;
+
 public interface ExportAdapter {
     void onExportComplete();
 
     void onExportFail();
 
     void onExportProgressUpdate(int progress);
+
+    /***
+     * progress with throughput and remaining time, reported at most every ExportElement.getProgressIntervalMs
+     */
+    default void onExportProgressUpdate(ExportProgress progress) {
+        onExportProgressUpdate(progress.getPercent());
+    }
+
+    /***
+     * a range of fragmented MP4 output is complete on disk and won't change any more, e.g. to upload it while exporting.
+     * The header comes first, then every fragment; a resumed export starts with the first fragment it writes.
+     */
+    default void onExportDataWritten(File outputFile, long offset, long length) {
+    }
 }
@@ -0,0 +1,174 @@
+package com.samsung.mixaudioandvideo.export;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/***
+ * Progress of a resumable export, saved after every fragment written to the output:
+ * the valid length of the output file, the next fragment and the time each track continues from.
+ * One checkpoint is kept per set of inputs and settings, so exporting the same again finds it.
+ */
+public class ExportCheckpoint {
+    private static final String TAG = "ExportCheckpoint";
+    private static final String DIR_NAME = "export_checkpoints";
+    private static final String KEY_OUTPUT_PATH = "outputPath";
+    private static final String KEY_FILE_SIZE = "fileSize";
+    private static final String KEY_NEXT_SEQUENCE_NUMBER = "nextSequenceNumber";
+    private static final String KEY_HEADER_CRC = "headerCrc";
+    private static final String KEY_RESUME_TIMES_US = "resumeTimesUs";
+
+    private final String mOutputPath;
+    private final long mFileSize;
+    private final int mNextSequenceNumber;
+    private final long mHeaderCrc;
+    private final long[] mResumeTimesUs;
+
+    public ExportCheckpoint(String outputPath, long fileSize, int nextSequenceNumber, long headerCrc, long[] resumeTimesUs) {
+        mOutputPath = outputPath;
+        mFileSize = fileSize;
+        mNextSequenceNumber = nextSequenceNumber;
+        mHeaderCrc = headerCrc;
+        mResumeTimesUs = resumeTimesUs.clone();
+    }
+
+    /***
+     * get file of the checkpoint of an export
+     *
+     * @param filesDir private files dir of the app
+     */
+    public static File getFile(File filesDir, ExportElement exportElement) {
+        return new File(new File(filesDir, DIR_NAME), computeKey(exportElement) + ".properties");
+    }
+
+    /***
+     * get digest of everything the output depends on, the input files are told apart by path, size and modification time
+     */
+    static String computeKey(ExportElement exportElement) {
+        StringBuilder key = new StringBuilder();
+        appendFile(key, exportElement.getVideoFilePath());
+        key.append(exportElement.getTrimStartUs()).append(',').append(exportElement.getTrimEndUs()).append('|');
+        appendFile(key, exportElement.getAudioFilePath());
+        for (AudioTrackElement track : exportElement.getAudioTracks()) {
+            appendFile(key, track.getFilePath());
+            key.append(track.getGain()).append(',').append(track.getStartOffsetUs()).append(',')
+                    .append(track.getFadeInUs()).append(',').append(track.getFadeOutUs()).append(',')
+                    .append(track.isLoop()).append('|');
+        }
+        key.append(exportElement.isKeepOriginalAudio()).append(',').append(exportElement.getOriginalAudioGain()).append(',')
+                .append(exportElement.getDuckedGain()).append(',').append(exportElement.getOutputSampleRate()).append(',')
+                .append(exportElement.getOutputChannelCount()).append(',').append(exportElement.getOutputBitRate()).append(',')
+                .append(exportElement.getFragmentDurationUs());
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b & 0xFF));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            return Integer.toHexString(key.toString().hashCode());
+        }
+    }
+
+    private static void appendFile(StringBuilder key, String path) {
+        if (path == null) {
+            key.append("-|");
+            return;
+        }
+        File file = new File(path);
+        key.append(path).append(',').append(file.length()).append(',').append(file.lastModified()).append('|');
+    }
+
+    /***
+     * @return the checkpoint, null if there is none or it can't be read
+     */
+    public static ExportCheckpoint load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            String[] times = properties.getProperty(KEY_RESUME_TIMES_US).split(",");
+            long[] resumeTimesUs = new long[times.length];
+            for (int i = 0; i < times.length; i++) {
+                resumeTimesUs[i] = Long.parseLong(times[i]);
+            }
+            return new ExportCheckpoint(properties.getProperty(KEY_OUTPUT_PATH),
+                    Long.parseLong(properties.getProperty(KEY_FILE_SIZE)),
+                    Integer.parseInt(properties.getProperty(KEY_NEXT_SEQUENCE_NUMBER)),
+                    Long.parseLong(properties.getProperty(KEY_HEADER_CRC)),
+                    resumeTimesUs);
+        } catch (IOException | RuntimeException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /***
+     * write the checkpoint next to the file and rename it, so a crash never leaves half a checkpoint
+     */
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_OUTPUT_PATH, mOutputPath);
+        properties.setProperty(KEY_FILE_SIZE, Long.toString(mFileSize));
+        properties.setProperty(KEY_NEXT_SEQUENCE_NUMBER, Integer.toString(mNextSequenceNumber));
+        properties.setProperty(KEY_HEADER_CRC, Long.toString(mHeaderCrc));
+        StringBuilder times = new StringBuilder();
+        for (int i = 0; i < mResumeTimesUs.length; i++) {
+            times.append(i > 0 ? "," : "").append(mResumeTimesUs[i]);
+        }
+        properties.setProperty(KEY_RESUME_TIMES_US, times.toString());
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            properties.store(out, null);
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("can't write " + file);
+        }
+    }
+
+    public static void delete(File file) {
+        boolean isDelete = file.delete();
+        Log.i(TAG, "delete checkpoint " + file.getName() + ": " + isDelete);
+    }
+
+    public String getOutputPath() {
+        return mOutputPath;
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    public int getNextSequenceNumber() {
+        return mNextSequenceNumber;
+    }
+
+    public long getHeaderCrc() {
+        return mHeaderCrc;
+    }
+
+    /***
+     * get per track the time of the first sample the output doesn't have yet
+     */
+    public long[] getResumeTimesUs() {
+        return mResumeTimesUs.clone();
+    }
+}
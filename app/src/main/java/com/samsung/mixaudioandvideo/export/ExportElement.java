@@ -1,8 +1,38 @@
 package com.samsung.mixaudioandvideo.export;
 
+import com.samsung.mixaudioandvideo.export.mp4.FragmentedMp4Writer;
+import com.samsung.mixaudioandvideo.export.pipeline.DuckingEnvelope;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class ExportElement {
+    public static final int AUTO = 0;
+    public static final long DEFAULT_INTERLEAVE_WINDOW_US = 500000L;
+    public static final long DEFAULT_LOOP_CACHE_MEMORY_LIMIT = 16L * 1024 * 1024;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MS = 250L;
+    public static final long DEFAULT_PARALLEL_TRANSCODE_MIN_DURATION_US = 120000000L;
+
     private String videoFilePath;
     private String audioFilePath;
+    private long trimStartUs;
+    private long trimEndUs;
+    private final List<AudioTrackElement> audioTracks = new ArrayList<>();
+    private long interleaveWindowUs = DEFAULT_INTERLEAVE_WINDOW_US;
+    private int transcodeMode = TranscodeMode.SYNC;
+    private long loopCacheMemoryLimit = DEFAULT_LOOP_CACHE_MEMORY_LIMIT;
+    private long progressIntervalMs = DEFAULT_PROGRESS_INTERVAL_MS;
+    private long parallelTranscodeMinDurationUs = DEFAULT_PARALLEL_TRANSCODE_MIN_DURATION_US;
+    private int outputSampleRate = AUTO;
+    private int outputChannelCount = AUTO;
+    private int outputBitRate = AUTO;
+    private boolean keepOriginalAudio;
+    private float originalAudioGain = 1f;
+    private float duckedGain = DuckingEnvelope.DEFAULT_DUCKED_GAIN;
+    private int containerFormat = ContainerFormat.MP4;
+    private boolean resumable;
+    private boolean fastStart;
+    private long fragmentDurationUs = FragmentedMp4Writer.DEFAULT_FRAGMENT_DURATION_US;
 
     public String getVideoFilePath() {
         return videoFilePath;
@@ -12,6 +42,33 @@ public class ExportElement {
         this.videoFilePath = videoFilePath;
     }
 
+    /***
+     * export only the part of the video from trimStartUs to trimEndUs. The video isn't decoded:
+     * it is copied from the sync sample before the start, and an edit list hides the frames before the start.
+     */
+    public long getTrimStartUs() {
+        return trimStartUs;
+    }
+
+    public void setTrimStartUs(long trimStartUs) {
+        this.trimStartUs = trimStartUs;
+    }
+
+    /***
+     * @return end of the exported part of the video, 0 for the end of the video
+     */
+    public long getTrimEndUs() {
+        return trimEndUs;
+    }
+
+    public void setTrimEndUs(long trimEndUs) {
+        this.trimEndUs = trimEndUs;
+    }
+
+    public boolean isTrimmed() {
+        return trimStartUs > 0 || trimEndUs > 0;
+    }
+
     public String getAudioFilePath() {
         return audioFilePath;
     }
@@ -19,4 +76,188 @@ public class ExportElement {
     public void setAudioFilePath(String audioFilePath) {
         this.audioFilePath = audioFilePath;
     }
+
+    /***
+     * add an audio file to mix into the soundtrack.
+     * Once tracks are added they replace audioFilePath, and the mix is always encoded to AAC.
+     */
+    public void addAudioTrack(AudioTrackElement audioTrack) {
+        audioTracks.add(audioTrack);
+    }
+
+    public List<AudioTrackElement> getAudioTracks() {
+        return audioTracks;
+    }
+
+    /***
+     * max duration of one track written to the output in a row before switching to the other track
+     */
+    public long getInterleaveWindowUs() {
+        return interleaveWindowUs;
+    }
+
+    public void setInterleaveWindowUs(long interleaveWindowUs) {
+        this.interleaveWindowUs = interleaveWindowUs;
+    }
+
+    /***
+     * how the audio decoder and encoder are driven when the audio has to be converted to AAC
+     *
+     * @return one of {@link TranscodeMode}
+     */
+    public int getTranscodeMode() {
+        return transcodeMode;
+    }
+
+    public void setTranscodeMode(int transcodeMode) {
+        this.transcodeMode = transcodeMode;
+    }
+
+    /***
+     * max bytes of audio kept in memory when a short audio is looped:
+     * encoded samples when the audio is copied as is, decoded audio when it is transcoded (the rest goes to the cache dir)
+     */
+    public long getLoopCacheMemoryLimit() {
+        return loopCacheMemoryLimit;
+    }
+
+    public void setLoopCacheMemoryLimit(long loopCacheMemoryLimit) {
+        this.loopCacheMemoryLimit = loopCacheMemoryLimit;
+    }
+
+    /***
+     * sample rate the audio is encoded with when it is converted to AAC,
+     * AUTO keeps 44.1 and 48 kHz and converts other rates to one of them
+     */
+    public int getOutputSampleRate() {
+        return outputSampleRate;
+    }
+
+    public void setOutputSampleRate(int outputSampleRate) {
+        this.outputSampleRate = outputSampleRate;
+    }
+
+    /***
+     * channel count the audio is encoded with when it is converted to AAC, AUTO down mixes to stereo
+     */
+    public int getOutputChannelCount() {
+        return outputChannelCount;
+    }
+
+    public void setOutputChannelCount(int outputChannelCount) {
+        this.outputChannelCount = outputChannelCount;
+    }
+
+    /***
+     * AAC bit rate, AUTO uses 64 kbps per channel or the input bit rate if it is lower
+     */
+    public int getOutputBitRate() {
+        return outputBitRate;
+    }
+
+    public void setOutputBitRate(int outputBitRate) {
+        this.outputBitRate = outputBitRate;
+    }
+
+    /***
+     * min export duration from which audio converted to AAC is split into segments transcoded on several threads,
+     * Long.MAX_VALUE turns it off
+     */
+    public long getParallelTranscodeMinDurationUs() {
+        return parallelTranscodeMinDurationUs;
+    }
+
+    public void setParallelTranscodeMinDurationUs(long parallelTranscodeMinDurationUs) {
+        this.parallelTranscodeMinDurationUs = parallelTranscodeMinDurationUs;
+    }
+
+    /***
+     * min time between two progress updates posted to the UI
+     */
+    public long getProgressIntervalMs() {
+        return progressIntervalMs;
+    }
+
+    public void setProgressIntervalMs(long progressIntervalMs) {
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    /***
+     * mix the audio of the video under the new audio, which is ducked while the original audio is loud
+     */
+    public boolean isKeepOriginalAudio() {
+        return keepOriginalAudio;
+    }
+
+    public void setKeepOriginalAudio(boolean keepOriginalAudio) {
+        this.keepOriginalAudio = keepOriginalAudio;
+    }
+
+    public float getOriginalAudioGain() {
+        return originalAudioGain;
+    }
+
+    public void setOriginalAudioGain(float originalAudioGain) {
+        this.originalAudioGain = originalAudioGain;
+    }
+
+    /***
+     * gain of the new audio while the original audio is loud, 1 disables ducking
+     */
+    public float getDuckedGain() {
+        return duckedGain;
+    }
+
+    public void setDuckedGain(float duckedGain) {
+        this.duckedGain = duckedGain;
+    }
+
+    /***
+     * how the output file is written
+     *
+     * @return one of {@link ContainerFormat}
+     */
+    public int getContainerFormat() {
+        return containerFormat;
+    }
+
+    public void setContainerFormat(int containerFormat) {
+        this.containerFormat = containerFormat;
+    }
+
+    /***
+     * move the moov of an MP4 output in front of the media data once it is written, so it plays while downloading.
+     * Fragmented MP4 plays while downloading anyway.
+     */
+    public boolean isFastStart() {
+        return fastStart;
+    }
+
+    public void setFastStart(boolean fastStart) {
+        this.fastStart = fastStart;
+    }
+
+    /***
+     * write the output as fragmented MP4 whatever the container format, and checkpoint it, so an interrupted export keeps its output
+     * and the next export of the same inputs continues from the last fragment.
+     * Needs H.264 video and AAC audio, other codecs are written as a regular MP4.
+     */
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /***
+     * min duration of a fragment of fragmented MP4 output, fragments end at a video sync sample
+     */
+    public long getFragmentDurationUs() {
+        return fragmentDurationUs;
+    }
+
+    public void setFragmentDurationUs(long fragmentDurationUs) {
+        this.fragmentDurationUs = fragmentDurationUs;
+    }
 }
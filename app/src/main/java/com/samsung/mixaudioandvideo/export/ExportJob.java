@@ -0,0 +1,160 @@
+package com.samsung.mixaudioandvideo.export;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+/***
+ * One export submitted to {@link ExportQueue}
+ */
+public class ExportJob {
+    private final int mJobId;
+    private final ExportElement mExportElement;
+    private final File mOutputFile;
+    private final String mCheckpointKey;
+    private final ExportService mExportService = new ExportService();
+    private volatile int mStatus = ExportJobStatus.PENDING;
+    private volatile Future<?> mFuture;
+    private volatile long mStartTimeMs;
+    private volatile long mEndTimeMs;
+    private volatile boolean mWorkerDone;
+
+    /***
+     * @param checkpointKey key of the checkpoint of a resumable export, null otherwise
+     */
+    ExportJob(int jobId, ExportElement exportElement, File outputFile, String checkpointKey) {
+        mJobId = jobId;
+        mExportElement = exportElement;
+        mOutputFile = outputFile;
+        mCheckpointKey = checkpointKey;
+    }
+
+    public int getJobId() {
+        return mJobId;
+    }
+
+    public ExportElement getExportElement() {
+        return mExportElement;
+    }
+
+    public File getOutputFile() {
+        return mOutputFile;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public boolean isFinished() {
+        return mStatus == ExportJobStatus.COMPLETED
+                || mStatus == ExportJobStatus.FAILED
+                || mStatus == ExportJobStatus.CANCELLED;
+    }
+
+    /***
+     * get duration of the exported media, 0 until the job has started
+     *
+     * @return duration in microseconds
+     */
+    public long getMediaDurationUs() {
+        return mExportService.getVideoDuration();
+    }
+
+    /***
+     * get per stage timing report, complete once the job is finished
+     */
+    public ExportReport getReport() {
+        return mExportService.getReport();
+    }
+
+    /***
+     * get wall time spent on this job
+     *
+     * @return time in milliseconds, 0 if the job hasn't started
+     */
+    public long getElapsedTimeMs() {
+        if (mStartTimeMs == 0) {
+            return 0;
+        }
+        return (mEndTimeMs != 0 ? mEndTimeMs : System.currentTimeMillis()) - mStartTimeMs;
+    }
+
+    String getCheckpointKey() {
+        return mCheckpointKey;
+    }
+
+    /***
+     * @return true while the job may still write its output file, a cancelled job does until its worker returns
+     */
+    synchronized boolean isUsingOutputFile() {
+        return mStatus == ExportJobStatus.PENDING || (mStartTimeMs != 0 && !mWorkerDone);
+    }
+
+    long getStartTimeMs() {
+        return mStartTimeMs;
+    }
+
+    long getEndTimeMs() {
+        return mEndTimeMs;
+    }
+
+    ExportService getExportService() {
+        return mExportService;
+    }
+
+    void setFuture(Future<?> future) {
+        mFuture = future;
+    }
+
+    /***
+     * mark the job as running
+     *
+     * @return false if the job was cancelled before it could start
+     */
+    synchronized boolean markRunning() {
+        if (mStatus != ExportJobStatus.PENDING) {
+            return false;
+        }
+        mStatus = ExportJobStatus.RUNNING;
+        mStartTimeMs = System.currentTimeMillis();
+        return true;
+    }
+
+    synchronized void markFinished(int status) {
+        mWorkerDone = true;
+        if (mStatus == ExportJobStatus.CANCELLED) {
+            return;
+        }
+        mStatus = status;
+        mEndTimeMs = System.currentTimeMillis();
+    }
+
+    /***
+     * Cancel the job. A pending job is removed from the queue, a running job is stopped.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+            boolean running = mStatus == ExportJobStatus.RUNNING;
+            mStatus = ExportJobStatus.CANCELLED;
+            mEndTimeMs = System.currentTimeMillis();
+            if (!running) {
+                if (mFuture != null) {
+                    mFuture.cancel(false);
+                }
+                return;
+            }
+        }
+        mExportService.stopExport();
+    }
+
+    @Override
+    public String toString() {
+        return "ExportJob{" +
+                "jobId=" + mJobId +
+                ", status=" + mStatus +
+                ", outputFile=" + mOutputFile +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package com.samsung.mixaudioandvideo.export;
+
+public class ExportJobStatus {
+    public static final int PENDING = 1;
+    public static final int RUNNING = 2;
+    public static final int COMPLETED = 3;
+    public static final int FAILED = 4;
+    public static final int CANCELLED = 5;
+}
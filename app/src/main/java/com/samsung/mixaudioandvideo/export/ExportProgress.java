@@ -0,0 +1,64 @@
+package com.samsung.mixaudioandvideo.export;
+
+/***
+ * Snapshot of a running export
+ */
+public class ExportProgress {
+    public static final long ETA_UNKNOWN = -1;
+
+    private final int mPercent;
+    private final long mPositionUs;
+    private final long mDurationUs;
+    private final double mThroughput;
+    private final long mEtaMs;
+
+    public ExportProgress(int percent, long positionUs, long durationUs, double throughput, long etaMs) {
+        mPercent = percent;
+        mPositionUs = positionUs;
+        mDurationUs = durationUs;
+        mThroughput = throughput;
+        mEtaMs = etaMs;
+    }
+
+    public int getPercent() {
+        return mPercent;
+    }
+
+    /***
+     * get exported position, averaged over the tracks
+     */
+    public long getPositionUs() {
+        return mPositionUs;
+    }
+
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    /***
+     * get seconds of media exported per second of wall time
+     */
+    public double getThroughput() {
+        return mThroughput;
+    }
+
+    /***
+     * get estimated remaining time
+     *
+     * @return time in milliseconds, {@link #ETA_UNKNOWN} until there is a throughput
+     */
+    public long getEtaMs() {
+        return mEtaMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportProgress{" +
+                "percent=" + mPercent +
+                ", positionUs=" + mPositionUs +
+                ", durationUs=" + mDurationUs +
+                ", throughput=" + mThroughput +
+                ", etaMs=" + mEtaMs +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package com.samsung.mixaudioandvideo.export;
+
+/***
+ * Combines the positions of every track of an export into one progress,
+ * reported at most once per interval however often the tracks are updated.
+ * Tracks may be updated from different threads.
+ */
+public class ExportProgressTracker {
+
+    public interface Listener {
+        void onProgress(ExportProgress progress);
+    }
+
+    private final long[] mPositionsUs;
+    private final long mDurationUs;
+    private final long mIntervalMs;
+    private final Listener mListener;
+    private long mStartTimeMs = -1;
+    private long mNextReportTimeMs;
+
+    /***
+     * @param trackCount tracks are numbered 0 .. trackCount - 1
+     * @param durationUs duration every track is exported to
+     * @param intervalMs min time between two reports
+     * @param listener   called on the thread of the track update which triggers the report
+     */
+    public ExportProgressTracker(int trackCount, long durationUs, long intervalMs, Listener listener) {
+        mPositionsUs = new long[trackCount];
+        mDurationUs = Math.max(1, durationUs);
+        mIntervalMs = intervalMs;
+        mListener = listener;
+    }
+
+    public synchronized void start(long nowMs) {
+        mStartTimeMs = nowMs;
+        mNextReportTimeMs = nowMs + mIntervalMs;
+    }
+
+    /***
+     * update the position of a track, cheap when no report is due
+     *
+     * @param trackIndex
+     * @param positionUs presentation time of the last sample written
+     * @param nowMs      current time of a monotonic clock
+     */
+    public void onTrackPosition(int trackIndex, long positionUs, long nowMs) {
+        ExportProgress progress;
+        synchronized (this) {
+            mPositionsUs[trackIndex] = Math.max(mPositionsUs[trackIndex], Math.min(positionUs, mDurationUs));
+            if (nowMs < mNextReportTimeMs || mStartTimeMs < 0) {
+                return;
+            }
+            mNextReportTimeMs = nowMs + mIntervalMs;
+            progress = getProgress(nowMs);
+        }
+        mListener.onProgress(progress);
+    }
+
+    /***
+     * mark a track as complete, e.g. an audio track which ended a bit before the video
+     */
+    public void onTrackEnded(int trackIndex, long nowMs) {
+        onTrackPosition(trackIndex, mDurationUs, nowMs);
+    }
+
+    public synchronized ExportProgress getProgress(long nowMs) {
+        long totalUs = 0;
+        for (long positionUs : mPositionsUs) {
+            totalUs += positionUs;
+        }
+        long positionUs = totalUs / Math.max(1, mPositionsUs.length);
+
+        long elapsedMs = mStartTimeMs < 0 ? 0 : nowMs - mStartTimeMs;
+        double throughput = elapsedMs > 0 ? (positionUs / 1000.0) / elapsedMs : 0;
+        long etaMs = throughput > 0
+                ? (long) ((mDurationUs - positionUs) / 1000.0 / throughput)
+                : ExportProgress.ETA_UNKNOWN;
+        int percent = (int) (positionUs * 100 / mDurationUs);
+        return new ExportProgress(percent, positionUs, mDurationUs, throughput, etaMs);
+    }
+}
@@ -0,0 +1,198 @@
+package com.samsung.mixaudioandvideo.export;
+
+import android.app.Activity;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Queue of exports which runs a bounded number of {@link ExportService} at the same time
+ */
+public class ExportQueue {
+    private static final String TAG = "ExportQueue";
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30L;
+    // finished jobs kept for getJobs() and getThroughput(), older ones are dropped
+    private static final int FINISHED_JOB_HISTORY = 16;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final List<ExportJob> mJobs = new ArrayList<>();
+    private final AtomicInteger mNextJobId = new AtomicInteger(1);
+    private final int mConcurrency;
+
+    public ExportQueue(int concurrency) {
+        mConcurrency = Math.max(1, concurrency);
+        mExecutor = new ThreadPoolExecutor(mConcurrency, mConcurrency,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /***
+     * get the default number of concurrent exports:
+     * one per core, but never more than the AAC encoders the device can run at once.
+     * The exports take their codecs from {@link CodecBudget}, an export which finds none free waits for one.
+     *
+     * @return number of workers
+     */
+    public static int getDefaultConcurrency() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int encoders = CodecBudget.getInstance().getCapacity(MediaFormat.MIMETYPE_AUDIO_AAC, true);
+        return Math.max(1, Math.min(cores, encoders));
+    }
+
+    public int getConcurrency() {
+        return mConcurrency;
+    }
+
+    /***
+     * add export to the queue
+     *
+     * @param activity
+     * @param exportElement
+     * @param outputFile
+     * @param exportAdapter
+     * @return job which can be used to query status or cancel the export,
+     * null if a resumable export of the same inputs is already queued or running, which writes the same output
+     */
+    public ExportJob submit(Activity activity, ExportElement exportElement, File outputFile, ExportAdapter exportAdapter) {
+        String checkpointKey = exportElement.isResumable() ? ExportCheckpoint.computeKey(exportElement) : null;
+        ExportJob job;
+        synchronized (mJobs) {
+            if (checkpointKey != null && findActiveJob(checkpointKey) != null) {
+                Log.i(TAG, "already exporting " + outputFile.getPath());
+                return null;
+            }
+            job = new ExportJob(mNextJobId.getAndIncrement(), exportElement, outputFile, checkpointKey);
+            mJobs.add(job);
+            trimFinishedJobs(FINISHED_JOB_HISTORY);
+        }
+        job.setFuture(mExecutor.submit(() -> runJob(job, activity, exportAdapter)));
+        Log.i(TAG, "submit " + job);
+        return job;
+    }
+
+    /***
+     * get the job of a checkpoint which still uses its output file, call with mJobs locked
+     */
+    private ExportJob findActiveJob(String checkpointKey) {
+        for (ExportJob job : mJobs) {
+            if (job.isUsingOutputFile() && checkpointKey.equals(job.getCheckpointKey())) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private void runJob(ExportJob job, Activity activity, ExportAdapter exportAdapter) {
+        if (!job.markRunning()) {
+            return;
+        }
+
+        boolean succeeded = false;
+        try {
+            succeeded = job.getExportService().runExport(activity, job.getOutputFile(), job.getExportElement(), exportAdapter);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+        if (job.getExportService().isExportStopped()) {
+            job.markFinished(ExportJobStatus.CANCELLED);
+        } else {
+            job.markFinished(succeeded ? ExportJobStatus.COMPLETED : ExportJobStatus.FAILED);
+        }
+        Log.i(TAG, "finish " + job + " in " + job.getElapsedTimeMs() + "ms");
+        synchronized (mJobs) {
+            trimFinishedJobs(FINISHED_JOB_HISTORY);
+        }
+    }
+
+    /***
+     * get a snapshot of the queued and running jobs and the most recent finished ones
+     *
+     * @return jobs in submit order
+     */
+    public List<ExportJob> getJobs() {
+        synchronized (mJobs) {
+            return new ArrayList<>(mJobs);
+        }
+    }
+
+    public int getActiveJobCount() {
+        int count = 0;
+        synchronized (mJobs) {
+            for (ExportJob job : mJobs) {
+                if (!job.isFinished()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public void cancelAll() {
+        for (ExportJob job : getJobs()) {
+            job.cancel();
+        }
+    }
+
+    /***
+     * remove finished jobs from the job list, a cancelled job is kept until it stopped writing its output
+     */
+    public void clearFinishedJobs() {
+        synchronized (mJobs) {
+            trimFinishedJobs(0);
+        }
+    }
+
+    /***
+     * remove all but the most recent finished jobs, call with mJobs locked
+     */
+    private void trimFinishedJobs(int keepCount) {
+        int finishedCount = 0;
+        for (int i = mJobs.size() - 1; i >= 0; i--) {
+            ExportJob job = mJobs.get(i);
+            if (job.isFinished() && !job.isUsingOutputFile() && ++finishedCount > keepCount) {
+                mJobs.remove(i);
+            }
+        }
+    }
+
+    /***
+     * get aggregate throughput of completed jobs:
+     * seconds of media exported per second of wall time, measured from the first job start
+     *
+     * @return media seconds per wall second, 0 if nothing is completed yet
+     */
+    public double getThroughput() {
+        long mediaDurationUs = 0;
+        long firstStartMs = Long.MAX_VALUE;
+        long lastEndMs = 0;
+        synchronized (mJobs) {
+            for (ExportJob job : mJobs) {
+                if (job.getStartTimeMs() != 0) {
+                    firstStartMs = Math.min(firstStartMs, job.getStartTimeMs());
+                }
+                if (job.getStatus() == ExportJobStatus.COMPLETED) {
+                    mediaDurationUs += job.getMediaDurationUs();
+                    lastEndMs = Math.max(lastEndMs, job.getEndTimeMs());
+                }
+            }
+        }
+
+        if (mediaDurationUs == 0 || lastEndMs <= firstStartMs) {
+            return 0;
+        }
+        return (mediaDurationUs / 1000.0) / (lastEndMs - firstStartMs);
+    }
+
+    public void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+}
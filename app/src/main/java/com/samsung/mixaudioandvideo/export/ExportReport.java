@@ -0,0 +1,97 @@
+package com.samsung.mixaudioandvideo.export;
+
+import com.samsung.mixaudioandvideo.export.pipeline.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Timing report of one export, complete once the export has finished.
+ * Stages run concurrently, so their wall times add up to more than the total.
+ */
+public class ExportReport {
+    private final List<StageMetrics> mStages = new ArrayList<>();
+    private LatencyHistogram mMuxerWriteLatency = new LatencyHistogram();
+    private long mTotalWallTimeMs;
+    private long mMediaDurationUs;
+    private long mPeakBufferBytes;
+
+    /***
+     * add a stage, thread safe since the stages finish on different threads
+     */
+    public StageMetrics addStage(String name) {
+        StageMetrics stage = new StageMetrics(name);
+        synchronized (mStages) {
+            mStages.add(stage);
+        }
+        return stage;
+    }
+
+    public List<StageMetrics> getStages() {
+        synchronized (mStages) {
+            return new ArrayList<>(mStages);
+        }
+    }
+
+    public StageMetrics getStage(String name) {
+        synchronized (mStages) {
+            for (StageMetrics stage : mStages) {
+                if (stage.getName().equals(name)) {
+                    return stage;
+                }
+            }
+        }
+        return null;
+    }
+
+    /***
+     * get latency of the writes into the muxer
+     */
+    public LatencyHistogram getMuxerWriteLatency() {
+        return mMuxerWriteLatency;
+    }
+
+    public void setMuxerWriteLatency(LatencyHistogram muxerWriteLatency) {
+        mMuxerWriteLatency = muxerWriteLatency;
+    }
+
+    public long getTotalWallTimeMs() {
+        return mTotalWallTimeMs;
+    }
+
+    public void setTotalWallTimeMs(long totalWallTimeMs) {
+        mTotalWallTimeMs = totalWallTimeMs;
+    }
+
+    public long getMediaDurationUs() {
+        return mMediaDurationUs;
+    }
+
+    public void setMediaDurationUs(long mediaDurationUs) {
+        mMediaDurationUs = mediaDurationUs;
+    }
+
+    /***
+     * get bytes of sample buffers, queues and caches held at the peak of the export
+     */
+    public long getPeakBufferBytes() {
+        return mPeakBufferBytes;
+    }
+
+    public void setPeakBufferBytes(long peakBufferBytes) {
+        mPeakBufferBytes = peakBufferBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ExportReport{")
+                .append("total=").append(mTotalWallTimeMs).append("ms")
+                .append(", media=").append(mMediaDurationUs / 1000).append("ms")
+                .append(", peakBufferBytes=").append(mPeakBufferBytes)
+                .append(", muxerWrite{").append(mMuxerWriteLatency).append('}');
+        for (StageMetrics stage : getStages()) {
+            builder.append("\n  ").append(stage);
+        }
+        return builder.append("\n}").toString();
+    }
+}
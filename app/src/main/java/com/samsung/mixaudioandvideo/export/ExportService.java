@@ -1,6 +1,5 @@
 package com.samsung.mixaudioandvideo.export;
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
@@ -8,24 +7,70 @@ import android.media.MediaExtractor;
 import android.media.MediaFormat;
 import android.media.MediaMuxer;
 import android.media.MediaScannerConnection;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.samsung.mixaudioandvideo.catalog.MediaCatalog;
 import com.techyourchance.threadposter.BackgroundThreadPoster;
 import com.techyourchance.threadposter.UiThreadPoster;
+import com.samsung.mixaudioandvideo.export.mp4.FragmentedMp4Writer;
+import com.samsung.mixaudioandvideo.export.mp4.Mp4FastStart;
+import com.samsung.mixaudioandvideo.export.mp4.Mp4Info;
+import com.samsung.mixaudioandvideo.export.mp4.Mp4TrackFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.ConvertingSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.CopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.DuckingEnvelope;
+import com.samsung.mixaudioandvideo.export.pipeline.InterleavingMuxerStage;
+import com.samsung.mixaudioandvideo.export.pipeline.LoopingCopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.MixerInput;
+import com.samsung.mixaudioandvideo.export.pipeline.MixingTranscodeLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.PassthroughCopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmConverter;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmLoopCache;
+import com.samsung.mixaudioandvideo.export.pipeline.ResumeFilterSink;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.SegmentCodecFactory;
+import com.samsung.mixaudioandvideo.export.pipeline.SegmentedTranscodeLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.TimedSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.TimedSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.TranscodeCopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.TrimmedSampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.media.AsyncTranscodeLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.media.ExtractorSampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.media.MediaCodecSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.media.MediaSegmentCodecFactory;
+import com.samsung.mixaudioandvideo.export.pipeline.media.MuxerSampleSink;
+import com.samsung.mixaudioandvideo.models.MediaItem;
 import com.samsung.mixaudioandvideo.models.TrackType;
 import com.samsung.mixaudioandvideo.utils.MediaUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ExportService {
     private static final String TAG = "ExportService";
 
-    private static final long TIMEOUT_US = 1000L;
-    private static final int AUDIO_MAX_INPUT_SIZE = 10485760;
+    private static final int MUXER_TRACK_COUNT = 2;
+    private static final int MUXER_QUEUE_CAPACITY = 64;
+    // largest samples a muxer stage queue holds at once, its bytes are sized from the max input size
+    private static final int MUXER_QUEUE_MAX_SAMPLES = 3;
+    private static final long SEGMENT_MIN_DURATION_US = 10000000L;
+    private static final long SEGMENT_MAX_DURATION_US = 60000000L;
+    private static final int SEGMENTS_PER_WORKER = 4;
+    private static final int AAC_BIT_RATE_PER_CHANNEL = 64000;
+    private static final int AAC_MIN_BIT_RATE_PER_CHANNEL = 32000;
 
     private final BackgroundThreadPoster mExportThread = new BackgroundThreadPoster();
     private final UiThreadPoster mUIThread = new UiThreadPoster();
@@ -38,28 +83,54 @@ public class ExportService {
     private long mVideoDuration;
     private MediaExtractor mVideoExtractor;
     private MediaFormat mInputVideoFormat;
+    private SampleSource mVideoSource;
+    private long mTrimStartUs;
+    private long mVideoStartUs;
     private MediaCodec mAudioDecoder;
     private MediaCodec mAudioEncoder;
     private int mInputVideoTrack;
     private int mMuxerVideoTrack;
+    private volatile CopyLoop mVideoCopyLoop;
     private boolean mMuxVideoDone;
 
     // Audio solution
     private MediaExtractor mAudioExtractor;
+    private final List<AudioTrackElement> mMixTracks = new ArrayList<>();
+    private boolean mMixHasOriginalAudio;
+    private final List<MediaExtractor> mMixExtractors = new ArrayList<>();
+    private final List<Integer> mMixTrackIndices = new ArrayList<>();
+    private final List<MediaFormat> mMixFormats = new ArrayList<>();
+    private final List<MediaCodec> mMixDecoders = new ArrayList<>();
     private MediaFormat mInputAudioFormat;
+    private PcmFormat mEncoderPcmFormat;
     private int mInputAudioTrack;
     private int mMuxerAudioTrack;
-    private boolean allAllInputExtracted = false;
-    private boolean allInputDecoded = false;
-    private boolean allOutputEncoded = false;
-    private MediaCodec.BufferInfo mAudioBufferInfo = new MediaCodec.BufferInfo();
-    private long mLastAudioPresentationTimeUs = 0;
+    private volatile CopyLoop mAudioCopyLoop;
+    private AsyncTranscodeLoop mAsyncTranscodeLoop;
+    private volatile PcmLoopCache mPcmLoopCache;
+    private SegmentCodecFactory mSegmentCodecFactory;
+    private int mSegmentWorkerCount = 1;
+    private MediaFormat mEncodedAudioFormat;
+    private final List<CodecBudget.Reservation> mCodecReservations = new ArrayList<>();
     private boolean mMuxAudioDone;
 
     private MediaMuxer muxer;
+    private volatile FragmentedMp4Writer mMp4Writer;
+    private File mCheckpointFile;
+    private long[] mResumeTimesUs;
+    private volatile InterleavingMuxerStage mMuxerStage;
+    private SampleSink mTrackSink;
+    private TimedSampleSink mMuxerSink;
+    private TimedSampleCodec mTimedAudioDecoder;
+    private TimedSampleCodec mTimedAudioEncoder;
+    private volatile ExportReport mReport = new ExportReport();
+    private final AtomicLong mPeakBufferBytes = new AtomicLong();
+    private ExportProgressTracker mProgressTracker;
+    private boolean mMuxerStageDone;
     private volatile boolean mStopExport;
     private volatile boolean mIsExportRunning;
     private volatile boolean mErrorWhenExporting;
+    private volatile boolean mExportSucceeded;
 
     public void startExport(Activity activity, File outputFile, ExportElement exportElement, ExportAdapter exportAdapter) {
         mExportElement = exportElement;
@@ -69,20 +140,103 @@ public class ExportService {
         mExportThread.post(this::exportVideo);
     }
 
+    /***
+     * Run export on the calling thread and block until it is finished.
+     * Used by {@link ExportQueue} workers so that the number of running exports stays bounded.
+     *
+     * @return true if the output file was written successfully
+     */
+    public boolean runExport(Activity activity, File outputFile, ExportElement exportElement, ExportAdapter exportAdapter) {
+        mExportElement = exportElement;
+        mExportAdapter = exportAdapter;
+        mOutputFile = outputFile;
+        mActivity = activity;
+        exportVideo();
+        return mExportSucceeded;
+    }
+
     private void exportVideo() {
         Log.i(TAG, "exportVideo " + mExportElement.getAudioFilePath() + ", " + mExportElement.getVideoFilePath() + ", " + mOutputFile.getPath());
 
+        long startTime = System.currentTimeMillis();
+        mReport = new ExportReport();
+        mPeakBufferBytes.set(0);
         try {
             mIsExportRunning = true;
+            long startCpuTime = SystemClock.currentThreadTimeMillis();
             initResources();
+            recordStage("init", startTime, startCpuTime, null);
+            mProgressTracker.start(SystemClock.elapsedRealtime());
+            mExportThread.post(this::startMuxerStage);
             mExportThread.post(this::startMuxVideo);
             mExportThread.post(this::startMuxAudio);
             waitMuxerFinished();
         } catch (Exception ex) {
             handleExportFailed(ex);
         } finally {
+            long cleanupTime = System.currentTimeMillis();
+            long cleanupCpuTime = SystemClock.currentThreadTimeMillis();
+            updatePeakBufferBytes();
+            mReport.setPeakBufferBytes(mPeakBufferBytes.get());
             cleanup();
+            recordStage("finalize", cleanupTime, cleanupCpuTime, null);
+            mReport.setMediaDurationUs(mVideoDuration);
+            mReport.setTotalWallTimeMs(System.currentTimeMillis() - startTime);
+            Log.i(TAG, mReport.toString());
+            // the last callback is posted, a finished service doesn't keep the caller alive
+            mActivity = null;
+            mExportAdapter = null;
+            mIsExportRunning = false;
+        }
+    }
+
+    /***
+     * get timing report of the last export, complete once the export has finished
+     */
+    public ExportReport getReport() {
+        return mReport;
+    }
+
+    /***
+     * add wall and cpu time since the given start, and the counts of the copy loop if any, to the report
+     */
+    private StageMetrics recordStage(String name, long startTime, long startCpuTime, CopyLoop copyLoop) {
+        StageMetrics stage = mReport.addStage(name);
+        stage.setWallTimeMs(System.currentTimeMillis() - startTime);
+        stage.setCpuTimeMs(SystemClock.currentThreadTimeMillis() - startCpuTime);
+        if (copyLoop != null) {
+            stage.setCounts(copyLoop.getSampleCount(), copyLoop.getByteCount());
         }
+        return stage;
+    }
+
+    /***
+     * add up the bytes every stage buffers right now and keep the highest total,
+     * called with every progress report and once at the end
+     */
+    private void updatePeakBufferBytes() {
+        long bytes = 0;
+        InterleavingMuxerStage muxerStage = mMuxerStage;
+        if (muxerStage != null) {
+            bytes += muxerStage.getAllocatedBytes();
+        }
+        CopyLoop videoCopyLoop = mVideoCopyLoop;
+        if (videoCopyLoop != null) {
+            bytes += videoCopyLoop.getBufferBytes();
+        }
+        CopyLoop audioCopyLoop = mAudioCopyLoop;
+        if (audioCopyLoop != null) {
+            bytes += audioCopyLoop.getBufferBytes();
+        }
+        PcmLoopCache pcmLoopCache = mPcmLoopCache;
+        if (pcmLoopCache != null) {
+            bytes += pcmLoopCache.getMemoryBytes();
+        }
+        FragmentedMp4Writer mp4Writer = mMp4Writer;
+        if (mp4Writer != null) {
+            bytes += mp4Writer.getPendingBytes();
+        }
+        mPeakBufferBytes.accumulateAndGet(bytes, Math::max);
     }
 
     /***
@@ -91,47 +245,94 @@ public class ExportService {
      * @throws IOException
      */
     private void initResources() throws IOException {
-        // create audio and video extractor
-        mVideoExtractor = createMediaExtractor(mExportElement.getVideoFilePath());
-        mAudioExtractor = createMediaExtractor(mExportElement.getAudioFilePath());
+        mCheckpointFile = null;
+        mResumeTimesUs = null;
 
-        // get audio and video track
+        // create video extractor, get video track and format
+        mVideoExtractor = createMediaExtractor(mExportElement.getVideoFilePath());
         mInputVideoTrack = MediaUtils.getTrackIndex(mVideoExtractor, TrackType.VIDEO);
-        mInputAudioTrack = MediaUtils.getTrackIndex(mAudioExtractor, TrackType.AUDIO);
-
-        // export video format
         mInputVideoFormat = mVideoExtractor.getTrackFormat(mInputVideoTrack);
-        mInputAudioFormat = mAudioExtractor.getTrackFormat(mInputAudioTrack);
 
         // calculate export video duration
         mVideoDuration = mInputVideoFormat.getLong(MediaFormat.KEY_DURATION);
+        prepareVideoSource();
 
-        // prepare audio decoder and encoder
-        if (!isAudioSupported()) {
-            prepareAudioDecoderAndEncoder();
+        if (isMixingAudio()) {
+            // several audio files, or the audio file and the original audio, are decoded, mixed and encoded once
+            prepareAudioMixer();
+        } else {
+            // create audio extractor, get audio track and format
+            mAudioExtractor = createMediaExtractor(mExportElement.getAudioFilePath());
+            mInputAudioTrack = MediaUtils.getTrackIndex(mAudioExtractor, TrackType.AUDIO);
+            mInputAudioFormat = mAudioExtractor.getTrackFormat(mInputAudioTrack);
+
+            // prepare audio decoder and encoder
+            if (!isAudioSupported()) {
+                prepareAudioDecoderAndEncoder();
+            }
         }
 
         // prepare media muxer
         prepareMediaMuxer();
+
+        // prepare loops copying samples into the muxer
+        prepareCopyLoops();
+    }
+
+    /***
+     * create the source of the video samples. A trimmed video is copied from the sync sample before the trim start
+     * to the sync sample after the trim end, the frames outside of the range are hidden by an edit list.
+     *
+     * @throws IOException
+     */
+    private void prepareVideoSource() throws IOException {
+        mVideoSource = new ExtractorSampleSource(mVideoExtractor, mInputVideoTrack);
+        mTrimStartUs = 0;
+        mVideoStartUs = 0;
+        if (!mExportElement.isTrimmed()) {
+            return;
+        }
+
+        long trimStartUs = Math.max(0, mExportElement.getTrimStartUs());
+        long trimEndUs = mExportElement.getTrimEndUs() > 0
+                ? Math.min(mExportElement.getTrimEndUs(), mVideoDuration) : mVideoDuration;
+        if (trimStartUs >= trimEndUs) {
+            throw new IOException("empty trim range " + trimStartUs + " - " + trimEndUs);
+        }
+        mVideoExtractor.seekTo(trimStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        TrimmedSampleSource trimmedSource = new TrimmedSampleSource(mVideoSource, trimEndUs);
+        mVideoSource = trimmedSource;
+        mTrimStartUs = trimStartUs;
+        mVideoStartUs = trimmedSource.getStartTimeUs();
+        mVideoDuration = trimEndUs - trimStartUs;
+        Log.i(TAG, "trim " + trimStartUs + " - " + trimEndUs + " us, video from sync sample at " + mVideoStartUs + " us");
+    }
+
+    /***
+     * get duration of the video frames copied before the trim start, which the edit list hides;
+     * the frames copied after the trim end are hidden by the duration of the edit list
+     */
+    private long getVideoPreRollUs() {
+        return mTrimStartUs - mVideoStartUs;
     }
 
     private boolean isAudioSupported() {
-        String minType = mInputAudioFormat.getString(MediaFormat.KEY_MIME);
-        return minType.equals(MediaFormat.MIMETYPE_AUDIO_AAC) // audio/mp4a-latm
-                || minType.equals(MediaFormat.MIMETYPE_AUDIO_AMR_NB) // audio/3gpp
-                || minType.equals(MediaFormat.MIMETYPE_AUDIO_AMR_WB); // audio/amr-wb
+        if (isMixingAudio()) {
+            return false;
+        }
+        return MediaUtils.isPassthroughAudio(mInputAudioFormat.getString(MediaFormat.KEY_MIME));
     }
 
     private void waitMuxerFinished() {
         try {
             synchronized (this) {
-                while (!mMuxVideoDone || !mMuxAudioDone) {
+                while (!mMuxVideoDone || !mMuxAudioDone || !mMuxerStageDone) {
                     wait();
                 }
 
                 if (mErrorWhenExporting) {
                     handleExportFailed(new Exception("Error when mux audio and video"));
-                } else {
+                } else if (!mStopExport) {
                     handleExportComplete();
                 }
             }
@@ -144,12 +345,48 @@ public class ExportService {
      * handle export complete
      */
     private void handleExportComplete() {
-        MediaScannerConnection.scanFile(mActivity, new String[]{mOutputFile.getPath()}, null, (path, uri) -> {
-            Log.i(TAG, "runMediaScanner " + mOutputFile.getPath());
-            mUIThread.post(() -> mExportAdapter.onExportComplete());
+        if (mMp4Writer != null) {
+            try {
+                mMp4Writer.stop();
+            } catch (IOException ex) {
+                handleExportFailed(ex);
+                return;
+            }
+            ExportCheckpoint.delete(mCheckpointFile);
+        } else if (mExportElement.isFastStart() || mExportElement.isTrimmed()) {
+            try {
+                finishFastStart();
+            } catch (Exception ex) {
+                handleExportFailed(ex);
+                return;
+            }
+        }
+        mExportSucceeded = true;
+        String outputPath = mOutputFile.getPath();
+        ExportAdapter exportAdapter = mExportAdapter;
+        MediaScannerConnection.scanFile(mActivity.getApplicationContext(), new String[]{outputPath}, null, (path, uri) -> {
+            Log.i(TAG, "runMediaScanner " + outputPath);
+            mUIThread.post(() -> exportAdapter.onExportComplete());
         });
     }
 
+    /***
+     * finish the MP4 and move its moov to the front, giving a trimmed video its edit list
+     *
+     * @throws IOException
+     */
+    private void finishFastStart() throws IOException {
+        long startTime = System.currentTimeMillis();
+        long startCpuTime = SystemClock.currentThreadTimeMillis();
+        muxer.stop();
+        muxer.release();
+        muxer = null;
+        boolean relocated = Mp4FastStart.process(mOutputFile,
+                mExportElement.isTrimmed() ? getVideoPreRollUs() : -1, mVideoDuration);
+        StageMetrics stage = recordStage("faststart", startTime, startCpuTime, null);
+        Log.i(TAG, "fast start relocated: " + relocated + " in " + stage.getWallTimeMs() + " ms");
+    }
+
     /***
      * cleanup resources
      */
@@ -166,6 +403,12 @@ public class ExportService {
             }
         }
 
+        // the last fragment is written on completion, anything unfinished is dropped
+        if (mMp4Writer != null) {
+            mMp4Writer.abort();
+            mMp4Writer = null;
+        }
+
         if (mAudioDecoder != null) {
             try {
                 mAudioDecoder.stop();
@@ -186,6 +429,44 @@ public class ExportService {
             }
         }
 
+        for (MediaCodec decoder : mMixDecoders) {
+            try {
+                decoder.stop();
+                decoder.release();
+            } catch (Exception ex) {
+
+            }
+        }
+        mMixDecoders.clear();
+
+        for (MediaExtractor extractor : mMixExtractors) {
+            try {
+                extractor.release();
+            } catch (Exception ex) {
+
+            }
+        }
+        mMixExtractors.clear();
+        mMixTracks.clear();
+        mMixHasOriginalAudio = false;
+        mMixTrackIndices.clear();
+        mMixFormats.clear();
+
+        if (mAsyncTranscodeLoop != null) {
+            mAsyncTranscodeLoop.release();
+            mAsyncTranscodeLoop = null;
+        }
+
+        mSegmentCodecFactory = null;
+        mSegmentWorkerCount = 1;
+        mEncodedAudioFormat = null;
+
+        if (mPcmLoopCache != null) {
+            Log.i(TAG, "pcm loop cache: " + mPcmLoopCache.getSize() + " bytes, spilled: " + mPcmLoopCache.isSpilled());
+            mPcmLoopCache.close();
+            mPcmLoopCache = null;
+        }
+
         if (mVideoExtractor != null) {
             try {
                 mVideoExtractor.release();
@@ -204,6 +485,12 @@ public class ExportService {
             }
         }
 
+        // the codecs are released, other exports may have them now
+        for (CodecBudget.Reservation reservation : mCodecReservations) {
+            reservation.release();
+        }
+        mCodecReservations.clear();
+
         if (mStopExport) {
             clearOutputFile();
         }
@@ -213,14 +500,38 @@ public class ExportService {
         return mIsExportRunning;
     }
 
+    public boolean isExportStopped() {
+        return mStopExport;
+    }
+
+    /***
+     * get duration of the exported media, available after resources are initialized
+     *
+     * @return duration in microseconds
+     */
+    public long getVideoDuration() {
+        return mVideoDuration;
+    }
+
     /**
-     * Stop export video
+     * Stop export video. Only asks the stages to stop, the export thread releases the resources
+     * and deletes the output once they have, as they may still be using them.
      */
     public void stopExport() {
         Log.i(TAG, "stop export video");
         mStopExport = true;
-        clearOutputFile();
-        cleanup();
+        InterleavingMuxerStage muxerStage = mMuxerStage;
+        if (muxerStage != null) {
+            muxerStage.stop();
+        }
+        CopyLoop videoCopyLoop = mVideoCopyLoop;
+        if (videoCopyLoop != null) {
+            videoCopyLoop.stop();
+        }
+        CopyLoop audioCopyLoop = mAudioCopyLoop;
+        if (audioCopyLoop != null) {
+            audioCopyLoop.stop();
+        }
     }
 
     /***
@@ -231,12 +542,21 @@ public class ExportService {
     private void handleExportFailed(Exception ex) {
         ex.printStackTrace();
         clearOutputFile();
-        mUIThread.post(() -> mExportAdapter.onExportFail());
+        ExportAdapter exportAdapter = mExportAdapter;
+        mUIThread.post(() -> exportAdapter.onExportFail());
     }
 
     private void clearOutputFile() {
+        // an interrupted resumable export keeps its fragments for the next export of the same inputs
+        if (mStopExport && mCheckpointFile != null) {
+            Log.i(TAG, "keep output to resume: " + mOutputFile.getPath());
+            return;
+        }
         boolean isDelete = mOutputFile.delete();
         Log.i(TAG, "clearOutputFile: " + isDelete);
+        if (mCheckpointFile != null) {
+            ExportCheckpoint.delete(mCheckpointFile);
+        }
     }
 
     /***
@@ -246,21 +566,277 @@ public class ExportService {
      */
     private void prepareAudioDecoderAndEncoder() throws IOException {
         Log.i(TAG, "1. prepareAudioDecoderAndEncoder ");
-        mAudioExtractor.selectTrack(mInputAudioTrack);
-        mInputAudioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AUDIO_MAX_INPUT_SIZE);
-        mAudioDecoder = MediaCodec.createDecoderByType(mInputAudioFormat.getString(MediaFormat.KEY_MIME));
-        mAudioDecoder.configure(mInputAudioFormat, null, null, 0);
-        mAudioDecoder.start();
+        MediaFormat audioOutputFormat = prepareAudioOutputFormat(mInputAudioFormat);
+        String inputMimeType = mInputAudioFormat.getString(MediaFormat.KEY_MIME);
+        // the encoder before the decoder, the order every export reserves its codecs in
+        reserveCodecs(MediaFormat.MIMETYPE_AUDIO_AAC, true, 1);
+        reserveCodecs(inputMimeType, false, 1);
+        if (canTranscodeInSegments()) {
+            mSegmentWorkerCount = reserveSegmentWorkers(inputMimeType);
+        }
+
+        if (mSegmentWorkerCount > 1) {
+            // every segment creates codecs of its own, the muxer gets the format the segments are encoded to
+            mEncodedAudioFormat = createEncodedAudioFormat(audioOutputFormat);
+            MediaSegmentCodecFactory segmentCodecFactory = new MediaSegmentCodecFactory(mExportElement.getAudioFilePath(),
+                    mInputAudioTrack, mInputAudioFormat, audioOutputFormat);
+            segmentCodecFactory.setConversion(MediaUtils.getDecodedPcmFormat(mInputAudioFormat), mEncoderPcmFormat);
+            mSegmentCodecFactory = segmentCodecFactory;
+            Log.i(TAG, audioOutputFormat.toString());
+            return;
+        }
+
+        mAudioEncoder = MediaCodec.createEncoderByType(audioOutputFormat.getString(MediaFormat.KEY_MIME));
+        mAudioDecoder = MediaCodec.createDecoderByType(inputMimeType);
+        if (isAsyncTranscode()) {
+            // the async loop sets the codec callbacks, which has to happen before configure; it starts the codecs itself
+            mAsyncTranscodeLoop = new AsyncTranscodeLoop(
+                    new ExtractorSampleSource(mAudioExtractor, mInputAudioTrack),
+                    mAudioDecoder, mInputAudioFormat, mAudioEncoder, audioOutputFormat,
+                    mVideoDuration, mEncoderPcmFormat);
+            PcmFormat decodedPcmFormat = MediaUtils.getDecodedPcmFormat(mInputAudioFormat);
+            if (!decodedPcmFormat.isSameLayout(mEncoderPcmFormat)) {
+                mAsyncTranscodeLoop.setConverter(new PcmConverter(decodedPcmFormat, mEncoderPcmFormat));
+            }
+        } else {
+            mAudioDecoder.configure(mInputAudioFormat, null, null, 0);
+            mAudioDecoder.start();
+            mAudioEncoder.configure(audioOutputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            mAudioEncoder.start();
+        }
+
+        Log.i(TAG, mInputAudioFormat.toString());
+        Log.i(TAG, audioOutputFormat.toString());
+    }
+
+    private boolean isMixingAudio() {
+        return !mExportElement.getAudioTracks().isEmpty() || mExportElement.isKeepOriginalAudio();
+    }
+
+    /***
+     * create extractor and decoder of every track of the mix, and the encoder of the mix.
+     * The first track chooses the format of the mix, the other tracks are converted to it.
+     *
+     * @throws IOException
+     */
+    private void prepareAudioMixer() throws IOException {
+        prepareMixTracks();
+        Log.i(TAG, "1. prepareAudioMixer " + mMixTracks.size() + " tracks, original audio: " + mMixHasOriginalAudio);
+        for (AudioTrackElement track : mMixTracks) {
+            MediaExtractor extractor = createMediaExtractor(track.getFilePath());
+            mMixExtractors.add(extractor);
+            int trackIndex = MediaUtils.getTrackIndex(extractor, TrackType.AUDIO);
+            MediaFormat format = extractor.getTrackFormat(trackIndex);
+            mMixTrackIndices.add(trackIndex);
+            mMixFormats.add(format);
+
+            if (mInputAudioFormat == null) {
+                // the first track chooses the format of the mix
+                mInputAudioFormat = format;
+            }
+        }
+
+        reserveMixCodecs();
+        for (MediaFormat format : mMixFormats) {
+            MediaCodec decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            mMixDecoders.add(decoder);
+            decoder.configure(format, null, null, 0);
+            decoder.start();
+        }
 
         MediaFormat audioOutputFormat = prepareAudioOutputFormat(mInputAudioFormat);
         mAudioEncoder = MediaCodec.createEncoderByType(audioOutputFormat.getString(MediaFormat.KEY_MIME));
         mAudioEncoder.configure(audioOutputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
         mAudioEncoder.start();
-
-        Log.i(TAG, mInputAudioFormat.toString());
         Log.i(TAG, audioOutputFormat.toString());
     }
 
+    /***
+     * list the tracks of the mix: the original audio of the video first if it is kept,
+     * then the added tracks, or the audio file looped under the whole video
+     */
+    private void prepareMixTracks() throws IOException {
+        if (mExportElement.isKeepOriginalAudio()) {
+            mMixHasOriginalAudio = hasAudioTrack(mExportElement.getVideoFilePath());
+            if (mMixHasOriginalAudio) {
+                AudioTrackElement originalAudio = new AudioTrackElement(mExportElement.getVideoFilePath());
+                originalAudio.setGain(mExportElement.getOriginalAudioGain());
+                mMixTracks.add(originalAudio);
+            } else {
+                Log.i(TAG, "video has no audio track to keep");
+            }
+        }
+
+        if (!mExportElement.getAudioTracks().isEmpty()) {
+            mMixTracks.addAll(mExportElement.getAudioTracks());
+        } else if (mExportElement.getAudioFilePath() != null) {
+            AudioTrackElement audio = new AudioTrackElement(mExportElement.getAudioFilePath());
+            audio.setLoop(true);
+            mMixTracks.add(audio);
+        }
+
+        if (mMixTracks.isEmpty()) {
+            throw new IOException("no audio to mix");
+        }
+    }
+
+    /***
+     * check if a file has an audio track, from the media catalog if it knows the file, from its boxes if it is an MP4
+     */
+    private boolean hasAudioTrack(String filePath) throws IOException {
+        MediaItem item = MediaCatalog.getInstance(mActivity).findProbedItem(filePath);
+        if (item != null) {
+            return item.getAudioMimeType() != null;
+        }
+        Mp4Info info = MediaUtils.probeMp4(filePath);
+        if (info != null) {
+            return info.getTrack(TrackType.AUDIO) != null;
+        }
+        MediaExtractor extractor = createMediaExtractor(filePath);
+        try {
+            return MediaUtils.getTrackIndex(extractor, TrackType.AUDIO) != TrackType.ERR_NO_TRACK_INDEX;
+        } finally {
+            extractor.release();
+        }
+    }
+
+    /***
+     * create the loop mixing every track of the mix into the muxer
+     */
+    private CopyLoop prepareAudioMixLoop() {
+        PcmFormat pcmFormat = mEncoderPcmFormat;
+        List<MixerInput> inputs = new ArrayList<>();
+        List<AudioTrackElement> tracks = mMixTracks;
+        for (int i = 0; i < tracks.size(); i++) {
+            AudioTrackElement track = tracks.get(i);
+            MediaFormat format = mMixFormats.get(i);
+            SampleSource source = new ExtractorSampleSource(mMixExtractors.get(i), mMixTrackIndices.get(i));
+            long sourceStartUs = 0;
+            long skipUs = 0;
+            if (mMixHasOriginalAudio && i == 0 && mTrimStartUs > 0) {
+                // the original audio follows the trimmed video, the part of the frame before the trim start is dropped
+                mMixExtractors.get(i).seekTo(mTrimStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                TrimmedSampleSource trimmedSource = new TrimmedSampleSource(source, 0);
+                skipUs = mTrimStartUs - trimmedSource.getStartTimeUs();
+                sourceStartUs = mTrimStartUs;
+                source = trimmedSource;
+            }
+            MixerInput input = new MixerInput(source, createConvertingDecoder(mMixDecoders.get(i), format), pcmFormat);
+            input.setSkipUs(skipUs);
+            input.setStartOffsetUs(track.getStartOffsetUs());
+            input.setLoop(track.isLoop());
+            if (!track.isLoop() && format.containsKey(MediaFormat.KEY_DURATION)) {
+                input.setDurationUs(format.getLong(MediaFormat.KEY_DURATION) - sourceStartUs);
+            }
+            input.setGain(track.getGain());
+            input.setFade(track.getFadeInUs(), track.getFadeOutUs());
+            // the original audio is the first track, its level ducks the other tracks
+            input.setDuckingKey(mMixHasOriginalAudio && i == 0);
+            inputs.add(input);
+        }
+
+        mTimedAudioEncoder = new TimedSampleCodec(new MediaCodecSampleCodec(mAudioEncoder));
+        MixingTranscodeLoop mixLoop = new MixingTranscodeLoop(inputs, mTimedAudioEncoder, mTrackSink, mMuxerAudioTrack,
+                mVideoDuration, pcmFormat);
+        if (mMixHasOriginalAudio && mExportElement.getDuckedGain() < 1f) {
+            mixLoop.setDucking(new DuckingEnvelope(DuckingEnvelope.DEFAULT_THRESHOLD_DB, mExportElement.getDuckedGain(),
+                    DuckingEnvelope.DEFAULT_ATTACK_US, DuckingEnvelope.DEFAULT_RELEASE_US));
+        }
+        return mixLoop;
+    }
+
+    /***
+     * check if the audio is shorter than the video and has to be looped
+     */
+    private boolean isAudioLooped() {
+        return mInputAudioFormat.containsKey(MediaFormat.KEY_DURATION)
+                && mInputAudioFormat.getLong(MediaFormat.KEY_DURATION) < mVideoDuration;
+    }
+
+    /***
+     * check if a long audio may be transcoded in segments on several threads, which needs
+     * the audio to cover the whole video. It is if more than one codec pair is free.
+     */
+    private boolean canTranscodeInSegments() {
+        return !isAudioLooped()
+                && mVideoDuration >= mExportElement.getParallelTranscodeMinDurationUs();
+    }
+
+    /***
+     * reserve the codecs of the segments transcoded at the same time: a pair per core, as far as the budget
+     * shared with the other exports has them free next to the pair this export already holds
+     *
+     * @return number of workers, 1 if no other pair is free
+     */
+    private int reserveSegmentWorkers(String inputMimeType) {
+        int extraWorkers = Runtime.getRuntime().availableProcessors() - 1;
+        CodecBudget budget = CodecBudget.getInstance();
+        CodecBudget.Reservation encoders = budget.tryAcquire(MediaFormat.MIMETYPE_AUDIO_AAC, true, extraWorkers);
+        CodecBudget.Reservation decoders = budget.tryAcquire(inputMimeType, false, encoders.getCount());
+        encoders.trimTo(decoders.getCount());
+        mCodecReservations.add(encoders);
+        mCodecReservations.add(decoders);
+        return 1 + decoders.getCount();
+    }
+
+    /***
+     * reserve the encoder and a decoder per track of the mix, the decoders by mime type in a fixed order
+     *
+     * @throws IOException
+     */
+    private void reserveMixCodecs() throws IOException {
+        Map<String, Integer> decoderCounts = new TreeMap<>();
+        for (MediaFormat format : mMixFormats) {
+            String mimeType = format.getString(MediaFormat.KEY_MIME);
+            Integer count = decoderCounts.get(mimeType);
+            decoderCounts.put(mimeType, count == null ? 1 : count + 1);
+        }
+        reserveCodecs(MediaFormat.MIMETYPE_AUDIO_AAC, true, 1);
+        for (Map.Entry<String, Integer> entry : decoderCounts.entrySet()) {
+            reserveCodecs(entry.getKey(), false, entry.getValue());
+        }
+    }
+
+    /***
+     * reserve codecs this export can't do without, waiting while other exports use them
+     *
+     * @throws IOException if the export is stopped while waiting
+     */
+    private void reserveCodecs(String mimeType, boolean encoder, int count) throws IOException {
+        CodecBudget.Reservation reservation;
+        try {
+            reservation = CodecBudget.getInstance().acquire(mimeType, encoder, count, this::isExportStopped);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for " + mimeType + " codecs", ex);
+        }
+        if (reservation == null) {
+            throw new IOException("export stopped waiting for " + mimeType + " codecs");
+        }
+        mCodecReservations.add(reservation);
+    }
+
+    /***
+     * describe the AAC the segments are encoded to, for the muxer, without starting an encoder only to ask it
+     */
+    private MediaFormat createEncodedAudioFormat(MediaFormat audioOutputFormat) {
+        int sampleRate = audioOutputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channelCount = audioOutputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channelCount);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, audioOutputFormat.getInteger(MediaFormat.KEY_BIT_RATE));
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(Mp4TrackFormat.createAudioSpecificConfig(sampleRate, channelCount)));
+        return format;
+    }
+
+    /***
+     * check if the audio is transcoded with codec callbacks instead of polling,
+     * older devices fall back to the sync loop
+     */
+    private boolean isAsyncTranscode() {
+        return mExportElement.getTranscodeMode() == TranscodeMode.ASYNC
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
     /***
      * prepare media muxer
      *
@@ -268,10 +844,111 @@ public class ExportService {
      */
     private void prepareMediaMuxer() throws IOException {
         Log.i(TAG, "2. prepareMediaMuxer ");
-        muxer = new MediaMuxer(mOutputFile.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
-        mMuxerVideoTrack = muxer.addTrack(mInputVideoFormat);
-        mMuxerAudioTrack = muxer.addTrack(isAudioSupported() ? mInputAudioFormat : mAudioEncoder.getOutputFormat());
-        muxer.start();
+        MediaFormat audioFormat = isAudioSupported() ? mInputAudioFormat
+                : mEncodedAudioFormat != null ? mEncodedAudioFormat : mAudioEncoder.getOutputFormat();
+        boolean fragmented = mExportElement.isResumable()
+                || mExportElement.getContainerFormat() == ContainerFormat.FRAGMENTED_MP4;
+        Mp4TrackFormat mp4VideoFormat = fragmented ? createMp4TrackFormat(mInputVideoFormat) : null;
+        Mp4TrackFormat mp4AudioFormat = fragmented ? createMp4TrackFormat(audioFormat) : null;
+        if (mp4VideoFormat != null && mExportElement.isTrimmed()) {
+            mp4VideoFormat.setEditList(getVideoPreRollUs(), mVideoDuration);
+        }
+        if (mp4VideoFormat != null && mp4AudioFormat != null) {
+            prepareFragmentedMp4Writer(mp4VideoFormat, mp4AudioFormat);
+            mMuxerSink = new TimedSampleSink(mMp4Writer);
+        } else {
+            if (fragmented) {
+                Log.i(TAG, "fragmented MP4 needs H.264 and AAC, writing a regular MP4");
+            }
+            muxer = new MediaMuxer(mOutputFile.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            mMuxerVideoTrack = muxer.addTrack(mInputVideoFormat);
+            mMuxerAudioTrack = muxer.addTrack(audioFormat);
+            muxer.start();
+            mMuxerSink = new TimedSampleSink(new MuxerSampleSink(muxer));
+        }
+
+        // video and audio are produced by different threads, only the muxer stage writes to the muxer
+        mMuxerStage = new InterleavingMuxerStage(mMuxerSink, MUXER_TRACK_COUNT,
+                MUXER_QUEUE_CAPACITY, mExportElement.getInterleaveWindowUs());
+        mMuxerStage.setQueueBytes(mMuxerVideoTrack,
+                mInputVideoFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) * MUXER_QUEUE_MAX_SAMPLES);
+        if (isAudioSupported()) {
+            mMuxerStage.setQueueBytes(mMuxerAudioTrack,
+                    mInputAudioFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) * MUXER_QUEUE_MAX_SAMPLES);
+        }
+        // a resumed export produces every track from the start, what the output has already is dropped
+        mTrackSink = mResumeTimesUs != null ? new ResumeFilterSink(mMuxerStage, mResumeTimesUs) : mMuxerStage;
+    }
+
+    /***
+     * create fragmented MP4 writer. A resumable export continues the output of an interrupted export
+     * if there is a checkpoint of it, and saves a checkpoint after every fragment.
+     *
+     * @throws IOException
+     */
+    private void prepareFragmentedMp4Writer(Mp4TrackFormat videoFormat, Mp4TrackFormat audioFormat) throws IOException {
+        mMp4Writer = new FragmentedMp4Writer(mOutputFile, mExportElement.getFragmentDurationUs());
+        mMuxerVideoTrack = mMp4Writer.addTrack(videoFormat);
+        mMuxerAudioTrack = mMp4Writer.addTrack(audioFormat);
+        File outputFile = mOutputFile;
+        ExportAdapter exportAdapter = mExportAdapter;
+        mMp4Writer.setDataListener((offset, length) ->
+                mUIThread.post(() -> exportAdapter.onExportDataWritten(outputFile, offset, length)));
+        if (!mExportElement.isResumable()) {
+            mMp4Writer.start();
+            return;
+        }
+
+        mCheckpointFile = ExportCheckpoint.getFile(mActivity.getFilesDir(), mExportElement);
+        ExportCheckpoint checkpoint = ExportCheckpoint.load(mCheckpointFile);
+        if (checkpoint != null && checkpoint.getOutputPath().equals(mOutputFile.getPath())
+                && mMp4Writer.resume(checkpoint.getFileSize(), checkpoint.getNextSequenceNumber(),
+                checkpoint.getHeaderCrc(), checkpoint.getResumeTimesUs())) {
+            mResumeTimesUs = checkpoint.getResumeTimesUs();
+            Log.i(TAG, "resume export at " + mResumeTimesUs[mMuxerVideoTrack] + " us, kept " + checkpoint.getFileSize() + " bytes");
+        } else {
+            mMp4Writer.start();
+        }
+
+        String outputPath = mOutputFile.getPath();
+        long headerCrc = mMp4Writer.getHeaderCrc();
+        mMp4Writer.setResumePointListener((fileSize, nextSequenceNumber, resumeTimesUs) -> {
+            try {
+                new ExportCheckpoint(outputPath, fileSize, nextSequenceNumber, headerCrc, resumeTimesUs).save(mCheckpointFile);
+            } catch (IOException ex) {
+                // the export goes on, it only resumes from an older checkpoint
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    /***
+     * describe a track for the fragmented MP4 writer
+     *
+     * @return null if the writer doesn't support the codec
+     */
+    private Mp4TrackFormat createMp4TrackFormat(MediaFormat format) {
+        String mimeType = format.getString(MediaFormat.KEY_MIME);
+        if (MediaFormat.MIMETYPE_VIDEO_AVC.equals(mimeType)) {
+            int rotation = format.containsKey(MediaFormat.KEY_ROTATION) ? format.getInteger(MediaFormat.KEY_ROTATION) : 0;
+            return Mp4TrackFormat.createAvc(format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT),
+                    rotation, getCodecSpecificData(format, "csd-0"), getCodecSpecificData(format, "csd-1"));
+        } else if (MediaFormat.MIMETYPE_AUDIO_AAC.equals(mimeType)) {
+            int bitRate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+            return Mp4TrackFormat.createAac(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), bitRate, getCodecSpecificData(format, "csd-0"));
+        }
+        return null;
+    }
+
+    private byte[] getCodecSpecificData(MediaFormat format, String key) {
+        ByteBuffer buffer = format.containsKey(key) ? format.getByteBuffer(key) : null;
+        if (buffer == null) {
+            return null;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
     }
 
     /***
@@ -288,265 +965,215 @@ public class ExportService {
     }
 
     /***
-     * start export video
+     * create copy loops which move samples from the extractors to the muxer
      */
-    @SuppressLint("WrongConstant")
-    private void startMuxVideo() {
-        Log.i(TAG, "3. startMuxVideo ");
-        long startTime = System.currentTimeMillis();
-        int maxBufferSize = mInputVideoFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
-        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-        ByteBuffer videoBuffer = ByteBuffer.allocateDirect(maxBufferSize);
-        mVideoExtractor.selectTrack(mInputVideoTrack);
+    private void prepareCopyLoops() {
+        Log.i(TAG, "3. prepareCopyLoops ");
+        int maxVideoBufferSize = mInputVideoFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
+        if (mResumeTimesUs != null) {
+            // the output ends right before this sync sample
+            mVideoExtractor.seekTo(mResumeTimesUs[mMuxerVideoTrack] + mVideoStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        }
+        mVideoCopyLoop = new PassthroughCopyLoop(mVideoSource, mTrackSink, mMuxerVideoTrack, maxVideoBufferSize);
+
+        if (isMixingAudio()) {
+            mAudioCopyLoop = prepareAudioMixLoop();
+        } else if (isAudioSupported()) {
+            int maxAudioBufferSize = mInputAudioFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
+            // a short audio looped under the video is read once, the following loops are written from memory
+            long indexMemoryLimit = isAudioLooped() ? mExportElement.getLoopCacheMemoryLimit() : 0;
+            mAudioCopyLoop = new LoopingCopyLoop(
+                    new ExtractorSampleSource(mAudioExtractor, mInputAudioTrack),
+                    mTrackSink, mMuxerAudioTrack, maxAudioBufferSize, mVideoDuration, indexMemoryLimit);
+        } else {
+            // a short audio looped under the video is decoded once, the following loops are replayed from the cache
+            if (isAudioLooped()) {
+                mPcmLoopCache = new PcmLoopCache(mEncoderPcmFormat,
+                        mExportElement.getLoopCacheMemoryLimit(), mActivity.getCacheDir());
+            }
 
-        try {
-            while (!mStopExport) {
-                int size = mVideoExtractor.readSampleData(videoBuffer, 0);
-                if (size == -1) { // last file
-                    break;
-                }
-                long sampleTimeUs = mVideoExtractor.getSampleTime();
-                int flags = mVideoExtractor.getSampleFlags();
-                bufferInfo.presentationTimeUs = sampleTimeUs;
-                bufferInfo.flags = flags;
-                bufferInfo.size = size;
-                muxer.writeSampleData(mMuxerVideoTrack, videoBuffer, bufferInfo);
-//                Log.i(TAG, "mux video: { timeStamp " + sampleTimeUs + " , progress = " + getCurrentProgress(sampleTimeUs) + "}");
-                mVideoExtractor.advance();
+            if (mSegmentCodecFactory != null) {
+                int workerCount = mSegmentWorkerCount;
+                long segmentDurationUs = Math.max(SEGMENT_MIN_DURATION_US,
+                        Math.min(SEGMENT_MAX_DURATION_US, mVideoDuration / (workerCount * SEGMENTS_PER_WORKER)));
+                SegmentedTranscodeLoop segmentedLoop = new SegmentedTranscodeLoop(mSegmentCodecFactory,
+                        mTrackSink, mMuxerAudioTrack, mVideoDuration, mEncoderPcmFormat, segmentDurationUs, workerCount);
+                Log.i(TAG, "segmented transcode: " + segmentedLoop.getSegmentCount() + " segments on " + workerCount + " workers");
+                mAudioCopyLoop = segmentedLoop;
+            } else if (mAsyncTranscodeLoop != null) {
+                mAsyncTranscodeLoop.setOutput(mTrackSink, mMuxerAudioTrack);
+                mAsyncTranscodeLoop.setLoopCache(mPcmLoopCache);
+                mAudioCopyLoop = mAsyncTranscodeLoop;
+            } else {
+                mTimedAudioDecoder = new TimedSampleCodec(createConvertingDecoder(mAudioDecoder, mInputAudioFormat));
+                mTimedAudioEncoder = new TimedSampleCodec(new MediaCodecSampleCodec(mAudioEncoder));
+                TranscodeCopyLoop transcodeCopyLoop = new TranscodeCopyLoop(
+                        new ExtractorSampleSource(mAudioExtractor, mInputAudioTrack),
+                        mTimedAudioDecoder, mTimedAudioEncoder,
+                        mTrackSink, mMuxerAudioTrack, mVideoDuration, mEncoderPcmFormat);
+                transcodeCopyLoop.setLoopCache(mPcmLoopCache);
+                mAudioCopyLoop = transcodeCopyLoop;
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            mErrorWhenExporting = true;
         }
 
-        Log.i(TAG, "total time export video: " + (System.currentTimeMillis() - startTime));
-        synchronized (this) {
-            mMuxVideoDone = true;
-            notifyAll();
+        // every sample reports its position, the tracker posts to the UI at most once per interval
+        ExportAdapter exportAdapter = mExportAdapter;
+        mProgressTracker = new ExportProgressTracker(MUXER_TRACK_COUNT, mVideoDuration, mExportElement.getProgressIntervalMs(),
+                progress -> {
+                    updatePeakBufferBytes();
+                    mUIThread.post(() -> exportAdapter.onExportProgressUpdate(progress));
+                });
+        mVideoCopyLoop.setProgressListener(presentationTimeUs ->
+                mProgressTracker.onTrackPosition(mMuxerVideoTrack, presentationTimeUs, SystemClock.elapsedRealtime()));
+        mAudioCopyLoop.setProgressListener(presentationTimeUs ->
+                mProgressTracker.onTrackPosition(mMuxerAudioTrack, presentationTimeUs, SystemClock.elapsedRealtime()));
+
+        if (mStopExport) {
+            mMuxerStage.stop();
+            mVideoCopyLoop.stop();
+            mAudioCopyLoop.stop();
         }
     }
 
     /***
-     * get export progress
-     * @param timeStamp
-     * @return
+     * wrap the decoder of an audio track so it puts out the format of the encoder
      */
-    private int getExportProgress(long timeStamp) {
-        return (int) ((float) timeStamp / mVideoDuration * 100);
+    private SampleCodec createConvertingDecoder(MediaCodec decoder, MediaFormat format) {
+        SampleCodec sampleCodec = new MediaCodecSampleCodec(decoder);
+        PcmFormat decodedPcmFormat = MediaUtils.getDecodedPcmFormat(format);
+        if (decodedPcmFormat.isSameLayout(mEncoderPcmFormat)) {
+            return sampleCodec;
+        }
+        Log.i(TAG, "convert " + decodedPcmFormat + " to " + mEncoderPcmFormat);
+        return new ConvertingSampleCodec(sampleCodec, new PcmConverter(decodedPcmFormat, mEncoderPcmFormat));
     }
 
     /***
-     * start export audio
+     * get format the audio is encoded in: the configured one, or the input sample rate if it is 44.1 or 48 kHz
+     * (otherwise the one of both it converts to more easily) with at most two channels
      */
-    private void startMuxAudio() {
-        Log.i(TAG, "4 startMuxAudio ");
-        if (isAudioSupported()) {
-            startMuxAudio_Supported();
-        } else {
-            startMuxAudio_ConvertToAcc();
+    private PcmFormat chooseEncoderPcmFormat(MediaFormat inputAudioFormat) {
+        int inputSampleRate = inputAudioFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int inputChannelCount = inputAudioFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+        int sampleRate = mExportElement.getOutputSampleRate();
+        if (sampleRate <= 0) {
+            if (inputSampleRate == 44100 || inputSampleRate == 48000) {
+                sampleRate = inputSampleRate;
+            } else {
+                sampleRate = inputSampleRate % 11025 == 0 ? 44100 : 48000;
+            }
         }
-        synchronized (this) {
-            mMuxAudioDone = true;
-            notifyAll();
+        int channelCount = mExportElement.getOutputChannelCount();
+        if (channelCount <= 0) {
+            channelCount = Math.min(inputChannelCount, 2);
         }
+        return new PcmFormat(sampleRate, channelCount);
     }
 
-    @SuppressLint("WrongConstant")
-    private void startMuxAudio_Supported() {
-        Log.i(TAG, "4.1 startMuxAudio_Supported ");
+    /***
+     * get AAC bit rate: the configured one, or 64 kbps per channel,
+     * less if the input has a lower bit rate, which can't be improved by spending more
+     */
+    private int chooseBitRate(MediaFormat inputAudioFormat, int channelCount) {
+        if (mExportElement.getOutputBitRate() > 0) {
+            return mExportElement.getOutputBitRate();
+        }
+        int bitRate = AAC_BIT_RATE_PER_CHANNEL * channelCount;
+        if (inputAudioFormat.containsKey(MediaFormat.KEY_BIT_RATE)) {
+            int inputBitRate = inputAudioFormat.getInteger(MediaFormat.KEY_BIT_RATE);
+            bitRate = Math.min(bitRate, Math.max(inputBitRate, AAC_MIN_BIT_RATE_PER_CHANNEL * channelCount));
+        }
+        return bitRate;
+    }
+
+    /***
+     * start writing samples of both tracks to the muxer, interleaved by presentation time
+     */
+    private void startMuxerStage() {
+        Log.i(TAG, "4. startMuxerStage ");
         long startTime = System.currentTimeMillis();
-        int maxBufferSize = mInputAudioFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
-        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-        ByteBuffer audioBuffer = ByteBuffer.allocateDirect(maxBufferSize);
-        mAudioExtractor.selectTrack(mInputAudioTrack);
+        long startCpuTime = SystemClock.currentThreadTimeMillis();
 
         try {
-            while (!mStopExport) {
-                int size = mAudioExtractor.readSampleData(audioBuffer, 0);
-                if (size == -1) {
-                    if (bufferInfo.presentationTimeUs < mVideoDuration) {
-                        mAudioExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
-                    } else {
-                        break;
-                    }
-                } else if (bufferInfo.presentationTimeUs > mVideoDuration) {
-                    break;
-                }
-
-                long sampleTimeUs = mAudioExtractor.getSampleTime();
-                int flags = mAudioExtractor.getSampleFlags();
-                bufferInfo.presentationTimeUs = sampleTimeUs;
-                bufferInfo.flags = flags;
-                bufferInfo.size = size;
-                muxer.writeSampleData(mMuxerAudioTrack, audioBuffer, bufferInfo);
-                mAudioExtractor.advance();
-            }
+            mMuxerStage.run();
         } catch (Exception ex) {
             ex.printStackTrace();
             mErrorWhenExporting = true;
         }
-        Log.i(TAG, "total time export audio: " + (System.currentTimeMillis() - startTime));
+
+        Log.i(TAG, "total time mux: " + (System.currentTimeMillis() - startTime));
+        StageMetrics stage = recordStage("muxer", startTime, startCpuTime, null);
+        stage.setCounts(mMuxerSink.getSampleCount(), mMuxerSink.getByteCount());
+        mReport.setMuxerWriteLatency(mMuxerSink.getWriteLatency());
         synchronized (this) {
-            mMuxAudioDone = true;
+            mMuxerStageDone = true;
             notifyAll();
         }
     }
 
-    private void startMuxAudio_ConvertToAcc() {
-        Log.i(TAG, "4.1 startMuxAudio_ConvertToAcc ");
+    /***
+     * start export video
+     */
+    private void startMuxVideo() {
+        Log.i(TAG, "5. startMuxVideo ");
         long startTime = System.currentTimeMillis();
+        long startCpuTime = SystemClock.currentThreadTimeMillis();
 
         try {
-            while (!allOutputEncoded && !mStopExport) {
-                // feed input to decoder
-                feedAudioInputToDecoder();
-
-                // get output from decoder and process it
-                processAudioOutputDataFromDecoder();
-            }
+            mVideoCopyLoop.run();
         } catch (Exception ex) {
             ex.printStackTrace();
             mErrorWhenExporting = true;
+        } finally {
+            mMuxerStage.endOfTrack(mMuxerVideoTrack);
         }
-        Log.i(TAG, "total time export audio: " + (System.currentTimeMillis() - startTime));
-        synchronized (this) {
-            mMuxAudioDone = true;
-            notifyAll();
+        if (!mErrorWhenExporting && !mStopExport) {
+            mProgressTracker.onTrackEnded(mMuxerVideoTrack, SystemClock.elapsedRealtime());
         }
-    }
 
-    /***
-     * feed all audio input to decoder
-     */
-    private void feedAudioInputToDecoder() {
-        if (!allAllInputExtracted) {
-            int inBufferId = mAudioDecoder.dequeueInputBuffer(TIMEOUT_US);
-            if (inBufferId >= 0) {
-                ByteBuffer buffer = mAudioDecoder.getInputBuffer(inBufferId);
-                int sampleSize = mAudioExtractor.readSampleData(buffer, 0);
-
-                /***
-                 * can extract frame from AudioExtractor
-                 */
-                if (sampleSize >= 0) {
-                    /***
-                     * if audio duration > video duration
-                     * send empty input buffer to decoder -> all frame is extracted
-                     */
-                    if (mAudioBufferInfo.presentationTimeUs > mVideoDuration) {
-
-                        mAudioDecoder.queueInputBuffer(
-                                inBufferId, 0, 0,
-                                0, MediaCodec.BUFFER_FLAG_END_OF_STREAM
-                        );
-                        allAllInputExtracted = true;
-                    } else {
-                        /***
-                         * feed input buffer into decoder and process data
-                         */
-                        mAudioDecoder.queueInputBuffer(
-                                inBufferId, 0,
-                                sampleSize,
-                                mLastAudioPresentationTimeUs + mAudioExtractor.getSampleTime(),
-                                mAudioExtractor.getSampleFlags()
-                        );
-                        mAudioExtractor.advance();
-                    }
-                } else {
-                    /***
-                     * if audio duration < video duration -> AudioExtractor seek to start
-                     */
-                    if (mAudioBufferInfo.presentationTimeUs < mVideoDuration) {
-                        mLastAudioPresentationTimeUs = mAudioBufferInfo.presentationTimeUs;
-                        mAudioExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
-                        mAudioExtractor.advance();
-                    } else {
-                        /***
-                         * send empty input buffer to decoder -> all frame is extracted
-                         */
-                        mAudioDecoder.queueInputBuffer(
-                                inBufferId, 0, 0,
-                                0, MediaCodec.BUFFER_FLAG_END_OF_STREAM
-                        );
-                        allAllInputExtracted = true;
-                    }
-                }
-            }
+        Log.i(TAG, "total time export video: " + (System.currentTimeMillis() - startTime));
+        recordStage("video", startTime, startCpuTime, mVideoCopyLoop);
+        synchronized (this) {
+            mMuxVideoDone = true;
+            notifyAll();
         }
     }
 
     /***
-     * process audio output data from AudioDecoder
+     * start export audio
      */
-    private void processAudioOutputDataFromDecoder() {
-        boolean encoderOutputAvailable = true;
-        boolean decoderOutputAvailable = true;
-
-        while ((encoderOutputAvailable || decoderOutputAvailable)) {
-            int outBufferId;
-            if (!allInputDecoded) {
-                /***
-                 * get output from decoder and feed it to encoder
-                 */
-                outBufferId = mAudioDecoder.dequeueOutputBuffer(mAudioBufferInfo, TIMEOUT_US);
-                if (outBufferId >= 0) {
-                    ByteBuffer outBuffer = mAudioDecoder.getOutputBuffer(outBufferId);
-
-                    /***
-                     * get encoder input buffer
-                     * copy buffers from decoder output to encoder input
-                     */
-                    int inBufferId = mAudioEncoder.dequeueInputBuffer(TIMEOUT_US);
-                    ByteBuffer inBuffer = mAudioEncoder.getInputBuffer(inBufferId);
-                    inBuffer.put(outBuffer);
-
-                    /***
-                     * feed input buffer into encoder and process data
-                     */
-                    mAudioEncoder.queueInputBuffer(
-                            inBufferId, mAudioBufferInfo.offset,
-                            mAudioBufferInfo.size,
-                            mAudioBufferInfo.presentationTimeUs,
-                            mAudioBufferInfo.flags);
-
-                    mAudioDecoder.releaseOutputBuffer(outBufferId, false);
-
-                    /***
-                     * check get all output is decoded from decoder
-                     */
-                    if ((mAudioBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0)
-                        allInputDecoded = true;
-
-                } else if (outBufferId == MediaCodec.INFO_TRY_AGAIN_LATER) {
-                    decoderOutputAvailable = false;
-                }
-            }
+    private void startMuxAudio() {
+        Log.i(TAG, "6. startMuxAudio " + (isMixingAudio() ? "mix" : isAudioSupported() ? "supported" : "convertToAac"));
+        long startTime = System.currentTimeMillis();
+        long startCpuTime = SystemClock.currentThreadTimeMillis();
 
-            /***
-             * drain encoder & mux output data
-             */
-            outBufferId = mAudioEncoder.dequeueOutputBuffer(mAudioBufferInfo, TIMEOUT_US);
-            if (outBufferId >= 0) {
-                ByteBuffer encodedBuffer = mAudioEncoder.getOutputBuffer(outBufferId);
-                muxer.writeSampleData(mMuxerAudioTrack, encodedBuffer, mAudioBufferInfo);
-                mAudioEncoder.releaseOutputBuffer(outBufferId, false);
-
-//                Log.i(TAG, "mux audio: { timeStamp = " + mAudioBufferInfo.presentationTimeUs + "}" + " , progress = " + getCurrentProgress(mAudioBufferInfo.presentationTimeUs) + "}");
-                mUIThread.post(() -> mExportAdapter.onExportProgressUpdate(getExportProgress(mAudioBufferInfo.presentationTimeUs)));
-
-                /***
-                 * check  all audio frame is encoded into encoder
-                 */
-                if ((mAudioBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                    allOutputEncoded = true;
-                    break;
-                }
-            } else if (outBufferId == MediaCodec.INFO_TRY_AGAIN_LATER) {
-                encoderOutputAvailable = false;
-            }
+        try {
+            mAudioCopyLoop.run();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            mErrorWhenExporting = true;
+        } finally {
+            mMuxerStage.endOfTrack(mMuxerAudioTrack);
+        }
+        if (!mErrorWhenExporting && !mStopExport) {
+            mProgressTracker.onTrackEnded(mMuxerAudioTrack, SystemClock.elapsedRealtime());
+        }
 
-            if (outBufferId != MediaCodec.INFO_TRY_AGAIN_LATER)
-                continue;
+        StageMetrics stage = recordStage("audio", startTime, startCpuTime, mAudioCopyLoop);
+        if (mAsyncTranscodeLoop != null) {
+            stage.setCpuTimeMs(stage.getCpuTimeMs() + mAsyncTranscodeLoop.getCodecThreadCpuTimeMs());
+        }
+        if (mTimedAudioDecoder != null) {
+            stage.setCodecWait((mTimedAudioDecoder.getWaitTimeNs() + mTimedAudioEncoder.getWaitTimeNs()) / 1000000,
+                    mTimedAudioDecoder.getTryAgainCount() + mTimedAudioEncoder.getTryAgainCount());
+        } else if (mTimedAudioEncoder != null) {
+            stage.setCodecWait(mTimedAudioEncoder.getWaitTimeNs() / 1000000, mTimedAudioEncoder.getTryAgainCount());
+        }
+        Log.i(TAG, "total time export audio: " + stage.getWallTimeMs() + ", cpu time: " + stage.getCpuTimeMs());
+        synchronized (this) {
+            mMuxAudioDone = true;
+            notifyAll();
         }
     }
 
@@ -559,13 +1186,13 @@ public class ExportService {
      */
     @NonNull
     private MediaFormat prepareAudioOutputFormat(MediaFormat inputAudioFormat) {
+        mEncoderPcmFormat = chooseEncoderPcmFormat(inputAudioFormat);
         MediaFormat outputFormat = new MediaFormat();
         outputFormat.setString(MediaFormat.KEY_MIME, MediaFormat.MIMETYPE_AUDIO_AAC);
         outputFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
-        outputFormat.setInteger(MediaFormat.KEY_SAMPLE_RATE, inputAudioFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE));
-        outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, inputAudioFormat.getInteger(MediaFormat.KEY_BIT_RATE));
-        outputFormat.setInteger(MediaFormat.KEY_CHANNEL_COUNT, inputAudioFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
-        outputFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AUDIO_MAX_INPUT_SIZE); // // avoid BufferOverflowException
+        outputFormat.setInteger(MediaFormat.KEY_SAMPLE_RATE, mEncoderPcmFormat.getSampleRate());
+        outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, chooseBitRate(inputAudioFormat, mEncoderPcmFormat.getChannelCount()));
+        outputFormat.setInteger(MediaFormat.KEY_CHANNEL_COUNT, mEncoderPcmFormat.getChannelCount());
         return outputFormat;
     }
 }
@@ -0,0 +1,82 @@
+package com.samsung.mixaudioandvideo.export;
+
+/***
+ * Measurements of one stage of an export, e.g. the video copy loop or the muxer writer
+ */
+public class StageMetrics {
+    private final String mName;
+    private long mWallTimeMs;
+    private long mCpuTimeMs;
+    private long mSampleCount;
+    private long mByteCount;
+    private long mCodecWaitTimeMs;
+    private long mCodecTryAgainCount;
+
+    public StageMetrics(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getWallTimeMs() {
+        return mWallTimeMs;
+    }
+
+    public void setWallTimeMs(long wallTimeMs) {
+        mWallTimeMs = wallTimeMs;
+    }
+
+    /***
+     * get cpu time of the threads running the stage
+     */
+    public long getCpuTimeMs() {
+        return mCpuTimeMs;
+    }
+
+    public void setCpuTimeMs(long cpuTimeMs) {
+        mCpuTimeMs = cpuTimeMs;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    public long getByteCount() {
+        return mByteCount;
+    }
+
+    public void setCounts(long sampleCount, long byteCount) {
+        mSampleCount = sampleCount;
+        mByteCount = byteCount;
+    }
+
+    /***
+     * get time spent waiting in codec dequeue calls, 0 for stages without codecs
+     */
+    public long getCodecWaitTimeMs() {
+        return mCodecWaitTimeMs;
+    }
+
+    public long getCodecTryAgainCount() {
+        return mCodecTryAgainCount;
+    }
+
+    public void setCodecWait(long codecWaitTimeMs, long codecTryAgainCount) {
+        mCodecWaitTimeMs = codecWaitTimeMs;
+        mCodecTryAgainCount = codecTryAgainCount;
+    }
+
+    @Override
+    public String toString() {
+        return mName + "{" +
+                "wall=" + mWallTimeMs + "ms" +
+                ", cpu=" + mCpuTimeMs + "ms" +
+                ", samples=" + mSampleCount +
+                ", bytes=" + mByteCount +
+                ", codecWait=" + mCodecWaitTimeMs + "ms" +
+                ", codecTryAgain=" + mCodecTryAgainCount +
+                '}';
+    }
+}
@@ -0,0 +1,8 @@
+package com.samsung.mixaudioandvideo.export;
+
+public class TranscodeMode {
+    // poll the codecs with dequeue timeouts on the export thread
+    public static final int SYNC = 1;
+    // MediaCodec.Callback on a dedicated handler thread, needs API 23
+    public static final int ASYNC = 2;
+}
@@ -0,0 +1,65 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+/***
+ * Helpers for H.264 Annex B byte streams, as MediaExtractor gives out video samples and parameter sets.
+ * MP4 samples hold NAL units prefixed by their length instead of start codes.
+ */
+final class AnnexB {
+    private AnnexB() {
+    }
+
+    /***
+     * find the next 00 00 01 start code in [from, to), including a leading zero byte
+     *
+     * @return index of the first byte of the start code, -1 if there is none
+     */
+    static int findStartCode(byte[] data, int from, int to) {
+        for (int i = from; i + 2 < to; i++) {
+            if (data[i + 2] > 1) {
+                // no start code can end within the next two bytes
+                i += 2;
+            } else if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                return i > from && data[i - 1] == 0 ? i - 1 : i;
+            }
+        }
+        return -1;
+    }
+
+    static int getStartCodeLength(byte[] data, int index) {
+        return data[index + 2] == 0 ? 4 : 3;
+    }
+
+    static boolean startsWithStartCode(byte[] data, int length) {
+        return (length >= 3 && data[0] == 0 && data[1] == 0 && data[2] == 1)
+                || (length >= 4 && data[0] == 0 && data[1] == 0 && data[2] == 0 && data[3] == 1);
+    }
+
+    /***
+     * replace the start codes of an Annex B sample by 4 byte lengths
+     *
+     * @param src    sample starting with a start code
+     * @param length bytes of the sample
+     * @param dst    receives the converted sample, up to length + length / 3 + 4 bytes
+     * @return bytes written to dst
+     */
+    static int toLengthPrefixed(byte[] src, int length, byte[] dst) {
+        int written = 0;
+        int start = findStartCode(src, 0, length);
+        while (start >= 0) {
+            int nalStart = start + getStartCodeLength(src, start);
+            int next = findStartCode(src, nalStart, length);
+            int nalEnd = next >= 0 ? next : length;
+            int nalLength = nalEnd - nalStart;
+            if (nalLength > 0) {
+                dst[written] = (byte) (nalLength >> 24);
+                dst[written + 1] = (byte) (nalLength >> 16);
+                dst[written + 2] = (byte) (nalLength >> 8);
+                dst[written + 3] = (byte) nalLength;
+                System.arraycopy(src, nalStart, dst, written + 4, nalLength);
+                written += 4 + nalLength;
+            }
+            start = next;
+        }
+        return written;
+    }
+}
@@ -0,0 +1,566 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleIndex;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/***
+ * Writes fragmented MP4: ftyp and an empty moov first, then a moof/mdat pair per fragment.
+ * Only the samples of the current fragment are kept in memory, every fragment written is playable
+ * without the ones following it, so the file stays valid when the export is interrupted.
+ * A fragment is cut at the first video sync sample after the fragment duration,
+ * every such cut is a point the export can resume from.
+ */
+public class FragmentedMp4Writer implements SampleSink {
+    public static final long DEFAULT_FRAGMENT_DURATION_US = 2000000L;
+
+    // sync samples a second apart are a few us short of it with frame times rounded down
+    private static final long FRAGMENT_DURATION_TOLERANCE_US = 10000L;
+    private static final long MAX_FRAGMENT_BYTES = 32L * 1024 * 1024;
+    private static final int MOVIE_TIMESCALE = 1000;
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+    // data offset, sample duration, size, flags and composition time offset present
+    private static final int TRUN_FLAGS = 0x000F01;
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+    private static final long DEFAULT_VIDEO_SAMPLE_DURATION_US = 33333L;
+    private static final int AAC_FRAME_SIZE = 1024;
+
+    public interface DataListener {
+        /***
+         * called with every range of the file once it is written: the header, then each fragment
+         */
+        void onDataWritten(long offset, long length);
+    }
+
+    public interface ResumePointListener {
+        /***
+         * called once a fragment is on disk and the next fragment starts with a video sync sample
+         *
+         * @param fileSize           bytes of the file up to the end of the fragment
+         * @param nextSequenceNumber sequence number of the next fragment
+         * @param resumeTimesUs      per track, the time of the first sample not written yet
+         */
+        void onResumePoint(long fileSize, int nextSequenceNumber, long[] resumeTimesUs) throws IOException;
+    }
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mFragmentDurationUs;
+    private final List<Mp4TrackFormat> mTracks = new ArrayList<>();
+    private final List<SampleIndex> mPending = new ArrayList<>();
+    private final Mp4BoxWriter mBoxWriter = new Mp4BoxWriter();
+    private final SampleInfo mInfo = new SampleInfo();
+    private ResumePointListener mListener;
+    private DataListener mDataListener;
+    private long[] mLastDurations;
+    private long[] mWrittenEndTimesUs;
+    private int mSyncTrack;
+    private long mFragmentStartUs = -1;
+    private volatile long mPendingBytes;
+    private long mPeakPendingBytes;
+    private int mSequenceNumber = 1;
+    private long mFileSize;
+    private long mHeaderCrc;
+    private byte[] mSampleScratch = new byte[0];
+    private byte[] mConvertScratch = new byte[0];
+    private boolean mStarted;
+    private boolean mClosed;
+
+    /***
+     * @param file               output file, created if needed; start truncates it, resume keeps what is valid
+     * @param fragmentDurationUs min duration of a fragment, it ends at the next video sync sample
+     * @throws IOException
+     */
+    public FragmentedMp4Writer(File file, long fragmentDurationUs) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        mFragmentDurationUs = Math.max(0, fragmentDurationUs);
+    }
+
+    /***
+     * @return index of the track, tracks have to be added before start or resume
+     */
+    public int addTrack(Mp4TrackFormat format) {
+        if (mStarted) {
+            throw new IllegalStateException("tracks have to be added before start");
+        }
+        mTracks.add(format);
+        mPending.add(new SampleIndex(MAX_FRAGMENT_BYTES * 2));
+        return mTracks.size() - 1;
+    }
+
+    public void setResumePointListener(ResumePointListener listener) {
+        mListener = listener;
+    }
+
+    public void setDataListener(DataListener listener) {
+        mDataListener = listener;
+    }
+
+    /***
+     * write the file header, dropping anything the file held before
+     */
+    public synchronized void start() throws IOException {
+        byte[] header = prepareStart();
+        writeFully(ByteBuffer.wrap(header), 0);
+        mChannel.truncate(header.length);
+        mFileSize = header.length;
+        if (mDataListener != null) {
+            mDataListener.onDataWritten(0, header.length);
+        }
+    }
+
+    /***
+     * continue a file written by an earlier writer with the same tracks,
+     * cutting off whatever was written after the resume point
+     *
+     * @param resumeTimesUs as given to the listener with the resume point
+     * @return false if the file doesn't match the resume point, start has to be called then
+     */
+    public synchronized boolean resume(long fileSize, int nextSequenceNumber, long headerCrc, long[] resumeTimesUs)
+            throws IOException {
+        byte[] header = buildHeader();
+        if (getCrc(header) != headerCrc || fileSize < header.length || mChannel.size() < fileSize
+                || resumeTimesUs.length != mTracks.size()) {
+            return false;
+        }
+        prepareStart();
+        System.arraycopy(resumeTimesUs, 0, mWrittenEndTimesUs, 0, resumeTimesUs.length);
+        mChannel.truncate(fileSize);
+        mFileSize = fileSize;
+        mSequenceNumber = nextSequenceNumber;
+        return true;
+    }
+
+    /***
+     * get checksum of the file header, which changes with the tracks
+     */
+    public long getHeaderCrc() {
+        return mHeaderCrc;
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    /***
+     * get bytes of samples held for the next fragment
+     */
+    public long getPendingBytes() {
+        return mPendingBytes;
+    }
+
+    /***
+     * get most bytes of samples held for one fragment, the memory the writer needs
+     */
+    public long getPeakPendingBytes() {
+        return mPeakPendingBytes;
+    }
+
+    @Override
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) throws IOException {
+        if (!mStarted || mClosed) {
+            throw new IOException("writer isn't running");
+        }
+        // the codec config is part of the sample entry
+        if ((info.flags & SampleInfo.FLAG_CODEC_CONFIG) != 0 || info.size <= 0) {
+            return;
+        }
+
+        boolean sync = (info.flags & SampleInfo.FLAG_SYNC_FRAME) != 0 || !mTracks.get(trackIndex).isVideo();
+        if (trackIndex == mSyncTrack && sync && mFragmentStartUs >= 0
+                && info.presentationTimeUs - mFragmentStartUs + FRAGMENT_DURATION_TOLERANCE_US >= mFragmentDurationUs) {
+            writeFragment();
+            notifyResumePoint(info.presentationTimeUs);
+        } else if (mPendingBytes + info.size > MAX_FRAGMENT_BYTES) {
+            // a very long GOP, the fragment is cut without a resume point
+            writeFragment();
+        }
+        if (mFragmentStartUs < 0 && trackIndex == mSyncTrack) {
+            mFragmentStartUs = info.presentationTimeUs;
+        }
+
+        addSample(trackIndex, buffer, info);
+    }
+
+    /***
+     * write the last fragment and close the file
+     */
+    public synchronized void stop() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            if (mStarted) {
+                writeFragment();
+                mChannel.force(false);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /***
+     * close the file without the samples of the unfinished fragment, the fragments written stay valid
+     */
+    public synchronized void abort() {
+        if (mClosed) {
+            return;
+        }
+        close();
+    }
+
+    private byte[] prepareStart() {
+        if (mStarted) {
+            throw new IllegalStateException("already started");
+        }
+        byte[] header = buildHeader();
+        mHeaderCrc = getCrc(header);
+        int trackCount = mTracks.size();
+        mLastDurations = new long[trackCount];
+        mWrittenEndTimesUs = new long[trackCount];
+        mSyncTrack = 0;
+        for (int i = trackCount - 1; i >= 0; i--) {
+            Mp4TrackFormat format = mTracks.get(i);
+            mLastDurations[i] = format.isVideo()
+                    ? toTimescale(DEFAULT_VIDEO_SAMPLE_DURATION_US, format.getTimescale()) : AAC_FRAME_SIZE;
+            if (format.isVideo()) {
+                mSyncTrack = i;
+            }
+        }
+        mStarted = true;
+        return header;
+    }
+
+    private void addSample(int trackIndex, ByteBuffer buffer, SampleInfo info) throws IOException {
+        SampleIndex pending = mPending.get(trackIndex);
+        if (!mTracks.get(trackIndex).isVideo()) {
+            if (!pending.add(buffer, info)) {
+                throw new IOException("sample too large for a fragment: " + info.size);
+            }
+            mPendingBytes += info.size;
+            return;
+        }
+
+        // MediaExtractor gives out H.264 with start codes, MP4 wants NAL lengths
+        if (mSampleScratch.length < info.size) {
+            mSampleScratch = new byte[info.size];
+            mConvertScratch = new byte[info.size + info.size / 3 + 4];
+        }
+        ByteBuffer src = buffer.duplicate();
+        src.limit(info.offset + info.size);
+        src.position(info.offset);
+        src.get(mSampleScratch, 0, info.size);
+
+        ByteBuffer sample;
+        if (AnnexB.startsWithStartCode(mSampleScratch, info.size)) {
+            int size = AnnexB.toLengthPrefixed(mSampleScratch, info.size, mConvertScratch);
+            sample = ByteBuffer.wrap(mConvertScratch, 0, size);
+        } else {
+            sample = ByteBuffer.wrap(mSampleScratch, 0, info.size);
+        }
+        mInfo.set(0, sample.remaining(), info.presentationTimeUs, info.flags);
+        if (!pending.add(sample, mInfo)) {
+            throw new IOException("sample too large for a fragment: " + info.size);
+        }
+        mPendingBytes += mInfo.size;
+    }
+
+    private void notifyResumePoint(long syncTimeUs) throws IOException {
+        if (mListener == null) {
+            return;
+        }
+        // the resume point is only worth something once the fragment is on disk
+        mChannel.force(false);
+        long[] resumeTimesUs = Arrays.copyOf(mWrittenEndTimesUs, mWrittenEndTimesUs.length);
+        resumeTimesUs[mSyncTrack] = syncTimeUs;
+        mListener.onResumePoint(mFileSize, mSequenceNumber, resumeTimesUs);
+    }
+
+    /***
+     * write moof and mdat of the pending samples
+     */
+    private void writeFragment() throws IOException {
+        if (mPendingBytes == 0) {
+            return;
+        }
+        mPeakPendingBytes = Math.max(mPeakPendingBytes, mPendingBytes);
+
+        Mp4BoxWriter writer = mBoxWriter;
+        writer.clear();
+        int[] dataOffsetPositions = new int[mTracks.size()];
+        writer.startBox("moof");
+        writer.startFullBox("mfhd", 0, 0).putInt(mSequenceNumber).endBox();
+        for (int track = 0; track < mTracks.size(); track++) {
+            SampleIndex pending = mPending.get(track);
+            if (pending.getSampleCount() > 0) {
+                dataOffsetPositions[track] = writeTrackFragment(writer, track, pending);
+            }
+        }
+        writer.endBox();
+
+        // sample data of every track follows the moof in one mdat
+        long dataOffset = writer.position() + 8;
+        for (int track = 0; track < mTracks.size(); track++) {
+            SampleIndex pending = mPending.get(track);
+            if (pending.getSampleCount() > 0) {
+                writer.putIntAt(dataOffsetPositions[track], (int) dataOffset);
+                dataOffset += pending.getDataSize();
+            }
+        }
+        writer.putInt((int) (8 + mPendingBytes)).putFourCc("mdat");
+
+        long position = mFileSize;
+        position += writeFully(writer.getBuffer(), position);
+        for (int track = 0; track < mTracks.size(); track++) {
+            SampleIndex pending = mPending.get(track);
+            if (pending.getSampleCount() > 0) {
+                ByteBuffer data = pending.getBuffer().duplicate();
+                data.limit((int) pending.getDataSize());
+                data.position(0);
+                position += writeFully(data, position);
+                mWrittenEndTimesUs[track] = Math.max(mWrittenEndTimesUs[track], getMaxSampleTime(pending) + 1);
+                pending.clear();
+            }
+        }
+
+        if (mDataListener != null) {
+            mDataListener.onDataWritten(mFileSize, position - mFileSize);
+        }
+        mFileSize = position;
+        mSequenceNumber++;
+        mPendingBytes = 0;
+        mFragmentStartUs = -1;
+    }
+
+    /***
+     * write traf of one track
+     *
+     * @return position of the data offset of the trun, set once the moof size is known
+     */
+    private int writeTrackFragment(Mp4BoxWriter writer, int track, SampleIndex pending) {
+        Mp4TrackFormat format = mTracks.get(track);
+        int timescale = format.getTimescale();
+        int count = pending.getSampleCount();
+
+        // samples come in decode order, the decode times are the presentation times in ascending order
+        long[] decodeTimesUs = new long[count];
+        for (int i = 0; i < count; i++) {
+            decodeTimesUs[i] = pending.getSampleTime(i);
+        }
+        if (format.isVideo()) {
+            Arrays.sort(decodeTimesUs);
+        }
+
+        writer.startBox("traf");
+        writer.startFullBox("tfhd", 0, TFHD_DEFAULT_BASE_IS_MOOF).putInt(track + 1).endBox();
+        writer.startFullBox("tfdt", 1, 0).putLong(toTimescale(decodeTimesUs[0], timescale)).endBox();
+        // version 1 allows negative composition offsets, so no edit list is needed for B frames
+        writer.startFullBox("trun", 1, TRUN_FLAGS).putInt(count);
+        int dataOffsetPosition = writer.position();
+        writer.putInt(0);
+        for (int i = 0; i < count; i++) {
+            pending.getSample(i, mInfo);
+            long decodeTime = toTimescale(decodeTimesUs[i], timescale);
+            long duration;
+            if (i + 1 < count) {
+                duration = toTimescale(decodeTimesUs[i + 1], timescale) - decodeTime;
+                mLastDurations[track] = duration;
+            } else {
+                duration = mLastDurations[track];
+            }
+            boolean sync = !format.isVideo() || (mInfo.flags & SampleInfo.FLAG_SYNC_FRAME) != 0;
+            writer.putInt((int) duration);
+            writer.putInt(mInfo.size);
+            writer.putInt(sync ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+            writer.putInt((int) (toTimescale(mInfo.presentationTimeUs, timescale) - decodeTime));
+        }
+        writer.endBox();
+        writer.endBox();
+        return dataOffsetPosition;
+    }
+
+    /***
+     * build ftyp and a moov without samples, which only declares the tracks and that fragments follow
+     */
+    private byte[] buildHeader() {
+        Mp4BoxWriter writer = new Mp4BoxWriter();
+        writer.startBox("ftyp").putFourCc("isom").putInt(0x200)
+                .putFourCc("isom").putFourCc("iso6").putFourCc("avc1").putFourCc("mp41").endBox();
+
+        writer.startBox("moov");
+        writer.startFullBox("mvhd", 0, 0);
+        writer.putInt(0).putInt(0).putInt(MOVIE_TIMESCALE).putInt(0);
+        writer.putInt(0x00010000).putShort(0x0100).putZeros(10);
+        putMatrix(writer, 0);
+        writer.putZeros(24).putInt(mTracks.size() + 1);
+        writer.endBox();
+
+        for (int track = 0; track < mTracks.size(); track++) {
+            writeTrack(writer, track, mTracks.get(track));
+        }
+
+        writer.startBox("mvex");
+        for (int track = 0; track < mTracks.size(); track++) {
+            writer.startFullBox("trex", 0, 0).putInt(track + 1).putInt(1).putInt(0).putInt(0).putInt(0).endBox();
+        }
+        writer.endBox();
+        writer.endBox();
+        return writer.toByteArray();
+    }
+
+    private void writeTrack(Mp4BoxWriter writer, int track, Mp4TrackFormat format) {
+        writer.startBox("trak");
+        // enabled and in movie
+        writer.startFullBox("tkhd", 0, 3);
+        writer.putInt(0).putInt(0).putInt(track + 1).putInt(0).putInt(0);
+        writer.putZeros(8).putShort(0).putShort(0).putShort(format.isVideo() ? 0 : 0x0100).putShort(0);
+        putMatrix(writer, format.getRotation());
+        writer.putInt(format.getWidth() << 16).putInt(format.getHeight() << 16);
+        writer.endBox();
+        if (format.hasEditList()) {
+            writer.putEditList(toTimescale(format.getEditDurationUs(), MOVIE_TIMESCALE),
+                    toTimescale(format.getEditMediaTimeUs(), format.getTimescale()));
+        }
+
+        writer.startBox("mdia");
+        // language und
+        writer.startFullBox("mdhd", 0, 0).putInt(0).putInt(0).putInt(format.getTimescale()).putInt(0)
+                .putShort(0x55C4).putShort(0).endBox();
+        writer.startFullBox("hdlr", 0, 0).putInt(0).putFourCc(format.isVideo() ? "vide" : "soun").putZeros(12)
+                .putString(format.isVideo() ? "VideoHandle" : "SoundHandle").endBox();
+
+        writer.startBox("minf");
+        if (format.isVideo()) {
+            writer.startFullBox("vmhd", 0, 1).putZeros(8).endBox();
+        } else {
+            writer.startFullBox("smhd", 0, 0).putZeros(4).endBox();
+        }
+        writer.startBox("dinf");
+        writer.startFullBox("dref", 0, 0).putInt(1);
+        // media data is in the same file
+        writer.startFullBox("url ", 0, 1).endBox();
+        writer.endBox();
+        writer.endBox();
+
+        writer.startBox("stbl");
+        writer.startFullBox("stsd", 0, 0).putInt(1);
+        if (format.isVideo()) {
+            writeVisualSampleEntry(writer, format);
+        } else {
+            writeAudioSampleEntry(writer, format);
+        }
+        writer.endBox();
+        // the samples are described by the fragments
+        writer.startFullBox("stts", 0, 0).putInt(0).endBox();
+        writer.startFullBox("stsc", 0, 0).putInt(0).endBox();
+        writer.startFullBox("stsz", 0, 0).putInt(0).putInt(0).endBox();
+        writer.startFullBox("stco", 0, 0).putInt(0).endBox();
+        writer.endBox();
+        writer.endBox();
+        writer.endBox();
+        writer.endBox();
+    }
+
+    private void writeVisualSampleEntry(Mp4BoxWriter writer, Mp4TrackFormat format) {
+        writer.startBox(format.getSampleEntryType());
+        writer.putZeros(6).putShort(1).putZeros(16);
+        writer.putShort(format.getWidth()).putShort(format.getHeight());
+        // 72 dpi
+        writer.putInt(0x00480000).putInt(0x00480000).putInt(0).putShort(1);
+        writer.putZeros(32).putShort(0x18).putShort(-1);
+        writer.startBox("avcC").putBytes(format.getDecoderConfig()).endBox();
+        writer.endBox();
+    }
+
+    private void writeAudioSampleEntry(Mp4BoxWriter writer, Mp4TrackFormat format) {
+        writer.startBox(format.getSampleEntryType());
+        writer.putZeros(6).putShort(1).putZeros(8);
+        writer.putShort(format.getChannelCount()).putShort(16).putShort(0).putShort(0);
+        writer.putInt(format.getSampleRate() << 16);
+
+        byte[] config = format.getDecoderConfig();
+        int decoderConfigLength = 13 + 2 + config.length;
+        writer.startFullBox("esds", 0, 0);
+        // ES_Descriptor
+        writer.putByte(0x03).putByte(3 + 2 + decoderConfigLength + 3).putShort(0).putByte(0);
+        // DecoderConfigDescriptor: MPEG-4 audio, audio stream
+        writer.putByte(0x04).putByte(decoderConfigLength).putByte(0x40).putByte(0x15).putZeros(3);
+        writer.putInt(format.getBitRate()).putInt(format.getBitRate());
+        // DecoderSpecificInfo
+        writer.putByte(0x05).putByte(config.length).putBytes(config);
+        // SLConfigDescriptor
+        writer.putByte(0x06).putByte(1).putByte(0x02);
+        writer.endBox();
+        writer.endBox();
+    }
+
+    private static void putMatrix(Mp4BoxWriter writer, int rotation) {
+        int a = 0x10000;
+        int b = 0;
+        switch (rotation) {
+            case 90:
+                a = 0;
+                b = 0x10000;
+                break;
+            case 180:
+                a = -0x10000;
+                break;
+            case 270:
+                a = 0;
+                b = -0x10000;
+                break;
+            default:
+                break;
+        }
+        writer.putInt(a).putInt(b).putInt(0);
+        writer.putInt(-b).putInt(a).putInt(0);
+        writer.putInt(0).putInt(0).putInt(0x40000000);
+    }
+
+    private long writeFully(ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += mChannel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private void close() {
+        mClosed = true;
+        try {
+            mFile.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static long getMaxSampleTime(SampleIndex index) {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < index.getSampleCount(); i++) {
+            max = Math.max(max, index.getSampleTime(i));
+        }
+        return max;
+    }
+
+    private static long toTimescale(long timeUs, int timescale) {
+        return (timeUs * timescale + 500000L) / 1000000L;
+    }
+
+    private static long getCrc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,155 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/***
+ * Builds ISO BMFF boxes into a growing big endian buffer.
+ * Boxes are nested with startBox / endBox, the size of a box is patched when it is ended.
+ */
+public class Mp4BoxWriter {
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MAX_DEPTH = 16;
+
+    private ByteBuffer mBuffer;
+    private final int[] mBoxStarts = new int[MAX_DEPTH];
+    private int mDepth;
+
+    public Mp4BoxWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public Mp4BoxWriter(int capacity) {
+        mBuffer = ByteBuffer.allocate(capacity);
+    }
+
+    public Mp4BoxWriter startBox(String type) {
+        ensureCapacity(8);
+        mBoxStarts[mDepth++] = mBuffer.position();
+        mBuffer.putInt(0);
+        putFourCc(type);
+        return this;
+    }
+
+    public Mp4BoxWriter startFullBox(String type, int version, int flags) {
+        startBox(type);
+        return putInt((version << 24) | (flags & 0xFFFFFF));
+    }
+
+    public Mp4BoxWriter endBox() {
+        int start = mBoxStarts[--mDepth];
+        mBuffer.putInt(start, mBuffer.position() - start);
+        return this;
+    }
+
+    public Mp4BoxWriter putByte(int value) {
+        ensureCapacity(1);
+        mBuffer.put((byte) value);
+        return this;
+    }
+
+    public Mp4BoxWriter putShort(int value) {
+        ensureCapacity(2);
+        mBuffer.putShort((short) value);
+        return this;
+    }
+
+    public Mp4BoxWriter putInt(int value) {
+        ensureCapacity(4);
+        mBuffer.putInt(value);
+        return this;
+    }
+
+    public Mp4BoxWriter putLong(long value) {
+        ensureCapacity(8);
+        mBuffer.putLong(value);
+        return this;
+    }
+
+    public Mp4BoxWriter putFourCc(String fourCc) {
+        return putBytes(fourCc.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public Mp4BoxWriter putBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        mBuffer.put(bytes);
+        return this;
+    }
+
+    /***
+     * put a null terminated string
+     */
+    public Mp4BoxWriter putString(String value) {
+        putBytes(value.getBytes(StandardCharsets.UTF_8));
+        return putByte(0);
+    }
+
+    public Mp4BoxWriter putZeros(int count) {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            mBuffer.put((byte) 0);
+        }
+        return this;
+    }
+
+    /***
+     * put an edts with one edit, which presents segmentDuration (in the movie timescale)
+     * of the media from mediaTime (in the track timescale) on
+     */
+    public Mp4BoxWriter putEditList(long segmentDuration, long mediaTime) {
+        startBox("edts");
+        if (segmentDuration > 0xFFFFFFFFL || mediaTime > Integer.MAX_VALUE) {
+            startFullBox("elst", 1, 0).putInt(1).putLong(segmentDuration).putLong(mediaTime);
+        } else {
+            startFullBox("elst", 0, 0).putInt(1).putInt((int) segmentDuration).putInt((int) mediaTime);
+        }
+        // media rate 1
+        putShort(1).putShort(0);
+        endBox();
+        return endBox();
+    }
+
+    /***
+     * overwrite an int written before, e.g. an offset known only once the following boxes are written
+     */
+    public void putIntAt(int position, int value) {
+        mBuffer.putInt(position, value);
+    }
+
+    public int position() {
+        return mBuffer.position();
+    }
+
+    /***
+     * get the bytes written so far, the writer keeps them until it is cleared
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.flip();
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[mBuffer.position()];
+        getBuffer().get(bytes);
+        return bytes;
+    }
+
+    public void clear() {
+        mBuffer.clear();
+        mDepth = 0;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (mBuffer.remaining() < bytes) {
+            int capacity = mBuffer.capacity() * 2;
+            while (capacity - mBuffer.position() < bytes) {
+                capacity *= 2;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            mBuffer.flip();
+            buffer.put(mBuffer);
+            mBuffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/***
+ * Moves the moov of an MP4 in front of the media data, so the file plays while it is being downloaded.
+ * The chunk offsets in stco / co64 are shifted by the size the moov adds in front of them;
+ * stco is widened to co64 when an offset wouldn't fit in 32 bits any more.
+ * Only the moov passes through memory, the media data is copied by the kernel with transferTo.
+ * The video track can be given an edit list on the way, e.g. to hide the frames before the start of a trimmed video.
+ */
+public class Mp4FastStart {
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final int LARGE_BOX_HEADER_SIZE = 16;
+    private static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+    private static final long MAX_32_BIT_OFFSET = 0xFFFFFFFFL;
+    // edts with an elst of one version 1 entry
+    private static final int MAX_EDIT_LIST_SIZE = 8 + 16 + 20;
+
+    private long mInsertPosition;
+    private long mOldMoovStart;
+    private long mOldMoovEnd;
+    private long mSizeChange;
+    private long mNewMoovSize;
+    private boolean mWidenOffsets;
+    private final long mEditMediaTimeUs;
+    private final long mEditDurationUs;
+    private int mMovieTimescale;
+    // edit of the trak being copied, -1 for none
+    private long mTrackSegmentDuration = -1;
+    private long mTrackMediaTime;
+
+    private Mp4FastStart(long editMediaTimeUs, long editDurationUs) {
+        mEditMediaTimeUs = editMediaTimeUs;
+        mEditDurationUs = editDurationUs;
+    }
+
+    /***
+     * move the moov of the file to the front, replacing the file
+     *
+     * @param file MP4 written by MediaMuxer
+     * @return false if the moov is already in front of the media data or the file isn't a plain MP4
+     * @throws IOException
+     */
+    public static boolean process(File file) throws IOException {
+        return process(file, -1, 0);
+    }
+
+    /***
+     * move the moov of the file to the front and give the video track an edit list,
+     * which presents videoDurationUs of the video from videoMediaTimeUs on.
+     * A moov in front already is rewritten in place.
+     *
+     * @param videoMediaTimeUs -1 for no edit list, an edit list written by the muxer is kept then
+     * @return false if nothing had to be done or the file isn't a plain MP4
+     * @throws IOException
+     */
+    public static boolean process(File file, long videoMediaTimeUs, long videoDurationUs) throws IOException {
+        return new Mp4FastStart(videoMediaTimeUs, videoDurationUs).relocate(file, new File(file.getPath() + ".faststart"));
+    }
+
+    private boolean relocate(File file, File tempFile) throws IOException {
+        ByteBuffer moov;
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel input = in.getChannel();
+            moov = readMoov(input);
+            if (moov == null) {
+                return false;
+            }
+
+            // the moov goes right before the first mdat, everything else keeps its order.
+            // The size of the boxes doesn't depend on the offsets, a first copy measures the new moov
+            Mp4BoxWriter newMoov = new Mp4BoxWriter(moov.remaining() + MAX_EDIT_LIST_SIZE);
+            copyBoxes(moov.duplicate(), newMoov);
+            mNewMoovSize = newMoov.position();
+            mSizeChange = mNewMoovSize - moov.remaining();
+            newMoov.clear();
+            copyBoxes(moov, newMoov);
+
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                FileChannel output = out.getChannel();
+                long position = transferFully(input, 0, mInsertPosition, output, 0);
+                ByteBuffer moovBytes = newMoov.getBuffer();
+                while (moovBytes.hasRemaining()) {
+                    position += output.write(moovBytes, position);
+                }
+                position += transferFully(input, mInsertPosition, mOldMoovStart - mInsertPosition, output, position);
+                transferFully(input, mOldMoovEnd, input.size() - mOldMoovEnd, output, position);
+                output.force(false);
+            }
+        } catch (IOException | RuntimeException ex) {
+            tempFile.delete();
+            throw ex;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("can't replace " + file);
+        }
+        return true;
+    }
+
+    /***
+     * find the top level boxes, map the moov if it follows the media data
+     *
+     * @return copy of the moov, null if nothing has to be done
+     */
+    private ByteBuffer readMoov(FileChannel input) throws IOException {
+        long fileSize = input.size();
+        long position = 0;
+        long firstMdat = -1;
+        ByteBuffer header = ByteBuffer.allocate(LARGE_BOX_HEADER_SIZE);
+        mOldMoovStart = -1;
+        while (position + BOX_HEADER_SIZE <= fileSize) {
+            header.clear();
+            input.read(header, position);
+            header.flip();
+            long size = header.getInt() & MAX_32_BIT_OFFSET;
+            String type = readType(header);
+            if (size == 1 && header.remaining() >= 8) {
+                size = header.getLong();
+            } else if (size == 0) {
+                size = fileSize - position;
+            }
+            if (size < BOX_HEADER_SIZE || position + size > fileSize) {
+                // a broken box, leave the file alone
+                return null;
+            }
+
+            if (type.equals("mdat") && firstMdat < 0) {
+                firstMdat = position;
+            } else if (type.equals("moov")) {
+                mOldMoovStart = position;
+                mOldMoovEnd = position + size;
+            } else if (type.equals("moof")) {
+                // fragmented files are streamable already
+                return null;
+            }
+            position += size;
+        }
+
+        boolean moovInFront = mOldMoovStart < firstMdat;
+        if (mOldMoovStart < 0 || firstMdat < 0 || (moovInFront && mEditMediaTimeUs < 0)
+                || mOldMoovEnd - mOldMoovStart > MAX_MOOV_SIZE) {
+            return null;
+        }
+        mInsertPosition = moovInFront ? mOldMoovStart : firstMdat;
+
+        MappedByteBuffer mapped = input.map(FileChannel.MapMode.READ_ONLY, mOldMoovStart, mOldMoovEnd - mOldMoovStart);
+        ByteBuffer moov = ByteBuffer.allocate(mapped.remaining());
+        moov.put(mapped);
+        moov.flip();
+        mMovieTimescale = readTimescale(findBox(findBox(moov.duplicate(), "moov"), "mvhd"));
+        long maxShift = moov.remaining() + countChunkOffsets(moov.duplicate()) * 4L + MAX_EDIT_LIST_SIZE;
+        mWidenOffsets = needsWideOffsets(moov.duplicate(), maxShift);
+        return moov;
+    }
+
+    /***
+     * check if a 32 bit chunk offset would overflow once the moov is in front of it
+     *
+     * @param maxShift size of the moov with every offset widened
+     */
+    private boolean needsWideOffsets(ByteBuffer boxes, long maxShift) {
+        while (boxes.remaining() >= BOX_HEADER_SIZE) {
+            int start = boxes.position();
+            int size = boxes.getInt();
+            String type = readType(boxes);
+            int end = start + size;
+            if (size < BOX_HEADER_SIZE || end > boxes.limit()) {
+                return false;
+            }
+            if (isContainer(type)) {
+                ByteBuffer children = boxes.duplicate();
+                children.limit(end);
+                if (needsWideOffsets(children, maxShift)) {
+                    return true;
+                }
+            } else if (type.equals("stco")) {
+                boxes.getInt();
+                int count = boxes.getInt();
+                for (int i = 0; i < count; i++) {
+                    if ((boxes.getInt() & MAX_32_BIT_OFFSET) + maxShift > MAX_32_BIT_OFFSET) {
+                        return true;
+                    }
+                }
+            }
+            boxes.position(end);
+        }
+        return false;
+    }
+
+    private int countChunkOffsets(ByteBuffer boxes) {
+        int count = 0;
+        while (boxes.remaining() >= BOX_HEADER_SIZE) {
+            int start = boxes.position();
+            int size = boxes.getInt();
+            String type = readType(boxes);
+            int end = start + size;
+            if (size < BOX_HEADER_SIZE || end > boxes.limit()) {
+                break;
+            }
+            if (isContainer(type)) {
+                ByteBuffer children = boxes.duplicate();
+                children.limit(end);
+                count += countChunkOffsets(children);
+            } else if (type.equals("stco")) {
+                boxes.getInt();
+                count += boxes.getInt();
+            }
+            boxes.position(end);
+        }
+        return count;
+    }
+
+    /***
+     * copy boxes to the new moov, rewriting the chunk offsets
+     */
+    private void copyBoxes(ByteBuffer boxes, Mp4BoxWriter writer) throws IOException {
+        while (boxes.remaining() >= BOX_HEADER_SIZE) {
+            int start = boxes.position();
+            int size = boxes.getInt();
+            String type = readType(boxes);
+            int end = start + size;
+            if (size < BOX_HEADER_SIZE || end > boxes.limit()) {
+                throw new IOException("broken box " + type + " in moov");
+            }
+
+            if (isContainer(type)) {
+                ByteBuffer children = boxes.duplicate();
+                children.limit(end);
+                if (type.equals("trak")) {
+                    prepareTrackEdit(children.duplicate());
+                }
+                writer.startBox(type);
+                copyBoxes(children, writer);
+                writer.endBox();
+                if (type.equals("trak")) {
+                    mTrackSegmentDuration = -1;
+                }
+            } else if (type.equals("edts") && mTrackSegmentDuration >= 0) {
+                // replaced by the new edit list
+            } else if (type.equals("tkhd") && mTrackSegmentDuration >= 0) {
+                int tkhdStart = writer.position();
+                copyBox(boxes, start, size, writer);
+                // the duration of a track is the duration of its edits
+                if (boxes.get(start + BOX_HEADER_SIZE) == 1) {
+                    writer.putIntAt(tkhdStart + 36, (int) (mTrackSegmentDuration >>> 32));
+                    writer.putIntAt(tkhdStart + 40, (int) mTrackSegmentDuration);
+                } else {
+                    writer.putIntAt(tkhdStart + 28, (int) mTrackSegmentDuration);
+                }
+                writer.putEditList(mTrackSegmentDuration, mTrackMediaTime);
+            } else if (type.equals("stco")) {
+                int versionAndFlags = boxes.getInt();
+                int count = boxes.getInt();
+                writer.startBox(mWidenOffsets ? "co64" : "stco").putInt(versionAndFlags).putInt(count);
+                for (int i = 0; i < count; i++) {
+                    long offset = shiftOffset(boxes.getInt() & MAX_32_BIT_OFFSET);
+                    if (mWidenOffsets) {
+                        writer.putLong(offset);
+                    } else {
+                        writer.putInt((int) offset);
+                    }
+                }
+                writer.endBox();
+            } else if (type.equals("co64")) {
+                int versionAndFlags = boxes.getInt();
+                int count = boxes.getInt();
+                writer.startBox(type).putInt(versionAndFlags).putInt(count);
+                for (int i = 0; i < count; i++) {
+                    writer.putLong(shiftOffset(boxes.getLong()));
+                }
+                writer.endBox();
+            } else {
+                copyBox(boxes, start, size, writer);
+            }
+            boxes.position(end);
+        }
+    }
+
+    private static void copyBox(ByteBuffer boxes, int start, int size, Mp4BoxWriter writer) {
+        byte[] bytes = new byte[size];
+        ByteBuffer box = boxes.duplicate();
+        box.position(start);
+        box.get(bytes);
+        writer.putBytes(bytes);
+    }
+
+    /***
+     * find the edit of a trak if it is the video track: the edit of the muxer, if any, is moved by the media time
+     */
+    private void prepareTrackEdit(ByteBuffer trak) {
+        mTrackSegmentDuration = -1;
+        ByteBuffer mdia = findBox(trak.duplicate(), "mdia");
+        ByteBuffer hdlr = mdia != null ? findBox(mdia.duplicate(), "hdlr") : null;
+        if (mEditMediaTimeUs < 0 || hdlr == null || hdlr.remaining() < 12) {
+            return;
+        }
+        hdlr.position(hdlr.position() + 8);
+        if (!readType(hdlr).equals("vide")) {
+            return;
+        }
+        long mediaTimescale = readTimescale(findBox(mdia, "mdhd"));
+        mTrackMediaTime = mEditMediaTimeUs * mediaTimescale / 1000000L + readMediaTime(findBox(trak, "edts"));
+        mTrackSegmentDuration = mEditDurationUs * mMovieTimescale / 1000000L;
+    }
+
+    /***
+     * get body of the first box of a type among the boxes
+     *
+     * @return null if there is none
+     */
+    private static ByteBuffer findBox(ByteBuffer boxes, String type) {
+        while (boxes != null && boxes.remaining() >= BOX_HEADER_SIZE) {
+            int start = boxes.position();
+            int size = boxes.getInt();
+            String boxType = readType(boxes);
+            if (size < BOX_HEADER_SIZE || start + size > boxes.limit()) {
+                return null;
+            }
+            if (boxType.equals(type)) {
+                ByteBuffer body = boxes.duplicate();
+                body.limit(start + size);
+                return body;
+            }
+            boxes.position(start + size);
+        }
+        return null;
+    }
+
+    /***
+     * read timescale of an mvhd or mdhd
+     */
+    private static int readTimescale(ByteBuffer header) {
+        if (header == null) {
+            return 0;
+        }
+        int version = header.getInt() >>> 24;
+        header.position(header.position() + (version == 1 ? 16 : 8));
+        return header.getInt();
+    }
+
+    /***
+     * get media time of the first edit which isn't empty, 0 if there is none
+     */
+    private static long readMediaTime(ByteBuffer edts) {
+        ByteBuffer elst = findBox(edts, "elst");
+        if (elst == null) {
+            return 0;
+        }
+        int version = elst.getInt() >>> 24;
+        int count = elst.getInt();
+        for (int i = 0; i < count && elst.remaining() >= (version == 1 ? 20 : 12); i++) {
+            long mediaTime;
+            if (version == 1) {
+                elst.getLong();
+                mediaTime = elst.getLong();
+            } else {
+                elst.getInt();
+                mediaTime = elst.getInt();
+            }
+            // media rate
+            elst.getInt();
+            if (mediaTime >= 0) {
+                return mediaTime;
+            }
+        }
+        return 0;
+    }
+
+    private long shiftOffset(long offset) {
+        if (offset >= mOldMoovEnd) {
+            // data after the old moov only moves by what the moov grew
+            return offset + mSizeChange;
+        } else if (offset >= mInsertPosition) {
+            return offset + mNewMoovSize;
+        }
+        return offset;
+    }
+
+    private static boolean isContainer(String type) {
+        return type.equals("moov") || type.equals("trak") || type.equals("mdia")
+                || type.equals("minf") || type.equals("stbl");
+    }
+
+    private static String readType(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private static long transferFully(FileChannel input, long position, long count, FileChannel output, long outputPosition)
+            throws IOException {
+        output.position(outputPosition);
+        long transferred = 0;
+        while (transferred < count) {
+            long bytes = input.transferTo(position + transferred, count - transferred, output);
+            if (bytes <= 0) {
+                throw new IOException("short transfer");
+            }
+            transferred += bytes;
+        }
+        return transferred;
+    }
+}
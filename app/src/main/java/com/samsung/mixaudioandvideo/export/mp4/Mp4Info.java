@@ -0,0 +1,82 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Result of probing an MP4 / M4A file with {@link Mp4Parser}
+ */
+public class Mp4Info {
+    private String majorBrand;
+    private long durationUs;
+    private boolean fragmented;
+    private boolean moovBeforeMdat;
+    private final List<Mp4TrackInfo> tracks = new ArrayList<>();
+
+    public String getMajorBrand() {
+        return majorBrand;
+    }
+
+    public void setMajorBrand(String majorBrand) {
+        this.majorBrand = majorBrand;
+    }
+
+    /***
+     * get duration of the movie, the longest track if the movie header doesn't tell
+     */
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    public void setDurationUs(long durationUs) {
+        this.durationUs = durationUs;
+    }
+
+    public boolean isFragmented() {
+        return fragmented;
+    }
+
+    public void setFragmented(boolean fragmented) {
+        this.fragmented = fragmented;
+    }
+
+    /***
+     * check if the file can play while downloading
+     */
+    public boolean isMoovBeforeMdat() {
+        return moovBeforeMdat;
+    }
+
+    public void setMoovBeforeMdat(boolean moovBeforeMdat) {
+        this.moovBeforeMdat = moovBeforeMdat;
+    }
+
+    public List<Mp4TrackInfo> getTracks() {
+        return tracks;
+    }
+
+    /***
+     * get the first track of a type
+     *
+     * @param trackType one of {@link com.samsung.mixaudioandvideo.models.TrackType}
+     * @return null if there is none
+     */
+    public Mp4TrackInfo getTrack(int trackType) {
+        for (Mp4TrackInfo track : tracks) {
+            if (track.getTrackType() == trackType) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp4Info{" +
+                "majorBrand='" + majorBrand + '\'' +
+                ", durationUs=" + durationUs +
+                ", fragmented=" + fragmented +
+                ", tracks=" + tracks +
+                '}';
+    }
+}
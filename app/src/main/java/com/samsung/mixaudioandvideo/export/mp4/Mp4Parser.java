@@ -0,0 +1,463 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import com.samsung.mixaudioandvideo.models.TrackType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * Probes MP4 / M4A files without MediaExtractor: walks the top level boxes, maps the moov
+ * and reads the track headers, sample descriptions and sample sizes. The media data is never read;
+ * of a fragmented file only the moof boxes are read to count the samples.
+ * Not thread safe, use one parser per thread.
+ */
+public class Mp4Parser {
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final int LARGE_BOX_HEADER_SIZE = 16;
+    private static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+    private static final long MAX_MOOF_SIZE = 16L * 1024 * 1024;
+    private static final long UINT32_MASK = 0xFFFFFFFFL;
+
+    private static final int TFHD_BASE_DATA_OFFSET = 0x01;
+    private static final int TFHD_SAMPLE_DESCRIPTION_INDEX = 0x02;
+    private static final int TFHD_DEFAULT_SAMPLE_DURATION = 0x08;
+    private static final int TFHD_DEFAULT_SAMPLE_SIZE = 0x10;
+    private static final int TRUN_DATA_OFFSET = 0x01;
+    private static final int TRUN_FIRST_SAMPLE_FLAGS = 0x04;
+    private static final int TRUN_SAMPLE_DURATION = 0x100;
+    private static final int TRUN_SAMPLE_SIZE = 0x200;
+    private static final int TRUN_SAMPLE_FLAGS = 0x400;
+    private static final int TRUN_COMPOSITION_OFFSET = 0x800;
+
+    private Mp4Info mInfo;
+    private Mp4TrackInfo mTrack;
+    private long mTrackDuration;
+    private int mMovieTimescale;
+    private long mMovieDuration;
+    private final Map<Integer, Integer> mDefaultSampleDurations = new HashMap<>();
+    private final Map<Integer, Integer> mDefaultSampleSizes = new HashMap<>();
+    private final Map<Integer, long[]> mFragmentTotals = new HashMap<>();
+    private int mFragmentTrackId;
+    private int mFragmentSampleDuration;
+    private int mFragmentSampleSize;
+    private long mFragmentTime;
+
+    /***
+     * @return tracks and duration of the file, null if it isn't an MP4
+     * @throws IOException
+     */
+    public Mp4Info parse(File file) throws IOException {
+        mInfo = new Mp4Info();
+        mMovieTimescale = 0;
+        mMovieDuration = 0;
+        mDefaultSampleDurations.clear();
+        mDefaultSampleSizes.clear();
+        mFragmentTotals.clear();
+
+        boolean hasMoov = false;
+        boolean hasMdat = false;
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long fileSize = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(LARGE_BOX_HEADER_SIZE);
+            while (position + BOX_HEADER_SIZE <= fileSize) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                long size = header.getInt() & UINT32_MASK;
+                String type = readType(header);
+                int headerSize = BOX_HEADER_SIZE;
+                if (size == 1 && header.remaining() >= 8) {
+                    size = header.getLong();
+                    headerSize = LARGE_BOX_HEADER_SIZE;
+                } else if (size == 0) {
+                    size = fileSize - position;
+                }
+                if (size < headerSize || position + size > fileSize || !isPrintable(type)) {
+                    // not a box, e.g. an mp3 or a file cut short
+                    break;
+                }
+
+                long bodySize = size - headerSize;
+                if (type.equals("ftyp") && bodySize >= 4) {
+                    mInfo.setMajorBrand(readType(read(channel, position + headerSize, 4)));
+                } else if (type.equals("moov") && bodySize <= MAX_MOOV_SIZE) {
+                    hasMoov = true;
+                    mInfo.setMoovBeforeMdat(!hasMdat);
+                    parseBoxes(channel.map(FileChannel.MapMode.READ_ONLY, position + headerSize, bodySize));
+                } else if (type.equals("moof") && bodySize <= MAX_MOOF_SIZE) {
+                    mInfo.setFragmented(true);
+                    parseBoxes(read(channel, position + headerSize, (int) bodySize));
+                } else if (type.equals("mdat")) {
+                    hasMdat = true;
+                }
+                position += size;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            // a box shorter than its fields
+            ex.printStackTrace();
+            return null;
+        }
+
+        if (!hasMoov) {
+            return null;
+        }
+        finish();
+        return mInfo;
+    }
+
+    /***
+     * get the mime type MediaFormat uses for a sample entry
+     *
+     * @return null if unknown
+     */
+    public static String getMimeType(String sampleEntryType) {
+        if (sampleEntryType == null) {
+            return null;
+        }
+        switch (sampleEntryType) {
+            case "avc1":
+            case "avc3":
+                return "video/avc";
+            case "hvc1":
+            case "hev1":
+                return "video/hevc";
+            case "mp4v":
+                return "video/mp4v-es";
+            case "s263":
+                return "video/3gpp";
+            case "vp09":
+                return "video/x-vnd.on2.vp9";
+            case "av01":
+                return "video/av01";
+            case "mp4a":
+                return "audio/mp4a-latm";
+            case "samr":
+                return "audio/3gpp";
+            case "sawb":
+                return "audio/amr-wb";
+            case "Opus":
+                return "audio/opus";
+            case "fLaC":
+                return "audio/flac";
+            case ".mp3":
+                return "audio/mpeg";
+            case "ac-3":
+                return "audio/ac3";
+            case "ec-3":
+                return "audio/eac3";
+            default:
+                return null;
+        }
+    }
+
+    private void parseBoxes(ByteBuffer boxes) {
+        while (boxes.remaining() >= BOX_HEADER_SIZE) {
+            int start = boxes.position();
+            long size = boxes.getInt() & UINT32_MASK;
+            String type = readType(boxes);
+            if (size == 1 && boxes.remaining() >= 8) {
+                size = boxes.getLong();
+            } else if (size == 0) {
+                size = boxes.limit() - start;
+            }
+            long end = start + size;
+            if (size < BOX_HEADER_SIZE || end > boxes.limit()) {
+                return;
+            }
+
+            ByteBuffer body = boxes.duplicate();
+            body.limit((int) end);
+            parseBox(type, body);
+            boxes.position((int) end);
+        }
+    }
+
+    private void parseBox(String type, ByteBuffer body) {
+        switch (type) {
+            case "moov":
+            case "mdia":
+            case "minf":
+            case "stbl":
+            case "mvex":
+            case "moof":
+                parseBoxes(body);
+                break;
+            case "trak":
+                mTrack = new Mp4TrackInfo();
+                mTrackDuration = 0;
+                parseBoxes(body);
+                if (mTrack.getTimescale() > 0) {
+                    mTrack.setDurationUs(mTrackDuration * 1000000L / mTrack.getTimescale());
+                }
+                mInfo.getTracks().add(mTrack);
+                mTrack = null;
+                break;
+            case "traf":
+                mFragmentTrackId = 0;
+                mFragmentTime = -1;
+                parseBoxes(body);
+                break;
+            case "mvhd":
+                parseMovieHeader(body);
+                break;
+            case "mehd":
+                mMovieDuration = Math.max(mMovieDuration, readVersionedLong(body, body.getInt() >>> 24));
+                break;
+            case "tkhd":
+                parseTrackHeader(body);
+                break;
+            case "mdhd":
+                parseMediaHeader(body);
+                break;
+            case "hdlr":
+                parseHandler(body);
+                break;
+            case "stsd":
+                parseSampleDescription(body);
+                break;
+            case "stsz":
+                parseSampleSizes(body);
+                break;
+            case "trex":
+                body.getInt();
+                int trackId = body.getInt();
+                body.getInt();
+                mDefaultSampleDurations.put(trackId, body.getInt());
+                mDefaultSampleSizes.put(trackId, body.getInt());
+                break;
+            case "tfhd":
+                parseTrackFragmentHeader(body);
+                break;
+            case "tfdt":
+                mFragmentTime = readVersionedLong(body, body.getInt() >>> 24);
+                break;
+            case "trun":
+                parseTrackRun(body);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void parseMovieHeader(ByteBuffer body) {
+        int version = body.getInt() >>> 24;
+        skip(body, version == 1 ? 16 : 8);
+        mMovieTimescale = body.getInt();
+        long duration = readVersionedLong(body, version);
+        if (!isUnknownDuration(duration, version)) {
+            mMovieDuration = Math.max(mMovieDuration, duration);
+        }
+    }
+
+    private void parseTrackHeader(ByteBuffer body) {
+        if (mTrack == null) {
+            return;
+        }
+        int version = body.getInt() >>> 24;
+        skip(body, version == 1 ? 16 : 8);
+        mTrack.setTrackId(body.getInt());
+        skip(body, 4);
+        readVersionedLong(body, version);
+        // reserved, layer, alternate group, volume, reserved and the matrix
+        skip(body, 8 + 8 + 36);
+        mTrack.setWidth(body.getInt() >>> 16);
+        mTrack.setHeight(body.getInt() >>> 16);
+    }
+
+    private void parseMediaHeader(ByteBuffer body) {
+        if (mTrack == null) {
+            return;
+        }
+        int version = body.getInt() >>> 24;
+        skip(body, version == 1 ? 16 : 8);
+        mTrack.setTimescale(body.getInt());
+        long duration = readVersionedLong(body, version);
+        mTrackDuration = isUnknownDuration(duration, version) ? 0 : duration;
+    }
+
+    private void parseHandler(ByteBuffer body) {
+        if (mTrack == null) {
+            return;
+        }
+        skip(body, 8);
+        String handlerType = readType(body);
+        mTrack.setHandlerType(handlerType);
+        if (handlerType.equals("vide")) {
+            mTrack.setTrackType(TrackType.VIDEO);
+        } else if (handlerType.equals("soun")) {
+            mTrack.setTrackType(TrackType.AUDIO);
+        } else {
+            mTrack.setTrackType(TrackType.OTHER);
+        }
+    }
+
+    /***
+     * read the first sample entry, later ones are very rare
+     */
+    private void parseSampleDescription(ByteBuffer body) {
+        if (mTrack == null) {
+            return;
+        }
+        skip(body, 4);
+        if (body.getInt() == 0 || body.remaining() < BOX_HEADER_SIZE) {
+            return;
+        }
+        int entryStart = body.position();
+        body.getInt();
+        String type = readType(body);
+        mTrack.setSampleEntryType(type);
+        mTrack.setMimeType(getMimeType(type));
+
+        // reserved and data reference index
+        skip(body, 8);
+        if (mTrack.getTrackType() == TrackType.VIDEO && body.remaining() >= 20) {
+            skip(body, 16);
+            mTrack.setWidth(body.getShort() & 0xFFFF);
+            mTrack.setHeight(body.getShort() & 0xFFFF);
+        } else if (mTrack.getTrackType() == TrackType.AUDIO && body.remaining() >= 20) {
+            skip(body, 8);
+            mTrack.setChannelCount(body.getShort() & 0xFFFF);
+            skip(body, 6);
+            mTrack.setSampleRate(body.getInt() >>> 16);
+        }
+        body.position(entryStart);
+    }
+
+    private void parseSampleSizes(ByteBuffer body) {
+        if (mTrack == null) {
+            return;
+        }
+        skip(body, 4);
+        int sampleSize = body.getInt();
+        int sampleCount = body.getInt();
+        mTrack.setSampleCount(sampleCount);
+        if (sampleSize != 0) {
+            mTrack.setMaxSampleSize(sampleSize);
+            return;
+        }
+        int maxSize = 0;
+        int count = Math.min(sampleCount, body.remaining() / 4);
+        for (int i = 0; i < count; i++) {
+            maxSize = Math.max(maxSize, body.getInt());
+        }
+        mTrack.setMaxSampleSize(maxSize);
+    }
+
+    private void parseTrackFragmentHeader(ByteBuffer body) {
+        int flags = body.getInt() & 0xFFFFFF;
+        mFragmentTrackId = body.getInt();
+        if ((flags & TFHD_BASE_DATA_OFFSET) != 0) {
+            skip(body, 8);
+        }
+        if ((flags & TFHD_SAMPLE_DESCRIPTION_INDEX) != 0) {
+            skip(body, 4);
+        }
+        Integer defaultDuration = mDefaultSampleDurations.get(mFragmentTrackId);
+        Integer defaultSize = mDefaultSampleSizes.get(mFragmentTrackId);
+        mFragmentSampleDuration = (flags & TFHD_DEFAULT_SAMPLE_DURATION) != 0
+                ? body.getInt() : defaultDuration != null ? defaultDuration : 0;
+        mFragmentSampleSize = (flags & TFHD_DEFAULT_SAMPLE_SIZE) != 0
+                ? body.getInt() : defaultSize != null ? defaultSize : 0;
+    }
+
+    private void parseTrackRun(ByteBuffer body) {
+        int flags = body.getInt() & 0xFFFFFF;
+        int sampleCount = body.getInt();
+        if ((flags & TRUN_DATA_OFFSET) != 0) {
+            skip(body, 4);
+        }
+        if ((flags & TRUN_FIRST_SAMPLE_FLAGS) != 0) {
+            skip(body, 4);
+        }
+
+        long[] totals = mFragmentTotals.get(mFragmentTrackId);
+        if (totals == null) {
+            // sample count, end time, max sample size
+            totals = new long[3];
+            mFragmentTotals.put(mFragmentTrackId, totals);
+        }
+        long time = mFragmentTime >= 0 ? mFragmentTime : totals[1];
+        for (int i = 0; i < sampleCount && body.hasRemaining(); i++) {
+            time += (flags & TRUN_SAMPLE_DURATION) != 0 ? body.getInt() & UINT32_MASK : mFragmentSampleDuration;
+            int size = (flags & TRUN_SAMPLE_SIZE) != 0 ? body.getInt() : mFragmentSampleSize;
+            totals[2] = Math.max(totals[2], size);
+            if ((flags & TRUN_SAMPLE_FLAGS) != 0) {
+                skip(body, 4);
+            }
+            if ((flags & TRUN_COMPOSITION_OFFSET) != 0) {
+                skip(body, 4);
+            }
+        }
+        totals[0] += sampleCount;
+        totals[1] = Math.max(totals[1], time);
+        // a following trun of the same traf continues where this one ends
+        mFragmentTime = time;
+    }
+
+    /***
+     * add what the fragments hold to the tracks and find the duration
+     */
+    private void finish() {
+        long durationUs = mMovieTimescale > 0 ? mMovieDuration * 1000000L / mMovieTimescale : 0;
+        for (Mp4TrackInfo track : mInfo.getTracks()) {
+            long[] totals = mFragmentTotals.get(track.getTrackId());
+            if (totals != null) {
+                track.setSampleCount(track.getSampleCount() + (int) totals[0]);
+                track.setMaxSampleSize(Math.max(track.getMaxSampleSize(), (int) totals[2]));
+                if (track.getTimescale() > 0) {
+                    track.setDurationUs(Math.max(track.getDurationUs(), totals[1] * 1000000L / track.getTimescale()));
+                }
+            }
+            durationUs = Math.max(durationUs, track.getDurationUs());
+        }
+        mInfo.setDurationUs(durationUs);
+    }
+
+    private static long readVersionedLong(ByteBuffer body, int version) {
+        return version == 1 ? body.getLong() : body.getInt() & UINT32_MASK;
+    }
+
+    private static boolean isUnknownDuration(long duration, int version) {
+        return version == 1 ? duration == -1 : duration == UINT32_MASK;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+
+    private static String readType(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isPrintable(String type) {
+        for (int i = 0; i < type.length(); i++) {
+            char c = type.charAt(i);
+            if (c < 0x20 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,210 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Pure java description of a track written by {@link FragmentedMp4Writer}: H.264 video or AAC audio,
+ * with the decoder configuration built from the codec specific data of MediaFormat.
+ */
+public class Mp4TrackFormat {
+    public static final int TYPE_VIDEO = 1;
+    public static final int TYPE_AUDIO = 2;
+
+    public static final int VIDEO_TIMESCALE = 90000;
+
+    private static final int NAL_TYPE_SPS = 7;
+    private static final int NAL_TYPE_PPS = 8;
+    private static final int[] AAC_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    private final int mType;
+    private final String mSampleEntryType;
+    private final byte[] mDecoderConfig;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private int mSampleRate;
+    private int mChannelCount;
+    private int mBitRate;
+    private long mEditMediaTimeUs = -1;
+    private long mEditDurationUs;
+
+    private Mp4TrackFormat(int type, String sampleEntryType, byte[] decoderConfig) {
+        mType = type;
+        mSampleEntryType = sampleEntryType;
+        mDecoderConfig = decoderConfig;
+    }
+
+    /***
+     * @param csd0 SPS as given by MediaExtractor, with an Annex B start code
+     * @param csd1 PPS, with an Annex B start code
+     * @return null if the parameter sets are missing
+     */
+    public static Mp4TrackFormat createAvc(int width, int height, int rotation, byte[] csd0, byte[] csd1) {
+        List<byte[]> sps = new ArrayList<>();
+        List<byte[]> pps = new ArrayList<>();
+        splitParameterSets(csd0, sps, pps);
+        splitParameterSets(csd1, sps, pps);
+        if (sps.isEmpty() || pps.isEmpty() || sps.get(0).length < 4) {
+            return null;
+        }
+
+        // AVCDecoderConfigurationRecord with 4 byte NAL lengths
+        ByteArrayOutputStream avcC = new ByteArrayOutputStream();
+        byte[] firstSps = sps.get(0);
+        avcC.write(1);
+        avcC.write(firstSps[1]);
+        avcC.write(firstSps[2]);
+        avcC.write(firstSps[3]);
+        avcC.write(0xFF);
+        avcC.write(0xE0 | sps.size());
+        for (byte[] nal : sps) {
+            avcC.write(nal.length >> 8);
+            avcC.write(nal.length);
+            avcC.write(nal, 0, nal.length);
+        }
+        avcC.write(pps.size());
+        for (byte[] nal : pps) {
+            avcC.write(nal.length >> 8);
+            avcC.write(nal.length);
+            avcC.write(nal, 0, nal.length);
+        }
+
+        Mp4TrackFormat format = new Mp4TrackFormat(TYPE_VIDEO, "avc1", avcC.toByteArray());
+        format.mWidth = width;
+        format.mHeight = height;
+        format.mRotation = rotation;
+        return format;
+    }
+
+    /***
+     * @param csd0 AudioSpecificConfig, null to build an AAC LC one from the sample rate and channel count
+     */
+    public static Mp4TrackFormat createAac(int sampleRate, int channelCount, int bitRate, byte[] csd0) {
+        byte[] config = csd0 != null ? csd0 : createAudioSpecificConfig(sampleRate, channelCount);
+        Mp4TrackFormat format = new Mp4TrackFormat(TYPE_AUDIO, "mp4a", config);
+        format.mSampleRate = sampleRate;
+        format.mChannelCount = channelCount;
+        format.mBitRate = bitRate;
+        return format;
+    }
+
+    /***
+     * get AAC LC AudioSpecificConfig, the same the encoder puts out as codec config
+     */
+    public static byte[] createAudioSpecificConfig(int sampleRate, int channelCount) {
+        int frequencyIndex = 15;
+        for (int i = 0; i < AAC_SAMPLE_RATES.length; i++) {
+            if (AAC_SAMPLE_RATES[i] == sampleRate) {
+                frequencyIndex = i;
+                break;
+            }
+        }
+        int objectType = 2;
+        if (frequencyIndex == 15) {
+            // explicit 24 bit sample rate
+            long bits = ((long) objectType << 35) | (15L << 31) | ((long) sampleRate << 7) | (channelCount << 3);
+            return new byte[]{(byte) (bits >> 32), (byte) (bits >> 24), (byte) (bits >> 16), (byte) (bits >> 8), (byte) bits};
+        }
+        int bits = (objectType << 11) | (frequencyIndex << 7) | (channelCount << 3);
+        return new byte[]{(byte) (bits >> 8), (byte) bits};
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public boolean isVideo() {
+        return mType == TYPE_VIDEO;
+    }
+
+    /***
+     * get four cc of the sample entry, avc1 or mp4a
+     */
+    public String getSampleEntryType() {
+        return mSampleEntryType;
+    }
+
+    /***
+     * get avcC payload for video, AudioSpecificConfig for audio
+     */
+    public byte[] getDecoderConfig() {
+        return mDecoderConfig;
+    }
+
+    public int getTimescale() {
+        return isVideo() ? VIDEO_TIMESCALE : mSampleRate;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    /***
+     * present durationUs of the track from mediaTimeUs on, hiding the samples before it
+     */
+    public void setEditList(long mediaTimeUs, long durationUs) {
+        mEditMediaTimeUs = mediaTimeUs;
+        mEditDurationUs = durationUs;
+    }
+
+    public boolean hasEditList() {
+        return mEditMediaTimeUs >= 0;
+    }
+
+    public long getEditMediaTimeUs() {
+        return mEditMediaTimeUs;
+    }
+
+    public long getEditDurationUs() {
+        return mEditDurationUs;
+    }
+
+    /***
+     * split Annex B data into NAL units and sort out SPS and PPS
+     */
+    private static void splitParameterSets(byte[] data, List<byte[]> sps, List<byte[]> pps) {
+        if (data == null) {
+            return;
+        }
+        int start = AnnexB.findStartCode(data, 0, data.length);
+        while (start >= 0) {
+            int nalStart = start + AnnexB.getStartCodeLength(data, start);
+            int next = AnnexB.findStartCode(data, nalStart, data.length);
+            int nalEnd = next >= 0 ? next : data.length;
+            if (nalEnd > nalStart) {
+                byte[] nal = new byte[nalEnd - nalStart];
+                System.arraycopy(data, nalStart, nal, 0, nal.length);
+                int nalType = nal[0] & 0x1F;
+                if (nalType == NAL_TYPE_SPS) {
+                    sps.add(nal);
+                } else if (nalType == NAL_TYPE_PPS) {
+                    pps.add(nal);
+                }
+            }
+            start = next;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+/***
+ * What {@link Mp4Parser} learns about one track from the moov (and the fragments of a fragmented file)
+ */
+public class Mp4TrackInfo {
+    private int trackId;
+    private int trackType;
+    private String handlerType;
+    private String sampleEntryType;
+    private String mimeType;
+    private int timescale;
+    private long durationUs;
+    private int sampleCount;
+    private int maxSampleSize;
+    private int width;
+    private int height;
+    private int sampleRate;
+    private int channelCount;
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    public void setTrackId(int trackId) {
+        this.trackId = trackId;
+    }
+
+    /***
+     * @return one of {@link com.samsung.mixaudioandvideo.models.TrackType}
+     */
+    public int getTrackType() {
+        return trackType;
+    }
+
+    public void setTrackType(int trackType) {
+        this.trackType = trackType;
+    }
+
+    /***
+     * get four cc of the hdlr, e.g. vide or soun
+     */
+    public String getHandlerType() {
+        return handlerType;
+    }
+
+    public void setHandlerType(String handlerType) {
+        this.handlerType = handlerType;
+    }
+
+    /***
+     * get four cc of the first sample entry, e.g. avc1 or mp4a
+     */
+    public String getSampleEntryType() {
+        return sampleEntryType;
+    }
+
+    public void setSampleEntryType(String sampleEntryType) {
+        this.sampleEntryType = sampleEntryType;
+    }
+
+    /***
+     * get mime type as MediaFormat names it, null if the sample entry is unknown
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public int getTimescale() {
+        return timescale;
+    }
+
+    public void setTimescale(int timescale) {
+        this.timescale = timescale;
+    }
+
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    public void setDurationUs(long durationUs) {
+        this.durationUs = durationUs;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    /***
+     * get size of the largest sample, 0 if a fragmented file doesn't tell
+     */
+    public int getMaxSampleSize() {
+        return maxSampleSize;
+    }
+
+    public void setMaxSampleSize(int maxSampleSize) {
+        this.maxSampleSize = maxSampleSize;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public void setChannelCount(int channelCount) {
+        this.channelCount = channelCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp4TrackInfo{" +
+                "trackId=" + trackId +
+                ", sampleEntryType='" + sampleEntryType + '\'' +
+                ", durationUs=" + durationUs +
+                ", sampleCount=" + sampleCount +
+                '}';
+    }
+}
@@ -0,0 +1,88 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.util.Arrays;
+
+/***
+ * Sums blocks of 16 bit PCM from several tracks into one block.
+ * Every track is added with a gain which changes linearly over the block, for fades;
+ * the sum is kept in float and clipped once when the block is finished. Nothing is allocated per block.
+ */
+public class AudioMixer {
+    private final int mChannelCount;
+    private final float[] mAccumulator;
+    private int mFrames;
+
+    /***
+     * @param channelCount
+     * @param maxFrames    max frames of one block
+     */
+    public AudioMixer(int channelCount, int maxFrames) {
+        mChannelCount = channelCount;
+        mAccumulator = new float[channelCount * maxFrames];
+    }
+
+    public int getMaxFrames() {
+        return mAccumulator.length / mChannelCount;
+    }
+
+    /***
+     * get bytes of the block accumulator
+     */
+    public long getBufferBytes() {
+        return mAccumulator.length * 4L;
+    }
+
+    /***
+     * start a block of silence
+     */
+    public void begin(int frames) {
+        mFrames = frames;
+        Arrays.fill(mAccumulator, 0, frames * mChannelCount, 0f);
+    }
+
+    /***
+     * add frames of one track to the block
+     *
+     * @param src         interleaved samples
+     * @param srcOffset   offset in samples
+     * @param frames      number of frames to add
+     * @param frameOffset first frame of the block the track covers
+     * @param gainStart   gain at the first frame
+     * @param gainEnd     gain after the last frame
+     */
+    public void add(short[] src, int srcOffset, int frames, int frameOffset, float gainStart, float gainEnd) {
+        if (gainStart == 0f && gainEnd == 0f) {
+            return;
+        }
+        float gainStep = frames > 0 ? (gainEnd - gainStart) / frames : 0f;
+        float gain = gainStart;
+        int dst = frameOffset * mChannelCount;
+        int end = srcOffset + frames * mChannelCount;
+        for (int i = srcOffset; i < end; i += mChannelCount) {
+            for (int channel = 0; channel < mChannelCount; channel++) {
+                mAccumulator[dst++] += src[i + channel] * gain;
+            }
+            gain += gainStep;
+        }
+    }
+
+    /***
+     * finish the block, clipping the sum to 16 bit
+     *
+     * @return number of samples written
+     */
+    public int end(short[] dst) {
+        int count = mFrames * mChannelCount;
+        for (int i = 0; i < count; i++) {
+            float sample = mAccumulator[i];
+            if (sample > Short.MAX_VALUE) {
+                dst[i] = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                dst[i] = Short.MIN_VALUE;
+            } else {
+                dst[i] = (short) sample;
+            }
+        }
+        return count;
+    }
+}
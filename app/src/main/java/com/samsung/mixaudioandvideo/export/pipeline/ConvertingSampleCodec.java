@@ -0,0 +1,63 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * SampleCodec decorator for a decoder which converts every output buffer with a {@link PcmConverter},
+ * so the loops behind it see the audio in the format of the encoder.
+ * The converted samples live in one buffer of the converter: only one output buffer may be held at a time.
+ */
+public class ConvertingSampleCodec implements SampleCodec {
+    private final SampleCodec mDecoder;
+    private final PcmConverter mConverter;
+    private ByteBuffer mConverted;
+    private int mConvertedIndex = -1;
+
+    public ConvertingSampleCodec(SampleCodec decoder, PcmConverter converter) {
+        mDecoder = decoder;
+        mConverter = converter;
+    }
+
+    public SampleCodec getDecoder() {
+        return mDecoder;
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mDecoder.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return mDecoder.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mDecoder.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+        int index = mDecoder.dequeueOutputBuffer(info, timeoutUs);
+        if (index >= 0) {
+            mConverted = mConverter.convert(mDecoder.getOutputBuffer(index), info);
+            mConvertedIndex = index;
+        }
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return index == mConvertedIndex ? mConverted : mDecoder.getOutputBuffer(index);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        if (index == mConvertedIndex) {
+            mConvertedIndex = -1;
+            mConverted = null;
+        }
+        mDecoder.releaseOutputBuffer(index);
+    }
+}
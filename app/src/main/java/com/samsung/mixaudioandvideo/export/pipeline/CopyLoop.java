@@ -0,0 +1,62 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+
+/***
+ * Base of the loops which move samples from a source to a sink
+ */
+public abstract class CopyLoop {
+
+    public interface ProgressListener {
+        void onSampleWritten(long presentationTimeUs);
+    }
+
+    private volatile boolean mStopped;
+    protected ProgressListener mProgressListener;
+    protected long mSampleCount;
+    protected long mByteCount;
+    protected volatile long mBufferBytes;
+
+    public abstract void run() throws IOException;
+
+    public void stop() {
+        mStopped = true;
+    }
+
+    public boolean isStopped() {
+        return mStopped;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+    /***
+     * get number of samples written to the sink
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /***
+     * get number of bytes written to the sink
+     */
+    public long getByteCount() {
+        return mByteCount;
+    }
+
+    /***
+     * get bytes of sample buffers allocated by the loop, may be read from another thread while it runs
+     */
+    public long getBufferBytes() {
+        return mBufferBytes;
+    }
+
+    protected void onSampleWritten(SampleInfo info) {
+        mSampleCount++;
+        mByteCount += info.size;
+        if (mProgressListener != null) {
+            mProgressListener.onSampleWritten(info.presentationTimeUs);
+        }
+    }
+}
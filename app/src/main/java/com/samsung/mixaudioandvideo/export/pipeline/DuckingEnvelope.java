@@ -0,0 +1,58 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+/***
+ * Gain for the music of a mix, lowered while a key track (e.g. the original audio of the video) is loud.
+ * Computed block by block from the key track level, with a fast attack and a slow release,
+ * so it needs no look ahead and no memory beyond the current gain.
+ */
+public class DuckingEnvelope {
+    public static final float DEFAULT_THRESHOLD_DB = -35f;
+    public static final float DEFAULT_DUCKED_GAIN = 0.25f;
+    public static final long DEFAULT_ATTACK_US = 50000L;
+    public static final long DEFAULT_RELEASE_US = 600000L;
+
+    private final float mThreshold;
+    private final float mDuckedGain;
+    private final long mAttackUs;
+    private final long mReleaseUs;
+    private float mGain = 1f;
+
+    public DuckingEnvelope() {
+        this(DEFAULT_THRESHOLD_DB, DEFAULT_DUCKED_GAIN, DEFAULT_ATTACK_US, DEFAULT_RELEASE_US);
+    }
+
+    /***
+     * @param thresholdDb key track rms level, in dB of full scale, above which the music is ducked
+     * @param duckedGain  music gain while ducked
+     * @param attackUs    time constant of lowering the music
+     * @param releaseUs   time constant of bringing the music back
+     */
+    public DuckingEnvelope(float thresholdDb, float duckedGain, long attackUs, long releaseUs) {
+        mThreshold = (float) Math.pow(10, thresholdDb / 20.0) * Short.MAX_VALUE;
+        mDuckedGain = duckedGain;
+        mAttackUs = Math.max(1, attackUs);
+        mReleaseUs = Math.max(1, releaseUs);
+    }
+
+    /***
+     * get current gain, i.e. the gain at the start of the next block
+     */
+    public float getGain() {
+        return mGain;
+    }
+
+    /***
+     * move the gain by one block
+     *
+     * @param keyRms     rms of the key track over the block, in 16 bit sample units
+     * @param durationUs duration of the block
+     * @return gain at the end of the block
+     */
+    public float update(double keyRms, long durationUs) {
+        float target = keyRms > mThreshold ? mDuckedGain : 1f;
+        long timeConstantUs = target < mGain ? mAttackUs : mReleaseUs;
+        float coefficient = (float) Math.exp(-(double) durationUs / timeConstantUs);
+        mGain = target + (mGain - target) * coefficient;
+        return mGain;
+    }
+}
@@ -0,0 +1,51 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+/***
+ * Growable FIFO of ints, used for codec buffer indices to avoid boxing in the hot loops
+ */
+public class IntQueue {
+    private int[] mItems;
+    private int mHead;
+    private int mSize;
+
+    public IntQueue(int initialCapacity) {
+        mItems = new int[Math.max(1, initialCapacity)];
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void add(int item) {
+        if (mSize == mItems.length) {
+            int[] items = new int[mItems.length * 2];
+            for (int i = 0; i < mSize; i++) {
+                items[i] = mItems[(mHead + i) % mItems.length];
+            }
+            mItems = items;
+            mHead = 0;
+        }
+        mItems[(mHead + mSize) % mItems.length] = item;
+        mSize++;
+    }
+
+    public int peek() {
+        return mItems[mHead];
+    }
+
+    public int poll() {
+        int item = mItems[mHead];
+        mHead = (mHead + 1) % mItems.length;
+        mSize--;
+        return item;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+}
@@ -0,0 +1,289 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * Single writer in front of a muxer.
+ * Every track has its own producer thread and a bounded queue; the writer takes samples from the queues
+ * in presentation time order, writing up to interleaveWindowUs of one track before switching to another.
+ * A queue is bounded by samples and by bytes: the copies are packed one after another into a direct arena
+ * of the track, so a few key frames don't make every slot as big as the largest sample.
+ * Only the writer thread touches the downstream sink.
+ */
+public class InterleavingMuxerStage implements SampleSink {
+    // arena of a track whose size isn't set, per sample of the queue
+    private static final int DEFAULT_BYTES_PER_SAMPLE = 4096;
+
+    private final SampleSink mSink;
+    private final long mInterleaveWindowUs;
+    private final TrackQueue[] mQueues;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mSampleAvailable = mLock.newCondition();
+    private final Condition mSlotAvailable = mLock.newCondition();
+    private volatile boolean mStopped;
+    private volatile boolean mFailed;
+    private long mAllocatedBytes;
+
+    /***
+     * @param sink               downstream sink, only called from the writer thread
+     * @param trackCount         tracks are numbered 0 .. trackCount - 1
+     * @param queueCapacity      max samples buffered per track before the producer blocks
+     * @param interleaveWindowUs max duration of one track written in a row, 0 for strict time order
+     */
+    public InterleavingMuxerStage(SampleSink sink, int trackCount, int queueCapacity, long interleaveWindowUs) {
+        mSink = sink;
+        mInterleaveWindowUs = Math.max(0, interleaveWindowUs);
+        mQueues = new TrackQueue[trackCount];
+        for (int i = 0; i < trackCount; i++) {
+            mQueues[i] = new TrackQueue(queueCapacity, queueCapacity * DEFAULT_BYTES_PER_SAMPLE);
+        }
+    }
+
+    /***
+     * set size of the arena the queued samples of a track are copied into, before the first sample of the track.
+     * A sample larger than the arena waits until the queue is empty and gets an arena of its size.
+     */
+    public void setQueueBytes(int trackIndex, int queueBytes) {
+        mLock.lock();
+        try {
+            mQueues[trackIndex].mArenaSize = Math.max(1, queueBytes);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /***
+     * Queue a copy of the sample, blocking while the track queue is full.
+     * Called by the producer of the track; consumes the buffer position.
+     */
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) throws IOException {
+        TrackQueue queue = mQueues[trackIndex];
+        // an empty sample takes a byte, so a full arena is never mistaken for an empty one
+        int length = Math.max(1, info.size);
+        int tail;
+        int start = 0;
+        mLock.lock();
+        try {
+            while (!mStopped && (start = queue.findSpace(length)) < 0) {
+                mSlotAvailable.awaitUninterruptibly();
+            }
+            if (mStopped) {
+                if (mFailed) {
+                    throw new IOException("muxer stage failed");
+                }
+                return;
+            }
+            if (queue.mArena == null || queue.mArena.capacity() < length) {
+                // the queue is empty, nothing refers to the old arena any more
+                int capacity = Math.max(queue.mArenaSize, length);
+                mAllocatedBytes += capacity - (queue.mArena == null ? 0 : queue.mArena.capacity());
+                queue.mArena = ByteBuffer.allocateDirect(capacity);
+                for (int i = 0; i < queue.mSlots.length; i++) {
+                    queue.mSlots[i] = queue.mArena.duplicate();
+                }
+                start = 0;
+            }
+            // the tail slot and its bytes belong to this producer until it is published
+            tail = (queue.mHead + queue.mSize) % queue.mSlots.length;
+        } finally {
+            mLock.unlock();
+        }
+
+        ByteBuffer slot = queue.mSlots[tail];
+        slot.limit(start + info.size);
+        slot.position(start);
+        buffer.limit(info.offset + info.size);
+        buffer.position(info.offset);
+        slot.put(buffer);
+        slot.position(start);
+        queue.mInfos[tail].set(start, info.size, info.presentationTimeUs, info.flags);
+        queue.mStarts[tail] = start;
+
+        mLock.lock();
+        try {
+            queue.mEnd = start + length;
+            queue.mSize++;
+            mSampleAvailable.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /***
+     * Mark the track as finished, called by the producer once it won't write any more samples
+     */
+    public void endOfTrack(int trackIndex) {
+        mLock.lock();
+        try {
+            mQueues[trackIndex].mEnded = true;
+            mSampleAvailable.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /***
+     * Writer loop, returns once every track is ended and drained or the stage is stopped
+     */
+    public void run() throws IOException {
+        int currentTrack = -1;
+        long chunkEndUs = 0;
+
+        while (true) {
+            int track;
+            mLock.lock();
+            try {
+                while (true) {
+                    if (mStopped) {
+                        return;
+                    }
+                    TrackQueue current = currentTrack >= 0 ? mQueues[currentTrack] : null;
+                    if (current != null && current.mSize > 0 && current.headTimeUs() < chunkEndUs) {
+                        track = currentTrack;
+                        break;
+                    }
+                    if (isEveryTrackReady()) {
+                        track = getEarliestTrack();
+                        if (track < 0) {
+                            return; // every track is ended and drained
+                        }
+                        currentTrack = track;
+                        chunkEndUs = mQueues[track].headTimeUs() + mInterleaveWindowUs;
+                        break;
+                    }
+                    mSampleAvailable.awaitUninterruptibly();
+                }
+            } finally {
+                mLock.unlock();
+            }
+
+            TrackQueue queue = mQueues[track];
+            try {
+                mSink.writeSampleData(track, queue.mSlots[queue.mHead], queue.mInfos[queue.mHead]);
+            } catch (IOException | RuntimeException ex) {
+                fail();
+                throw ex;
+            }
+
+            mLock.lock();
+            try {
+                queue.mHead = (queue.mHead + 1) % queue.mSlots.length;
+                queue.mSize--;
+                mSlotAvailable.signalAll();
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    /***
+     * Stop the writer and release blocked producers, queued samples are dropped
+     */
+    public void stop() {
+        mLock.lock();
+        try {
+            mStopped = true;
+            mSampleAvailable.signalAll();
+            mSlotAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /***
+     * get bytes allocated for queued sample copies
+     */
+    public long getAllocatedBytes() {
+        mLock.lock();
+        try {
+            return mAllocatedBytes;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void fail() {
+        mFailed = true;
+        stop();
+    }
+
+    private boolean isEveryTrackReady() {
+        for (TrackQueue queue : mQueues) {
+            if (queue.mSize == 0 && !queue.mEnded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getEarliestTrack() {
+        int earliest = -1;
+        for (int i = 0; i < mQueues.length; i++) {
+            TrackQueue queue = mQueues[i];
+            if (queue.mSize > 0 && (earliest < 0 || queue.headTimeUs() < mQueues[earliest].headTimeUs())) {
+                earliest = i;
+            }
+        }
+        return earliest;
+    }
+
+    /***
+     * Ring of the queued samples of one track, their bytes in a ring of the same order in the arena.
+     * Everything but the slot contents is guarded by the stage lock; slot contents belong to the producer
+     * until published and to the writer until released.
+     */
+    private static class TrackQueue {
+        final ByteBuffer[] mSlots;
+        final SampleInfo[] mInfos;
+        final int[] mStarts;
+        ByteBuffer mArena;
+        int mArenaSize;
+        // end of the bytes of the last queued sample in the arena
+        int mEnd;
+        int mHead;
+        int mSize;
+        boolean mEnded;
+
+        TrackQueue(int capacity, int arenaSize) {
+            mSlots = new ByteBuffer[capacity];
+            mInfos = new SampleInfo[capacity];
+            mStarts = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                mInfos[i] = new SampleInfo();
+            }
+            mArenaSize = arenaSize;
+        }
+
+        long headTimeUs() {
+            return mInfos[mHead].presentationTimeUs;
+        }
+
+        /***
+         * find where the next sample fits in the arena
+         *
+         * @return start of the free bytes, 0 as well if the arena has to be made first, -1 if the sample has to wait
+         */
+        int findSpace(int length) {
+            if (mSize == 0) {
+                return 0;
+            }
+            if (mSize == mSlots.length || mArena.capacity() < length) {
+                return -1;
+            }
+            int headStart = mStarts[mHead];
+            if (mEnd > headStart) {
+                // the bytes in use don't wrap, there is room behind them or in front of the head
+                if (mArena.capacity() - mEnd >= length) {
+                    return mEnd;
+                }
+                return headStart > length ? 0 : -1;
+            }
+            // the bytes in use wrap, the room is between them
+            return headStart - mEnd > length ? mEnd : -1;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+/***
+ * Histogram of latencies with power of two microsecond buckets: [0, 1), [1, 2), [2, 4), [4, 8) ...
+ * Recording is allocation free; one thread records, others may read once recording is done.
+ */
+public class LatencyHistogram {
+    private static final int BUCKET_COUNT = 32;
+
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mTotalUs;
+    private long mMaxUs;
+
+    public void record(long latencyNs) {
+        long latencyUs = Math.max(0, latencyNs / 1000);
+        int bucket = latencyUs == 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(latencyUs));
+        mBuckets[bucket]++;
+        mCount++;
+        mTotalUs += latencyUs;
+        mMaxUs = Math.max(mMaxUs, latencyUs);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getTotalUs() {
+        return mTotalUs;
+    }
+
+    public long getMaxUs() {
+        return mMaxUs;
+    }
+
+    /***
+     * get upper bound of the bucket holding the given percentile
+     *
+     * @param percentile 0 - 100
+     * @return latency in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentileUs(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank && mBuckets[i] > 0) {
+                return Math.min(1L << i, mMaxUs);
+            }
+        }
+        return mMaxUs;
+    }
+
+    /***
+     * get number of latencies in each bucket, bucket i holds [2^(i-1), 2^i) microseconds
+     */
+    public long[] getBuckets() {
+        return mBuckets.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + mCount +
+                ", p50<=" + getPercentileUs(50) + "us" +
+                ", p90<=" + getPercentileUs(90) + "us" +
+                ", p99<=" + getPercentileUs(99) + "us" +
+                ", max=" + mMaxUs + "us";
+    }
+}
@@ -0,0 +1,94 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Copy samples of the source to the sink without decoding,
+ * starting over from the beginning of the source until the target duration is filled.
+ * With an index memory limit the samples of the first pass are kept, and the following loops are
+ * written from the index with shifted times instead of reading the source again.
+ * Samples are compressed, so only the ones which end inside the target duration are written.
+ */
+public class LoopingCopyLoop extends CopyLoop {
+    private final SampleSource mSource;
+    private final SampleSink mSink;
+    private final int mTrackIndex;
+    private final long mDurationUs;
+    private final ByteBuffer mBuffer;
+    private final SampleInfo mInfo = new SampleInfo();
+    private final long mIndexMemoryLimit;
+
+    public LoopingCopyLoop(SampleSource source, SampleSink sink, int trackIndex, int maxSampleSize, long durationUs) {
+        this(source, sink, trackIndex, maxSampleSize, durationUs, 0);
+    }
+
+    /***
+     * @param indexMemoryLimit max bytes of samples kept for the following loops, 0 to read the source every loop
+     */
+    public LoopingCopyLoop(SampleSource source, SampleSink sink, int trackIndex, int maxSampleSize, long durationUs,
+                           long indexMemoryLimit) {
+        mSource = source;
+        mSink = sink;
+        mTrackIndex = trackIndex;
+        mDurationUs = durationUs;
+        mBuffer = ByteBuffer.allocateDirect(maxSampleSize);
+        mBufferBytes = maxSampleSize;
+        mIndexMemoryLimit = indexMemoryLimit;
+    }
+
+    @Override
+    public void run() throws IOException {
+        LoopingSampleReader reader = new LoopingSampleReader(mSource, mDurationUs);
+        reader.setWholeSamplesOnly(true);
+        SampleIndex index = mIndexMemoryLimit > 0 ? new SampleIndex(mIndexMemoryLimit) : null;
+
+        while (!isStopped()) {
+            int size = reader.readSampleData(mBuffer, 0);
+            if (size < 0) {
+                break;
+            }
+
+            if (index != null && reader.getLoopCount() > 0) {
+                // the first pass is complete, the sample just read is written again from the index
+                mBufferBytes += index.getDataSize();
+                writeLoopsFromIndex(index, reader.getLoopOffsetUs());
+                return;
+            }
+
+            mInfo.set(0, size, reader.getSampleTime(), reader.getSampleFlags());
+            if (index != null && !index.add(mBuffer, mInfo)) {
+                mBufferBytes += index.getDataSize();
+                index = null; // too large, keep reading the source
+            }
+            mSink.writeSampleData(mTrackIndex, mBuffer, mInfo);
+            onSampleWritten(mInfo);
+            reader.advance();
+        }
+    }
+
+    /***
+     * write the indexed samples over and over, each loop shifted by the loop duration
+     */
+    private void writeLoopsFromIndex(SampleIndex index, long loopDurationUs) throws IOException {
+        ByteBuffer buffer = index.getBuffer();
+        int sampleCount = index.getSampleCount();
+
+        for (long loopOffsetUs = loopDurationUs; loopOffsetUs < mDurationUs; loopOffsetUs += loopDurationUs) {
+            for (int i = 0; i < sampleCount; i++) {
+                if (isStopped()) {
+                    return;
+                }
+                // only whole samples inside the target duration, like the reader
+                long sampleEndUs = i + 1 < sampleCount ? index.getSampleTime(i + 1) : loopDurationUs;
+                if (loopOffsetUs + sampleEndUs > mDurationUs) {
+                    return;
+                }
+                index.getSample(i, mInfo);
+                mInfo.presentationTimeUs += loopOffsetUs;
+                mSink.writeSampleData(mTrackIndex, buffer, mInfo);
+                onSampleWritten(mInfo);
+            }
+        }
+    }
+}
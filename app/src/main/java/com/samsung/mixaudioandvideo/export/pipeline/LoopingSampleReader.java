@@ -0,0 +1,111 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Reads samples of a source over and over from the beginning until a target duration is filled.
+ * Sample times are returned on the output timeline, i.e. offset by the duration of the previous loops.
+ */
+public class LoopingSampleReader {
+    private final SampleSource mSource;
+    private final long mDurationUs;
+    private long mLoopOffsetUs = 0;
+    private long mLastSampleTimeUs = -1;
+    private long mLastSampleDurationUs = 0;
+    private long mSampleTimeUs;
+    private int mSampleFlags;
+    private int mLoopCount;
+    private boolean mEnded;
+    private boolean mLoopEnabled = true;
+    private boolean mWholeSamplesOnly;
+
+    public LoopingSampleReader(SampleSource source, long durationUs) {
+        mSource = source;
+        mDurationUs = durationUs;
+    }
+
+    /***
+     * disable starting over, the reader then ends with the source
+     * (used when the following loops are served from a cache instead)
+     */
+    public void setLoopEnabled(boolean loopEnabled) {
+        mLoopEnabled = loopEnabled;
+    }
+
+    /***
+     * end before a sample which would run past the target duration, instead of after it.
+     * For compressed samples which can't be cut; the sample duration is taken from the previous sample.
+     */
+    public void setWholeSamplesOnly(boolean wholeSamplesOnly) {
+        mWholeSamplesOnly = wholeSamplesOnly;
+    }
+
+    /***
+     * read current sample into buffer
+     *
+     * @param buffer
+     * @param offset
+     * @return sample size, -1 once the target duration is filled
+     */
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        if (mEnded) {
+            return -1;
+        }
+
+        int size = mSource.readSampleData(buffer, offset);
+        if (size < 0 && mLoopEnabled && mLastSampleTimeUs >= 0) {
+            // end of source: start over if the target duration isn't filled yet
+            long loopDurationUs = mLastSampleTimeUs + mLastSampleDurationUs;
+            if (loopDurationUs > 0 && mLoopOffsetUs + loopDurationUs < mDurationUs) {
+                mLoopOffsetUs += loopDurationUs;
+                mLoopCount++;
+                mSource.seekTo(0);
+                size = mSource.readSampleData(buffer, offset);
+            }
+        }
+
+        long sampleTimeUs = mLoopOffsetUs + mSource.getSampleTime();
+        long sampleEndUs = mWholeSamplesOnly ? sampleTimeUs + mLastSampleDurationUs : sampleTimeUs;
+        if (size < 0 || sampleEndUs > mDurationUs) {
+            mEnded = true;
+            return -1;
+        }
+        mSampleTimeUs = sampleTimeUs;
+        mSampleFlags = mSource.getSampleFlags();
+        return size;
+    }
+
+    /***
+     * get presentation time of the current sample on the output timeline
+     */
+    public long getSampleTime() {
+        return mSampleTimeUs;
+    }
+
+    public int getSampleFlags() {
+        return mSampleFlags;
+    }
+
+    public void advance() {
+        long sampleTimeUs = mSampleTimeUs - mLoopOffsetUs;
+        if (sampleTimeUs > mLastSampleTimeUs && mLastSampleTimeUs >= 0) {
+            mLastSampleDurationUs = sampleTimeUs - mLastSampleTimeUs;
+        }
+        mLastSampleTimeUs = sampleTimeUs;
+        mSource.advance();
+    }
+
+    /***
+     * get time added to the source times of the current loop, i.e. the total duration of the previous loops
+     */
+    public long getLoopOffsetUs() {
+        return mLoopOffsetUs;
+    }
+
+    /***
+     * get number of times the source was started over
+     */
+    public int getLoopCount() {
+        return mLoopCount;
+    }
+}
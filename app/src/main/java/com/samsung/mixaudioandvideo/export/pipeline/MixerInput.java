@@ -0,0 +1,263 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * One track of {@link MixingTranscodeLoop}: a source and its decoder, decoding ahead into a PCM ring buffer,
+ * placed on the output timeline at a start offset with a gain and fades.
+ */
+public class MixerInput {
+    private static final int RING_FRAMES = 8192;
+
+    private final SampleSource mSource;
+    private final SampleCodec mDecoder;
+    private final PcmFormat mFormat;
+    private final PcmRingBuffer mRing;
+    private final SampleInfo mInfo = new SampleInfo();
+    private LoopingSampleReader mReader;
+
+    private long mStartOffsetUs;
+    private long mSkipBytes;
+    private long mDurationUs = Long.MAX_VALUE;
+    private boolean mLoop;
+    private float mGain = 1f;
+    private long mFadeInUs;
+    private long mFadeOutUs;
+    private boolean mDuckingKey;
+    private double mBlockSquareSum;
+    private int mBlockSampleCount;
+
+    // output timeline in frames, set by prepare
+    private long mStartFrame;
+    private long mEndFrame;
+    private long mFadeInFrames;
+    private long mFadeOutFrames;
+
+    private int mPendingBufferId = -1;
+    private ByteBuffer mPendingBuffer;
+    private int mPendingConsumed;
+    private boolean allInputExtracted;
+    private boolean allInputDecoded;
+
+    /***
+     * @param source
+     * @param decoder started decoder of the source
+     * @param format  format of the decoded audio, the same for every input of a mix
+     */
+    public MixerInput(SampleSource source, SampleCodec decoder, PcmFormat format) {
+        mSource = source;
+        mDecoder = decoder;
+        mFormat = format;
+        mRing = new PcmRingBuffer(RING_FRAMES * format.getChannelCount());
+    }
+
+    /***
+     * place the track on the output timeline
+     */
+    public void setStartOffsetUs(long startOffsetUs) {
+        mStartOffsetUs = Math.max(0, startOffsetUs);
+    }
+
+    /***
+     * drop the start of the decoded audio, e.g. from the sample a trimmed source starts at to the start of the range
+     */
+    public void setSkipUs(long skipUs) {
+        mSkipBytes = mFormat.durationUsToBytes(Math.max(0, skipUs));
+    }
+
+    /***
+     * limit the duration the track plays, by default until the source ends (or the output ends if looped)
+     */
+    public void setDurationUs(long durationUs) {
+        mDurationUs = durationUs;
+    }
+
+    /***
+     * start the source over until the end of the output (or the track duration)
+     */
+    public void setLoop(boolean loop) {
+        mLoop = loop;
+    }
+
+    public void setGain(float gain) {
+        mGain = gain;
+    }
+
+    public void setFade(long fadeInUs, long fadeOutUs) {
+        mFadeInUs = Math.max(0, fadeInUs);
+        mFadeOutUs = Math.max(0, fadeOutUs);
+    }
+
+    /***
+     * let the level of this track duck the other tracks of the mix, e.g. for the original audio of the video
+     */
+    public void setDuckingKey(boolean duckingKey) {
+        mDuckingKey = duckingKey;
+    }
+
+    public boolean isDuckingKey() {
+        return mDuckingKey;
+    }
+
+    public PcmFormat getFormat() {
+        return mFormat;
+    }
+
+    /***
+     * get bytes of the ring the track decodes ahead into
+     */
+    public long getBufferBytes() {
+        return mRing.getCapacity() * 2L;
+    }
+
+    /***
+     * compute the frames the track covers in an output of the given duration
+     */
+    void prepare(long outputDurationUs) {
+        long durationUs = Math.min(mDurationUs, outputDurationUs - mStartOffsetUs);
+        mReader = new LoopingSampleReader(mSource, Math.max(0, durationUs));
+        mReader.setLoopEnabled(mLoop);
+        mStartFrame = usToFrames(mStartOffsetUs);
+        // a track which isn't looped may end earlier, then the end is found when its decoder ends
+        mEndFrame = mStartFrame + usToFrames(Math.max(0, durationUs));
+        mFadeInFrames = usToFrames(mFadeInUs);
+        mFadeOutFrames = usToFrames(mFadeOutUs);
+    }
+
+    /***
+     * feed the decoder and move its output into the ring buffer, without waiting
+     *
+     * @return true if anything moved
+     */
+    boolean pump() {
+        boolean progress = false;
+
+        if (!allInputExtracted) {
+            int inBufferId = mDecoder.dequeueInputBuffer(0);
+            if (inBufferId >= 0) {
+                ByteBuffer buffer = mDecoder.getInputBuffer(inBufferId);
+                int sampleSize = mReader.readSampleData(buffer, 0);
+                if (sampleSize < 0) {
+                    mDecoder.queueInputBuffer(inBufferId, 0, 0, 0, SampleInfo.FLAG_END_OF_STREAM);
+                    allInputExtracted = true;
+                } else {
+                    mDecoder.queueInputBuffer(inBufferId, 0, sampleSize, mReader.getSampleTime(), mReader.getSampleFlags());
+                    mReader.advance();
+                }
+                progress = true;
+            }
+        }
+
+        if (mPendingBufferId < 0 && !allInputDecoded) {
+            int outBufferId = mDecoder.dequeueOutputBuffer(mInfo, 0);
+            if (outBufferId >= 0) {
+                mPendingBufferId = outBufferId;
+                mPendingBuffer = mDecoder.getOutputBuffer(outBufferId);
+                mPendingConsumed = 0;
+                progress = true;
+            }
+        }
+
+        if (mPendingBufferId >= 0 && mSkipBytes > 0) {
+            int skipped = (int) Math.min(mSkipBytes, mInfo.size - mPendingConsumed);
+            mPendingConsumed += skipped;
+            mSkipBytes -= skipped;
+        }
+
+        if (mPendingBufferId >= 0) {
+            int copied = mRing.write(mPendingBuffer, mInfo.offset + mPendingConsumed, mInfo.size - mPendingConsumed);
+            mPendingConsumed += copied;
+            // an odd trailing byte can't be used, drop it with the buffer
+            if (mInfo.size - mPendingConsumed < 2) {
+                mDecoder.releaseOutputBuffer(mPendingBufferId);
+                mPendingBufferId = -1;
+                mPendingBuffer = null;
+                allInputDecoded = mInfo.isEndOfStream();
+                progress = true;
+            } else if (copied > 0) {
+                progress = true;
+            }
+        }
+        return progress;
+    }
+
+    /***
+     * check if the track has decoded enough to mix the output frames [startFrame, startFrame + frames)
+     */
+    boolean isReady(long startFrame, int frames) {
+        return allInputDecoded || mRing.size() >= getNeededFrames(startFrame, frames) * mFormat.getChannelCount();
+    }
+
+    /***
+     * add the track's part of the output frames [startFrame, startFrame + frames) to the mixer
+     *
+     * @param scratch   samples of at least frames * channels
+     * @param duckStart extra gain at the first frame of the block, for ducking
+     * @param duckEnd   extra gain after the last frame of the block
+     */
+    void mixInto(AudioMixer mixer, long startFrame, int frames, short[] scratch, float duckStart, float duckEnd) {
+        mBlockSquareSum = 0;
+        mBlockSampleCount = 0;
+        int neededFrames = getNeededFrames(startFrame, frames);
+        if (neededFrames == 0) {
+            return;
+        }
+        int channelCount = mFormat.getChannelCount();
+        int readFrames = mRing.read(scratch, 0, neededFrames * channelCount) / channelCount;
+        if (readFrames < neededFrames && allInputDecoded) {
+            // the source ended before its duration
+            mEndFrame = Math.min(mEndFrame, Math.max(startFrame, mStartFrame) + readFrames);
+        }
+
+        if (mDuckingKey) {
+            int samples = readFrames * channelCount;
+            double squareSum = 0;
+            for (int i = 0; i < samples; i++) {
+                squareSum += scratch[i] * scratch[i];
+            }
+            mBlockSquareSum = squareSum * mGain * mGain;
+            mBlockSampleCount = samples;
+        }
+
+        long firstFrame = Math.max(startFrame, mStartFrame);
+        mixer.add(scratch, 0, readFrames, (int) (firstFrame - startFrame),
+                getGain(firstFrame) * duckStart, getGain(firstFrame + readFrames) * duckEnd);
+    }
+
+    /***
+     * get sum of squared samples (after the track gain) of the last mixed block, only for a ducking key
+     */
+    double getBlockSquareSum() {
+        return mBlockSquareSum;
+    }
+
+    int getBlockSampleCount() {
+        return mBlockSampleCount;
+    }
+
+    private int getNeededFrames(long startFrame, int frames) {
+        long first = Math.max(startFrame, mStartFrame);
+        long end = Math.min(startFrame + frames, mEndFrame);
+        return (int) Math.max(0, end - first);
+    }
+
+    /***
+     * get gain at an output frame, including the fades
+     */
+    private float getGain(long frame) {
+        float gain = mGain;
+        long fromStart = frame - mStartFrame;
+        if (fromStart < mFadeInFrames) {
+            gain *= (float) Math.max(0, fromStart) / mFadeInFrames;
+        }
+        long toEnd = mEndFrame - frame;
+        if (toEnd < mFadeOutFrames) {
+            gain *= (float) Math.max(0, toEnd) / mFadeOutFrames;
+        }
+        return gain;
+    }
+
+    private long usToFrames(long timeUs) {
+        return timeUs * mFormat.getSampleRate() / 1000000L;
+    }
+}
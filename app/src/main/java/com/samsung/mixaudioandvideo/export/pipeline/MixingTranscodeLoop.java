@@ -0,0 +1,165 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Decode several audio tracks, mix them block by block and encode the mix once.
+ * The output is exactly durationUs long; tracks which haven't started or have ended contribute silence.
+ * With a ducking envelope the ducking key tracks are mixed first and their level lowers the other tracks.
+ */
+public class MixingTranscodeLoop extends CopyLoop {
+    private static final long TIMEOUT_US = 1000L;
+    private static final int BLOCK_FRAMES = 2048;
+
+    private final List<MixerInput> mInputs;
+    private final SampleCodec mEncoder;
+    private final SampleSink mSink;
+    private final int mTrackIndex;
+    private final PcmFormat mFormat;
+    private final long mTotalFrames;
+    private final AudioMixer mMixer;
+    private final short[] mScratch;
+    private final short[] mMixed;
+    private final SampleInfo mEncoderInfo = new SampleInfo();
+    private DuckingEnvelope mDucking;
+
+    private long mMixedFrames;
+    private int mEncoderInputId = -1;
+    private ByteBuffer mEncoderInput;
+    private boolean allInputMixed = false;
+    private boolean allOutputEncoded = false;
+
+    /***
+     * @param inputs     tracks to mix, all decoding to pcmFormat
+     * @param encoder    started encoder taking pcmFormat
+     * @param sink
+     * @param trackIndex
+     * @param durationUs duration of the mix
+     * @param pcmFormat
+     */
+    public MixingTranscodeLoop(List<MixerInput> inputs, SampleCodec encoder, SampleSink sink, int trackIndex,
+                               long durationUs, PcmFormat pcmFormat) {
+        mInputs = new ArrayList<>(inputs);
+        mEncoder = encoder;
+        mSink = sink;
+        mTrackIndex = trackIndex;
+        mFormat = pcmFormat;
+        mTotalFrames = durationUs * pcmFormat.getSampleRate() / 1000000L;
+        mMixer = new AudioMixer(pcmFormat.getChannelCount(), BLOCK_FRAMES);
+        mScratch = new short[BLOCK_FRAMES * pcmFormat.getChannelCount()];
+        mMixed = new short[BLOCK_FRAMES * pcmFormat.getChannelCount()];
+        mBufferBytes = (mScratch.length + mMixed.length) * 2L + mMixer.getBufferBytes();
+        for (MixerInput input : mInputs) {
+            input.prepare(durationUs);
+            mBufferBytes += input.getBufferBytes();
+        }
+    }
+
+    /***
+     * duck the tracks which aren't a ducking key while a key track is loud
+     */
+    public void setDucking(DuckingEnvelope ducking) {
+        mDucking = ducking;
+    }
+
+    @Override
+    public void run() throws IOException {
+        while (!allOutputEncoded && !isStopped()) {
+            // decode ahead on every track
+            for (MixerInput input : mInputs) {
+                input.pump();
+            }
+
+            // mix the next block into the encoder
+            feedMixToEncoder();
+
+            // drain encoder & write output data
+            drainEncoder();
+        }
+    }
+
+    private void feedMixToEncoder() {
+        if (allInputMixed) {
+            return;
+        }
+
+        // the encoder buffer is kept until every track has decoded far enough
+        if (mEncoderInputId < 0) {
+            mEncoderInputId = mEncoder.dequeueInputBuffer(0);
+            if (mEncoderInputId < 0) {
+                return;
+            }
+            mEncoderInput = mEncoder.getInputBuffer(mEncoderInputId);
+        }
+
+        int frameSize = mFormat.getFrameSize();
+        int frames = (int) Math.min(Math.min(BLOCK_FRAMES, mEncoderInput.remaining() / frameSize), mTotalFrames - mMixedFrames);
+        for (MixerInput input : mInputs) {
+            if (!input.isReady(mMixedFrames, frames)) {
+                return;
+            }
+        }
+
+        mMixer.begin(frames);
+        if (mDucking == null) {
+            for (MixerInput input : mInputs) {
+                input.mixInto(mMixer, mMixedFrames, frames, mScratch, 1f, 1f);
+            }
+        } else {
+            mixDucked(frames);
+        }
+        int samples = mMixer.end(mMixed);
+        mEncoderInput.order(ByteOrder.nativeOrder()).asShortBuffer().put(mMixed, 0, samples);
+
+        long presentationTimeUs = mMixedFrames * 1000000L / mFormat.getSampleRate();
+        mMixedFrames += frames;
+        allInputMixed = mMixedFrames >= mTotalFrames;
+        mEncoder.queueInputBuffer(mEncoderInputId, 0, frames * frameSize, presentationTimeUs,
+                allInputMixed ? SampleInfo.FLAG_END_OF_STREAM : 0);
+        mEncoderInputId = -1;
+        mEncoderInput = null;
+    }
+
+    /***
+     * mix the key tracks, move the envelope by their level, then mix the other tracks with the envelope
+     */
+    private void mixDucked(int frames) {
+        double squareSum = 0;
+        int sampleCount = 0;
+        for (MixerInput input : mInputs) {
+            if (input.isDuckingKey()) {
+                input.mixInto(mMixer, mMixedFrames, frames, mScratch, 1f, 1f);
+                squareSum += input.getBlockSquareSum();
+                sampleCount += input.getBlockSampleCount();
+            }
+        }
+
+        double keyRms = sampleCount > 0 ? Math.sqrt(squareSum / sampleCount) : 0;
+        float duckStart = mDucking.getGain();
+        float duckEnd = mDucking.update(keyRms, frames * 1000000L / mFormat.getSampleRate());
+        for (MixerInput input : mInputs) {
+            if (!input.isDuckingKey()) {
+                input.mixInto(mMixer, mMixedFrames, frames, mScratch, duckStart, duckEnd);
+            }
+        }
+    }
+
+    private void drainEncoder() throws IOException {
+        int outBufferId = mEncoder.dequeueOutputBuffer(mEncoderInfo, TIMEOUT_US);
+        if (outBufferId < 0) {
+            return;
+        }
+
+        // the end of stream buffer is usually empty, there is nothing to mux then
+        if (mEncoderInfo.size > 0) {
+            mSink.writeSampleData(mTrackIndex, mEncoder.getOutputBuffer(outBufferId), mEncoderInfo);
+            onSampleWritten(mEncoderInfo);
+        }
+        mEncoder.releaseOutputBuffer(outBufferId);
+        allOutputEncoded = mEncoderInfo.isEndOfStream();
+    }
+}
@@ -0,0 +1,37 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Copy every sample of the source to the sink without decoding
+ */
+public class PassthroughCopyLoop extends CopyLoop {
+    private final SampleSource mSource;
+    private final SampleSink mSink;
+    private final int mTrackIndex;
+    private final ByteBuffer mBuffer;
+    private final SampleInfo mInfo = new SampleInfo();
+
+    public PassthroughCopyLoop(SampleSource source, SampleSink sink, int trackIndex, int maxSampleSize) {
+        mSource = source;
+        mSink = sink;
+        mTrackIndex = trackIndex;
+        mBuffer = ByteBuffer.allocateDirect(maxSampleSize);
+        mBufferBytes = maxSampleSize;
+    }
+
+    @Override
+    public void run() throws IOException {
+        while (!isStopped()) {
+            int size = mSource.readSampleData(mBuffer, 0);
+            if (size < 0) { // last sample
+                break;
+            }
+            mInfo.set(0, size, mSource.getSampleTime(), mSource.getSampleFlags());
+            mSink.writeSampleData(mTrackIndex, mBuffer, mInfo);
+            onSampleWritten(mInfo);
+            mSource.advance();
+        }
+    }
+}
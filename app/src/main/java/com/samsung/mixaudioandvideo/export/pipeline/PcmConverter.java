@@ -0,0 +1,366 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/***
+ * Streaming conversion of decoded PCM to the 16 bit format the encoder takes:
+ * sample encoding, down mix (or up mix of mono) and sample rate.
+ * The sample rate is converted with a windowed sinc filter, keeping only the last few input frames between calls,
+ * so buffers of any size can be fed one after the other. Output timestamps are counted from the converted frames.
+ */
+public class PcmConverter {
+    // input frames each output frame is computed from
+    private static final int TAPS = 32;
+    private static final int HALF_TAPS = TAPS / 2;
+    // fractional positions between two input frames the filter is computed for
+    private static final int PHASES = 256;
+    // filter cutoff relative to the lower of both Nyquist frequencies, some room for the filter slope
+    private static final double CUTOFF = 0.95;
+    private static final double MINUS_3DB = 0.7071;
+
+    // speaker positions in the default channel order of Android, used to down mix
+    private static final int FRONT_LEFT = 0;
+    private static final int FRONT_RIGHT = 1;
+    private static final int FRONT_CENTER = 2;
+    private static final int LOW_FREQUENCY = 3;
+    private static final int BACK_LEFT = 4;
+    private static final int BACK_RIGHT = 5;
+    private static final int BACK_CENTER = 6;
+    private static final int SIDE_LEFT = 7;
+    private static final int SIDE_RIGHT = 8;
+    private static final int[][] CHANNEL_POSITIONS = {
+            {},
+            {FRONT_CENTER},
+            {FRONT_LEFT, FRONT_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, FRONT_CENTER},
+            {FRONT_LEFT, FRONT_RIGHT, BACK_LEFT, BACK_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, FRONT_CENTER, BACK_LEFT, BACK_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, FRONT_CENTER, LOW_FREQUENCY, BACK_LEFT, BACK_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, FRONT_CENTER, LOW_FREQUENCY, BACK_LEFT, BACK_RIGHT, BACK_CENTER},
+            {FRONT_LEFT, FRONT_RIGHT, FRONT_CENTER, LOW_FREQUENCY, BACK_LEFT, BACK_RIGHT, SIDE_LEFT, SIDE_RIGHT},
+    };
+    // share of each position in the left and the right channel of a stereo down mix
+    private static final double[] LEFT_SHARE = {1, 0, MINUS_3DB, 0, MINUS_3DB, 0, 0.5, MINUS_3DB, 0};
+    private static final double[] RIGHT_SHARE = {0, 1, MINUS_3DB, 0, 0, MINUS_3DB, 0.5, 0, MINUS_3DB};
+
+    private final PcmFormat mInFormat;
+    private final PcmFormat mOutFormat;
+    private final float[][] mChannelMatrix;
+    private final boolean mResampling;
+    private final double mStep;
+    private final float[] mFilter;
+
+    private final float[] mInFrame;
+    // channel converted input frames kept for the filter, interleaved
+    private float[] mHistory;
+    private int mHistoryFrames;
+    // position of the next output frame in the history, in input frames
+    private double mTime;
+    private long mInputFrames;
+    private long mOutputFrames;
+    private long mStartTimeUs = -1;
+    private ByteBuffer mOutput;
+
+    /***
+     * @param inFormat  format of the decoded audio
+     * @param outFormat format the encoder takes, 16 bit
+     */
+    public PcmConverter(PcmFormat inFormat, PcmFormat outFormat) {
+        if (outFormat.getBytesPerSample() != PcmFormat.BYTES_PER_SAMPLE_16BIT || outFormat.isFloat()) {
+            throw new IllegalArgumentException("only 16 bit output is supported: " + outFormat);
+        }
+        mInFormat = inFormat;
+        mOutFormat = outFormat;
+        mChannelMatrix = createChannelMatrix(inFormat.getChannelCount(), outFormat.getChannelCount());
+        mResampling = inFormat.getSampleRate() != outFormat.getSampleRate();
+        mStep = (double) inFormat.getSampleRate() / outFormat.getSampleRate();
+        mFilter = mResampling ? createFilter(Math.min(1.0, 1.0 / mStep) * CUTOFF) : null;
+        mInFrame = new float[inFormat.getChannelCount()];
+        reset();
+    }
+
+    /***
+     * check if the formats are the same and nothing has to be converted
+     */
+    public boolean isPassthrough() {
+        return mInFormat.isSameLayout(mOutFormat);
+    }
+
+    public PcmFormat getInputFormat() {
+        return mInFormat;
+    }
+
+    public PcmFormat getOutputFormat() {
+        return mOutFormat;
+    }
+
+    /***
+     * forget the buffered input and start the timestamps over, e.g. after a seek
+     */
+    public void reset() {
+        int channelCount = mOutFormat.getChannelCount();
+        mHistory = new float[(TAPS + 1024) * channelCount];
+        // the first output frame is centered on the first input frame, half a filter of silence is before it
+        mHistoryFrames = HALF_TAPS - 1;
+        mTime = HALF_TAPS - 1;
+        mInputFrames = 0;
+        mOutputFrames = 0;
+        mStartTimeUs = -1;
+    }
+
+    /***
+     * get max bytes convert can produce from the given input bytes, including the end of stream tail
+     */
+    public int getMaxOutputSize(int inputSize) {
+        long inFrames = inputSize / mInFormat.getFrameSize() + TAPS;
+        return (int) ((long) Math.ceil(inFrames / mStep) + 1) * mOutFormat.getFrameSize();
+    }
+
+    /***
+     * Convert the samples of info into a buffer owned by the converter, valid until the next call.
+     * The info is updated to describe the converted samples, the end of stream buffer also gets the filter tail.
+     *
+     * @param buffer decoded samples at info.offset, its position is not changed
+     * @param info   size and time of the decoded samples
+     * @return buffer holding the converted samples
+     */
+    public ByteBuffer convert(ByteBuffer buffer, SampleInfo info) {
+        if (mStartTimeUs < 0) {
+            mStartTimeUs = info.presentationTimeUs;
+        }
+        int maxSize = getMaxOutputSize(info.size);
+        if (mOutput == null || mOutput.capacity() < maxSize) {
+            mOutput = ByteBuffer.allocateDirect(maxSize).order(ByteOrder.nativeOrder());
+        }
+        mOutput.clear();
+
+        long presentationTimeUs = mStartTimeUs + mOutputFrames * 1000000L / mOutFormat.getSampleRate();
+        ShortBuffer out = mOutput.asShortBuffer();
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.limit(info.offset + info.size);
+        in.position(info.offset);
+        write(in, out);
+        if (info.isEndOfStream()) {
+            flush(out);
+        }
+
+        int size = out.position() * PcmFormat.BYTES_PER_SAMPLE_16BIT;
+        mOutput.limit(size);
+        info.set(0, size, presentationTimeUs, info.flags);
+        return mOutput;
+    }
+
+    private void write(ByteBuffer in, ShortBuffer out) {
+        int frameSize = mInFormat.getFrameSize();
+        int outChannels = mOutFormat.getChannelCount();
+        while (in.remaining() >= frameSize) {
+            for (int c = 0; c < mInFrame.length; c++) {
+                mInFrame[c] = readSample(in);
+            }
+            mInputFrames++;
+            if (mResampling) {
+                ensureHistoryCapacity(mHistoryFrames + 1);
+                mixChannels(mHistory, mHistoryFrames * outChannels);
+                mHistoryFrames++;
+                if (mHistoryFrames == mHistory.length / outChannels) {
+                    resample(out);
+                }
+            } else {
+                for (int c = 0; c < outChannels; c++) {
+                    out.put(toShort(mixChannel(c)));
+                }
+                mOutputFrames++;
+            }
+        }
+        if (mResampling) {
+            resample(out);
+        }
+    }
+
+    /***
+     * produce the output frames which still wait for the input after them, followed by silence
+     */
+    private void flush(ShortBuffer out) {
+        if (!mResampling) {
+            return;
+        }
+        int outChannels = mOutFormat.getChannelCount();
+        ensureHistoryCapacity(mHistoryFrames + HALF_TAPS);
+        for (int i = 0; i < HALF_TAPS * outChannels; i++) {
+            mHistory[mHistoryFrames * outChannels + i] = 0;
+        }
+        mHistoryFrames += HALF_TAPS;
+        // stop at the output frame matching the end of the input
+        long totalFrames = (long) Math.ceil(mInputFrames / mStep);
+        resample(out, totalFrames);
+    }
+
+    private void resample(ShortBuffer out) {
+        resample(out, Long.MAX_VALUE);
+    }
+
+    private void resample(ShortBuffer out, long maxOutputFrames) {
+        int outChannels = mOutFormat.getChannelCount();
+        while (mOutputFrames < maxOutputFrames) {
+            int index = (int) mTime;
+            if (index + HALF_TAPS >= mHistoryFrames) {
+                break;
+            }
+            int phase = (int) Math.round((mTime - index) * PHASES);
+            int filterOffset = phase * TAPS;
+            int first = index - HALF_TAPS + 1;
+            for (int c = 0; c < outChannels; c++) {
+                float sum = 0;
+                int position = first * outChannels + c;
+                for (int k = 0; k < TAPS; k++) {
+                    sum += mHistory[position] * mFilter[filterOffset + k];
+                    position += outChannels;
+                }
+                out.put(toShort(sum));
+            }
+            mOutputFrames++;
+            mTime += mStep;
+        }
+
+        // drop the frames no output frame needs anymore
+        int drop = (int) mTime - HALF_TAPS + 1;
+        if (drop > 0) {
+            drop = Math.min(drop, mHistoryFrames);
+            System.arraycopy(mHistory, drop * outChannels, mHistory, 0, (mHistoryFrames - drop) * outChannels);
+            mHistoryFrames -= drop;
+            mTime -= drop;
+        }
+    }
+
+    private void ensureHistoryCapacity(int frames) {
+        int outChannels = mOutFormat.getChannelCount();
+        if (frames * outChannels > mHistory.length) {
+            float[] history = new float[frames * 2 * outChannels];
+            System.arraycopy(mHistory, 0, history, 0, mHistoryFrames * outChannels);
+            mHistory = history;
+        }
+    }
+
+    private void mixChannels(float[] dst, int offset) {
+        for (int c = 0; c < mChannelMatrix.length; c++) {
+            dst[offset + c] = mixChannel(c);
+        }
+    }
+
+    private float mixChannel(int outChannel) {
+        float[] row = mChannelMatrix[outChannel];
+        float sum = 0;
+        for (int i = 0; i < row.length; i++) {
+            sum += row[i] * mInFrame[i];
+        }
+        return sum;
+    }
+
+    private float readSample(ByteBuffer in) {
+        switch (mInFormat.getBytesPerSample()) {
+            case PcmFormat.BYTES_PER_SAMPLE_8BIT:
+                return ((in.get() & 0xff) - 128) / 128f;
+            case PcmFormat.BYTES_PER_SAMPLE_24BIT:
+                int low = in.get() & 0xff;
+                int middle = in.get() & 0xff;
+                int high = in.get();
+                return ((high << 16) | (middle << 8) | low) / 8388608f;
+            case PcmFormat.BYTES_PER_SAMPLE_32BIT:
+                return mInFormat.isFloat() ? in.getFloat() : in.getInt() / 2147483648f;
+            default:
+                return in.getShort() / 32768f;
+        }
+    }
+
+    private static short toShort(float sample) {
+        int value = Math.round(sample * 32768f);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    /***
+     * get weights of every input channel in every output channel
+     */
+    private static float[][] createChannelMatrix(int inChannels, int outChannels) {
+        float[][] matrix = new float[outChannels][inChannels];
+        if (inChannels == outChannels) {
+            for (int c = 0; c < outChannels; c++) {
+                matrix[c][c] = 1;
+            }
+        } else if (inChannels == 1) {
+            // mono goes to every output channel
+            for (int c = 0; c < outChannels; c++) {
+                matrix[c][0] = 1;
+            }
+        } else if (outChannels <= 2 && inChannels < CHANNEL_POSITIONS.length) {
+            int[] positions = CHANNEL_POSITIONS[inChannels];
+            double[] left = new double[inChannels];
+            double[] right = new double[inChannels];
+            for (int i = 0; i < inChannels; i++) {
+                left[i] = LEFT_SHARE[positions[i]];
+                right[i] = RIGHT_SHARE[positions[i]];
+            }
+            if (outChannels == 1) {
+                for (int i = 0; i < inChannels; i++) {
+                    left[i] = (left[i] + right[i]) / 2;
+                }
+                setNormalized(matrix[0], left);
+            } else {
+                setNormalized(matrix[0], left);
+                setNormalized(matrix[1], right);
+            }
+        } else {
+            // unknown layout: spread the input channels over the output channels in turn
+            double[][] weights = new double[outChannels][inChannels];
+            for (int i = 0; i < inChannels; i++) {
+                weights[i % outChannels][i] = 1;
+            }
+            for (int c = 0; c < outChannels; c++) {
+                setNormalized(matrix[c], weights[c]);
+            }
+        }
+        return matrix;
+    }
+
+    /***
+     * set weights scaled to sum up to 1, so the down mix can't clip
+     */
+    private static void setNormalized(float[] row, double[] weights) {
+        double sum = 0;
+        for (double weight : weights) {
+            sum += weight;
+        }
+        for (int i = 0; i < row.length; i++) {
+            row[i] = sum > 0 ? (float) (weights[i] / sum) : 0;
+        }
+    }
+
+    /***
+     * get Blackman windowed sinc filters for PHASES + 1 fractional positions, each normalized to a gain of 1
+     *
+     * @param cutoff cutoff relative to the input Nyquist frequency
+     */
+    private static float[] createFilter(double cutoff) {
+        float[] filter = new float[(PHASES + 1) * TAPS];
+        for (int phase = 0; phase <= PHASES; phase++) {
+            double fraction = (double) phase / PHASES;
+            double sum = 0;
+            for (int k = 0; k < TAPS; k++) {
+                // distance of the input frame from the output position
+                double x = k - HALF_TAPS + 1 - fraction;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                double n = (x + HALF_TAPS) / TAPS;
+                double window = n <= 0 || n >= 1 ? 0
+                        : 0.42 - 0.5 * Math.cos(2 * Math.PI * n) + 0.08 * Math.cos(4 * Math.PI * n);
+                double value = sinc * window;
+                filter[phase * TAPS + k] = (float) value;
+                sum += value;
+            }
+            for (int k = 0; k < TAPS; k++) {
+                filter[phase * TAPS + k] /= sum;
+            }
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,84 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+/***
+ * Layout of interleaved PCM audio
+ */
+public class PcmFormat {
+    public static final int BYTES_PER_SAMPLE_8BIT = 1;
+    public static final int BYTES_PER_SAMPLE_16BIT = 2;
+    public static final int BYTES_PER_SAMPLE_24BIT = 3;
+    public static final int BYTES_PER_SAMPLE_32BIT = 4;
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mBytesPerSample;
+    private final boolean mFloat;
+
+    public PcmFormat(int sampleRate, int channelCount) {
+        this(sampleRate, channelCount, BYTES_PER_SAMPLE_16BIT);
+    }
+
+    public PcmFormat(int sampleRate, int channelCount, int bytesPerSample) {
+        this(sampleRate, channelCount, bytesPerSample, false);
+    }
+
+    /***
+     * @param bytesPerSample 8 bit samples are unsigned, wider ones are signed little endian
+     * @param floatSamples   32 bit samples are floats in [-1, 1] instead of integers
+     */
+    public PcmFormat(int sampleRate, int channelCount, int bytesPerSample, boolean floatSamples) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBytesPerSample = bytesPerSample;
+        mFloat = floatSamples && bytesPerSample == BYTES_PER_SAMPLE_32BIT;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getBytesPerSample() {
+        return mBytesPerSample;
+    }
+
+    public boolean isFloat() {
+        return mFloat;
+    }
+
+    /***
+     * check if both formats have the same sample rate, channel count and sample encoding
+     */
+    public boolean isSameLayout(PcmFormat other) {
+        return mSampleRate == other.mSampleRate && mChannelCount == other.mChannelCount
+                && mBytesPerSample == other.mBytesPerSample && mFloat == other.mFloat;
+    }
+
+    /***
+     * get size of one frame, i.e. one sample of every channel
+     */
+    public int getFrameSize() {
+        return mChannelCount * mBytesPerSample;
+    }
+
+    public long bytesToDurationUs(long bytes) {
+        return bytes / getFrameSize() * 1000000L / mSampleRate;
+    }
+
+    public long durationUsToBytes(long durationUs) {
+        return durationUs * mSampleRate / 1000000L * getFrameSize();
+    }
+
+    @Override
+    public String toString() {
+        return "PcmFormat{" +
+                "sampleRate=" + mSampleRate +
+                ", channelCount=" + mChannelCount +
+                ", bytesPerSample=" + mBytesPerSample +
+                ", float=" + mFloat +
+                '}';
+    }
+}
@@ -0,0 +1,121 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Hands one decoder output buffer over to the encoder, split across as many encoder input buffers as needed.
+ * Each piece is copied once, straight from the decoder buffer into the encoder buffer, on frame boundaries,
+ * with its presentation time advanced by the frames before it.
+ * When the encoder has no free input buffer the rest stays pending, so the caller can drain the encoder and retry.
+ * With a byte limit the audio is cut at that exact frame, end of stream is sent there and later buffers are dropped.
+ */
+public class PcmHandoff {
+    private final PcmFormat mFormat;
+    private final SampleInfo mInfo = new SampleInfo();
+    private ByteBuffer mBuffer;
+    private int mBufferId = -1;
+    private int mConsumed;
+    private long mLimitBytes = Long.MAX_VALUE;
+    private long mFedBytes;
+    private boolean mLimitReached;
+
+    public PcmHandoff(PcmFormat format) {
+        mFormat = format;
+    }
+
+    /***
+     * cut the audio after totalBytes were handed off, rounded down to whole frames
+     */
+    public void setLimitBytes(long limitBytes) {
+        mLimitBytes = limitBytes - limitBytes % mFormat.getFrameSize();
+    }
+
+    /***
+     * check if the byte limit is reached, the encoder got end of stream then
+     */
+    public boolean isLimitReached() {
+        return mLimitReached;
+    }
+
+    public boolean hasPending() {
+        return mBufferId >= 0;
+    }
+
+    /***
+     * get decoder output buffer which is being handed off
+     */
+    public int getBufferId() {
+        return mBufferId;
+    }
+
+    public boolean isEndOfStream() {
+        return mInfo.isEndOfStream();
+    }
+
+    public void setPending(int bufferId, ByteBuffer buffer, SampleInfo info) {
+        mBufferId = bufferId;
+        mBuffer = buffer;
+        mInfo.set(info);
+        mConsumed = 0;
+    }
+
+    /***
+     * queue as much of the pending buffer as the encoder accepts
+     *
+     * @param encoder
+     * @param timeoutUs timeout for each encoder input buffer
+     * @return true when the pending buffer is completely queued and can be released to the decoder
+     */
+    public boolean feed(SampleCodecInput encoder, long timeoutUs) {
+        int frameSize = mFormat.getFrameSize();
+        if (mLimitReached) {
+            // already cut, nothing more goes to the encoder
+            return release();
+        }
+        if (mFedBytes + mInfo.size - mConsumed >= mLimitBytes) {
+            mInfo.size = mConsumed + (int) (mLimitBytes - mFedBytes);
+            mInfo.flags |= SampleInfo.FLAG_END_OF_STREAM;
+        }
+
+        while (true) {
+            int remaining = mInfo.size - mConsumed;
+            if (remaining == 0 && !mInfo.isEndOfStream()) {
+                break;
+            }
+
+            int inBufferId = encoder.dequeueInputBuffer(timeoutUs);
+            if (inBufferId < 0) {
+                return false;
+            }
+            ByteBuffer inBuffer = encoder.getInputBuffer(inBufferId);
+            int chunk = Math.min(remaining, inBuffer.remaining());
+            if (chunk < remaining && chunk >= frameSize) {
+                chunk -= chunk % frameSize;
+            }
+
+            long presentationTimeUs = mInfo.presentationTimeUs + mFormat.bytesToDurationUs(mConsumed);
+            boolean lastChunk = chunk == remaining;
+            if (chunk > 0) {
+                mBuffer.limit(mInfo.offset + mConsumed + chunk);
+                mBuffer.position(mInfo.offset + mConsumed);
+                inBuffer.put(mBuffer);
+            }
+            int flags = lastChunk ? mInfo.flags : mInfo.flags & ~SampleInfo.FLAG_END_OF_STREAM;
+            encoder.queueInputBuffer(inBufferId, 0, chunk, presentationTimeUs, flags);
+            mConsumed += chunk;
+            mFedBytes += chunk;
+            if (lastChunk) {
+                break;
+            }
+        }
+
+        mLimitReached = mFedBytes >= mLimitBytes;
+        return release();
+    }
+
+    private boolean release() {
+        mBufferId = -1;
+        mBuffer = null;
+        return true;
+    }
+}
@@ -0,0 +1,212 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Decoded PCM of one loop period of the audio, recorded while the audio is decoded for the first time
+ * and replayed into the encoder for every following loop, so the audio file is decoded only once.
+ * Up to memoryLimitBytes are kept in memory, the rest is spilled to a temporary file.
+ */
+public class PcmLoopCache {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final PcmFormat mFormat;
+    private final long mMemoryLimitBytes;
+    private final File mSpillDir;
+    private final List<ByteBuffer> mChunks = new ArrayList<>();
+    private volatile long mMemoryBytes;
+    private File mSpillFile;
+    private RandomAccessFile mSpillRandomAccessFile;
+    private FileChannel mSpillChannel;
+    private long mSize;
+
+    // replay
+    private boolean mReplaying;
+    private long mReplayedBytes;
+    private long mTargetBytes;
+    private boolean mReplayFinished;
+
+    /***
+     * @param format           format of the decoded audio
+     * @param memoryLimitBytes max bytes kept in memory before spilling to disk
+     * @param spillDir         directory of the spill file, created only when needed
+     */
+    public PcmLoopCache(PcmFormat format, long memoryLimitBytes, File spillDir) {
+        mFormat = format;
+        mMemoryLimitBytes = memoryLimitBytes;
+        mSpillDir = spillDir;
+    }
+
+    /***
+     * record decoded samples of the first loop, doesn't change the buffer position
+     */
+    public void append(ByteBuffer buffer, SampleInfo info) throws IOException {
+        if (mReplaying || info.size == 0) {
+            return;
+        }
+
+        ByteBuffer src = buffer.duplicate();
+        src.limit(info.offset + info.size);
+        src.position(info.offset);
+
+        while (src.hasRemaining() && mMemoryBytes < mMemoryLimitBytes) {
+            ByteBuffer chunk = mChunks.isEmpty() ? null : mChunks.get(mChunks.size() - 1);
+            if (chunk == null || !chunk.hasRemaining()) {
+                chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                mChunks.add(chunk);
+            }
+            int length = (int) Math.min(Math.min(src.remaining(), chunk.remaining()), mMemoryLimitBytes - mMemoryBytes);
+            ByteBuffer part = src.duplicate();
+            part.limit(src.position() + length);
+            chunk.put(part);
+            src.position(src.position() + length);
+            mMemoryBytes += length;
+            mSize += length;
+        }
+
+        if (src.hasRemaining()) {
+            FileChannel channel = getSpillChannel();
+            while (src.hasRemaining()) {
+                mSize += channel.write(src, mSize - mMemoryBytes);
+            }
+        }
+    }
+
+    /***
+     * get recorded bytes, i.e. the length of one loop period
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getMemoryBytes() {
+        return mMemoryBytes;
+    }
+
+    public boolean isSpilled() {
+        return mSpillFile != null;
+    }
+
+    /***
+     * copy recorded bytes starting at position into buffer
+     *
+     * @return number of bytes copied
+     */
+    public int read(long position, ByteBuffer buffer) throws IOException {
+        int length = (int) Math.min(buffer.remaining(), mSize - position);
+        int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            if (position < mMemoryBytes) {
+                ByteBuffer chunk = mChunks.get((int) (position / CHUNK_SIZE)).duplicate();
+                int chunkOffset = (int) (position % CHUNK_SIZE);
+                chunk.limit(Math.min(chunk.position(), chunkOffset + (end - buffer.position())));
+                chunk.position(chunkOffset);
+                position += chunk.remaining();
+                buffer.put(chunk);
+            } else {
+                ByteBuffer part = buffer.duplicate();
+                part.limit(end);
+                int read = mSpillChannel.read(part, position - mMemoryBytes);
+                if (read < 0) {
+                    throw new IOException("loop cache spill file is truncated");
+                }
+                position += read;
+                buffer.position(part.position());
+            }
+        }
+        return length;
+    }
+
+    /***
+     * Finish recording and replay the recording until targetBytes of audio are produced in total.
+     * Called when the decoder reached end of stream.
+     *
+     * @return true if there is something left to replay
+     */
+    public boolean startReplay(long targetBytes) {
+        mReplaying = true;
+        mReplayedBytes = mSize;
+        mTargetBytes = targetBytes - targetBytes % mFormat.getFrameSize();
+        mReplayFinished = mSize == 0 || mReplayedBytes >= mTargetBytes;
+        return !mReplayFinished;
+    }
+
+    public boolean isReplaying() {
+        return mReplaying && !mReplayFinished;
+    }
+
+    public boolean isReplayFinished() {
+        return mReplayFinished;
+    }
+
+    /***
+     * fill free encoder input buffers with recorded audio, the last one carries end of stream
+     *
+     * @param encoder
+     * @param timeoutUs timeout for each encoder input buffer
+     * @return true if any buffer was queued
+     */
+    public boolean feed(SampleCodecInput encoder, long timeoutUs) throws IOException {
+        boolean queued = false;
+        int frameSize = mFormat.getFrameSize();
+        while (isReplaying()) {
+            int inBufferId = encoder.dequeueInputBuffer(timeoutUs);
+            if (inBufferId < 0) {
+                break;
+            }
+            ByteBuffer inBuffer = encoder.getInputBuffer(inBufferId);
+            long loopPosition = mReplayedBytes % mSize;
+            int chunk = (int) Math.min(inBuffer.remaining(), Math.min(mTargetBytes - mReplayedBytes, mSize - loopPosition));
+            if (chunk >= frameSize) {
+                chunk -= chunk % frameSize;
+            }
+
+            long presentationTimeUs = mFormat.bytesToDurationUs(mReplayedBytes);
+            inBuffer.limit(inBuffer.position() + chunk);
+            read(loopPosition, inBuffer);
+            mReplayedBytes += chunk;
+            mReplayFinished = mReplayedBytes >= mTargetBytes;
+            encoder.queueInputBuffer(inBufferId, 0, chunk, presentationTimeUs,
+                    mReplayFinished ? SampleInfo.FLAG_END_OF_STREAM : 0);
+            queued = true;
+        }
+        return queued;
+    }
+
+    /***
+     * release memory and delete the spill file
+     */
+    public void close() {
+        mChunks.clear();
+        mMemoryBytes = 0;
+        mSize = 0;
+        if (mSpillRandomAccessFile != null) {
+            try {
+                mSpillRandomAccessFile.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            mSpillRandomAccessFile = null;
+            mSpillChannel = null;
+        }
+        if (mSpillFile != null) {
+            mSpillFile.delete();
+            mSpillFile = null;
+        }
+    }
+
+    private FileChannel getSpillChannel() throws IOException {
+        if (mSpillChannel == null) {
+            mSpillFile = File.createTempFile("pcm_loop_", ".raw", mSpillDir);
+            mSpillRandomAccessFile = new RandomAccessFile(mSpillFile, "rw");
+            mSpillChannel = mSpillRandomAccessFile.getChannel();
+        }
+        return mSpillChannel;
+    }
+}
@@ -0,0 +1,83 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/***
+ * Fixed size FIFO of 16 bit PCM samples, filled from codec buffers and drained into short arrays
+ */
+public class PcmRingBuffer {
+    private final short[] mSamples;
+    private int mHead;
+    private int mSize;
+
+    /***
+     * @param capacity number of 16 bit samples, i.e. frames * channels
+     */
+    public PcmRingBuffer(int capacity) {
+        mSamples = new short[capacity];
+    }
+
+    /***
+     * get number of 16 bit samples the ring holds at most
+     */
+    public int getCapacity() {
+        return mSamples.length;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getFreeSpace() {
+        return mSamples.length - mSize;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /***
+     * copy as many whole samples of the buffer as fit
+     *
+     * @param buffer native order PCM, e.g. a decoder output buffer
+     * @param offset
+     * @param size   bytes available at offset
+     * @return number of bytes copied
+     */
+    public int write(ByteBuffer buffer, int offset, int size) {
+        int count = Math.min(size / 2, getFreeSpace());
+        if (count == 0) {
+            return 0;
+        }
+
+        ByteBuffer src = buffer.duplicate().order(ByteOrder.nativeOrder());
+        src.limit(offset + count * 2);
+        src.position(offset);
+        ShortBuffer samples = src.asShortBuffer();
+
+        int tail = (mHead + mSize) % mSamples.length;
+        int first = Math.min(count, mSamples.length - tail);
+        samples.get(mSamples, tail, first);
+        samples.get(mSamples, 0, count - first);
+        mSize += count;
+        return count * 2;
+    }
+
+    /***
+     * move samples out of the buffer
+     *
+     * @return number of samples read
+     */
+    public int read(short[] dst, int offset, int length) {
+        int count = Math.min(length, mSize);
+        int first = Math.min(count, mSamples.length - mHead);
+        System.arraycopy(mSamples, mHead, dst, offset, first);
+        System.arraycopy(mSamples, 0, dst, offset + first, count - first);
+        mHead = (mHead + count) % mSamples.length;
+        mSize -= count;
+        return count;
+    }
+}
@@ -0,0 +1,31 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Drops the samples an interrupted export has already written, so a resumed export
+ * can produce every track from where its source starts and only the missing part reaches the output.
+ */
+public class ResumeFilterSink implements SampleSink {
+    private final SampleSink mSink;
+    private final long[] mResumeTimesUs;
+
+    /***
+     * @param sink
+     * @param resumeTimesUs per track, samples before this time are dropped
+     */
+    public ResumeFilterSink(SampleSink sink, long[] resumeTimesUs) {
+        mSink = sink;
+        mResumeTimesUs = resumeTimesUs.clone();
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) throws IOException {
+        // codec config is needed by the sink whenever the track starts
+        if (info.presentationTimeUs < mResumeTimesUs[trackIndex] && (info.flags & SampleInfo.FLAG_CODEC_CONFIG) == 0) {
+            return;
+        }
+        mSink.writeSampleData(trackIndex, buffer, info);
+    }
+}
@@ -0,0 +1,17 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Codec working in synchronous buffer mode, modeled after MediaCodec
+ */
+public interface SampleCodec extends SampleCodecInput {
+    int INFO_OUTPUT_FORMAT_CHANGED = -2;
+    int INFO_OUTPUT_BUFFERS_CHANGED = -3;
+
+    int dequeueOutputBuffer(SampleInfo info, long timeoutUs);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    void releaseOutputBuffer(int index);
+}
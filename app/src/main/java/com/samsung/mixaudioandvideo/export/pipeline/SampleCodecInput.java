@@ -0,0 +1,16 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Input side of a codec, all that is needed to fill it with samples
+ */
+public interface SampleCodecInput {
+    int INFO_TRY_AGAIN_LATER = -1;
+
+    int dequeueInputBuffer(long timeoutUs);
+
+    ByteBuffer getInputBuffer(int index);
+
+    void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+}
@@ -0,0 +1,131 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Encoded samples of one pass over a source, kept in memory so the following loops can be written
+ * without reading the source again. Sample data is packed back to back in one direct buffer.
+ * Adding stops once the data would exceed the memory limit, the index is incomplete then.
+ */
+public class SampleIndex {
+    private static final int INITIAL_SAMPLE_COUNT = 256;
+    private static final int INITIAL_DATA_SIZE = 64 * 1024;
+
+    private final long mMemoryLimitBytes;
+    private ByteBuffer mData;
+    private int[] mOffsets = new int[INITIAL_SAMPLE_COUNT];
+    private int[] mSizes = new int[INITIAL_SAMPLE_COUNT];
+    private long[] mTimesUs = new long[INITIAL_SAMPLE_COUNT];
+    private int[] mFlags = new int[INITIAL_SAMPLE_COUNT];
+    private int mCount;
+    private boolean mOverflowed;
+
+    public SampleIndex(long memoryLimitBytes) {
+        mMemoryLimitBytes = Math.min(Integer.MAX_VALUE, memoryLimitBytes);
+    }
+
+    /***
+     * copy the sample into the index
+     *
+     * @param buffer buffer holding the sample at info.offset, its position is not changed
+     * @param info   sample time relative to the start of the source
+     * @return false if the sample doesn't fit, the index is incomplete from then on
+     */
+    public boolean add(ByteBuffer buffer, SampleInfo info) {
+        if (mOverflowed) {
+            return false;
+        }
+
+        int dataEnd = mCount == 0 ? 0 : mOffsets[mCount - 1] + mSizes[mCount - 1];
+        if (dataEnd + (long) info.size > mMemoryLimitBytes) {
+            mOverflowed = true;
+            mData = null;
+            return false;
+        }
+        ensureCapacity(dataEnd, dataEnd + info.size);
+
+        ByteBuffer src = buffer.duplicate();
+        src.limit(info.offset + info.size);
+        src.position(info.offset);
+        mData.limit(dataEnd + info.size);
+        mData.position(dataEnd);
+        mData.put(src);
+
+        mOffsets[mCount] = dataEnd;
+        mSizes[mCount] = info.size;
+        mTimesUs[mCount] = info.presentationTimeUs;
+        mFlags[mCount] = info.flags;
+        mCount++;
+        return true;
+    }
+
+    public boolean isOverflowed() {
+        return mOverflowed;
+    }
+
+    public int getSampleCount() {
+        return mCount;
+    }
+
+    /***
+     * get buffer holding the data of every sample, the offset of a sample is set by getSample
+     */
+    public ByteBuffer getBuffer() {
+        return mData;
+    }
+
+    public void getSample(int index, SampleInfo info) {
+        info.set(mOffsets[index], mSizes[index], mTimesUs[index], mFlags[index]);
+    }
+
+    public long getSampleTime(int index) {
+        return mTimesUs[index];
+    }
+
+    /***
+     * get bytes of sample data held by the index
+     */
+    public long getDataSize() {
+        return mCount == 0 ? 0 : mOffsets[mCount - 1] + mSizes[mCount - 1];
+    }
+
+    /***
+     * drop every sample, keeping the memory for the next ones
+     */
+    public void clear() {
+        mCount = 0;
+        mOverflowed = false;
+    }
+
+    private void ensureCapacity(int dataEnd, int dataSize) {
+        if (mData == null || mData.capacity() < dataSize) {
+            int capacity = mData == null ? (int) Math.min(INITIAL_DATA_SIZE, mMemoryLimitBytes) : mData.capacity();
+            while (capacity < dataSize) {
+                capacity = (int) Math.min(mMemoryLimitBytes, capacity * 2L);
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect(capacity);
+            if (mData != null) {
+                mData.limit(dataEnd);
+                mData.position(0);
+                data.put(mData);
+            }
+            mData = data;
+        }
+
+        if (mCount == mOffsets.length) {
+            int length = mCount * 2;
+            int[] offsets = new int[length];
+            int[] sizes = new int[length];
+            long[] timesUs = new long[length];
+            int[] flags = new int[length];
+            System.arraycopy(mOffsets, 0, offsets, 0, mCount);
+            System.arraycopy(mSizes, 0, sizes, 0, mCount);
+            System.arraycopy(mTimesUs, 0, timesUs, 0, mCount);
+            System.arraycopy(mFlags, 0, flags, 0, mCount);
+            mOffsets = offsets;
+            mSizes = sizes;
+            mTimesUs = timesUs;
+            mFlags = flags;
+        }
+    }
+}
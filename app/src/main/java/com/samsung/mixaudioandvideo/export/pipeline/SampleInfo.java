@@ -0,0 +1,41 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+/***
+ * Pure java counterpart of MediaCodec.BufferInfo.
+ * Flag values are the same as MediaCodec so they can be passed through unchanged.
+ */
+public class SampleInfo {
+    public static final int FLAG_SYNC_FRAME = 1;
+    public static final int FLAG_CODEC_CONFIG = 2;
+    public static final int FLAG_END_OF_STREAM = 4;
+
+    public int offset;
+    public int size;
+    public long presentationTimeUs;
+    public int flags;
+
+    public void set(int offset, int size, long presentationTimeUs, int flags) {
+        this.offset = offset;
+        this.size = size;
+        this.presentationTimeUs = presentationTimeUs;
+        this.flags = flags;
+    }
+
+    public void set(SampleInfo other) {
+        set(other.offset, other.size, other.presentationTimeUs, other.flags);
+    }
+
+    public boolean isEndOfStream() {
+        return (flags & FLAG_END_OF_STREAM) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleInfo{" +
+                "offset=" + offset +
+                ", size=" + size +
+                ", presentationTimeUs=" + presentationTimeUs +
+                ", flags=" + flags +
+                '}';
+    }
+}
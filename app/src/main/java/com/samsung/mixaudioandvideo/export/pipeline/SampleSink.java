@@ -0,0 +1,11 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Destination of encoded samples, modeled after MediaMuxer
+ */
+public interface SampleSink {
+    void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) throws IOException;
+}
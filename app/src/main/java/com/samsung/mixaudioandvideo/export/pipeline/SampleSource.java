@@ -0,0 +1,30 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Source of encoded samples of one track, modeled after MediaExtractor
+ */
+public interface SampleSource {
+    /***
+     * read current sample into buffer
+     *
+     * @param buffer
+     * @param offset
+     * @return sample size, -1 when there are no more samples
+     */
+    int readSampleData(ByteBuffer buffer, int offset);
+
+    long getSampleTime();
+
+    int getSampleFlags();
+
+    boolean advance();
+
+    /***
+     * seek to the sync sample closest to timeUs
+     *
+     * @param timeUs
+     */
+    void seekTo(long timeUs);
+}
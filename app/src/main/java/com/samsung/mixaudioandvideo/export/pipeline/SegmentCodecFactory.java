@@ -0,0 +1,25 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+
+/***
+ * Creates a source and codecs of its own for every segment of {@link SegmentedTranscodeLoop},
+ * so segments can be transcoded on different threads. Called from the worker threads.
+ */
+public interface SegmentCodecFactory {
+    SampleSource createSource() throws IOException;
+
+    /***
+     * create a started decoder of the source
+     */
+    SampleCodec createDecoder() throws IOException;
+
+    /***
+     * create a started encoder, every encoder has to produce the same output format
+     */
+    SampleCodec createEncoder() throws IOException;
+
+    void releaseSource(SampleSource source);
+
+    void releaseCodec(SampleCodec codec);
+}
@@ -0,0 +1,168 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+/***
+ * Transcode one segment of {@link SegmentedTranscodeLoop} into memory.
+ * The encoder gets some audio before and after the segment, so the encoded frames at the segment edges
+ * are computed from the real neighbouring audio and not from silence; only the frames inside the segment are kept.
+ */
+class SegmentTranscoder implements Callable<SampleIndex> {
+    private static final long TIMEOUT_US = 1000L;
+    // decoders like MP3 need a few frames before the first sample they output correctly
+    private static final long DECODER_PREROLL_US = 100000L;
+
+    private final SegmentedTranscodeLoop mLoop;
+    private final SegmentCodecFactory mFactory;
+    private final PcmFormat mFormat;
+    private final long mEncodeStartFrame;
+    private final long mEncodeEndFrame;
+    private final long mKeepStartUs;
+    private final long mKeepEndUs;
+    private final boolean mFirstSegment;
+
+    private final SampleInfo mDecoderInfo = new SampleInfo();
+    private final SampleInfo mEncoderInfo = new SampleInfo();
+    private long mDecodedFrames = -1;
+
+    /***
+     * @param encodeStartFrame first frame given to the encoder
+     * @param encodeEndFrame   frame after the last one given to the encoder
+     * @param keepStartUs      encoded frames starting before this time are dropped
+     * @param keepEndUs        encoded frames starting at or after this time are dropped
+     */
+    SegmentTranscoder(SegmentedTranscodeLoop loop, SegmentCodecFactory factory, PcmFormat format,
+                      long encodeStartFrame, long encodeEndFrame, long keepStartUs, long keepEndUs) {
+        mLoop = loop;
+        mFactory = factory;
+        mFormat = format;
+        mEncodeStartFrame = encodeStartFrame;
+        mEncodeEndFrame = encodeEndFrame;
+        mKeepStartUs = keepStartUs;
+        mKeepEndUs = keepEndUs;
+        mFirstSegment = keepStartUs == 0;
+    }
+
+    @Override
+    public SampleIndex call() throws IOException {
+        SampleSource source = null;
+        SampleCodec decoder = null;
+        SampleCodec encoder = null;
+        try {
+            source = mFactory.createSource();
+            decoder = mFactory.createDecoder();
+            encoder = mFactory.createEncoder();
+            source.seekTo(Math.max(0, framesToUs(mEncodeStartFrame) - DECODER_PREROLL_US));
+            return transcode(source, decoder, encoder);
+        } finally {
+            if (encoder != null) {
+                mFactory.releaseCodec(encoder);
+            }
+            if (decoder != null) {
+                mFactory.releaseCodec(decoder);
+            }
+            if (source != null) {
+                mFactory.releaseSource(source);
+            }
+        }
+    }
+
+    private SampleIndex transcode(SampleSource source, SampleCodec decoder, SampleCodec encoder) throws IOException {
+        SampleIndex output = new SampleIndex(Integer.MAX_VALUE);
+        PcmHandoff handoff = new PcmHandoff(mFormat);
+        handoff.setLimitBytes((mEncodeEndFrame - mEncodeStartFrame) * mFormat.getFrameSize());
+        boolean allInputExtracted = false;
+        boolean allInputDecoded = false;
+
+        while (!mLoop.isStopped()) {
+            // feed input to decoder
+            if (!allInputExtracted && !allInputDecoded) {
+                int inBufferId = decoder.dequeueInputBuffer(TIMEOUT_US);
+                if (inBufferId >= 0) {
+                    int sampleSize = source.readSampleData(decoder.getInputBuffer(inBufferId), 0);
+                    if (sampleSize < 0) {
+                        decoder.queueInputBuffer(inBufferId, 0, 0, 0, SampleInfo.FLAG_END_OF_STREAM);
+                        allInputExtracted = true;
+                    } else {
+                        decoder.queueInputBuffer(inBufferId, 0, sampleSize, source.getSampleTime(), source.getSampleFlags());
+                        source.advance();
+                    }
+                }
+            }
+
+            // get output from decoder, drop what comes before the segment and hand the rest to the encoder
+            if (!allInputDecoded && !handoff.hasPending()) {
+                int outBufferId = decoder.dequeueOutputBuffer(mDecoderInfo, TIMEOUT_US);
+                if (outBufferId >= 0) {
+                    ByteBuffer decodedBuffer = decoder.getOutputBuffer(outBufferId);
+                    if (skipBeforeStart() || mDecoderInfo.isEndOfStream()) {
+                        handoff.setPending(outBufferId, decodedBuffer, mDecoderInfo);
+                    } else {
+                        decoder.releaseOutputBuffer(outBufferId);
+                    }
+                }
+            }
+            if (handoff.hasPending()) {
+                int outBufferId = handoff.getBufferId();
+                boolean endOfStream = handoff.isEndOfStream();
+                if (handoff.feed(encoder, TIMEOUT_US)) {
+                    decoder.releaseOutputBuffer(outBufferId);
+                    allInputDecoded = endOfStream || handoff.isLimitReached();
+                }
+            }
+
+            // drain encoder and keep the frames inside the segment
+            int outBufferId = encoder.dequeueOutputBuffer(mEncoderInfo, TIMEOUT_US);
+            if (outBufferId >= 0) {
+                if (mEncoderInfo.size > 0 && isKept(mEncoderInfo)) {
+                    output.add(encoder.getOutputBuffer(outBufferId), mEncoderInfo);
+                }
+                encoder.releaseOutputBuffer(outBufferId);
+                if (mEncoderInfo.isEndOfStream()) {
+                    return output;
+                }
+            }
+        }
+        return null;
+    }
+
+    /***
+     * cut the decoded frames before the encode start off the current decoder output,
+     * and stamp the rest with its frame on the timeline
+     *
+     * @return true if anything is left
+     */
+    private boolean skipBeforeStart() {
+        int frameSize = mFormat.getFrameSize();
+        if (mDecodedFrames < 0) {
+            // the decoder starts at the sync sample the source was seeked to, count frames from there
+            mDecodedFrames = Math.round(mDecoderInfo.presentationTimeUs * mFormat.getSampleRate() / 1000000.0);
+        }
+        long bufferStartFrame = mDecodedFrames;
+        int frames = mDecoderInfo.size / frameSize;
+        mDecodedFrames += frames;
+
+        int skippedFrames = (int) Math.min(frames, Math.max(0, mEncodeStartFrame - bufferStartFrame));
+        mDecoderInfo.offset += skippedFrames * frameSize;
+        mDecoderInfo.size -= skippedFrames * frameSize;
+        mDecoderInfo.presentationTimeUs = framesToUs(bufferStartFrame + skippedFrames);
+        return mDecoderInfo.size > 0;
+    }
+
+    /***
+     * check if an encoded frame belongs to the segment, by the middle of the frame to be safe from rounding
+     */
+    private boolean isKept(SampleInfo info) {
+        if ((info.flags & SampleInfo.FLAG_CODEC_CONFIG) != 0) {
+            return mFirstSegment;
+        }
+        long timeUs = info.presentationTimeUs + framesToUs(SegmentedTranscodeLoop.ENCODED_FRAME_SIZE / 2);
+        return timeUs >= mKeepStartUs && timeUs < mKeepEndUs;
+    }
+
+    private long framesToUs(long frames) {
+        return frames * 1000000L / mFormat.getSampleRate();
+    }
+}
@@ -0,0 +1,127 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Transcode a long audio on several threads: the timeline is split into segments on encoded frame boundaries,
+ * each segment is decoded and encoded by a worker with codecs of its own,
+ * and the encoded segments are written to the sink in order.
+ * Only a few segments ahead of the one being written are in flight, so memory doesn't grow with the duration.
+ */
+public class SegmentedTranscodeLoop extends CopyLoop {
+    // frames per AAC access unit, segments start on multiples of it
+    static final int ENCODED_FRAME_SIZE = 1024;
+    // encoded frames of real audio given to the encoder before and after a segment
+    private static final int OVERLAP_ENCODED_FRAMES = 4;
+    private static final long WORKER_SHUTDOWN_TIMEOUT_MS = 1000L;
+
+    private final SegmentCodecFactory mFactory;
+    private final SampleSink mSink;
+    private final int mTrackIndex;
+    private final PcmFormat mFormat;
+    private final long mTotalFrames;
+    private final long mSegmentFrames;
+    private final int mWorkerCount;
+    private final SampleInfo mInfo = new SampleInfo();
+
+    /***
+     * @param factory           creates the source and codecs of every segment
+     * @param sink
+     * @param trackIndex
+     * @param durationUs        duration of the output, the source has to be at least as long
+     * @param pcmFormat         format of the decoded audio
+     * @param segmentDurationUs duration of one segment, rounded to encoded frames
+     * @param workerCount       number of segments transcoded at the same time
+     */
+    public SegmentedTranscodeLoop(SegmentCodecFactory factory, SampleSink sink, int trackIndex, long durationUs,
+                                  PcmFormat pcmFormat, long segmentDurationUs, int workerCount) {
+        mFactory = factory;
+        mSink = sink;
+        mTrackIndex = trackIndex;
+        mFormat = pcmFormat;
+        mTotalFrames = durationUs * pcmFormat.getSampleRate() / 1000000L;
+        long segmentFrames = segmentDurationUs * pcmFormat.getSampleRate() / 1000000L;
+        mSegmentFrames = Math.max(1, segmentFrames / ENCODED_FRAME_SIZE) * ENCODED_FRAME_SIZE;
+        mWorkerCount = Math.max(1, workerCount);
+    }
+
+    public int getSegmentCount() {
+        return (int) ((mTotalFrames + mSegmentFrames - 1) / mSegmentFrames);
+    }
+
+    @Override
+    public void run() throws IOException {
+        int segmentCount = getSegmentCount();
+        ExecutorService executor = Executors.newFixedThreadPool(mWorkerCount);
+        Deque<Future<SampleIndex>> inFlight = new ArrayDeque<>();
+        int nextSegment = 0;
+        try {
+            for (int writtenSegment = 0; writtenSegment < segmentCount && !isStopped(); writtenSegment++) {
+                // keep every worker busy, plus one finished segment waiting to be written
+                while (nextSegment < segmentCount && inFlight.size() <= mWorkerCount) {
+                    inFlight.add(executor.submit(createSegment(nextSegment++)));
+                }
+
+                SampleIndex segment = inFlight.poll().get();
+                if (segment != null) {
+                    writeSegment(segment);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("segmented transcode interrupted", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            if (!inFlight.isEmpty()) {
+                // stopped or failed, let the running workers bail out and release their codecs
+                stop();
+            }
+            executor.shutdown();
+            awaitWorkers(executor);
+        }
+    }
+
+    private void awaitWorkers(ExecutorService executor) {
+        try {
+            executor.awaitTermination(WORKER_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private SegmentTranscoder createSegment(int index) {
+        long startFrame = index * mSegmentFrames;
+        long endFrame = Math.min(mTotalFrames, startFrame + mSegmentFrames);
+        long overlapFrames = OVERLAP_ENCODED_FRAMES * ENCODED_FRAME_SIZE;
+        boolean lastSegment = endFrame == mTotalFrames;
+        // the first segment starts at the very beginning and the last one ends with the output,
+        // both are encoded just like a single transcode would do it
+        return new SegmentTranscoder(this, mFactory, mFormat,
+                Math.max(0, startFrame - overlapFrames),
+                lastSegment ? mTotalFrames : endFrame + overlapFrames,
+                framesToUs(startFrame),
+                lastSegment ? Long.MAX_VALUE : framesToUs(endFrame));
+    }
+
+    private void writeSegment(SampleIndex segment) throws IOException {
+        for (int i = 0; i < segment.getSampleCount() && !isStopped(); i++) {
+            segment.getSample(i, mInfo);
+            mSink.writeSampleData(mTrackIndex, segment.getBuffer(), mInfo);
+            onSampleWritten(mInfo);
+        }
+        mBufferBytes = Math.max(mBufferBytes, segment.getDataSize() * (mWorkerCount + 1));
+    }
+
+    private long framesToUs(long frames) {
+        return frames * 1000000L / mFormat.getSampleRate();
+    }
+}
@@ -0,0 +1,74 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * SampleCodec decorator which measures the time spent waiting in dequeue calls which timed out
+ */
+public class TimedSampleCodec implements SampleCodec {
+    private final SampleCodec mCodec;
+    private long mWaitTimeNs;
+    private long mTryAgainCount;
+
+    public TimedSampleCodec(SampleCodec codec) {
+        mCodec = codec;
+    }
+
+    /***
+     * get time spent in dequeueInputBuffer and dequeueOutputBuffer calls which returned no buffer,
+     * i.e. waiting for the codec
+     */
+    public long getWaitTimeNs() {
+        return mWaitTimeNs;
+    }
+
+    /***
+     * get number of dequeue calls which timed out without a buffer
+     */
+    public long getTryAgainCount() {
+        return mTryAgainCount;
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        long startTime = System.nanoTime();
+        int index = mCodec.dequeueInputBuffer(timeoutUs);
+        onDequeued(startTime, index);
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return mCodec.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mCodec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+        long startTime = System.nanoTime();
+        int index = mCodec.dequeueOutputBuffer(info, timeoutUs);
+        onDequeued(startTime, index);
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mCodec.getOutputBuffer(index);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        mCodec.releaseOutputBuffer(index);
+    }
+
+    private void onDequeued(long startTime, int index) {
+        if (index == INFO_TRY_AGAIN_LATER) {
+            mWaitTimeNs += System.nanoTime() - startTime;
+            mTryAgainCount++;
+        }
+    }
+}
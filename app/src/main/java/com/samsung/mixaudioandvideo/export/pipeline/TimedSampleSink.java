@@ -0,0 +1,39 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * SampleSink decorator which records the latency of every write, for a sink written by one thread
+ */
+public class TimedSampleSink implements SampleSink {
+    private final SampleSink mSink;
+    private final LatencyHistogram mWriteLatency = new LatencyHistogram();
+    private long mSampleCount;
+    private long mByteCount;
+
+    public TimedSampleSink(SampleSink sink) {
+        mSink = sink;
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) throws IOException {
+        long startTime = System.nanoTime();
+        mSink.writeSampleData(trackIndex, buffer, info);
+        mWriteLatency.record(System.nanoTime() - startTime);
+        mSampleCount++;
+        mByteCount += info.size;
+    }
+
+    public LatencyHistogram getWriteLatency() {
+        return mWriteLatency;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    public long getByteCount() {
+        return mByteCount;
+    }
+}
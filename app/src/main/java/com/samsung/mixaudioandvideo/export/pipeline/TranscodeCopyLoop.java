@@ -0,0 +1,177 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Decode samples of the source, encode them again and write the encoded samples to the sink.
+ * The source is looped from the beginning until the target duration is filled,
+ * or with a loop cache it is decoded once and the decoded audio is replayed into the encoder.
+ */
+public class TranscodeCopyLoop extends CopyLoop {
+    private static final long TIMEOUT_US = 1000L;
+
+    private final LoopingSampleReader mReader;
+    private final SampleCodec mDecoder;
+    private final SampleCodec mEncoder;
+    private final SampleSink mSink;
+    private final int mTrackIndex;
+    private final PcmHandoff mHandoff;
+    private final long mDurationUs;
+    private final PcmFormat mPcmFormat;
+    private PcmLoopCache mLoopCache;
+
+    private final SampleInfo mDecoderInfo = new SampleInfo();
+    private final SampleInfo mEncoderInfo = new SampleInfo();
+    private boolean allInputExtracted = false;
+    private boolean decoderEnded = false;
+    private boolean allInputDecoded = false;
+    private boolean allOutputEncoded = false;
+
+    /***
+     * @param pcmFormat format of the decoded audio, used to split decoder output across encoder input buffers
+     */
+    public TranscodeCopyLoop(SampleSource source, SampleCodec decoder, SampleCodec encoder,
+                             SampleSink sink, int trackIndex, long durationUs, PcmFormat pcmFormat) {
+        mReader = new LoopingSampleReader(source, durationUs);
+        mDecoder = decoder;
+        mEncoder = encoder;
+        mSink = sink;
+        mTrackIndex = trackIndex;
+        mHandoff = new PcmHandoff(pcmFormat);
+        // cut the decoded audio at the exact frame of the target duration before it is encoded
+        mHandoff.setLimitBytes(pcmFormat.durationUsToBytes(durationUs));
+        mDurationUs = durationUs;
+        mPcmFormat = pcmFormat;
+    }
+
+    /***
+     * decode the source only once and serve the following loops from the cache
+     */
+    public void setLoopCache(PcmLoopCache loopCache) {
+        mLoopCache = loopCache;
+        mReader.setLoopEnabled(loopCache == null);
+    }
+
+    @Override
+    public void run() throws IOException {
+        while (!allOutputEncoded && !isStopped()) {
+            // feed input to decoder
+            feedInputToDecoder();
+
+            // get output from decoder and process it
+            processOutputDataFromDecoder();
+        }
+    }
+
+    /***
+     * feed all input to decoder
+     */
+    private void feedInputToDecoder() {
+        if (allInputExtracted) {
+            return;
+        }
+
+        int inBufferId = mDecoder.dequeueInputBuffer(TIMEOUT_US);
+        if (inBufferId < 0) {
+            return;
+        }
+
+        ByteBuffer buffer = mDecoder.getInputBuffer(inBufferId);
+        int sampleSize = mReader.readSampleData(buffer, 0);
+
+        if (sampleSize < 0) {
+            /***
+             * send empty input buffer to decoder -> all frame is extracted
+             */
+            mDecoder.queueInputBuffer(inBufferId, 0, 0, 0, SampleInfo.FLAG_END_OF_STREAM);
+            allInputExtracted = true;
+        } else {
+            /***
+             * feed input buffer into decoder and process data
+             */
+            mDecoder.queueInputBuffer(
+                    inBufferId, 0,
+                    sampleSize,
+                    mReader.getSampleTime(),
+                    mReader.getSampleFlags()
+            );
+            mReader.advance();
+        }
+    }
+
+    /***
+     * process output data from decoder
+     */
+    private void processOutputDataFromDecoder() throws IOException {
+        boolean progress = true;
+
+        while (progress) {
+            progress = false;
+
+            /***
+             * get output from decoder once the previous one is completely handed off
+             */
+            if (!allInputDecoded && !mHandoff.hasPending()) {
+                int outBufferId = mDecoder.dequeueOutputBuffer(mDecoderInfo, TIMEOUT_US);
+                if (outBufferId >= 0) {
+                    ByteBuffer decodedBuffer = mDecoder.getOutputBuffer(outBufferId);
+                    decoderEnded = mDecoderInfo.isEndOfStream();
+                    if (mLoopCache != null) {
+                        mLoopCache.append(decodedBuffer, mDecoderInfo);
+                        if (decoderEnded && mLoopCache.startReplay(mPcmFormat.durationUsToBytes(mDurationUs))) {
+                            // the encoder gets end of stream from the replay instead
+                            mDecoderInfo.flags &= ~SampleInfo.FLAG_END_OF_STREAM;
+                        }
+                    }
+                    mHandoff.setPending(outBufferId, decodedBuffer, mDecoderInfo);
+                    // the decoded audio is held until the encoder has taken all of it
+                    mBufferBytes = Math.max(mBufferBytes, mDecoderInfo.size);
+                    progress = true;
+                }
+            }
+
+            /***
+             * copy decoder output into as many encoder input buffers as it needs
+             */
+            if (mHandoff.hasPending()) {
+                int outBufferId = mHandoff.getBufferId();
+                if (mHandoff.feed(mEncoder, TIMEOUT_US)) {
+                    mDecoder.releaseOutputBuffer(outBufferId);
+                    allInputDecoded = decoderEnded || mHandoff.isLimitReached();
+                    progress = true;
+                }
+            }
+
+            /***
+             * replay cached loop once the decoder is done
+             */
+            if (allInputDecoded && mLoopCache != null && mLoopCache.feed(mEncoder, TIMEOUT_US)) {
+                progress = true;
+            }
+
+            /***
+             * drain encoder & write output data
+             */
+            int outBufferId = mEncoder.dequeueOutputBuffer(mEncoderInfo, TIMEOUT_US);
+            if (outBufferId >= 0) {
+                // the end of stream buffer is usually empty, there is nothing to mux then
+                if (mEncoderInfo.size > 0) {
+                    ByteBuffer encodedBuffer = mEncoder.getOutputBuffer(outBufferId);
+                    mSink.writeSampleData(mTrackIndex, encodedBuffer, mEncoderInfo);
+                    onSampleWritten(mEncoderInfo);
+                }
+                mEncoder.releaseOutputBuffer(outBufferId);
+                progress = true;
+
+                /***
+                 * check all frame is encoded
+                 */
+                if (mEncoderInfo.isEndOfStream()) {
+                    allOutputEncoded = true;
+                    return;
+                }
+            }
+        }
+    }
+}
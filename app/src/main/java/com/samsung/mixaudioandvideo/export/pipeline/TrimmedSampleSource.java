@@ -0,0 +1,78 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import java.nio.ByteBuffer;
+
+/***
+ * Plays a source from its current sample until an end time, with times relative to that first sample.
+ * Seek the source to the sync sample before the start of the range first, so nothing has to be decoded:
+ * the samples between the sync sample and the start are kept and hidden by an edit list.
+ * The range ends at the first sync sample at or after the end time, because with B-frames a sample
+ * in the range may follow, in decode order, one past the end it references.
+ * The samples after the end time are hidden by the duration of the edit list.
+ */
+public class TrimmedSampleSource implements SampleSource {
+    private final SampleSource mSource;
+    private final long mStartTimeUs;
+    private final long mEndTimeUs;
+
+    /***
+     * @param source  positioned at the first sample to play
+     * @param endTimeUs source time the range ends at, samples from the first sync sample at or after it are dropped;
+     *                  0 plays to the end
+     */
+    public TrimmedSampleSource(SampleSource source, long endTimeUs) {
+        mSource = source;
+        mStartTimeUs = Math.max(0, source.getSampleTime());
+        mEndTimeUs = endTimeUs > 0 ? endTimeUs : Long.MAX_VALUE;
+    }
+
+    /***
+     * get source time of the first sample, which is played at 0
+     */
+    public long getStartTimeUs() {
+        return mStartTimeUs;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        if (isPastEnd()) {
+            return -1;
+        }
+        return mSource.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public long getSampleTime() {
+        if (isPastEnd()) {
+            return -1;
+        }
+        return mSource.getSampleTime() - mStartTimeUs;
+    }
+
+    @Override
+    public int getSampleFlags() {
+        if (isPastEnd()) {
+            return -1;
+        }
+        return mSource.getSampleFlags();
+    }
+
+    @Override
+    public boolean advance() {
+        return mSource.advance() && !isPastEnd();
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        mSource.seekTo(timeUs + mStartTimeUs);
+    }
+
+    private boolean isPastEnd() {
+        long timeUs = mSource.getSampleTime();
+        if (timeUs < 0) {
+            return true;
+        }
+        // no sample after a sync sample references one in front of it
+        return timeUs >= mEndTimeUs && (mSource.getSampleFlags() & SampleInfo.FLAG_SYNC_FRAME) != 0;
+    }
+}
@@ -0,0 +1,319 @@
+package com.samsung.mixaudioandvideo.export.pipeline.media;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import com.samsung.mixaudioandvideo.export.pipeline.CopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.IntQueue;
+import com.samsung.mixaudioandvideo.export.pipeline.LoopingSampleReader;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmConverter;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmHandoff;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmLoopCache;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodecInput;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/***
+ * Transcode loop driving the decoder and the encoder with MediaCodec.Callback.
+ * All callbacks arrive on one handler thread, which does the work as soon as a buffer is available
+ * and sleeps otherwise, instead of polling both codecs with timeouts like TranscodeCopyLoop.
+ * The codecs are configured here because the callback has to be set before configure.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class AsyncTranscodeLoop extends CopyLoop {
+    private final LoopingSampleReader mReader;
+    private final MediaCodec mDecoder;
+    private final MediaCodec mEncoder;
+    private final PcmHandoff mHandoff;
+    private final long mDurationUs;
+    private final PcmFormat mPcmFormat;
+    private PcmLoopCache mLoopCache;
+    private PcmConverter mConverter;
+    private SampleSink mSink;
+    private int mTrackIndex;
+    private final HandlerThread mCodecThread = new HandlerThread("AsyncTranscodeLoop");
+
+    // only touched on the codec thread
+    private final IntQueue mDecoderInputs = new IntQueue(8);
+    private final IntQueue mDecoderOutputs = new IntQueue(8);
+    private final IntQueue mEncoderInputs = new IntQueue(8);
+    private SampleInfo[] mDecoderOutputInfos = new SampleInfo[0];
+    private final SampleInfo mEncoderInfo = new SampleInfo();
+    private final EncoderInput mEncoderInput = new EncoderInput();
+    private boolean allInputExtracted = false;
+    private boolean decoderEnded = false;
+    private boolean allInputDecoded = false;
+
+    private volatile boolean mDone;
+    private Exception mError;
+    private long mCodecThreadCpuTimeMs;
+
+    /***
+     * Set the callbacks and configure both codecs. The encoder output format is available afterwards,
+     * the output is set with {@link #setOutput} once the muxer track exists.
+     */
+    public AsyncTranscodeLoop(SampleSource source, MediaCodec decoder, MediaFormat decoderFormat,
+                              MediaCodec encoder, MediaFormat encoderFormat, long durationUs, PcmFormat pcmFormat) {
+        mReader = new LoopingSampleReader(source, durationUs);
+        mDecoder = decoder;
+        mEncoder = encoder;
+        mHandoff = new PcmHandoff(pcmFormat);
+        // cut the decoded audio at the exact frame of the target duration before it is encoded
+        mHandoff.setLimitBytes(pcmFormat.durationUsToBytes(durationUs));
+        mDurationUs = durationUs;
+        mPcmFormat = pcmFormat;
+
+        mCodecThread.start();
+        Handler handler = new Handler(mCodecThread.getLooper());
+        mDecoder.setCallback(new DecoderCallback(), handler);
+        mDecoder.configure(decoderFormat, null, null, 0);
+        mEncoder.setCallback(new EncoderCallback(), handler);
+        mEncoder.configure(encoderFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    }
+
+    public void setOutput(SampleSink sink, int trackIndex) {
+        mSink = sink;
+        mTrackIndex = trackIndex;
+    }
+
+    /***
+     * decode the source only once and serve the following loops from the cache, set before run()
+     */
+    public void setLoopCache(PcmLoopCache loopCache) {
+        mLoopCache = loopCache;
+        mReader.setLoopEnabled(loopCache == null);
+    }
+
+    /***
+     * convert the decoded audio to pcmFormat before it is encoded, set before run()
+     */
+    public void setConverter(PcmConverter converter) {
+        mConverter = converter;
+    }
+
+    /***
+     * start both codecs and wait until the encoder reached end of stream
+     */
+    @Override
+    public void run() throws IOException {
+        mDecoder.start();
+        mEncoder.start();
+
+        synchronized (this) {
+            while (!mDone && !isStopped()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        if (mError != null) {
+            throw new IOException("async transcode failed", mError);
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /***
+     * quit the codec thread, call after the codecs are stopped
+     */
+    public void release() {
+        mCodecThread.quitSafely();
+    }
+
+    /***
+     * get cpu time used by the codec thread, available once run() returned
+     */
+    public synchronized long getCodecThreadCpuTimeMs() {
+        return mCodecThreadCpuTimeMs;
+    }
+
+    private synchronized void finish(Exception error) {
+        if (mDone) {
+            return;
+        }
+        mError = error;
+        mCodecThreadCpuTimeMs = SystemClock.currentThreadTimeMillis();
+        mDone = true;
+        notifyAll();
+    }
+
+    /***
+     * move data as far as the available buffers allow
+     */
+    private void pump() {
+        if (mDone || isStopped()) {
+            return;
+        }
+
+        try {
+            pumpInput();
+            pumpDecoderOutput();
+            if (allInputDecoded && mLoopCache != null) {
+                mLoopCache.feed(mEncoderInput, 0);
+            }
+        } catch (Exception ex) {
+            finish(ex);
+        }
+    }
+
+    private void pumpInput() {
+        // extractor -> decoder
+        while (!allInputExtracted && !mDecoderInputs.isEmpty()) {
+            int inBufferId = mDecoderInputs.poll();
+            ByteBuffer buffer = mDecoder.getInputBuffer(inBufferId);
+            int sampleSize = mReader.readSampleData(buffer, 0);
+            if (sampleSize < 0) {
+                mDecoder.queueInputBuffer(inBufferId, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                allInputExtracted = true;
+            } else {
+                mDecoder.queueInputBuffer(inBufferId, 0, sampleSize, mReader.getSampleTime(), mReader.getSampleFlags());
+                mReader.advance();
+            }
+        }
+    }
+
+    private void pumpDecoderOutput() throws IOException {
+        // decoder -> encoder
+        while (true) {
+            if (!mHandoff.hasPending()) {
+                if (mDecoderOutputs.isEmpty()) {
+                    break;
+                }
+                int outBufferId = mDecoderOutputs.poll();
+                ByteBuffer decodedBuffer = mDecoder.getOutputBuffer(outBufferId);
+                SampleInfo decodedInfo = mDecoderOutputInfos[outBufferId];
+                if (mConverter != null) {
+                    decodedBuffer = mConverter.convert(decodedBuffer, decodedInfo);
+                }
+                decoderEnded = decodedInfo.isEndOfStream();
+                if (mLoopCache != null) {
+                    mLoopCache.append(decodedBuffer, decodedInfo);
+                    if (decoderEnded && mLoopCache.startReplay(mPcmFormat.durationUsToBytes(mDurationUs))) {
+                        // the encoder gets end of stream from the replay instead
+                        decodedInfo.flags &= ~SampleInfo.FLAG_END_OF_STREAM;
+                    }
+                }
+                mHandoff.setPending(outBufferId, decodedBuffer, decodedInfo);
+                // the decoded audio is held until the encoder has taken all of it
+                mBufferBytes = Math.max(mBufferBytes, decodedInfo.size);
+            }
+            int outBufferId = mHandoff.getBufferId();
+            if (!mHandoff.feed(mEncoderInput, 0)) {
+                break;
+            }
+            mDecoder.releaseOutputBuffer(outBufferId, false);
+            allInputDecoded = decoderEnded || mHandoff.isLimitReached();
+        }
+    }
+
+    private class DecoderCallback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            mDecoderInputs.add(index);
+            pump();
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            if (index >= mDecoderOutputInfos.length) {
+                SampleInfo[] infos = new SampleInfo[index + 1];
+                System.arraycopy(mDecoderOutputInfos, 0, infos, 0, mDecoderOutputInfos.length);
+                for (int i = mDecoderOutputInfos.length; i < infos.length; i++) {
+                    infos[i] = new SampleInfo();
+                }
+                mDecoderOutputInfos = infos;
+            }
+            mDecoderOutputInfos[index].set(info.offset, info.size, info.presentationTimeUs, info.flags);
+            mDecoderOutputs.add(index);
+            pump();
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            finish(e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+        }
+    }
+
+    private class EncoderCallback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            mEncoderInputs.add(index);
+            pump();
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            if (mDone || isStopped()) {
+                return;
+            }
+            try {
+                mEncoderInfo.set(info.offset, info.size, info.presentationTimeUs, info.flags);
+                if (mEncoderInfo.size > 0) {
+                    mSink.writeSampleData(mTrackIndex, codec.getOutputBuffer(index), mEncoderInfo);
+                    onSampleWritten(mEncoderInfo);
+                }
+                codec.releaseOutputBuffer(index, false);
+                if (mEncoderInfo.isEndOfStream()) {
+                    finish(null);
+                }
+            } catch (Exception ex) {
+                finish(ex);
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            finish(e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+        }
+    }
+
+    /***
+     * encoder input side, so PcmHandoff and the loop cache can fill the buffers handed out by the callback
+     */
+    private class EncoderInput implements SampleCodecInput {
+        @Override
+        public int dequeueInputBuffer(long timeoutUs) {
+            return mEncoderInputs.isEmpty() ? INFO_TRY_AGAIN_LATER : mEncoderInputs.poll();
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return mEncoder.getInputBuffer(index);
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+            mEncoder.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+        }
+    }
+}
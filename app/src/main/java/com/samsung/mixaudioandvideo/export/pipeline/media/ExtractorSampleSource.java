@@ -0,0 +1,48 @@
+package com.samsung.mixaudioandvideo.export.pipeline.media;
+
+import android.media.MediaExtractor;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+
+import java.nio.ByteBuffer;
+
+/***
+ * SampleSource backed by a MediaExtractor with one selected track
+ */
+public class ExtractorSampleSource implements SampleSource {
+    private final MediaExtractor mExtractor;
+
+    public ExtractorSampleSource(MediaExtractor extractor, int trackIndex) {
+        mExtractor = extractor;
+        mExtractor.selectTrack(trackIndex);
+    }
+
+    public MediaExtractor getExtractor() {
+        return mExtractor;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        return mExtractor.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public long getSampleTime() {
+        return mExtractor.getSampleTime();
+    }
+
+    @Override
+    public int getSampleFlags() {
+        return mExtractor.getSampleFlags();
+    }
+
+    @Override
+    public boolean advance() {
+        return mExtractor.advance();
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        mExtractor.seekTo(timeUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+    }
+}
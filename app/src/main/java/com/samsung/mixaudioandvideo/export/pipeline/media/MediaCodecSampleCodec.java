@@ -0,0 +1,58 @@
+package com.samsung.mixaudioandvideo.export.pipeline.media;
+
+import android.media.MediaCodec;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+
+import java.nio.ByteBuffer;
+
+/***
+ * SampleCodec backed by a MediaCodec running in synchronous mode
+ */
+public class MediaCodecSampleCodec implements SampleCodec {
+    private final MediaCodec mCodec;
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+    public MediaCodecSampleCodec(MediaCodec codec) {
+        mCodec = codec;
+    }
+
+    public MediaCodec getCodec() {
+        return mCodec;
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mCodec.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return mCodec.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mCodec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+        int index = mCodec.dequeueOutputBuffer(mBufferInfo, timeoutUs);
+        if (index >= 0) {
+            info.set(mBufferInfo.offset, mBufferInfo.size, mBufferInfo.presentationTimeUs, mBufferInfo.flags);
+        }
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mCodec.getOutputBuffer(index);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        mCodec.releaseOutputBuffer(index, false);
+    }
+}
@@ -0,0 +1,98 @@
+package com.samsung.mixaudioandvideo.export.pipeline.media;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import com.samsung.mixaudioandvideo.export.pipeline.ConvertingSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmConverter;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.SegmentCodecFactory;
+
+import java.io.IOException;
+
+/***
+ * SegmentCodecFactory opening the audio file with a new MediaExtractor and creating new MediaCodecs for every segment
+ */
+public class MediaSegmentCodecFactory implements SegmentCodecFactory {
+    private final String mFilePath;
+    private final int mTrackIndex;
+    private final MediaFormat mInputFormat;
+    private final MediaFormat mOutputFormat;
+    private PcmFormat mDecodedPcmFormat;
+    private PcmFormat mEncoderPcmFormat;
+
+    /***
+     * @param filePath     audio file
+     * @param trackIndex   audio track of the file
+     * @param inputFormat  format of the audio track
+     * @param outputFormat format of the encoded audio
+     */
+    public MediaSegmentCodecFactory(String filePath, int trackIndex, MediaFormat inputFormat, MediaFormat outputFormat) {
+        mFilePath = filePath;
+        mTrackIndex = trackIndex;
+        mInputFormat = inputFormat;
+        mOutputFormat = outputFormat;
+    }
+
+    /***
+     * convert the decoded audio of every decoder to the format the encoder takes
+     */
+    public void setConversion(PcmFormat decodedPcmFormat, PcmFormat encoderPcmFormat) {
+        mDecodedPcmFormat = decodedPcmFormat;
+        mEncoderPcmFormat = encoderPcmFormat;
+    }
+
+    @Override
+    public SampleSource createSource() throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(mFilePath);
+        } catch (IOException ex) {
+            extractor.release();
+            throw ex;
+        }
+        return new ExtractorSampleSource(extractor, mTrackIndex);
+    }
+
+    @Override
+    public SampleCodec createDecoder() throws IOException {
+        MediaCodec decoder = MediaCodec.createDecoderByType(mInputFormat.getString(MediaFormat.KEY_MIME));
+        decoder.configure(mInputFormat, null, null, 0);
+        decoder.start();
+        SampleCodec sampleCodec = new MediaCodecSampleCodec(decoder);
+        if (mDecodedPcmFormat != null && !mDecodedPcmFormat.isSameLayout(mEncoderPcmFormat)) {
+            sampleCodec = new ConvertingSampleCodec(sampleCodec, new PcmConverter(mDecodedPcmFormat, mEncoderPcmFormat));
+        }
+        return sampleCodec;
+    }
+
+    @Override
+    public SampleCodec createEncoder() throws IOException {
+        MediaCodec encoder = MediaCodec.createEncoderByType(mOutputFormat.getString(MediaFormat.KEY_MIME));
+        encoder.configure(mOutputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        encoder.start();
+        return new MediaCodecSampleCodec(encoder);
+    }
+
+    @Override
+    public void releaseSource(SampleSource source) {
+        ((ExtractorSampleSource) source).getExtractor().release();
+    }
+
+    @Override
+    public void releaseCodec(SampleCodec codec) {
+        if (codec instanceof ConvertingSampleCodec) {
+            codec = ((ConvertingSampleCodec) codec).getDecoder();
+        }
+        MediaCodec mediaCodec = ((MediaCodecSampleCodec) codec).getCodec();
+        try {
+            mediaCodec.stop();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        mediaCodec.release();
+    }
+}
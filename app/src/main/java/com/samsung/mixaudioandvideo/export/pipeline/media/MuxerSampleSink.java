@@ -0,0 +1,30 @@
+package com.samsung.mixaudioandvideo.export.pipeline.media;
+
+import android.annotation.SuppressLint;
+import android.media.MediaCodec;
+import android.media.MediaMuxer;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSink;
+
+import java.nio.ByteBuffer;
+
+/***
+ * SampleSink backed by a MediaMuxer.
+ * The BufferInfo is reused between writes, so use one instance per writing thread.
+ */
+public class MuxerSampleSink implements SampleSink {
+    private final MediaMuxer mMuxer;
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+    public MuxerSampleSink(MediaMuxer muxer) {
+        mMuxer = muxer;
+    }
+
+    @SuppressLint("WrongConstant")
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+        mBufferInfo.set(info.offset, info.size, info.presentationTimeUs, info.flags);
+        mMuxer.writeSampleData(trackIndex, buffer, mBufferInfo);
+    }
+}
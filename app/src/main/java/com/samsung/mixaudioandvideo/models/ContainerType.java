@@ -0,0 +1,16 @@
+package com.samsung.mixaudioandvideo.models;
+
+public class ContainerType {
+    public static final int UNKNOWN = 0;
+    public static final int MP4 = 1;
+    // MPEG audio frames, possibly behind an ID3 tag
+    public static final int MP3 = 2;
+    // AAC in ADTS frames, e.g. .aac
+    public static final int ADTS = 3;
+    public static final int AMR = 4;
+    public static final int OGG = 5;
+    public static final int FLAC = 6;
+    public static final int WAV = 7;
+    // Matroska / WebM, the codecs aren't sniffed
+    public static final int MATROSKA = 8;
+}
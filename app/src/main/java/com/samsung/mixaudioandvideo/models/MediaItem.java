@@ -3,9 +3,33 @@ package com.samsung.mixaudioandvideo.models;
 import java.io.Serializable;
 
 public class MediaItem implements Serializable {
+    private long id;
     private String filePath;
     private String fileName;
     private int mediaType;
+    private long durationUs;
+    private long fileSize;
+    private long dateModified;
+    private String mimeType;
+    private int containerType;
+    private boolean probed;
+    private String videoMimeType;
+    private String audioMimeType;
+    private int width;
+    private int height;
+    private int sampleRate;
+    private int channelCount;
+
+    /***
+     * get id of the file in the media store
+     */
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
 
     public String getFilePath() {
         return filePath;
@@ -31,6 +55,120 @@ public class MediaItem implements Serializable {
         this.mediaType = mediaType;
     }
 
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    public void setDurationUs(long durationUs) {
+        this.durationUs = durationUs;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    /***
+     * get modification time in seconds, as the media store keeps it
+     */
+    public long getDateModified() {
+        return dateModified;
+    }
+
+    public void setDateModified(long dateModified) {
+        this.dateModified = dateModified;
+    }
+
+    /***
+     * get mime type of the file as the media store tells it, e.g. video/mp4
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    /***
+     * get container sniffed from the first bytes of the file, {@link ContainerType}
+     */
+    public int getContainerType() {
+        return containerType;
+    }
+
+    public void setContainerType(int containerType) {
+        this.containerType = containerType;
+    }
+
+    /***
+     * check if the tracks below were read from the file, otherwise they are unknown
+     */
+    public boolean isProbed() {
+        return probed;
+    }
+
+    public void setProbed(boolean probed) {
+        this.probed = probed;
+    }
+
+    /***
+     * get mime type of the video track, null if there is none
+     */
+    public String getVideoMimeType() {
+        return videoMimeType;
+    }
+
+    public void setVideoMimeType(String videoMimeType) {
+        this.videoMimeType = videoMimeType;
+    }
+
+    /***
+     * get mime type of the audio track, null if there is none
+     */
+    public String getAudioMimeType() {
+        return audioMimeType;
+    }
+
+    public void setAudioMimeType(String audioMimeType) {
+        this.audioMimeType = audioMimeType;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public void setChannelCount(int channelCount) {
+        this.channelCount = channelCount;
+    }
+
     public boolean isVideo() {
         return mediaType == MediaType.VIDEO;
     }
@@ -41,6 +179,10 @@ public class MediaItem implements Serializable {
                 "filePath='" + filePath + '\'' +
                 ", fileName='" + fileName + '\'' +
                 ", mediaType=" + mediaType +
+                ", durationUs=" + durationUs +
+                ", mimeType='" + mimeType + '\'' +
+                ", containerType=" + containerType +
+                ", audioMimeType='" + audioMimeType + '\'' +
                 '}';
     }
 }
@@ -1,6 +1,7 @@
 package com.samsung.mixaudioandvideo.models;
 
 public class TrackType {
+    public static final int OTHER = 0;
     public static final int VIDEO = 1;
     public static final int AUDIO = 2;
     public static final int ERR_NO_TRACK_INDEX = -5;
@@ -0,0 +1,128 @@
+package com.samsung.mixaudioandvideo.picker;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.samsung.mixaudioandvideo.catalog.MediaCatalog;
+import com.samsung.mixaudioandvideo.catalog.MediaCatalogSync;
+import com.samsung.mixaudioandvideo.models.ContainerType;
+import com.samsung.mixaudioandvideo.models.MediaItem;
+import com.samsung.mixaudioandvideo.models.MediaType;
+import com.techyourchance.threadposter.BackgroundThreadPoster;
+import com.techyourchance.threadposter.UiThreadPoster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Lists the video or audio files on a background thread and hands them to the UI thread in pages:
+ * a small first page, so the first screen shows right away, then bigger pages.
+ * The files come from the media catalog, which is then synced with the media store; the first time the catalog
+ * is empty and the pages come from the sync itself, later only a sync that changed something refreshes the list.
+ */
+public class MediaStoreScanner {
+    private static final String TAG = "MediaStoreScanner";
+    private static final int FIRST_PAGE_SIZE = 30;
+    private static final int PAGE_SIZE = 500;
+
+    public interface Listener {
+        /***
+         * called on the UI thread with the next items
+         */
+        void onPage(List<MediaItem> items);
+
+        /***
+         * called on the UI thread with all the items, replacing the ones delivered so far
+         */
+        void onRefresh(List<MediaItem> items);
+    }
+
+    private final BackgroundThreadPoster mBackgroundThread = new BackgroundThreadPoster();
+    private final UiThreadPoster mUIThread = new UiThreadPoster();
+    private final MediaCatalog mCatalog;
+    private final MediaCatalogSync mCatalogSync;
+    private final int mMediaType;
+    private volatile boolean mCancelled;
+
+    /***
+     * @param mediaType {@link MediaType#VIDEO} or {@link MediaType#AUDIO}
+     */
+    public MediaStoreScanner(Context context, int mediaType) {
+        mCatalog = MediaCatalog.getInstance(context);
+        mCatalogSync = new MediaCatalogSync(context, mCatalog);
+        mMediaType = mediaType;
+    }
+
+    public void start(Listener listener) {
+        mBackgroundThread.post(() -> scan(listener));
+    }
+
+    /***
+     * stop reading, pages not delivered yet are dropped
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    private void scan(Listener listener) {
+        long startTime = System.currentTimeMillis();
+        List<MediaItem> cachedItems = filterItems(mCatalog.getItems(mMediaType));
+        postPages(listener, cachedItems);
+        Log.i(TAG, "read " + cachedItems.size() + " items from the catalog in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        if (mCancelled) {
+            return;
+        }
+
+        boolean firstSync = cachedItems.isEmpty();
+        int changeCount = mCatalogSync.sync(mMediaType, firstSync ? items -> {
+            if (!mCancelled) {
+                postPages(listener, filterItems(items));
+            }
+        } : null);
+        if (!firstSync && changeCount > 0 && !mCancelled) {
+            List<MediaItem> items = filterItems(mCatalog.getItems(mMediaType));
+            mUIThread.post(() -> {
+                if (!mCancelled) {
+                    listener.onRefresh(items);
+                }
+            });
+        }
+        Log.i(TAG, "scanned " + changeCount + " changes in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void postPages(Listener listener, List<MediaItem> items) {
+        int pageStart = 0;
+        while (pageStart < items.size()) {
+            int pageEnd = Math.min(items.size(), pageStart + (pageStart == 0 ? FIRST_PAGE_SIZE : PAGE_SIZE));
+            List<MediaItem> page = new ArrayList<>(items.subList(pageStart, pageEnd));
+            mUIThread.post(() -> {
+                if (!mCancelled) {
+                    listener.onPage(page);
+                }
+            });
+            pageStart = pageEnd;
+        }
+    }
+
+    private List<MediaItem> filterItems(List<MediaItem> items) {
+        if (mMediaType == MediaType.VIDEO) {
+            return items;
+        }
+        List<MediaItem> filteredItems = new ArrayList<>(items.size());
+        for (MediaItem item : items) {
+            if (isAudioSupport(item)) {
+                filteredItems.add(item);
+            }
+        }
+        return filteredItems;
+    }
+
+    /***
+     * check if the sniffed content of a file is audio the export can read, whatever its extension
+     */
+    private boolean isAudioSupport(MediaItem item) {
+        // the codecs of a Matroska / WebM file aren't sniffed, the export finds out
+        return item.getAudioMimeType() != null || item.getContainerType() == ContainerType.MATROSKA;
+    }
+}
@@ -4,23 +4,25 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.provider.MediaStore;
 
+import com.samsung.mixaudioandvideo.R;
 import com.samsung.mixaudioandvideo.databinding.ActivityPickerBinding;
 import com.samsung.mixaudioandvideo.models.MediaItem;
 import com.samsung.mixaudioandvideo.models.MediaType;
+import com.samsung.mixaudioandvideo.thumbnail.ThumbnailLoader;
 import com.samsung.mixaudioandvideo.utils.AppConstants;
 
-import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 public class PickerActivity extends AppCompatActivity {
     private static final String TAG = "PickerActivity";
     private ActivityPickerBinding mBinding;
-    private ArrayList<MediaItem> mMediaItems;
+    private final ArrayList<MediaItem> mMediaItems = new ArrayList<>();
     private PickerRecyclerViewAdapter mAdapter;
+    private MediaStoreScanner mScanner;
+    private ThumbnailLoader mThumbnailLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -30,11 +32,39 @@ public class PickerActivity extends AppCompatActivity {
         initViews();
     }
 
+    @Override
+    protected void onDestroy() {
+        mScanner.cancel();
+        mThumbnailLoader.release();
+        super.onDestroy();
+    }
+
     private void initViews() {
-        mMediaItems = isVideoPicker() ? getVideoFilesFromExternalStorage() : getAudioFilesFromExternalStorage();
-        mAdapter = new PickerRecyclerViewAdapter(mMediaItems, this::onMediaItemSelected);
+        int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.picker_thumbnail_size);
+        mThumbnailLoader = new ThumbnailLoader(this, thumbnailSize, thumbnailSize);
+        mAdapter = new PickerRecyclerViewAdapter(this::onMediaItemSelected, mThumbnailLoader);
         mBinding.recyclerView.setAdapter(mAdapter);
-        mAdapter.notifyDataSetChanged();
+
+        // the media catalog is read in the background, the list grows page by page
+        mScanner = new MediaStoreScanner(this, isVideoPicker() ? MediaType.VIDEO : MediaType.AUDIO);
+        mScanner.start(new MediaStoreScanner.Listener() {
+            @Override
+            public void onPage(List<MediaItem> items) {
+                onMediaItemsScanned(items);
+            }
+
+            @Override
+            public void onRefresh(List<MediaItem> items) {
+                mMediaItems.clear();
+                onMediaItemsScanned(items);
+            }
+        });
+    }
+
+    private void onMediaItemsScanned(List<MediaItem> items) {
+        mMediaItems.addAll(items);
+        // the adapter diffs against the list it shows in the background
+        mAdapter.submitList(new ArrayList<>(mMediaItems));
     }
 
     private void onMediaItemSelected(MediaItem mediaItem){
@@ -54,84 +84,4 @@ public class PickerActivity extends AppCompatActivity {
 
         return false;
     }
-
-    public ArrayList<MediaItem> getVideoFilesFromExternalStorage() {
-        ArrayList<MediaItem> videoItems = new ArrayList<>();
-        String[] projection = {
-                MediaStore.Video.VideoColumns.DATA, MediaStore.Video.Media.DISPLAY_NAME
-        };
-        Cursor cursor = getContentResolver().query(
-                MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                projection, null, null, null);
-
-        try {
-            cursor.moveToFirst();
-            do {
-                String filePath = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA));
-                String displayName = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA));
-
-                if(!isValidFilePath(filePath))
-                    continue;
-
-                MediaItem mediaItem = new MediaItem();
-                mediaItem.setFilePath(filePath);
-                mediaItem.setFileName(extractFileName(displayName));
-                mediaItem.setMediaType(MediaType.VIDEO);
-                videoItems.add(mediaItem);
-            } while (cursor.moveToNext());
-
-            cursor.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return videoItems;
-    }
-
-    private boolean isValidFilePath(String filePath) {
-        return new File(filePath).exists();
-    }
-
-    public ArrayList<MediaItem> getAudioFilesFromExternalStorage() {
-        ArrayList<MediaItem> videoItems = new ArrayList<>();
-        String[] projection = {
-                MediaStore.Audio.AudioColumns.DATA, MediaStore.Audio.Media.DISPLAY_NAME
-        };
-        Cursor cursor = getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                projection, null, null, null);
-
-        try {
-            cursor.moveToFirst();
-            do {
-                String filePath = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA));
-                String displayName = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA));
-
-                if(!isValidFilePath(filePath) || !isAudioSupport(filePath)) {
-                    continue;
-                }
-
-                MediaItem mediaItem = new MediaItem();
-                mediaItem.setFilePath(filePath);
-                mediaItem.setFileName(extractFileName(displayName));
-                mediaItem.setMediaType(MediaType.AUDIO);
-                videoItems.add(mediaItem);
-            } while (cursor.moveToNext());
-
-            cursor.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return videoItems;
-    }
-
-    private String extractFileName(String filePath){
-        return filePath.substring(filePath.lastIndexOf("/") + 1);
-    }
-
-    private boolean isAudioSupport(String filePath) {
-        String fileExtension = filePath.substring(filePath.lastIndexOf("."));
-        return fileExtension.equalsIgnoreCase(".mp3") || fileExtension.equalsIgnoreCase(".ogg");
-    }
-}
\ No newline at end of file
+}
@@ -1,26 +1,45 @@
 package com.samsung.mixaudioandvideo.picker;
 
+import android.text.TextUtils;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.bumptech.glide.Glide;
 import com.samsung.mixaudioandvideo.R;
 import com.samsung.mixaudioandvideo.databinding.PickerRecyclerViewItemLayoutBinding;
 import com.samsung.mixaudioandvideo.models.MediaItem;
+import com.samsung.mixaudioandvideo.thumbnail.ThumbnailLoader;
+import com.samsung.mixaudioandvideo.utils.MediaUtils;
 
-import java.util.ArrayList;
+public class PickerRecyclerViewAdapter extends ListAdapter<MediaItem, PickerRecyclerViewAdapter.ViewHolder> {
 
-public class PickerRecyclerViewAdapter extends RecyclerView.Adapter<PickerRecyclerViewAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<MediaItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<MediaItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MediaItem oldItem, @NonNull MediaItem newItem) {
+            return oldItem.getFilePath().equals(newItem.getFilePath());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MediaItem oldItem, @NonNull MediaItem newItem) {
+            return oldItem.getFileName().equals(newItem.getFileName())
+                    && oldItem.getMediaType() == newItem.getMediaType()
+                    && oldItem.getDurationUs() == newItem.getDurationUs()
+                    && TextUtils.equals(oldItem.getAudioMimeType(), newItem.getAudioMimeType());
+        }
+    };
 
-    private ArrayList<MediaItem> mMediaItems;
     private PickerItemListener mItemListener;
+    private final ThumbnailLoader mThumbnailLoader;
 
-    public PickerRecyclerViewAdapter(ArrayList<MediaItem> mediaItems, PickerItemListener listener){
-        this.mMediaItems = mediaItems;
+    public PickerRecyclerViewAdapter(PickerItemListener listener, ThumbnailLoader thumbnailLoader){
+        super(DIFF_CALLBACK);
         this.mItemListener = listener;
+        this.mThumbnailLoader = thumbnailLoader;
     }
 
     @NonNull
@@ -36,12 +55,14 @@ public class PickerRecyclerViewAdapter extends RecyclerView.Adapter<PickerRecycl
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        holder.setData(mMediaItems.get(position));
+        holder.setData(getItem(position));
     }
 
     @Override
-    public int getItemCount() {
-        return mMediaItems.size();
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        // the row left the screen, its thumbnail isn't needed any more
+        mThumbnailLoader.cancel(holder.mBinding.fileThumbnail);
+        super.onViewRecycled(holder);
     }
 
     class ViewHolder extends RecyclerView.ViewHolder{
@@ -55,11 +76,13 @@ public class PickerRecyclerViewAdapter extends RecyclerView.Adapter<PickerRecycl
         }
 
         public void setData(MediaItem mediaItem) {
-            Glide.with(mBinding.getRoot())
-                    .load(mediaItem.getFilePath())
-                    .placeholder(mediaItem.isVideo() ? R.drawable.icons_video : R.drawable.icons_audio)
-                    .into(mBinding.fileThumbnail);
+            mThumbnailLoader.load(mediaItem, mBinding.fileThumbnail,
+                    mediaItem.isVideo() ? R.drawable.icons_video : R.drawable.icons_audio);
             mBinding.fileName.setText(mediaItem.getFileName());
+            mBinding.fileDuration.setText(mediaItem.getDurationUs() > 0 ? MediaUtils.formatDuration(mediaItem.getDurationUs()) : "");
+            // audio the export can't mux as it is gets decoded and encoded to AAC, which takes much longer
+            boolean needsTranscode = !mediaItem.isVideo() && !MediaUtils.isPassthroughAudio(mediaItem.getAudioMimeType());
+            mBinding.fileTranscode.setVisibility(needsTranscode ? View.VISIBLE : View.GONE);
             mBinding.getRoot().setOnClickListener(v -> mListener.onMediaItemSelected(mediaItem));
         }
     }
@@ -0,0 +1,196 @@
+package com.samsung.mixaudioandvideo.thumbnail;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.samsung.mixaudioandvideo.utils.PeakWaveform;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/***
+ * Thumbnails in two tiers: the most recently used bitmaps in memory, all of them as files in the cache dir.
+ * The peaks waveforms are drawn from are kept on disk as well, so a waveform of another size isn't decoded again.
+ * A key holds the path and modification time of the media file, so a changed file gets a new thumbnail.
+ * Thread safe.
+ */
+public class ThumbnailCache {
+    private static final String TAG = "ThumbnailCache";
+    private static final String DIRECTORY_NAME = "thumbnails";
+    private static final long MAX_DISK_BYTES = 32L * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+    private static final String PEAKS_SUFFIX = ".peaks";
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDirectory;
+
+    public ThumbnailCache(Context context) {
+        // an eighth of the heap the app may use at most, measured in KB
+        int maxSizeKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        mMemoryCache = new LruCache<String, Bitmap>(maxSizeKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+        mDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    /***
+     * get key of a thumbnail
+     *
+     * @param filePath     media file
+     * @param dateModified modification time of the file in seconds
+     * @param variant      what was drawn of the file and at which size, e.g. filmstrip_160x160
+     */
+    public static String getKey(String filePath, long dateModified, String variant) {
+        return filePath + ":" + dateModified + ":" + variant;
+    }
+
+    public Bitmap getFromMemory(String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /***
+     * read a thumbnail from disk into memory, on a background thread
+     *
+     * @return null if there is none
+     */
+    public Bitmap getFromDisk(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            file.delete();
+            return null;
+        }
+        // the disk tier is trimmed by last use
+        file.setLastModified(System.currentTimeMillis());
+        mMemoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /***
+     * add a thumbnail to both tiers, on a background thread
+     *
+     * @param opaque true to store it as JPEG, false as PNG which keeps transparency
+     */
+    public void put(String key, Bitmap bitmap, boolean opaque) {
+        mMemoryCache.put(key, bitmap);
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File file = getFile(key);
+        // written aside and renamed, a reader never sees half a file
+        File tempFile = new File(mDirectory, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            bitmap.compress(opaque ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG, JPEG_QUALITY, out);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+        }
+    }
+
+    /***
+     * map the peaks of an audio file, on a background thread
+     *
+     * @return null if there are none
+     */
+    public PeakWaveform getPeakWaveform(String key) {
+        File file = new File(mDirectory, hash(key) + PEAKS_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            PeakWaveform waveform = PeakWaveform.read(file);
+            file.setLastModified(System.currentTimeMillis());
+            return waveform;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    /***
+     * store the peaks of an audio file, on a background thread
+     */
+    public void putPeakWaveform(String key, PeakWaveform waveform) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        try {
+            waveform.writeTo(new File(mDirectory, hash(key) + PEAKS_SUFFIX));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /***
+     * delete the least recently used files until the disk tier fits its limit, on a background thread
+     */
+    public void trimDisk() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        int deletedCount = 0;
+        for (File file : files) {
+            if (totalBytes <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+                deletedCount++;
+            }
+        }
+        Log.i(TAG, "deleted " + deletedCount + " thumbnails");
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, hash(key));
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // every platform has SHA-1, a hash code works as well but may collide
+            return Integer.toHexString(key.hashCode()) + "_" + key.length();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.samsung.mixaudioandvideo.thumbnail;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.media.MediaMetadataRetriever;
+import android.media.ThumbnailUtils;
+import android.os.Build;
+import android.util.Log;
+import android.widget.ImageView;
+
+import androidx.core.content.ContextCompat;
+
+import com.samsung.mixaudioandvideo.R;
+import com.samsung.mixaudioandvideo.models.MediaItem;
+import com.samsung.mixaudioandvideo.utils.PeakWaveform;
+import com.samsung.mixaudioandvideo.utils.PeakWaveformExtractor;
+import com.techyourchance.threadposter.UiThreadPoster;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Loads thumbnails into image views: a filmstrip of a video, the peak waveform of an audio file.
+ * Thumbnails come from {@link ThumbnailCache} and are made on a small pool of workers when they aren't there.
+ * A view asks for one thumbnail at a time; the request of a view which is bound again or recycled is cancelled,
+ * so rows scrolled past don't keep the workers busy. Call from the UI thread.
+ */
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+    private static final int THREAD_COUNT = 2;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 5L;
+    // frames side by side, taken from the middle of equal parts of the video since the first frames are often black
+    private static final int FILMSTRIP_FRAME_COUNT = 3;
+    private static final String PEAKS_VARIANT = "peaks";
+
+    private final ThumbnailCache mCache;
+    private final ThreadPoolExecutor mExecutor;
+    private final UiThreadPoster mUIThread = new UiThreadPoster();
+    private final Map<ImageView, Request> mRequests = new HashMap<>();
+    private final int mWidth;
+    private final int mHeight;
+    private final int mWaveformColor;
+
+    private static class Request implements PeakWaveformExtractor.CancelSignal {
+        final MediaItem mMediaItem;
+        final String mKey;
+        volatile boolean mCancelled;
+        Future<?> mFuture;
+
+        Request(MediaItem mediaItem, String key) {
+            mMediaItem = mediaItem;
+            mKey = key;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    /***
+     * @param width  width of the thumbnails in pixels
+     * @param height height of the thumbnails in pixels
+     */
+    public ThumbnailLoader(Context context, int width, int height) {
+        mCache = new ThumbnailCache(context);
+        mWidth = width;
+        mHeight = height;
+        mWaveformColor = ContextCompat.getColor(context, R.color.purple_500);
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mExecutor.execute(mCache::trimDisk);
+    }
+
+    /***
+     * show the thumbnail of an item in a view, the placeholder until it is ready
+     */
+    public void load(MediaItem mediaItem, ImageView imageView, int placeholderResId) {
+        cancel(imageView);
+        String key = ThumbnailCache.getKey(mediaItem.getFilePath(), getDateModified(mediaItem), getVariant(mediaItem));
+        Bitmap bitmap = mCache.getFromMemory(key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+
+        imageView.setImageResource(placeholderResId);
+        Request request = new Request(mediaItem, key);
+        mRequests.put(imageView, request);
+        request.mFuture = mExecutor.submit(() -> {
+            Bitmap thumbnail = loadThumbnail(request);
+            if (thumbnail == null) {
+                return;
+            }
+            mUIThread.post(() -> {
+                if (mRequests.get(imageView) == request) {
+                    mRequests.remove(imageView);
+                    imageView.setImageBitmap(thumbnail);
+                }
+            });
+        });
+    }
+
+    /***
+     * drop the request of a view, e.g. when its row left the screen
+     */
+    public void cancel(ImageView imageView) {
+        Request request = mRequests.remove(imageView);
+        if (request != null) {
+            request.mCancelled = true;
+            // a request still queued never runs, a running one stops at its next check
+            request.mFuture.cancel(false);
+        }
+    }
+
+    public void release() {
+        for (Request request : mRequests.values()) {
+            request.mCancelled = true;
+        }
+        mRequests.clear();
+        mExecutor.shutdownNow();
+    }
+
+    /***
+     * get the thumbnail from disk or make it, on a worker
+     */
+    private Bitmap loadThumbnail(Request request) {
+        if (request.mCancelled) {
+            return null;
+        }
+        Bitmap bitmap = mCache.getFromDisk(request.mKey);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        long startTime = System.currentTimeMillis();
+        boolean video = request.mMediaItem.isVideo();
+        bitmap = video ? createVideoThumbnail(request) : createWaveformThumbnail(request);
+        if (bitmap == null || request.mCancelled) {
+            return null;
+        }
+        mCache.put(request.mKey, bitmap, video);
+        Log.i(TAG, "made thumbnail of " + request.mMediaItem.getFileName() + " in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        return bitmap;
+    }
+
+    /***
+     * draw a filmstrip of the video, one frame in each slice of the thumbnail;
+     * a video of unknown duration gets a single frame
+     */
+    private Bitmap createVideoThumbnail(Request request) {
+        MediaItem mediaItem = request.mMediaItem;
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(mediaItem.getFilePath());
+            long durationUs = mediaItem.getDurationUs();
+            int frameCount = durationUs > 0 ? FILMSTRIP_FRAME_COUNT : 1;
+            Bitmap filmstrip = null;
+            Canvas canvas = null;
+            for (int i = 0; i < frameCount; i++) {
+                if (request.mCancelled) {
+                    return null;
+                }
+                int left = mWidth * i / frameCount;
+                int frameWidth = mWidth * (i + 1) / frameCount - left;
+                long timeUs = durationUs > 0 ? durationUs * (2 * i + 1) / (2 * frameCount) : -1;
+                Bitmap frame = getFrame(retriever, timeUs, frameWidth);
+                if (frame == null) {
+                    continue;
+                }
+                if (frameCount == 1) {
+                    return frame;
+                }
+                if (filmstrip == null) {
+                    filmstrip = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+                    canvas = new Canvas(filmstrip);
+                }
+                canvas.drawBitmap(frame, left, 0, null);
+                frame.recycle();
+            }
+            return filmstrip;
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /***
+     * get the sync frame closest to a time, cropped to a slice of the thumbnail
+     *
+     * @param timeUs -1 for the frame the file suggests
+     * @return null if no frame could be decoded
+     */
+    private Bitmap getFrame(MediaMetadataRetriever retriever, long timeUs, int width) {
+        // a sync frame is decoded without the frames in front of it
+        Bitmap frame;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            // scaled to fit twice the size, so the short side still covers the slice once it is cropped
+            frame = retriever.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC,
+                    mHeight * 2, mHeight * 2);
+        } else {
+            frame = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        }
+        return frame != null ? ThumbnailUtils.extractThumbnail(frame, width, mHeight,
+                ThumbnailUtils.OPTIONS_RECYCLE_INPUT) : null;
+    }
+
+    private Bitmap createWaveformThumbnail(Request request) {
+        MediaItem mediaItem = request.mMediaItem;
+        String peaksKey = ThumbnailCache.getKey(mediaItem.getFilePath(), getDateModified(mediaItem), PEAKS_VARIANT);
+        PeakWaveform waveform = mCache.getPeakWaveform(peaksKey);
+        if (waveform == null) {
+            waveform = PeakWaveformExtractor.extract(mediaItem.getFilePath(), request);
+            if (waveform == null) {
+                return null;
+            }
+            mCache.putPeakWaveform(peaksKey, waveform);
+        }
+
+        // the coarsest level with a peak for every column of pixels
+        int level = waveform.findLevel(mWidth);
+        int peakCount = waveform.getPeakCount(level);
+        if (peakCount == 0) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        paint.setColor(mWaveformColor);
+        float centerY = mHeight / 2f;
+        float scale = centerY / 32768f;
+        for (int x = 0; x < mWidth; x++) {
+            int start = (int) ((long) x * peakCount / mWidth);
+            int end = Math.max(start + 1, (int) ((long) (x + 1) * peakCount / mWidth));
+            int min = 0;
+            int max = 0;
+            for (int i = start; i < end && i < peakCount; i++) {
+                min = Math.min(min, waveform.getMin(level, i));
+                max = Math.max(max, waveform.getMax(level, i));
+            }
+            // at least a pixel, silence shows as a line
+            float top = Math.min(centerY - 0.5f, centerY - max * scale);
+            float bottom = Math.max(centerY + 0.5f, centerY - min * scale);
+            canvas.drawRect(x, top, x + 1, bottom, paint);
+        }
+        return bitmap;
+    }
+
+    private String getVariant(MediaItem mediaItem) {
+        return (mediaItem.isVideo() ? "filmstrip_" : "waveform_") + mWidth + "x" + mHeight;
+    }
+
+    /***
+     * get modification time of the file in seconds, from the media catalog if the item came from it
+     */
+    private static long getDateModified(MediaItem mediaItem) {
+        if (mediaItem.getDateModified() > 0) {
+            return mediaItem.getDateModified();
+        }
+        return new File(mediaItem.getFilePath()).lastModified() / 1000;
+    }
+}
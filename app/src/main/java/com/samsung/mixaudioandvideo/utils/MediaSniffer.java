@@ -0,0 +1,209 @@
+package com.samsung.mixaudioandvideo.utils;
+
+import com.samsung.mixaudioandvideo.export.mp4.Mp4Info;
+import com.samsung.mixaudioandvideo.export.mp4.Mp4Parser;
+import com.samsung.mixaudioandvideo.export.mp4.Mp4TrackInfo;
+import com.samsung.mixaudioandvideo.models.ContainerType;
+import com.samsung.mixaudioandvideo.models.MediaItem;
+import com.samsung.mixaudioandvideo.models.TrackType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/***
+ * Tells the container and codecs of a file from its first bytes instead of its extension.
+ * Only the header is read, except for an MP4 whose moov is found by skipping from box header to box header.
+ * Not thread safe, use one sniffer per thread.
+ */
+public class MediaSniffer {
+    public static final int HEADER_SIZE = 8 * 1024;
+    private static final int ID3_HEADER_SIZE = 10;
+    private static final int ID3_FOOTER_FLAG = 0x10;
+
+    private static final int[] ADTS_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+    // indexed by the MPEG version bits: 2.5, reserved, 2, 1
+    private static final int[][] MPEG_SAMPLE_RATES = {
+            {11025, 12000, 8000}, null, {22050, 24000, 16000}, {44100, 48000, 32000}
+    };
+
+    private final byte[] mHeader = new byte[HEADER_SIZE];
+    private final Mp4Parser mMp4Parser = new Mp4Parser();
+
+    /***
+     * sniff the file of an item and set its container, codecs and, where the header tells them, audio format.
+     * The item is marked probed only if all its tracks are known.
+     *
+     * @return false if the file can't be read
+     */
+    public boolean sniff(MediaItem item) {
+        item.setContainerType(ContainerType.UNKNOWN);
+        item.setVideoMimeType(null);
+        item.setAudioMimeType(null);
+        item.setProbed(false);
+        File file = new File(item.getFilePath());
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            int length = readHeader(in, 0);
+            if (length >= ID3_HEADER_SIZE && startsWith(length, 0, "ID3")) {
+                // a tag in front of MPEG or ADTS frames, the frames follow it
+                long tagSize = ID3_HEADER_SIZE + ((mHeader[6] & 0x7F) << 21 | (mHeader[7] & 0x7F) << 14
+                        | (mHeader[8] & 0x7F) << 7 | (mHeader[9] & 0x7F));
+                if ((mHeader[5] & ID3_FOOTER_FLAG) != 0) {
+                    tagSize += ID3_HEADER_SIZE;
+                }
+                length = readHeader(in, tagSize);
+            }
+            classify(item, file, length);
+            return true;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    private int readHeader(RandomAccessFile in, long position) throws IOException {
+        in.seek(position);
+        int length = 0;
+        while (length < mHeader.length) {
+            int read = in.read(mHeader, length, mHeader.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private void classify(MediaItem item, File file, int length) throws IOException {
+        if (length >= 12 && startsWith(length, 4, "ftyp")) {
+            item.setContainerType(ContainerType.MP4);
+            sniffMp4(item, file);
+        } else if (startsWith(length, 0, "#!AMR-WB\n")) {
+            item.setContainerType(ContainerType.AMR);
+            setAudio(item, "audio/amr-wb", 16000, 1);
+        } else if (startsWith(length, 0, "#!AMR\n")) {
+            item.setContainerType(ContainerType.AMR);
+            setAudio(item, "audio/3gpp", 8000, 1);
+        } else if (startsWith(length, 0, "OggS")) {
+            item.setContainerType(ContainerType.OGG);
+            sniffOgg(item, length);
+        } else if (length >= 21 && startsWith(length, 0, "fLaC")) {
+            // STREAMINFO follows the marker and its block header: 20 bits of sample rate, 3 bits of channels - 1
+            item.setContainerType(ContainerType.FLAC);
+            int sampleRate = (mHeader[18] & 0xFF) << 12 | (mHeader[19] & 0xFF) << 4 | (mHeader[20] & 0xFF) >> 4;
+            setAudio(item, "audio/flac", sampleRate, ((mHeader[20] & 0x0E) >> 1) + 1);
+        } else if (length >= 12 && startsWith(length, 0, "RIFF") && startsWith(length, 8, "WAVE")) {
+            item.setContainerType(ContainerType.WAV);
+            sniffWav(item, length);
+        } else if (length >= 4 && (mHeader[0] & 0xFF) == 0x1A && (mHeader[1] & 0xFF) == 0x45
+                && (mHeader[2] & 0xFF) == 0xDF && (mHeader[3] & 0xFF) == 0xA3) {
+            item.setContainerType(ContainerType.MATROSKA);
+        } else if (length >= 4 && (mHeader[0] & 0xFF) == 0xFF && (mHeader[1] & 0xF6) == 0xF0) {
+            // 12 bit sync and layer 0: ADTS
+            item.setContainerType(ContainerType.ADTS);
+            int sampleRateIndex = (mHeader[2] & 0x3C) >> 2;
+            int channels = (mHeader[2] & 0x01) << 2 | (mHeader[3] & 0xC0) >> 6;
+            setAudio(item, "audio/mp4a-latm",
+                    sampleRateIndex < ADTS_SAMPLE_RATES.length ? ADTS_SAMPLE_RATES[sampleRateIndex] : 0, channels);
+        } else if (length >= 4 && (mHeader[0] & 0xFF) == 0xFF && (mHeader[1] & 0xE0) == 0xE0
+                && (mHeader[1] & 0x06) != 0) {
+            // 11 bit sync and a layer: MPEG audio
+            item.setContainerType(ContainerType.MP3);
+            int[] sampleRates = MPEG_SAMPLE_RATES[(mHeader[1] & 0x18) >> 3];
+            int sampleRateIndex = (mHeader[2] & 0x0C) >> 2;
+            int sampleRate = sampleRates != null && sampleRateIndex < 3 ? sampleRates[sampleRateIndex] : 0;
+            setAudio(item, "audio/mpeg", sampleRate, (mHeader[3] & 0xC0) == 0xC0 ? 1 : 2);
+        }
+    }
+
+    private void sniffMp4(MediaItem item, File file) throws IOException {
+        Mp4Info info = mMp4Parser.parse(file);
+        if (info == null) {
+            return;
+        }
+        Mp4TrackInfo videoTrack = info.getTrack(TrackType.VIDEO);
+        if (videoTrack != null) {
+            item.setVideoMimeType(videoTrack.getMimeType());
+            item.setWidth(videoTrack.getWidth());
+            item.setHeight(videoTrack.getHeight());
+        }
+        Mp4TrackInfo audioTrack = info.getTrack(TrackType.AUDIO);
+        if (audioTrack != null) {
+            item.setAudioMimeType(audioTrack.getMimeType());
+            item.setSampleRate(audioTrack.getSampleRate());
+            item.setChannelCount(audioTrack.getChannelCount());
+        }
+        if (item.getDurationUs() <= 0) {
+            item.setDurationUs(info.getDurationUs());
+        }
+        item.setProbed(true);
+    }
+
+    /***
+     * the first page of an Ogg stream holds the identification header of its codec
+     */
+    private void sniffOgg(MediaItem item, int length) {
+        int opusHead = indexOf(length, "OpusHead");
+        if (opusHead >= 0 && opusHead + 10 <= length) {
+            // always decoded at 48 kHz, whatever the input rate was
+            setAudio(item, "audio/opus", 48000, mHeader[opusHead + 9] & 0xFF);
+            return;
+        }
+        int vorbis = indexOf(length, "vorbis");
+        if (vorbis > 0 && mHeader[vorbis - 1] == 1 && vorbis + 15 <= length) {
+            setAudio(item, "audio/vorbis", readIntLe(vorbis + 11), mHeader[vorbis + 10] & 0xFF);
+            return;
+        }
+        int flac = indexOf(length, "FLAC");
+        if (flac > 0 && (mHeader[flac - 1] & 0xFF) == 0x7F) {
+            setAudio(item, "audio/flac", 0, 0);
+        }
+    }
+
+    private void sniffWav(MediaItem item, int length) {
+        int fmt = indexOf(length, "fmt ");
+        if (fmt >= 0 && fmt + 16 <= length) {
+            setAudio(item, "audio/raw", readIntLe(fmt + 12), (mHeader[fmt + 10] & 0xFF) | (mHeader[fmt + 11] & 0xFF) << 8);
+        } else {
+            setAudio(item, "audio/raw", 0, 0);
+        }
+    }
+
+    /***
+     * a file of one audio stream, all its tracks are known
+     */
+    private static void setAudio(MediaItem item, String mimeType, int sampleRate, int channelCount) {
+        item.setAudioMimeType(mimeType);
+        item.setSampleRate(sampleRate);
+        item.setChannelCount(channelCount);
+        item.setProbed(true);
+    }
+
+    private boolean startsWith(int length, int offset, String magic) {
+        if (offset + magic.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length(); i++) {
+            if (mHeader[offset + i] != (byte) magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(int length, String magic) {
+        for (int i = 0; i + magic.length() <= length; i++) {
+            if (startsWith(length, i, magic)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int readIntLe(int offset) {
+        return (mHeader[offset] & 0xFF) | (mHeader[offset + 1] & 0xFF) << 8
+                | (mHeader[offset + 2] & 0xFF) << 16 | (mHeader[offset + 3] & 0xFF) << 24;
+    }
+}
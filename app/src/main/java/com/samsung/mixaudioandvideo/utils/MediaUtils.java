@@ -1,13 +1,25 @@
 package com.samsung.mixaudioandvideo.utils;
 
+import android.media.AudioFormat;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
+import android.os.Build;
 import android.util.Log;
 
+import com.samsung.mixaudioandvideo.export.mp4.Mp4Info;
+import com.samsung.mixaudioandvideo.export.mp4.Mp4Parser;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
 import com.samsung.mixaudioandvideo.models.TrackType;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
 public class MediaUtils {
     private static String TAG = AppConstants.DEBUG_TAG + "MediaUtils";
+    private static final int DEFAULT_MAX_CODEC_INSTANCES = 2;
 
     public static int getTrackIndex(MediaExtractor extractor, int type) {
         int trackCount = extractor.getTrackCount();
@@ -24,4 +36,93 @@ public class MediaUtils {
         }
         return TrackType.ERR_NO_TRACK_INDEX;
     }
+
+    /***
+     * probe an MP4 / M4A from its boxes, much cheaper than a MediaExtractor
+     *
+     * @return null if the file isn't an MP4 or can't be read
+     */
+    public static Mp4Info probeMp4(String filePath) {
+        try {
+            return new Mp4Parser().parse(new File(filePath));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /***
+     * check if audio of a mime type can be muxed as it is, without decoding and encoding it again
+     *
+     * @param mimeType audio mime type, may be null
+     */
+    public static boolean isPassthroughAudio(String mimeType) {
+        return MediaFormat.MIMETYPE_AUDIO_AAC.equals(mimeType) // audio/mp4a-latm
+                || MediaFormat.MIMETYPE_AUDIO_AMR_NB.equals(mimeType) // audio/3gpp
+                || MediaFormat.MIMETYPE_AUDIO_AMR_WB.equals(mimeType); // audio/amr-wb
+    }
+
+    /***
+     * format a duration as m:ss, or h:mm:ss from an hour on
+     */
+    public static String formatDuration(long durationUs) {
+        long seconds = durationUs / 1000000L;
+        if (seconds >= 3600) {
+            return String.format(Locale.US, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        }
+        return String.format(Locale.US, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /***
+     * get format of the PCM audio coming out of the decoder of an audio track
+     *
+     * @param format format of the audio track
+     */
+    public static PcmFormat getDecodedPcmFormat(MediaFormat format) {
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        // decoders put out 16 bit unless the track says otherwise, e.g. raw PCM of a WAV file
+        int encoding = format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                ? format.getInteger(MediaFormat.KEY_PCM_ENCODING) : AudioFormat.ENCODING_PCM_16BIT;
+        switch (encoding) {
+            case AudioFormat.ENCODING_PCM_8BIT:
+                return new PcmFormat(sampleRate, channelCount, PcmFormat.BYTES_PER_SAMPLE_8BIT);
+            case AudioFormat.ENCODING_PCM_24BIT_PACKED:
+                return new PcmFormat(sampleRate, channelCount, PcmFormat.BYTES_PER_SAMPLE_24BIT);
+            case AudioFormat.ENCODING_PCM_32BIT:
+                return new PcmFormat(sampleRate, channelCount, PcmFormat.BYTES_PER_SAMPLE_32BIT);
+            case AudioFormat.ENCODING_PCM_FLOAT:
+                return new PcmFormat(sampleRate, channelCount, PcmFormat.BYTES_PER_SAMPLE_32BIT, true);
+            default:
+                return new PcmFormat(sampleRate, channelCount);
+        }
+    }
+
+    /***
+     * get the max number of codec instances which can run at the same time for a mime type
+     *
+     * @param mimeType codec mime type, e.g. audio/mp4a-latm
+     * @param encoder  true to look for encoders, false for decoders
+     * @return max supported instances, or a conservative default when the platform can't tell
+     */
+    public static int getMaxCodecInstances(String mimeType, boolean encoder) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return DEFAULT_MAX_CODEC_INSTANCES;
+        }
+
+        int maxInstances = 0;
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo codecInfo : codecList.getCodecInfos()) {
+            if (codecInfo.isEncoder() != encoder) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(mimeType)) {
+                    int instances = codecInfo.getCapabilitiesForType(type).getMaxSupportedInstances();
+                    maxInstances = Math.max(maxInstances, instances);
+                }
+            }
+        }
+        return maxInstances > 0 ? maxInstances : DEFAULT_MAX_CODEC_INSTANCES;
+    }
 }
@@ -0,0 +1,176 @@
+package com.samsung.mixaudioandvideo.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/***
+ * Levels of an audio file as a mipmap of peaks: level 0 holds the lowest and highest 16 bit sample of every
+ * few frames, each next level merges two peaks of the one below, down to a single peak.
+ * Stored as one file, read back by mapping it, so only the peaks drawn are ever paged in.
+ *
+ * File layout, big endian: "PEAK", version, sample rate, frames per peak of level 0, frame count (64 bit),
+ * level count, peak count of every level, then the min / max pairs of every level, level 0 first.
+ */
+public class PeakWaveform {
+    private static final int MAGIC = 0x5045414B; // PEAK
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 28;
+    private static final int BYTES_PER_PEAK = 4;
+
+    private final int mSampleRate;
+    private final int mFramesPerPeak;
+    private final long mFrameCount;
+    // min / max pairs of every level
+    private final ShortBuffer[] mLevels;
+
+    /***
+     * @param levels min / max pairs of every level, level 0 first
+     */
+    PeakWaveform(int sampleRate, int framesPerPeak, long frameCount, ShortBuffer[] levels) {
+        mSampleRate = sampleRate;
+        mFramesPerPeak = framesPerPeak;
+        mFrameCount = frameCount;
+        mLevels = levels;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getDurationUs() {
+        return mFrameCount * 1000000L / mSampleRate;
+    }
+
+    public int getLevelCount() {
+        return mLevels.length;
+    }
+
+    public int getPeakCount(int level) {
+        return mLevels[level].limit() / 2;
+    }
+
+    public int getFramesPerPeak(int level) {
+        return mFramesPerPeak << level;
+    }
+
+    /***
+     * get lowest sample of a peak, as a 16 bit sample
+     */
+    public short getMin(int level, int index) {
+        return mLevels[level].get(index * 2);
+    }
+
+    /***
+     * get highest sample of a peak, as a 16 bit sample
+     */
+    public short getMax(int level, int index) {
+        return mLevels[level].get(index * 2 + 1);
+    }
+
+    /***
+     * find the coarsest level which still has enough peaks, e.g. one per pixel
+     *
+     * @return level 0 if no level has that many
+     */
+    public int findLevel(int minPeakCount) {
+        for (int level = mLevels.length - 1; level > 0; level--) {
+            if (getPeakCount(level) >= minPeakCount) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    /***
+     * write the peaks to a file, replacing it at once
+     *
+     * @throws IOException
+     */
+    public void writeTo(File file) throws IOException {
+        int headerSize = FIXED_HEADER_SIZE + mLevels.length * 4;
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(MAGIC).putInt(VERSION).putInt(mSampleRate).putInt(mFramesPerPeak)
+                .putLong(mFrameCount).putInt(mLevels.length);
+        for (int level = 0; level < mLevels.length; level++) {
+            header.putInt(getPeakCount(level));
+        }
+        header.flip();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            FileChannel channel = out.getChannel();
+            writeFully(channel, header);
+            for (ShortBuffer level : mLevels) {
+                ByteBuffer bytes = ByteBuffer.allocate(level.limit() * 2);
+                bytes.asShortBuffer().put(level.duplicate());
+                writeFully(channel, bytes);
+            }
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("can't rename " + tempFile);
+        }
+    }
+
+    /***
+     * map the peaks written to a file
+     *
+     * @throws IOException if the file isn't a peak file, is damaged or is cut short
+     */
+    public static PeakWaveform read(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            // the mapping stays valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < FIXED_HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a peak file: " + file);
+        }
+        int sampleRate = buffer.getInt();
+        int framesPerPeak = buffer.getInt();
+        long frameCount = buffer.getLong();
+        int levelCount = buffer.getInt();
+        // a waveform has at least the level of the finest peaks, even without a single peak
+        if (sampleRate <= 0 || framesPerPeak <= 0 || frameCount < 0 || levelCount < 1
+                || buffer.remaining() < levelCount * 4L) {
+            throw new IOException("bad peak file header: " + file);
+        }
+        int[] peakCounts = new int[levelCount];
+        long dataSize = 0;
+        for (int level = 0; level < levelCount; level++) {
+            peakCounts[level] = buffer.getInt();
+            if (peakCounts[level] < 0) {
+                throw new IOException("bad peak count of level " + level + ": " + file);
+            }
+            dataSize += (long) peakCounts[level] * BYTES_PER_PEAK;
+        }
+        if (buffer.remaining() < dataSize) {
+            throw new IOException("peak file cut short: " + file);
+        }
+
+        ShortBuffer[] levels = new ShortBuffer[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            ByteBuffer levelBytes = buffer.slice();
+            levelBytes.limit(peakCounts[level] * BYTES_PER_PEAK);
+            levels[level] = levelBytes.asShortBuffer();
+            buffer.position(buffer.position() + peakCounts[level] * BYTES_PER_PEAK);
+        }
+        return new PeakWaveform(sampleRate, framesPerPeak, frameCount, levels);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.samsung.mixaudioandvideo.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.samsung.mixaudioandvideo.export.pipeline.ConvertingSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmConverter;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.media.ExtractorSampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.media.MediaCodecSampleCodec;
+import com.samsung.mixaudioandvideo.models.TrackType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/***
+ * Reduces decoded 16 bit PCM to a {@link PeakWaveform} as it streams by: the lowest and highest sample of all
+ * channels over every {@link #FRAMES_PER_PEAK} frames, kept in a growing short array.
+ * The coarser levels are merged from level 0 at the end, which is small next to the audio.
+ * Nothing is allocated per sample, the decoder is the only real cost.
+ */
+public class PeakWaveformExtractor {
+    private static final String TAG = "PeakWaveformExtractor";
+    // level 0 resolution, about 6 ms at 44.1 kHz
+    public static final int FRAMES_PER_PEAK = 256;
+    private static final int INITIAL_PEAK_CAPACITY = 4096;
+    private static final long TIMEOUT_US = 10000L;
+
+    public interface CancelSignal {
+        boolean isCancelled();
+    }
+
+    private final PcmFormat mFormat;
+    private final int mSamplesPerPeak;
+    private short[] mScratch = new short[0];
+    // min / max pairs of level 0
+    private short[] mPeaks = new short[INITIAL_PEAK_CAPACITY * 2];
+    private int mPeakCount;
+    private int mPeakMin = Short.MAX_VALUE;
+    private int mPeakMax = Short.MIN_VALUE;
+    private int mSamplesInPeak;
+    private long mSampleCount;
+
+    /***
+     * @param format format of the PCM fed in, 16 bit
+     */
+    public PeakWaveformExtractor(PcmFormat format) {
+        if (format.getBytesPerSample() != PcmFormat.BYTES_PER_SAMPLE_16BIT || format.isFloat()) {
+            throw new IllegalArgumentException("only 16 bit input is supported: " + format);
+        }
+        mFormat = format;
+        mSamplesPerPeak = FRAMES_PER_PEAK * format.getChannelCount();
+    }
+
+    /***
+     * add decoded samples, buffer after buffer
+     *
+     * @param buffer samples at offset, its position is not changed
+     */
+    public void write(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        bytes.limit(offset + size);
+        bytes.position(offset);
+        ShortBuffer samples = bytes.asShortBuffer();
+        int count = samples.remaining();
+        if (mScratch.length < count) {
+            mScratch = new short[count];
+        }
+        samples.get(mScratch, 0, count);
+
+        int min = mPeakMin;
+        int max = mPeakMax;
+        int samplesInPeak = mSamplesInPeak;
+        for (int i = 0; i < count; i++) {
+            int sample = mScratch[i];
+            if (sample < min) {
+                min = sample;
+            }
+            if (sample > max) {
+                max = sample;
+            }
+            if (++samplesInPeak == mSamplesPerPeak) {
+                addPeak(min, max);
+                min = Short.MAX_VALUE;
+                max = Short.MIN_VALUE;
+                samplesInPeak = 0;
+            }
+        }
+        mPeakMin = min;
+        mPeakMax = max;
+        mSamplesInPeak = samplesInPeak;
+        mSampleCount += count;
+    }
+
+    /***
+     * end the input and build the levels
+     */
+    public PeakWaveform finish() {
+        if (mSamplesInPeak > 0) {
+            addPeak(mPeakMin, mPeakMax);
+            mSamplesInPeak = 0;
+        }
+
+        int levelCount = 1;
+        for (int count = mPeakCount; count > 1; count = (count + 1) / 2) {
+            levelCount++;
+        }
+        ShortBuffer[] levels = new ShortBuffer[levelCount];
+        short[] peaks = Arrays.copyOf(mPeaks, mPeakCount * 2);
+        levels[0] = ShortBuffer.wrap(peaks);
+        for (int level = 1; level < levelCount; level++) {
+            peaks = mergePeaks(peaks);
+            levels[level] = ShortBuffer.wrap(peaks);
+        }
+        return new PeakWaveform(mFormat.getSampleRate(), FRAMES_PER_PEAK,
+                mSampleCount / mFormat.getChannelCount(), levels);
+    }
+
+    private void addPeak(int min, int max) {
+        if (mPeakCount * 2 == mPeaks.length) {
+            mPeaks = Arrays.copyOf(mPeaks, mPeaks.length * 2);
+        }
+        mPeaks[mPeakCount * 2] = (short) min;
+        mPeaks[mPeakCount * 2 + 1] = (short) max;
+        mPeakCount++;
+    }
+
+    /***
+     * merge every two peaks into one, an odd last peak is kept as it is
+     */
+    private static short[] mergePeaks(short[] peaks) {
+        int count = peaks.length / 2;
+        short[] merged = new short[(count + 1) / 2 * 2];
+        for (int i = 0; i < count; i += 2) {
+            int next = Math.min(i + 1, count - 1);
+            merged[i] = (short) Math.min(peaks[i * 2], peaks[next * 2]);
+            merged[i + 1] = (short) Math.max(peaks[i * 2 + 1], peaks[next * 2 + 1]);
+        }
+        return merged;
+    }
+
+    /***
+     * decode a source and reduce it, on a background thread
+     *
+     * @param decoder started decoder of the source, putting out the format of the extractor
+     * @return null if cancelled
+     */
+    public PeakWaveform extract(SampleSource source, SampleCodec decoder, CancelSignal cancelSignal) {
+        SampleInfo info = new SampleInfo();
+        boolean allInputExtracted = false;
+        while (!cancelSignal.isCancelled()) {
+            if (!allInputExtracted) {
+                int inBufferId = decoder.dequeueInputBuffer(TIMEOUT_US);
+                if (inBufferId >= 0) {
+                    int sampleSize = source.readSampleData(decoder.getInputBuffer(inBufferId), 0);
+                    if (sampleSize < 0) {
+                        decoder.queueInputBuffer(inBufferId, 0, 0, 0, SampleInfo.FLAG_END_OF_STREAM);
+                        allInputExtracted = true;
+                    } else {
+                        decoder.queueInputBuffer(inBufferId, 0, sampleSize, source.getSampleTime(), source.getSampleFlags());
+                        source.advance();
+                    }
+                }
+            }
+
+            int outBufferId = decoder.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (outBufferId >= 0) {
+                write(decoder.getOutputBuffer(outBufferId), info.offset, info.size);
+                decoder.releaseOutputBuffer(outBufferId);
+                if (info.isEndOfStream()) {
+                    return finish();
+                }
+            }
+        }
+        return null;
+    }
+
+    /***
+     * decode the audio track of a file and reduce it, on a background thread
+     *
+     * @return null if the file has no audio track, can't be decoded or the work was cancelled
+     */
+    public static PeakWaveform extract(String filePath, CancelSignal cancelSignal) {
+        long startTime = System.currentTimeMillis();
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec decoder = null;
+        try {
+            extractor.setDataSource(filePath);
+            int trackIndex = MediaUtils.getTrackIndex(extractor, TrackType.AUDIO);
+            if (trackIndex == TrackType.ERR_NO_TRACK_INDEX) {
+                return null;
+            }
+            MediaFormat format = extractor.getTrackFormat(trackIndex);
+            SampleSource source = new ExtractorSampleSource(extractor, trackIndex);
+            decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            decoder.configure(format, null, null, 0);
+            decoder.start();
+
+            // 8, 24, 32 bit or float PCM is turned into 16 bit first, keeping rate and channels
+            PcmFormat decodedFormat = MediaUtils.getDecodedPcmFormat(format);
+            PcmFormat format16Bit = new PcmFormat(decodedFormat.getSampleRate(), decodedFormat.getChannelCount());
+            SampleCodec sampleCodec = new MediaCodecSampleCodec(decoder);
+            if (!decodedFormat.isSameLayout(format16Bit)) {
+                sampleCodec = new ConvertingSampleCodec(sampleCodec, new PcmConverter(decodedFormat, format16Bit));
+            }
+
+            PeakWaveform waveform = new PeakWaveformExtractor(format16Bit).extract(source, sampleCodec, cancelSignal);
+            if (waveform != null) {
+                long elapsedMs = Math.max(1, System.currentTimeMillis() - startTime);
+                Log.i(TAG, "extracted peaks of " + waveform.getDurationUs() / 1000 + " ms of audio in " + elapsedMs
+                        + " ms, " + waveform.getDurationUs() / 1000 / elapsedMs + "x real time");
+            }
+            return waveform;
+        } catch (IOException | IllegalStateException | IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.release();
+            }
+            extractor.release();
+        }
+    }
+}
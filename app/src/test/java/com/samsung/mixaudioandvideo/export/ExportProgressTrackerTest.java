@@ -0,0 +1,45 @@
+package com.samsung.mixaudioandvideo.export;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExportProgressTrackerTest {
+    private static final long DURATION_US = 60000000L;
+
+    @Test
+    public void reportsAtMostOncePerInterval() {
+        List<ExportProgress> reports = new ArrayList<>();
+        ExportProgressTracker tracker = new ExportProgressTracker(2, DURATION_US, 250, reports::add);
+        tracker.start(0);
+
+        // a sample every ms on both tracks for 1 second
+        for (long nowMs = 0; nowMs < 1000; nowMs++) {
+            tracker.onTrackPosition(0, nowMs * 1000, nowMs);
+            tracker.onTrackPosition(1, nowMs * 1000, nowMs);
+        }
+
+        assertEquals(3, reports.size());
+    }
+
+    @Test
+    public void combinesTracksIntoProgressAndEta() {
+        List<ExportProgress> reports = new ArrayList<>();
+        ExportProgressTracker tracker = new ExportProgressTracker(2, DURATION_US, 0, reports::add);
+        tracker.start(1000);
+
+        tracker.onTrackEnded(0, 6000); // video done
+        tracker.onTrackPosition(1, 0, 6000);
+        tracker.onTrackPosition(1, 30000000L, 6000); // audio half way
+
+        ExportProgress progress = reports.get(reports.size() - 1);
+        assertEquals(75, progress.getPercent());
+        assertEquals(45000000L, progress.getPositionUs());
+        // 45 s of media in 5 s of wall time, 15 s of media left
+        assertEquals(9.0, progress.getThroughput(), 0.001);
+        assertEquals(1666, progress.getEtaMs());
+    }
+}
@@ -0,0 +1,156 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FragmentedMp4WriterTest {
+    private static final int VIDEO_TRACK = 0;
+    private static final int AUDIO_TRACK = 1;
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xC0, 0x1E, 0x12, 0x34};
+    private static final byte[] PPS = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private File mFile;
+    private final List<long[]> mSamples = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("fragmented", ".mp4");
+        // 10 s of 30 fps video with a sync sample every second and 44.1 kHz AAC, in presentation time order
+        int video = 0;
+        int audio = 0;
+        while (video < 300 || audio < 430) {
+            long videoTimeUs = video * 33333L;
+            long audioTimeUs = audio * 23220L;
+            if (video < 300 && (audio >= 430 || videoTimeUs <= audioTimeUs)) {
+                mSamples.add(new long[]{VIDEO_TRACK, videoTimeUs, video % 30 == 0 ? SampleInfo.FLAG_SYNC_FRAME : 0, 500 + video % 7});
+                video++;
+            } else {
+                mSamples.add(new long[]{AUDIO_TRACK, audioTimeUs, SampleInfo.FLAG_SYNC_FRAME, 300 + audio % 5});
+                audio++;
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void writesHeaderAndFragments() throws Exception {
+        FragmentedMp4Writer writer = createWriter(1000000);
+        long[] written = new long[1];
+        writer.setDataListener((offset, length) -> {
+            // ranges are reported in file order without gaps
+            assertEquals(written[0], offset);
+            written[0] += length;
+        });
+        writer.start();
+        writeSamples(writer, 0, mSamples.size(), null);
+        writer.stop();
+
+        byte[] bytes = Files.readAllBytes(mFile.toPath());
+        ByteBuffer file = ByteBuffer.wrap(bytes);
+        List<String> types = new ArrayList<>();
+        int firstMdat = -1;
+        while (file.remaining() >= 8) {
+            int position = file.position();
+            int size = file.getInt();
+            byte[] type = new byte[4];
+            file.get(type);
+            types.add(new String(type, "US-ASCII"));
+            if (firstMdat < 0 && types.get(types.size() - 1).equals("mdat")) {
+                firstMdat = position;
+            }
+            assertTrue("bad box size", size >= 8 && position + size <= bytes.length);
+            file.position(position + size);
+        }
+        assertEquals(bytes.length, file.position());
+        assertEquals(bytes.length, written[0]);
+        assertEquals("ftyp", types.get(0));
+        assertEquals("moov", types.get(1));
+        // a fragment per second of video
+        assertEquals(2 + 2 * 10, types.size());
+        for (int i = 2; i < types.size(); i += 2) {
+            assertEquals("moof", types.get(i));
+            assertEquals("mdat", types.get(i + 1));
+        }
+        // the start code of the first video sample became the NAL length
+        assertEquals(500 - 4, ByteBuffer.wrap(bytes, firstMdat + 8, 4).getInt());
+    }
+
+    @Test
+    public void resumeContinuesInterruptedOutput() throws Exception {
+        FragmentedMp4Writer writer = createWriter(1000000);
+        writer.start();
+        writeSamples(writer, 0, mSamples.size(), null);
+        writer.stop();
+        byte[] expected = Files.readAllBytes(mFile.toPath());
+
+        // interrupted in the middle of the sixth fragment
+        List<long[]> resumePoints = new ArrayList<>();
+        long[] headerCrc = new long[1];
+        writer = createWriter(1000000);
+        writer.setResumePointListener((fileSize, nextSequenceNumber, resumeTimesUs) ->
+                resumePoints.add(new long[]{fileSize, nextSequenceNumber, resumeTimesUs[VIDEO_TRACK], resumeTimesUs[AUDIO_TRACK]}));
+        writer.start();
+        headerCrc[0] = writer.getHeaderCrc();
+        writeSamples(writer, 0, mSamples.size() * 11 / 20, null);
+        writer.abort();
+        assertEquals(5, resumePoints.size());
+
+        long[] resumePoint = resumePoints.get(resumePoints.size() - 1);
+        long[] resumeTimesUs = {resumePoint[2], resumePoint[3]};
+        writer = createWriter(1000000);
+        assertTrue(writer.resume(resumePoint[0], (int) resumePoint[1], headerCrc[0], resumeTimesUs));
+        writeSamples(writer, 0, mSamples.size(), resumeTimesUs);
+        writer.stop();
+
+        assertArrayEquals(expected, Files.readAllBytes(mFile.toPath()));
+    }
+
+    private FragmentedMp4Writer createWriter(long fragmentDurationUs) throws Exception {
+        FragmentedMp4Writer writer = new FragmentedMp4Writer(mFile, fragmentDurationUs);
+        writer.addTrack(Mp4TrackFormat.createAvc(1280, 720, 90, SPS, PPS));
+        writer.addTrack(Mp4TrackFormat.createAac(44100, 2, 128000, null));
+        return writer;
+    }
+
+    /***
+     * write samples [from, to), skipping the ones before the resume time of their track
+     */
+    private void writeSamples(FragmentedMp4Writer writer, int from, int to, long[] resumeTimesUs) throws Exception {
+        SampleInfo info = new SampleInfo();
+        for (int i = from; i < to; i++) {
+            long[] sample = mSamples.get(i);
+            int track = (int) sample[0];
+            if (resumeTimesUs != null && sample[1] < resumeTimesUs[track]) {
+                continue;
+            }
+            int size = (int) sample[3];
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (int j = 0; j < size; j++) {
+                buffer.put(j, (byte) (i * 31 + j + 1));
+            }
+            if (track == VIDEO_TRACK) {
+                buffer.put(0, (byte) 0).put(1, (byte) 0).put(2, (byte) 0).put(3, (byte) 1)
+                        .put(4, (byte) (sample[2] != 0 ? 0x65 : 0x41));
+            }
+            info.set(0, size, sample[1], (int) sample[2]);
+            writer.writeSampleData(track, buffer, info);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Mp4FastStartTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("faststart", ".mp4");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void movesMoovInFrontAndShiftsChunkOffsets() throws Exception {
+        // ftyp, mdat with two chunks of two tracks, moov at the end as MediaMuxer writes it
+        Mp4BoxWriter writer = new Mp4BoxWriter();
+        writer.startBox("ftyp").putFourCc("isom").putInt(0).putFourCc("isom").endBox();
+        writer.startBox("mdat");
+        int dataStart = writer.position();
+        for (int i = 0; i < 1000; i++) {
+            writer.putByte(i * 7 + 3);
+        }
+        writer.endBox();
+        int[][] chunkOffsets = {{dataStart, dataStart + 400}, {dataStart + 200, dataStart + 700}};
+        writer.startBox("moov");
+        writer.startFullBox("mvhd", 0, 0).putZeros(96).endBox();
+        for (int[] offsets : chunkOffsets) {
+            writer.startBox("trak").startBox("mdia").startBox("minf").startBox("stbl");
+            writer.startFullBox("stsz", 0, 0).putInt(0).putInt(0).endBox();
+            writer.startFullBox("stco", 0, 0).putInt(offsets.length);
+            for (int offset : offsets) {
+                writer.putInt(offset);
+            }
+            writer.endBox();
+            writer.endBox().endBox().endBox().endBox();
+        }
+        writer.endBox();
+        byte[] original = writer.toByteArray();
+        Files.write(mFile.toPath(), original);
+
+        assertTrue(Mp4FastStart.process(mFile));
+        byte[] processed = Files.readAllBytes(mFile.toPath());
+        assertEquals(original.length, processed.length);
+
+        ByteBuffer file = ByteBuffer.wrap(processed);
+        int moovStart = file.getInt(0);
+        assertEquals("moov", new String(processed, moovStart + 4, 4, "US-ASCII"));
+        int mdatStart = moovStart + file.getInt(moovStart);
+        assertEquals("mdat", new String(processed, mdatStart + 4, 4, "US-ASCII"));
+
+        // every chunk offset still points at the same data
+        int track = 0;
+        for (int i = moovStart; i + 4 < mdatStart; i++) {
+            if (new String(processed, i, 4, "US-ASCII").equals("stco")) {
+                int count = file.getInt(i + 8);
+                assertEquals(chunkOffsets[track].length, count);
+                for (int j = 0; j < count; j++) {
+                    int offset = file.getInt(i + 12 + j * 4);
+                    assertEquals(original[chunkOffsets[track][j]], processed[offset]);
+                    assertEquals(original[chunkOffsets[track][j] + 50], processed[offset + 50]);
+                }
+                track++;
+            }
+        }
+        assertEquals(2, track);
+
+        // nothing left to do the second time
+        assertTrue(!Mp4FastStart.process(mFile));
+    }
+
+    @Test
+    public void addsEditListToVideoTrackOfMoovInFront() throws Exception {
+        Mp4BoxWriter writer = new Mp4BoxWriter();
+        writer.startBox("ftyp").putFourCc("isom").putInt(0).putFourCc("isom").endBox();
+        writer.startBox("moov");
+        writer.startFullBox("mvhd", 0, 0).putInt(0).putInt(0).putInt(1000).putInt(3000).putZeros(80).endBox();
+        int stcoPosition = 0;
+        for (String handler : new String[]{"soun", "vide"}) {
+            writer.startBox("trak");
+            writer.startFullBox("tkhd", 0, 3).putInt(0).putInt(0).putInt(1).putInt(0).putInt(3000).putZeros(60).endBox();
+            writer.startBox("mdia");
+            writer.startFullBox("mdhd", 0, 0).putInt(0).putInt(0).putInt(90000).putInt(270000).putInt(0).endBox();
+            writer.startFullBox("hdlr", 0, 0).putInt(0).putFourCc(handler).putZeros(12).putString("Handler").endBox();
+            writer.startBox("minf").startBox("stbl");
+            writer.startFullBox("stco", 0, 0).putInt(1);
+            stcoPosition = writer.position();
+            writer.putInt(0);
+            writer.endBox();
+            writer.endBox().endBox().endBox().endBox();
+        }
+        writer.endBox();
+        int dataStart = writer.position() + 8;
+        writer.putIntAt(stcoPosition, dataStart);
+        writer.startBox("mdat").putInt(0x12345678).putZeros(100).endBox();
+        Files.write(mFile.toPath(), writer.toByteArray());
+
+        // 0.5 s of frames before the trim start, 2 s shown
+        assertTrue(Mp4FastStart.process(mFile, 500000, 2000000));
+        byte[] processed = Files.readAllBytes(mFile.toPath());
+        ByteBuffer file = ByteBuffer.wrap(processed);
+
+        int elst = indexOf(processed, "elst", 0);
+        // in the second trak, in front of its handler
+        assertTrue(elst > indexOf(processed, "soun", 0) && elst < indexOf(processed, "vide", 0));
+        assertEquals(-1, indexOf(processed, "elst", elst + 4));
+        assertEquals(1, file.getInt(elst + 8));
+        assertEquals(2000, file.getInt(elst + 12));
+        assertEquals(45000, file.getInt(elst + 16));
+        // the video tkhd lasts as long as its edit
+        int videoTkhd = indexOf(processed, "tkhd", indexOf(processed, "tkhd", 0) + 4);
+        assertEquals(2000, file.getInt(videoTkhd + 24));
+        // the media data moved by the size of the edit list
+        int videoStco = indexOf(processed, "stco", elst);
+        int offset = file.getInt(videoStco + 12);
+        assertEquals(dataStart + 36, offset);
+        assertEquals(0x12345678, file.getInt(offset));
+    }
+
+    private static int indexOf(byte[] bytes, String type, int from) throws Exception {
+        byte[] pattern = type.getBytes("US-ASCII");
+        for (int i = from; i + 4 <= bytes.length; i++) {
+            if (bytes[i] == pattern[0] && bytes[i + 1] == pattern[1] && bytes[i + 2] == pattern[2] && bytes[i + 3] == pattern[3]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,116 @@
+package com.samsung.mixaudioandvideo.export.mp4;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.models.TrackType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Mp4ParserTest {
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xC0, 0x1E, 0x12, 0x34};
+    private static final byte[] PPS = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("parser", ".mp4");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void readsTracksFromFragments() throws Exception {
+        FragmentedMp4Writer writer = new FragmentedMp4Writer(mFile, 1000000);
+        writer.addTrack(Mp4TrackFormat.createAvc(1280, 720, 0, SPS, PPS));
+        writer.addTrack(Mp4TrackFormat.createAac(44100, 2, 128000, null));
+        writer.start();
+        // 3 s of 30 fps video and AAC frames of 1024 samples
+        SampleInfo info = new SampleInfo();
+        for (int i = 0; i < 90; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(100 + i);
+            buffer.put(3, (byte) 1).put(4, (byte) (i % 30 == 0 ? 0x65 : 0x41));
+            info.set(0, buffer.capacity(), i * 33333L, i % 30 == 0 ? SampleInfo.FLAG_SYNC_FRAME : 0);
+            writer.writeSampleData(0, buffer, info);
+            for (int j = i * 130 / 90; j < (i + 1) * 130 / 90; j++) {
+                info.set(0, 200, j * 23220L, SampleInfo.FLAG_SYNC_FRAME);
+                writer.writeSampleData(1, ByteBuffer.allocate(200), info);
+            }
+        }
+        writer.stop();
+
+        Mp4Info mp4Info = new Mp4Parser().parse(mFile);
+        assertTrue(mp4Info.isFragmented());
+        assertEquals(2, mp4Info.getTracks().size());
+
+        Mp4TrackInfo video = mp4Info.getTrack(TrackType.VIDEO);
+        assertEquals("video/avc", video.getMimeType());
+        assertEquals(1280, video.getWidth());
+        assertEquals(720, video.getHeight());
+        assertEquals(90, video.getSampleCount());
+        Mp4TrackInfo audio = mp4Info.getTrack(TrackType.AUDIO);
+        assertEquals("audio/mp4a-latm", audio.getMimeType());
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals(2, audio.getChannelCount());
+        assertEquals(130, audio.getSampleCount());
+        assertEquals(200, audio.getMaxSampleSize());
+        assertTrue("duration " + mp4Info.getDurationUs(), Math.abs(mp4Info.getDurationUs() - 3000000) < 50000);
+    }
+
+    @Test
+    public void readsPlainMoov() throws Exception {
+        Mp4BoxWriter writer = new Mp4BoxWriter();
+        writer.startBox("ftyp").putFourCc("mp42").putInt(0).putFourCc("isom").endBox();
+        writer.startBox("mdat").putZeros(64).endBox();
+        writer.startBox("moov");
+        // timescale 1000, duration 2.5 s
+        writer.startFullBox("mvhd", 0, 0).putInt(0).putInt(0).putInt(1000).putInt(2500).putZeros(80).endBox();
+        writer.startBox("trak");
+        writer.startFullBox("tkhd", 0, 0).putInt(0).putInt(0).putInt(1).putInt(0).putInt(2500).putZeros(52)
+                .putInt(0).putInt(0).endBox();
+        writer.startBox("mdia");
+        writer.startFullBox("mdhd", 0, 0).putInt(0).putInt(0).putInt(48000).putInt(120000).putInt(0).endBox();
+        writer.startFullBox("hdlr", 0, 0).putInt(0).putFourCc("soun").putZeros(12).putString("Sound").endBox();
+        writer.startBox("minf").startBox("stbl");
+        writer.startFullBox("stsd", 0, 0).putInt(1);
+        writer.startBox("mp4a").putZeros(6).putShort(1).putZeros(8).putShort(1).putShort(16).putZeros(4)
+                .putInt(48000 << 16).endBox();
+        writer.endBox();
+        writer.startFullBox("stsz", 0, 0).putInt(0).putInt(3).putInt(10).putInt(30).putInt(20).endBox();
+        writer.endBox().endBox();
+        writer.endBox();
+        writer.endBox();
+        writer.endBox();
+        Files.write(mFile.toPath(), writer.toByteArray());
+
+        Mp4Info info = new Mp4Parser().parse(mFile);
+        assertEquals("mp42", info.getMajorBrand());
+        assertTrue(!info.isFragmented());
+        assertTrue(!info.isMoovBeforeMdat());
+        assertEquals(2500000, info.getDurationUs());
+        Mp4TrackInfo audio = info.getTrack(TrackType.AUDIO);
+        assertEquals(1, audio.getChannelCount());
+        assertEquals(48000, audio.getSampleRate());
+        assertEquals(3, audio.getSampleCount());
+        assertEquals(30, audio.getMaxSampleSize());
+        assertEquals(2500000, audio.getDurationUs());
+        assertTrue(info.getTrack(TrackType.VIDEO) == null);
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws Exception {
+        Files.write(mFile.toPath(), new byte[]{'I', 'D', '3', 4, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4, 5, 6});
+        assertTrue(new Mp4Parser().parse(mFile) == null);
+    }
+}
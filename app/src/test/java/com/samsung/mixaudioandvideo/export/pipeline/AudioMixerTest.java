@@ -0,0 +1,26 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AudioMixerTest {
+
+    @Test
+    public void sumsTracksWithGainRampAndClips() {
+        AudioMixer mixer = new AudioMixer(1, 4);
+        short[] loud = {32100, 32100, 32100, 32100};
+        short[] ramp = {1000, 1000, 1000, 1000};
+        short[] out = new short[4];
+
+        mixer.begin(4);
+        mixer.add(ramp, 0, 4, 0, 0f, 1f); // fade in: 0, 0.25, 0.5, 0.75
+        mixer.add(loud, 0, 2, 2, 1f, 1f); // covers the last two frames
+        assertEquals(4, mixer.end(out));
+
+        assertEquals(0, out[0]);
+        assertEquals(250, out[1]);
+        assertEquals(32600, out[2]);
+        assertEquals(Short.MAX_VALUE, out[3]);
+    }
+}
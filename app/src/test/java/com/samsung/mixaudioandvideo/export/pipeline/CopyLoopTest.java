@@ -0,0 +1,241 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CopyLoopTest {
+    private static final long AAC_FRAME_US = 23220;
+    private static final PcmFormat PCM_FORMAT = new PcmFormat(44100, 2);
+
+    @Test
+    public void passthrough_copiesEverySample() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(300, 20000, 33333, 30);
+        FakeSampleSink sink = new FakeSampleSink();
+
+        PassthroughCopyLoop loop = new PassthroughCopyLoop(source, sink, 0, 65536);
+        loop.run();
+
+        assertEquals(300, sink.getSampleCount(0));
+        assertEquals(300L * 20000, sink.getByteCount(0));
+        assertEquals(299L * 33333, sink.getLastPresentationTimeUs(0));
+    }
+
+    @Test
+    public void passthrough_trimmedSourceStartsAtSyncSampleBeforeRange() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(300, 20000, 33333, 30);
+        FakeSampleSink sink = new FakeSampleSink();
+        // 1.5 s to 4 s, the sync sample before 1.5 s is the one at 30
+        source.seekTo(1500000);
+        TrimmedSampleSource trimmed = new TrimmedSampleSource(source, 4000000);
+        assertEquals(30 * 33333, trimmed.getStartTimeUs());
+
+        PassthroughCopyLoop loop = new PassthroughCopyLoop(trimmed, sink, 0, 65536);
+        loop.run();
+
+        // samples 30 to 149, the range ends at the sync sample at 150 behind 4 s, the edit list hides the rest
+        assertEquals(120, sink.getSampleCount(0));
+        assertEquals(119L * 33333, sink.getLastPresentationTimeUs(0));
+    }
+
+    @Test
+    public void passthrough_trimmedSourceKeepsBFramesBeforeEnd() throws Exception {
+        // I0 P3 B1 B2 P6 B4 B5 P9 B7 B8 in every 10 samples
+        FakeSampleSource source = new FakeSampleSource(100, 20000, 33333, 10);
+        source.setBFrameCount(2);
+        FakeSampleSink sink = new FakeSampleSink();
+        // 0.35 s to the middle of sample 14, P16 comes before B14 and B15 in decode order
+        source.seekTo(350000);
+        TrimmedSampleSource trimmed = new TrimmedSampleSource(source, 14 * 33333 + 16666);
+        assertEquals(10 * 33333, trimmed.getStartTimeUs());
+
+        PassthroughCopyLoop loop = new PassthroughCopyLoop(trimmed, sink, 0, 65536);
+        loop.run();
+
+        // the whole interval up to the sync sample at 20, ending with B18
+        assertEquals(10, sink.getSampleCount(0));
+        assertEquals(8L * 33333, sink.getLastPresentationTimeUs(0));
+    }
+
+    @Test
+    public void looping_fillsTargetDuration() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(100, 400, AAC_FRAME_US, 1);
+        FakeSampleSink sink = new FakeSampleSink();
+        long durationUs = source.getDurationUs() * 3 + source.getDurationUs() / 2;
+
+        LoopingCopyLoop loop = new LoopingCopyLoop(source, sink, 1, 4096, durationUs);
+        loop.run();
+
+        assertTrue(sink.getSampleCount(1) >= 349);
+        // only whole frames, ending inside the duration
+        assertTrue(sink.getLastPresentationTimeUs(1) + AAC_FRAME_US <= durationUs);
+        assertTrue(sink.getLastPresentationTimeUs(1) + AAC_FRAME_US > durationUs - AAC_FRAME_US);
+    }
+
+    @Test
+    public void looping_fromIndexWritesSameSamplesAsReadingSource() throws Exception {
+        long durationUs = 350 * AAC_FRAME_US + AAC_FRAME_US / 2;
+        FakeSampleSink readSink = new FakeSampleSink();
+        new LoopingCopyLoop(new FakeSampleSource(100, 400, AAC_FRAME_US, 1), readSink, 1, 4096, durationUs).run();
+
+        FakeSampleSink indexSink = new FakeSampleSink();
+        new LoopingCopyLoop(new FakeSampleSource(100, 400, AAC_FRAME_US, 1), indexSink, 1, 4096, durationUs, 1 << 20).run();
+
+        // the half frame at the end doesn't fit
+        assertEquals(350, indexSink.getSampleCount(1));
+        assertEquals(readSink.getSampleCount(1), indexSink.getSampleCount(1));
+        assertEquals(readSink.getByteCount(1), indexSink.getByteCount(1));
+        assertEquals(readSink.getLastPresentationTimeUs(1), indexSink.getLastPresentationTimeUs(1));
+        assertEquals(readSink.getChecksum(), indexSink.getChecksum());
+
+        // index too small for one pass: falls back to reading the source
+        FakeSampleSink overflowSink = new FakeSampleSink();
+        new LoopingCopyLoop(new FakeSampleSource(100, 400, AAC_FRAME_US, 1), overflowSink, 1, 4096, durationUs, 4000).run();
+        assertEquals(readSink.getChecksum(), overflowSink.getChecksum());
+        assertEquals(readSink.getLastPresentationTimeUs(1), overflowSink.getLastPresentationTimeUs(1));
+    }
+
+    @Test
+    public void transcode_reachesEndOfStream() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(200, 418, 26122, 1);
+        FakeSampleCodec decoder = new FakeSampleCodec(4, 8192, 8192, 11, 1);
+        FakeSampleCodec encoder = new FakeSampleCodec(4, 8192, 8192, 1, 11);
+        FakeSampleSink sink = new FakeSampleSink();
+
+        TranscodeCopyLoop loop = new TranscodeCopyLoop(source, decoder, encoder, sink, 1, source.getDurationUs(), PCM_FORMAT);
+        loop.run();
+
+        assertTrue(sink.getSampleCount(1) >= 190);
+        assertEquals(sink.getSampleCount(1), loop.getSampleCount());
+    }
+
+    @Test
+    public void transcode_cutsDecodedAudioAtExactDuration() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(200, 418, 26122, 1);
+        FakeSampleCodec decoder = new FakeSampleCodec(4, 8192, 8192, 11, 1);
+        FakeSampleCodec encoder = new FakeSampleCodec(4, 8192, 8192, 1, 1); // passes PCM through
+        FakeSampleSink sink = new FakeSampleSink();
+        long durationUs = 1234567;
+
+        TranscodeCopyLoop loop = new TranscodeCopyLoop(source, decoder, encoder, sink, 1, durationUs, PCM_FORMAT);
+        loop.run();
+
+        assertEquals(PCM_FORMAT.durationUsToBytes(durationUs), sink.getByteCount(1));
+    }
+
+    @Test
+    public void transcode_splitsDecoderOutputAcrossSmallEncoderBuffers() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(200, 418, 26122, 1);
+        FakeSampleCodec decoder = new FakeSampleCodec(4, 8192, 8192, 11, 1); // 4598 bytes of PCM per sample
+        FakeSampleCodec encoder = new FakeSampleCodec(4, 1024, 1024, 1, 1); // passes PCM through
+        FakeSampleSink sink = new FakeSampleSink();
+
+        TranscodeCopyLoop loop = new TranscodeCopyLoop(source, decoder, encoder, sink, 1, source.getDurationUs(), PCM_FORMAT);
+        loop.run();
+
+        assertEquals(200L * 418 * 11, sink.getByteCount(1));
+        // 1024 byte chunks hold 256 stereo frames, the last chunk of each decoder buffer is 502 bytes
+        long lastChunkTimeUs = 199 * 26122 + 4 * 256 * 1000000L / 44100;
+        assertEquals(lastChunkTimeUs, sink.getLastPresentationTimeUs(1));
+    }
+
+    @Test
+    public void transcode_replaysLoopCacheAfterFirstPass() throws Exception {
+        FakeSampleSource source = new FakeSampleSource(100, 418, 26122, 1);
+        FakeSampleCodec decoder = new FakeSampleCodec(4, 8192, 8192, 11, 1);
+        FakeSampleCodec encoder = new FakeSampleCodec(4, 8192, 8192, 1, 1); // passes PCM through
+        FakeSampleSink sink = new FakeSampleSink();
+        long durationUs = source.getDurationUs() * 3 + source.getDurationUs() / 2;
+        // one loop is 459800 bytes of PCM, most of it goes to disk
+        PcmLoopCache cache = new PcmLoopCache(PCM_FORMAT, 100000, new File(System.getProperty("java.io.tmpdir")));
+
+        TranscodeCopyLoop loop = new TranscodeCopyLoop(source, decoder, encoder, sink, 1, durationUs, PCM_FORMAT);
+        loop.setLoopCache(cache);
+        loop.run();
+
+        assertEquals(100L * 418 * 11, cache.getSize());
+        assertTrue(cache.isSpilled());
+        assertTrue(cache.isReplayFinished());
+        assertEquals(PCM_FORMAT.durationUsToBytes(durationUs), sink.getByteCount(1));
+        assertTrue(sink.getLastPresentationTimeUs(1) <= durationUs);
+
+        cache.close();
+        assertFalse(cache.isSpilled());
+    }
+
+    @Test
+    public void mixing_encodesExactDurationOfAllTracks() throws Exception {
+        // 4400 bytes of stereo PCM per sample = 1100 frames
+        MixerInput music = new MixerInput(new FakeSampleSource(40, 400, 24943, 1),
+                new FakeSampleCodec(4, 8192, 8192, 11, 1), PCM_FORMAT);
+        music.setLoop(true);
+        music.setFade(500000, 500000);
+        MixerInput voice = new MixerInput(new FakeSampleSource(80, 400, 24943, 1),
+                new FakeSampleCodec(4, 8192, 8192, 11, 1), PCM_FORMAT);
+        voice.setStartOffsetUs(1000000);
+        voice.setGain(0.5f);
+        FakeSampleCodec encoder = new FakeSampleCodec(4, 8192, 8192, 1, 1); // passes PCM through
+        FakeSampleSink sink = new FakeSampleSink();
+        long durationUs = 5000000;
+
+        MixingTranscodeLoop loop = new MixingTranscodeLoop(Arrays.asList(music, voice), encoder, sink, 1, durationUs, PCM_FORMAT);
+        loop.run();
+
+        assertEquals(PCM_FORMAT.durationUsToBytes(durationUs), sink.getByteCount(1));
+        assertTrue(sink.getLastPresentationTimeUs(1) < durationUs);
+    }
+
+    @Test
+    public void segmented_writesEveryFrameOnceInOrder() throws Exception {
+        // 1764 bytes of stereo PCM per sample = 441 frames = 10 ms, the encoder takes 1024 frames per buffer
+        SegmentCodecFactory factory = new SegmentCodecFactory() {
+            @Override
+            public SampleSource createSource() {
+                return new FakeSampleSource(900, 441, 10000, 1);
+            }
+
+            @Override
+            public SampleCodec createDecoder() {
+                return new FakeSampleCodec(4, 8192, 8192, 4, 1);
+            }
+
+            @Override
+            public SampleCodec createEncoder() {
+                return new FakeSampleCodec(4, 4096, 4096, 1, 1); // passes PCM through
+            }
+
+            @Override
+            public void releaseSource(SampleSource source) {
+            }
+
+            @Override
+            public void releaseCodec(SampleCodec codec) {
+            }
+        };
+        List<Long> timesUs = new ArrayList<>();
+        SampleSink sink = (trackIndex, buffer, info) -> timesUs.add(info.presentationTimeUs);
+        long durationUs = 8500000;
+
+        SegmentedTranscodeLoop loop = new SegmentedTranscodeLoop(factory, sink, 1, durationUs, PCM_FORMAT, 1000000, 3);
+        loop.run();
+
+        assertEquals(9, loop.getSegmentCount());
+        assertEquals(PCM_FORMAT.durationUsToBytes(durationUs), loop.getByteCount());
+        assertEquals(0L, (long) timesUs.get(0));
+        for (int i = 1; i < timesUs.size(); i++) {
+            long step = timesUs.get(i) - timesUs.get(i - 1);
+            assertTrue("gap or overlap at " + timesUs.get(i), step > 0 && step <= AAC_FRAME_US);
+        }
+    }
+}
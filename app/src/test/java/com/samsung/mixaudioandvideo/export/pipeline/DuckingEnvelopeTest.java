@@ -0,0 +1,32 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DuckingEnvelopeTest {
+
+    @Test
+    public void ducksFastWhileKeyIsLoudAndReleasesSlowly() {
+        DuckingEnvelope envelope = new DuckingEnvelope(-35f, 0.25f, 50000L, 500000L);
+        double speech = 3000; // about -21 dBFS
+        long blockUs = 20000L;
+
+        // quiet key keeps the music
+        assertEquals(1f, envelope.update(10, blockUs), 0.0001f);
+
+        // 200 ms of speech is 4 attack time constants
+        for (int i = 0; i < 10; i++) {
+            envelope.update(speech, blockUs);
+        }
+        assertEquals(0.25f, envelope.getGain(), 0.02f);
+
+        // 200 ms of silence brings the music only part of the way back
+        for (int i = 0; i < 10; i++) {
+            envelope.update(0, blockUs);
+        }
+        float released = envelope.getGain();
+        assertTrue(released > 0.4f && released < 0.6f);
+    }
+}
@@ -0,0 +1,131 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InterleavingMuxerStageTest {
+    private static final int VIDEO_TRACK = 0;
+    private static final int AUDIO_TRACK = 1;
+
+    @Test
+    public void writesTracksInterleavedWithinWindow() throws Exception {
+        long windowUs = 500000;
+        List<long[]> written = new ArrayList<>();
+        InterleavingMuxerStage stage = new InterleavingMuxerStage(
+                (trackIndex, buffer, info) -> written.add(new long[]{trackIndex, info.presentationTimeUs, info.size}),
+                2, 8, windowUs);
+
+        FakeSampleSource video = new FakeSampleSource(300, 5000, 33333, 30);
+        FakeSampleSource audio = new FakeSampleSource(430, 372, 23220, 1);
+        Thread videoProducer = startProducer(new PassthroughCopyLoop(video, stage, VIDEO_TRACK, 8192), stage, VIDEO_TRACK);
+        Thread audioProducer = startProducer(new PassthroughCopyLoop(audio, stage, AUDIO_TRACK, 8192), stage, AUDIO_TRACK);
+
+        stage.run();
+        videoProducer.join();
+        audioProducer.join();
+
+        assertEquals(730, written.size());
+        long[] lastTimeUs = {-1, -1};
+        long maxWrittenUs = -1;
+        for (long[] sample : written) {
+            int track = (int) sample[0];
+            assertTrue("track out of order", sample[1] > lastTimeUs[track]);
+            // a track never runs further ahead of the rest than the interleave window plus one sample
+            assertTrue("bad interleave", sample[1] >= maxWrittenUs - windowUs - 33333);
+            lastTimeUs[track] = sample[1];
+            maxWrittenUs = Math.max(maxWrittenUs, sample[1]);
+        }
+    }
+
+    @Test
+    public void stopReleasesBlockedProducer() throws Exception {
+        InterleavingMuxerStage stage = new InterleavingMuxerStage((trackIndex, buffer, info) -> { }, 2, 4, 0);
+        FakeSampleSource video = new FakeSampleSource(100, 1000, 33333, 30);
+        // audio never produces, so the writer waits and the video queue fills up
+        Thread videoProducer = startProducer(new PassthroughCopyLoop(video, stage, VIDEO_TRACK, 4096), stage, VIDEO_TRACK);
+
+        Thread.sleep(100);
+        stage.stop();
+        videoProducer.join(1000);
+        assertTrue(!videoProducer.isAlive());
+    }
+
+    @Test
+    public void packsSamplesIntoArenaOfTrack() throws Exception {
+        List<String> errors = new ArrayList<>();
+        int[] writtenCount = {0};
+        InterleavingMuxerStage stage = new InterleavingMuxerStage((trackIndex, buffer, info) -> {
+            int index = writtenCount[0]++;
+            if (info.size != getTestSampleSize(index)) {
+                errors.add("sample " + index + " has " + info.size + " bytes");
+            }
+            for (int i = info.offset; i < info.offset + info.size; i++) {
+                if (buffer.get(i) != (byte) index) {
+                    errors.add("sample " + index + " overwritten at " + i);
+                    break;
+                }
+            }
+        }, 2, 64, 0);
+        stage.setQueueBytes(VIDEO_TRACK, 90000);
+        stage.endOfTrack(AUDIO_TRACK);
+        Thread producer = new Thread(() -> {
+            try {
+                SampleInfo info = new SampleInfo();
+                for (int index = 0; index < 200; index++) {
+                    int size = getTestSampleSize(index);
+                    ByteBuffer buffer = ByteBuffer.allocate(size + 16);
+                    for (int i = 16; i < size + 16; i++) {
+                        buffer.put(i, (byte) index);
+                    }
+                    info.set(16, size, index * 33333L, index % 10 == 0 ? SampleInfo.FLAG_SYNC_FRAME : 0);
+                    stage.writeSampleData(VIDEO_TRACK, buffer, info);
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                stage.endOfTrack(VIDEO_TRACK);
+            }
+        });
+        producer.start();
+
+        stage.run();
+        producer.join();
+
+        assertEquals(200, writtenCount[0]);
+        assertTrue(errors.toString(), errors.isEmpty());
+        // one arena, grown once for the sample larger than it
+        assertEquals(120000, stage.getAllocatedBytes());
+    }
+
+    /***
+     * key frames of 30000 bytes, one of 120000, small frames between them
+     */
+    private static int getTestSampleSize(int index) {
+        if (index == 150) {
+            return 120000;
+        }
+        return index % 10 == 0 ? 30000 : 500 + index * 7;
+    }
+
+    private Thread startProducer(CopyLoop loop, InterleavingMuxerStage stage, int track) {
+        Thread thread = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                stage.endOfTrack(track);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
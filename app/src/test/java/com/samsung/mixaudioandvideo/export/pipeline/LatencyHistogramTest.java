@@ -0,0 +1,24 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(3000); // 3 us
+        }
+        histogram.record(100000); // 100 us
+        histogram.record(5000000); // 5 ms
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(4, histogram.getPercentileUs(50));
+        assertEquals(128, histogram.getPercentileUs(99));
+        assertEquals(5000, histogram.getPercentileUs(100));
+        assertEquals(5000, histogram.getMaxUs());
+    }
+}
@@ -0,0 +1,96 @@
+package com.samsung.mixaudioandvideo.export.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PcmConverterTest {
+    private static final PcmFormat STEREO_44100 = new PcmFormat(44100, 2);
+
+    @Test
+    public void resamplesSineKeepingLevelAndFrequency() {
+        PcmFormat in = new PcmFormat(48000, 2);
+        PcmConverter converter = new PcmConverter(in, STEREO_44100);
+        int frames = 48000;
+        short[] output = convert(converter, sine(in, frames, 1000, 0.5), frames / 7);
+
+        assertEquals(44100 * 2, output.length);
+        // 1 kHz over one second crosses zero about 2000 times
+        int crossings = 0;
+        int peak = 0;
+        for (int i = 2; i < output.length; i += 2) {
+            if ((output[i - 2] < 0) != (output[i] < 0)) {
+                crossings++;
+            }
+            peak = Math.max(peak, Math.abs(output[i]));
+        }
+        assertEquals(2000, crossings, 4);
+        assertEquals(16384, peak, 400);
+    }
+
+    @Test
+    public void streamingInPiecesEqualsOneBuffer() {
+        PcmFormat in = new PcmFormat(22050, 2);
+        ByteBuffer input = sine(in, 10000, 440, 0.8);
+        short[] whole = convert(new PcmConverter(in, STEREO_44100), input, 10000);
+        short[] pieces = convert(new PcmConverter(in, STEREO_44100), input, 333);
+
+        assertEquals(20000 * 2, whole.length);
+        assertArrayEquals(whole, pieces);
+    }
+
+    @Test
+    public void downMixesFloatSurroundToStereo() {
+        PcmFormat in = new PcmFormat(48000, 6, PcmFormat.BYTES_PER_SAMPLE_32BIT, true);
+        PcmConverter converter = new PcmConverter(in, new PcmFormat(48000, 2));
+        ByteBuffer input = ByteBuffer.allocate(in.getFrameSize()).order(ByteOrder.LITTLE_ENDIAN);
+        // front left, front right, center, low frequency, back left, back right
+        input.putFloat(0.5f).putFloat(0f).putFloat(0f).putFloat(1f).putFloat(0f).putFloat(0f);
+        input.flip();
+
+        short[] output = convert(converter, input, 1);
+
+        assertEquals(2, output.length);
+        assertTrue(output[0] > 0);
+        assertEquals(0, output[1]);
+    }
+
+    /***
+     * convert the input in pieces of the given frames, the last piece carries end of stream
+     */
+    private static short[] convert(PcmConverter converter, ByteBuffer input, int piece) {
+        int frameSize = converter.getInputFormat().getFrameSize();
+        ShortBuffer result = ShortBuffer.allocate(converter.getMaxOutputSize(input.limit()));
+        SampleInfo info = new SampleInfo();
+        for (int offset = 0; offset < input.limit(); offset += piece * frameSize) {
+            int size = Math.min(piece * frameSize, input.limit() - offset);
+            boolean last = offset + size == input.limit();
+            info.set(offset, size, 0, last ? SampleInfo.FLAG_END_OF_STREAM : 0);
+            ByteBuffer converted = converter.convert(input, info);
+            converted.position(info.offset);
+            result.put(converted.asShortBuffer());
+        }
+        short[] samples = new short[result.position()];
+        result.flip();
+        result.get(samples);
+        return samples;
+    }
+
+    private static ByteBuffer sine(PcmFormat format, int frames, double frequency, double amplitude) {
+        ByteBuffer buffer = ByteBuffer.allocate(frames * format.getFrameSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(Math.sin(2 * Math.PI * frequency * i / format.getSampleRate()) * amplitude * 32767);
+            for (int c = 0; c < format.getChannelCount(); c++) {
+                buffer.putShort(sample);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,122 @@
+package com.samsung.mixaudioandvideo.export.pipeline.fake;
+
+import com.samsung.mixaudioandvideo.export.pipeline.IntQueue;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+
+import java.nio.ByteBuffer;
+
+/***
+ * In-memory SampleCodec which turns every input buffer into one output buffer,
+ * scaling the payload size by multiplier / divisor like a decoder (grows) or an encoder (shrinks).
+ * It never blocks: timeouts are ignored and INFO_TRY_AGAIN_LATER is returned instead.
+ */
+public class FakeSampleCodec implements SampleCodec {
+    private final ByteBuffer[] mInputBuffers;
+    private final ByteBuffer[] mOutputBuffers;
+    private final SampleInfo[] mInputInfos;
+    private final SampleInfo[] mOutputInfos;
+    private final IntQueue mFreeInputs;
+    private final IntQueue mPendingInputs;
+    private final IntQueue mFreeOutputs;
+    private final IntQueue mReadyOutputs;
+    private final int mSizeMultiplier;
+    private final int mSizeDivisor;
+
+    /***
+     * @param bufferCount     number of input and of output buffers
+     * @param inputCapacity   capacity of each input buffer in bytes
+     * @param outputCapacity  capacity of each output buffer in bytes
+     * @param sizeMultiplier  output size = input size * sizeMultiplier / sizeDivisor
+     * @param sizeDivisor
+     */
+    public FakeSampleCodec(int bufferCount, int inputCapacity, int outputCapacity, int sizeMultiplier, int sizeDivisor) {
+        mInputBuffers = new ByteBuffer[bufferCount];
+        mOutputBuffers = new ByteBuffer[bufferCount];
+        mInputInfos = new SampleInfo[bufferCount];
+        mOutputInfos = new SampleInfo[bufferCount];
+        mFreeInputs = new IntQueue(bufferCount);
+        mPendingInputs = new IntQueue(bufferCount);
+        mFreeOutputs = new IntQueue(bufferCount);
+        mReadyOutputs = new IntQueue(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            mInputBuffers[i] = ByteBuffer.allocateDirect(inputCapacity);
+            mOutputBuffers[i] = ByteBuffer.allocateDirect(outputCapacity);
+            mInputInfos[i] = new SampleInfo();
+            mOutputInfos[i] = new SampleInfo();
+            mFreeInputs.add(i);
+            mFreeOutputs.add(i);
+        }
+        mSizeMultiplier = sizeMultiplier;
+        mSizeDivisor = sizeDivisor;
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mFreeInputs.isEmpty() ? INFO_TRY_AGAIN_LATER : mFreeInputs.poll();
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        ByteBuffer buffer = mInputBuffers[index];
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mInputInfos[index].set(offset, size, presentationTimeUs, flags);
+        mPendingInputs.add(index);
+        process();
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+        if (mReadyOutputs.isEmpty()) {
+            return INFO_TRY_AGAIN_LATER;
+        }
+        int index = mReadyOutputs.poll();
+        info.set(mOutputInfos[index]);
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mOutputBuffers[index];
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        mFreeOutputs.add(index);
+        process();
+    }
+
+    private void process() {
+        while (!mPendingInputs.isEmpty() && !mFreeOutputs.isEmpty()) {
+            int inIndex = mPendingInputs.poll();
+            int outIndex = mFreeOutputs.poll();
+            transform(mInputBuffers[inIndex], mInputInfos[inIndex], mOutputBuffers[outIndex], mOutputInfos[outIndex]);
+            mReadyOutputs.add(outIndex);
+            mFreeInputs.add(inIndex);
+        }
+    }
+
+    /***
+     * fill output with the input payload repeated (or cut) to the scaled size
+     */
+    private void transform(ByteBuffer in, SampleInfo inInfo, ByteBuffer out, SampleInfo outInfo) {
+        int outSize = inInfo.size == 0 ? 0
+                : (int) Math.min(out.capacity(), Math.max(1L, (long) inInfo.size * mSizeMultiplier / mSizeDivisor));
+        out.clear();
+        int remaining = outSize;
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, inInfo.size);
+            in.limit(inInfo.offset + chunk);
+            in.position(inInfo.offset);
+            out.put(in);
+            remaining -= chunk;
+        }
+        out.flip();
+        outInfo.set(0, outSize, inInfo.presentationTimeUs, inInfo.flags);
+    }
+}
@@ -0,0 +1,45 @@
+package com.samsung.mixaudioandvideo.export.pipeline.fake;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSink;
+
+import java.nio.ByteBuffer;
+
+/***
+ * SampleSink which only counts what it receives, per track
+ */
+public class FakeSampleSink implements SampleSink {
+    private static final int MAX_TRACKS = 8;
+
+    private final long[] mSampleCounts = new long[MAX_TRACKS];
+    private final long[] mByteCounts = new long[MAX_TRACKS];
+    private final long[] mLastPresentationTimesUs = new long[MAX_TRACKS];
+    private long mChecksum;
+
+    @Override
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+        mSampleCounts[trackIndex]++;
+        mByteCounts[trackIndex] += info.size;
+        mLastPresentationTimesUs[trackIndex] = info.presentationTimeUs;
+        // touch the payload like a real muxer would
+        if (info.size > 0) {
+            mChecksum += buffer.get(info.offset) + buffer.get(info.offset + info.size - 1);
+        }
+    }
+
+    public synchronized long getSampleCount(int trackIndex) {
+        return mSampleCounts[trackIndex];
+    }
+
+    public synchronized long getByteCount(int trackIndex) {
+        return mByteCounts[trackIndex];
+    }
+
+    public synchronized long getLastPresentationTimeUs(int trackIndex) {
+        return mLastPresentationTimesUs[trackIndex];
+    }
+
+    public synchronized long getChecksum() {
+        return mChecksum;
+    }
+}
@@ -0,0 +1,104 @@
+package com.samsung.mixaudioandvideo.export.pipeline.fake;
+
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+
+import java.nio.ByteBuffer;
+
+/***
+ * In-memory SampleSource producing synthetic samples at a fixed rate,
+ * used to run the copy loops on a plain JVM
+ */
+public class FakeSampleSource implements SampleSource {
+    private final int mSampleCount;
+    private final int mSampleSize;
+    private final long mSampleDurationUs;
+    private final int mSyncInterval;
+    private final byte[] mPayload;
+    private int mBFrameCount;
+    private int mSampleIndex;
+
+    /***
+     * @param sampleCount      number of samples in the stream
+     * @param sampleSize       size of each sample in bytes
+     * @param sampleDurationUs duration of each sample, e.g. 23220 for 1024 AAC samples at 44.1 kHz
+     * @param syncInterval     every n-th sample is a sync sample, 1 for audio
+     */
+    public FakeSampleSource(int sampleCount, int sampleSize, long sampleDurationUs, int syncInterval) {
+        mSampleCount = sampleCount;
+        mSampleSize = sampleSize;
+        mSampleDurationUs = sampleDurationUs;
+        mSyncInterval = Math.max(1, syncInterval);
+        mPayload = new byte[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            mPayload[i] = (byte) (i * 31);
+        }
+    }
+
+    /***
+     * put the samples of every sync interval in decode order of a stream with B-frames:
+     * the sync sample, then each anchor in front of the B-frames before it, e.g. I0 P3 B1 B2 P6 B4 B5
+     *
+     * @param bFrameCount B-frames between two anchors, syncInterval - 1 has to be a multiple of bFrameCount + 1
+     */
+    public void setBFrameCount(int bFrameCount) {
+        mBFrameCount = bFrameCount;
+    }
+
+    public long getDurationUs() {
+        return mSampleCount * mSampleDurationUs;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        if (mSampleIndex >= mSampleCount) {
+            return -1;
+        }
+        buffer.clear();
+        buffer.position(offset);
+        buffer.put(mPayload, 0, mSampleSize);
+        buffer.limit(offset + mSampleSize);
+        buffer.position(offset);
+        return mSampleSize;
+    }
+
+    @Override
+    public long getSampleTime() {
+        return mSampleIndex < mSampleCount ? getPresentationIndex(mSampleIndex) * mSampleDurationUs : -1;
+    }
+
+    @Override
+    public int getSampleFlags() {
+        if (mSampleIndex >= mSampleCount) {
+            return -1;
+        }
+        return mSampleIndex % mSyncInterval == 0 ? SampleInfo.FLAG_SYNC_FRAME : 0;
+    }
+
+    @Override
+    public boolean advance() {
+        if (mSampleIndex >= mSampleCount) {
+            return false;
+        }
+        mSampleIndex++;
+        return mSampleIndex < mSampleCount;
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        int index = (int) Math.min(mSampleCount, Math.max(0, timeUs / mSampleDurationUs));
+        mSampleIndex = index - index % mSyncInterval;
+    }
+
+    private int getPresentationIndex(int decodeIndex) {
+        int offset = decodeIndex % mSyncInterval;
+        if (mBFrameCount == 0 || offset == 0) {
+            return decodeIndex;
+        }
+        int groupSize = mBFrameCount + 1;
+        int groupStart = decodeIndex - offset + 1 + (offset - 1) / groupSize * groupSize;
+        int indexInGroup = (offset - 1) % groupSize;
+        // the anchor is presented after the B-frames decoded behind it
+        return indexInGroup == 0 ? groupStart + mBFrameCount : groupStart + indexInGroup - 1;
+    }
+}
@@ -0,0 +1,103 @@
+package com.samsung.mixaudioandvideo.utils;
+
+import com.samsung.mixaudioandvideo.models.ContainerType;
+import com.samsung.mixaudioandvideo.models.MediaItem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaSnifferTest {
+    private File mFile;
+    private final MediaSniffer mSniffer = new MediaSniffer();
+
+    @Before
+    public void setUp() throws Exception {
+        // the extension says nothing
+        mFile = File.createTempFile("sniff", ".mp3");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void sniffsAdtsAsPassthroughAac() throws Exception {
+        // sync, MPEG-4, no CRC; AAC LC, 44.1 kHz, 2 channels
+        MediaItem item = sniff(new byte[]{(byte) 0xFF, (byte) 0xF1, 0x50, (byte) 0x80, 0x2E, 0x7F, (byte) 0xFC});
+        assertEquals(ContainerType.ADTS, item.getContainerType());
+        assertEquals("audio/mp4a-latm", item.getAudioMimeType());
+        assertEquals(44100, item.getSampleRate());
+        assertEquals(2, item.getChannelCount());
+        assertTrue(item.isProbed());
+        assertTrue(MediaUtils.isPassthroughAudio(item.getAudioMimeType()));
+    }
+
+    @Test
+    public void skipsId3TagInFrontOfMpegFrames() throws Exception {
+        byte[] bytes = new byte[10 + 9000 + 4];
+        bytes[0] = 'I';
+        bytes[1] = 'D';
+        bytes[2] = '3';
+        bytes[3] = 4;
+        // syncsafe size of 9000, longer than the header read first
+        bytes[8] = (byte) (9000 >> 7);
+        bytes[9] = (byte) (9000 & 0x7F);
+        // MPEG-1 layer III, 48 kHz, mono
+        bytes[10 + 9000] = (byte) 0xFF;
+        bytes[10 + 9000 + 1] = (byte) 0xFB;
+        bytes[10 + 9000 + 2] = (byte) 0x94;
+        bytes[10 + 9000 + 3] = (byte) 0xC4;
+        MediaItem item = sniff(bytes);
+        assertEquals(ContainerType.MP3, item.getContainerType());
+        assertEquals("audio/mpeg", item.getAudioMimeType());
+        assertEquals(48000, item.getSampleRate());
+        assertEquals(1, item.getChannelCount());
+        assertFalse(MediaUtils.isPassthroughAudio(item.getAudioMimeType()));
+    }
+
+    @Test
+    public void sniffsAmrAndOggVorbis() throws Exception {
+        MediaItem amr = sniff("#!AMR-WB\n\u0004".getBytes("US-ASCII"));
+        assertEquals(ContainerType.AMR, amr.getContainerType());
+        assertEquals("audio/amr-wb", amr.getAudioMimeType());
+
+        byte[] ogg = new byte[28 + 30];
+        System.arraycopy("OggS".getBytes("US-ASCII"), 0, ogg, 0, 4);
+        ogg[28] = 1;
+        System.arraycopy("vorbis".getBytes("US-ASCII"), 0, ogg, 29, 6);
+        ogg[29 + 10] = 2;
+        ogg[29 + 11] = (byte) 0x80;
+        ogg[29 + 12] = (byte) 0xBB;
+        MediaItem vorbis = sniff(ogg);
+        assertEquals(ContainerType.OGG, vorbis.getContainerType());
+        assertEquals("audio/vorbis", vorbis.getAudioMimeType());
+        assertEquals(48000, vorbis.getSampleRate());
+        assertEquals(2, vorbis.getChannelCount());
+    }
+
+    @Test
+    public void leavesUnknownContentUnprobed() throws Exception {
+        MediaItem item = sniff("just some text".getBytes("US-ASCII"));
+        assertEquals(ContainerType.UNKNOWN, item.getContainerType());
+        assertNull(item.getAudioMimeType());
+        assertFalse(item.isProbed());
+    }
+
+    private MediaItem sniff(byte[] bytes) throws Exception {
+        Files.write(mFile.toPath(), bytes);
+        MediaItem item = new MediaItem();
+        item.setFilePath(mFile.getPath());
+        assertTrue(mSniffer.sniff(item));
+        return item;
+    }
+}
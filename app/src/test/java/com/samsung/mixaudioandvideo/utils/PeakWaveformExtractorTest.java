@@ -0,0 +1,156 @@
+package com.samsung.mixaudioandvideo.utils;
+
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PeakWaveformExtractorTest {
+    private static final PcmFormat STEREO = new PcmFormat(44100, 2);
+
+    @Test
+    public void reducesFramesAcrossBuffersIntoLevels() {
+        PeakWaveform waveform = createRamp(1000);
+
+        // 256 frames per peak: 3 full peaks and one of 232 frames, then 2 peaks, then 1
+        assertEquals(1000, waveform.getFrameCount());
+        assertEquals(3, waveform.getLevelCount());
+        assertEquals(4, waveform.getPeakCount(0));
+        assertEquals(2, waveform.getPeakCount(1));
+        assertEquals(1, waveform.getPeakCount(2));
+        assertEquals(-255, waveform.getMin(0, 0));
+        assertEquals(255, waveform.getMax(0, 0));
+        assertEquals(-999, waveform.getMin(0, 3));
+        assertEquals(999, waveform.getMax(0, 3));
+        assertEquals(-511, waveform.getMin(1, 0));
+        assertEquals(999, waveform.getMax(1, 1));
+        assertEquals(-999, waveform.getMin(2, 0));
+        assertEquals(512, waveform.getFramesPerPeak(1));
+
+        assertEquals(2, waveform.findLevel(1));
+        assertEquals(1, waveform.findLevel(2));
+        assertEquals(0, waveform.findLevel(3));
+        assertEquals(0, waveform.findLevel(100));
+    }
+
+    @Test
+    public void readsBackWrittenFileByMappingIt() throws Exception {
+        PeakWaveform waveform = createRamp(5000);
+        File file = File.createTempFile("waveform", ".peaks");
+        try {
+            waveform.writeTo(file);
+            PeakWaveform read = PeakWaveform.read(file);
+            assertEquals(waveform.getSampleRate(), read.getSampleRate());
+            assertEquals(waveform.getFrameCount(), read.getFrameCount());
+            assertEquals(waveform.getLevelCount(), read.getLevelCount());
+            for (int level = 0; level < waveform.getLevelCount(); level++) {
+                assertEquals(waveform.getPeakCount(level), read.getPeakCount(level));
+                for (int i = 0; i < waveform.getPeakCount(level); i++) {
+                    assertEquals(waveform.getMin(level, i), read.getMin(level, i));
+                    assertEquals(waveform.getMax(level, i), read.getMax(level, i));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void rejectsDamagedFile() throws Exception {
+        PeakWaveform waveform = createRamp(5000);
+        File file = File.createTempFile("waveform", ".peaks");
+        try {
+            waveform.writeTo(file);
+            // the level count follows magic, version, sample rate, frames per peak and frame count
+            int levelCountOffset = 24;
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(levelCountOffset);
+                out.writeInt(0);
+            }
+            assertReadFails(file);
+
+            waveform.writeTo(file);
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(levelCountOffset + 4);
+                out.writeInt(-1);
+            }
+            assertReadFails(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void extractsDecodedSource() {
+        // 10 buffers of 256 stereo frames
+        FakeSampleSource source = new FakeSampleSource(10, 1024, 5805, 1);
+        FakeSampleCodec decoder = new FakeSampleCodec(4, 1024, 1024, 1, 1);
+        PeakWaveform waveform = new PeakWaveformExtractor(STEREO).extract(source, decoder, () -> false);
+
+        assertNotNull(waveform);
+        assertEquals(2560, waveform.getFrameCount());
+        assertEquals(10, waveform.getPeakCount(0));
+        // every buffer holds the same payload
+        ByteBuffer payload = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 1024; i++) {
+            payload.put((byte) (i * 31));
+        }
+        payload.flip();
+        short min = Short.MAX_VALUE;
+        short max = Short.MIN_VALUE;
+        while (payload.hasRemaining()) {
+            short sample = payload.getShort();
+            min = (short) Math.min(min, sample);
+            max = (short) Math.max(max, sample);
+        }
+        int top = waveform.getLevelCount() - 1;
+        assertEquals(min, waveform.getMin(top, 0));
+        assertEquals(max, waveform.getMax(top, 0));
+    }
+
+    @Test
+    public void stopsWhenCancelled() {
+        FakeSampleSource source = new FakeSampleSource(10, 1024, 5805, 1);
+        FakeSampleCodec decoder = new FakeSampleCodec(4, 1024, 1024, 1, 1);
+        assertNull(new PeakWaveformExtractor(STEREO).extract(source, decoder, () -> true));
+    }
+
+    private static void assertReadFails(File file) {
+        try {
+            PeakWaveform.read(file);
+            fail("read a damaged peak file");
+        } catch (IOException expected) {
+        }
+    }
+
+    /***
+     * frame i is (i, -i), written in buffers which don't end on a peak
+     */
+    private static PeakWaveform createRamp(int frameCount) {
+        PeakWaveformExtractor extractor = new PeakWaveformExtractor(STEREO);
+        int framesPerBuffer = 333;
+        for (int start = 0; start < frameCount; start += framesPerBuffer) {
+            int frames = Math.min(framesPerBuffer, frameCount - start);
+            // samples behind an offset, as a decoder may put them out
+            ByteBuffer buffer = ByteBuffer.allocate(8 + frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(8);
+            for (int i = start; i < start + frames; i++) {
+                buffer.putShort((short) i).putShort((short) -i);
+            }
+            extractor.write(buffer, 8, frames * 4);
+        }
+        return extractor.finish();
+    }
+}
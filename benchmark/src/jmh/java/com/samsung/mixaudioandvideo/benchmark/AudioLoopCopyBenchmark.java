@@ -0,0 +1,62 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import com.samsung.mixaudioandvideo.export.pipeline.LoopingCopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Passthrough audio copy looping a short AAC track under a longer video.
+ * One op = one whole export of the track, use samples/op from the sample counter to normalize.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AudioLoopCopyBenchmark {
+    private static final int SAMPLE_SIZE = 372; // 128 kbps AAC
+    private static final long SAMPLE_DURATION_US = 23220; // 1024 samples at 44.1 kHz
+
+    @Param({"10"})
+    public int audioSeconds;
+
+    @Param({"60", "600"})
+    public int videoSeconds;
+
+    // 0 reads the source on every loop, otherwise the first pass is indexed
+    @Param({"0", "1048576"})
+    public long indexMemoryLimit;
+
+    private FakeSampleSource mSource;
+    private FakeSampleSink mSink;
+    private LoopingCopyLoop mLoop;
+
+    @Setup
+    public void setup() {
+        int sampleCount = (int) (audioSeconds * 1000000L / SAMPLE_DURATION_US);
+        mSource = new FakeSampleSource(sampleCount, SAMPLE_SIZE, SAMPLE_DURATION_US, 1);
+        mSink = new FakeSampleSink();
+        mLoop = new LoopingCopyLoop(mSource, mSink, 1, 4096, videoSeconds * 1000000L, indexMemoryLimit);
+    }
+
+    @Benchmark
+    public long copyLoopedAudio(ByteCounters counters, SampleCounters samples) throws IOException {
+        mSource.seekTo(0);
+        long bytesBefore = mLoop.getByteCount();
+        long samplesBefore = mLoop.getSampleCount();
+        mLoop.run();
+        counters.bytes += mLoop.getByteCount() - bytesBefore;
+        samples.samples += mLoop.getSampleCount() - samplesBefore;
+        return mSink.getChecksum();
+    }
+}
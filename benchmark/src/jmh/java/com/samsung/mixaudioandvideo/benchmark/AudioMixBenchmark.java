@@ -0,0 +1,77 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import com.samsung.mixaudioandvideo.export.pipeline.MixerInput;
+import com.samsung.mixaudioandvideo.export.pipeline.MixingTranscodeLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Decode several tracks through fake codecs, mix them with fades and encode the mix.
+ * One op = one whole mix of mixSeconds, compare with the real time of the mix to see the headroom.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AudioMixBenchmark {
+    private static final int SAMPLE_SIZE = 400;
+    private static final long SAMPLE_DURATION_US = 24943; // 1100 stereo frames at 44.1 kHz
+    private static final int PCM_EXPANSION = 11; // 4400 bytes of stereo 16 bit PCM per sample
+    private static final int CODEC_BUFFER_COUNT = 4;
+    private static final int CODEC_BUFFER_SIZE = 8192;
+    private static final PcmFormat PCM_FORMAT = new PcmFormat(44100, 2);
+
+    @Param({"60"})
+    public int mixSeconds;
+
+    @Param({"1", "3"})
+    public int trackCount;
+
+    private final List<FakeSampleSource> mSources = new ArrayList<>();
+    private final List<FakeSampleCodec> mDecoders = new ArrayList<>();
+    private FakeSampleCodec mEncoder;
+    private FakeSampleSink mSink;
+
+    @Setup
+    public void setup() {
+        int sampleCount = (int) (mixSeconds * 1000000L / SAMPLE_DURATION_US);
+        for (int i = 0; i < trackCount; i++) {
+            mSources.add(new FakeSampleSource(sampleCount, SAMPLE_SIZE, SAMPLE_DURATION_US, 1));
+            mDecoders.add(new FakeSampleCodec(CODEC_BUFFER_COUNT, CODEC_BUFFER_SIZE, CODEC_BUFFER_SIZE, PCM_EXPANSION, 1));
+        }
+        mEncoder = new FakeSampleCodec(CODEC_BUFFER_COUNT, CODEC_BUFFER_SIZE, CODEC_BUFFER_SIZE, 1, PCM_EXPANSION);
+        mSink = new FakeSampleSink();
+    }
+
+    @Benchmark
+    public long mixAudio(ByteCounters counters, SampleCounters samples) throws IOException {
+        List<MixerInput> inputs = new ArrayList<>();
+        for (int i = 0; i < trackCount; i++) {
+            mSources.get(i).seekTo(0);
+            MixerInput input = new MixerInput(mSources.get(i), mDecoders.get(i), PCM_FORMAT);
+            input.setGain(0.8f);
+            input.setFade(1000000, 1000000);
+            inputs.add(input);
+        }
+        MixingTranscodeLoop loop = new MixingTranscodeLoop(inputs, mEncoder, mSink, 1, mixSeconds * 1000000L, PCM_FORMAT);
+        loop.run();
+        counters.bytes += loop.getByteCount();
+        samples.samples += loop.getSampleCount();
+        return mSink.getChecksum();
+    }
+}
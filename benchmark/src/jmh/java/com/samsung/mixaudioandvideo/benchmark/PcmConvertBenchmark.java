@@ -0,0 +1,65 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import com.samsung.mixaudioandvideo.export.pipeline.PcmConverter;
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Convert decoded PCM to 44.1 kHz stereo 16 bit in decoder sized buffers.
+ * One op = one second of input audio, compare with 1 op/s to see the headroom over real time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PcmConvertBenchmark {
+    private static final int BUFFER_FRAMES = 1024;
+    private static final PcmFormat OUTPUT_FORMAT = new PcmFormat(44100, 2);
+
+    @Param({"44100", "48000", "96000"})
+    public int inputSampleRate;
+
+    @Param({"2", "6"})
+    public int inputChannelCount;
+
+    private PcmConverter mConverter;
+    private ByteBuffer mInput;
+    private final SampleInfo mInfo = new SampleInfo();
+
+    @Setup
+    public void setup() {
+        PcmFormat inputFormat = new PcmFormat(inputSampleRate, inputChannelCount);
+        mConverter = new PcmConverter(inputFormat, OUTPUT_FORMAT);
+        mInput = ByteBuffer.allocateDirect(BUFFER_FRAMES * inputFormat.getFrameSize()).order(ByteOrder.nativeOrder());
+        for (int i = 0; mInput.remaining() >= 2; i++) {
+            mInput.putShort((short) (Math.sin(i * 0.05) * 16000));
+        }
+        mInput.flip();
+    }
+
+    @Benchmark
+    public long convertAudio(ByteCounters counters) {
+        long checksum = 0;
+        for (int frames = 0; frames < inputSampleRate; frames += BUFFER_FRAMES) {
+            mInfo.set(0, mInput.limit(), 0, 0);
+            ByteBuffer output = mConverter.convert(mInput, mInfo);
+            counters.bytes += mInfo.size;
+            if (mInfo.size > 0) {
+                checksum += output.get(mInfo.size - 1);
+            }
+        }
+        return checksum;
+    }
+}
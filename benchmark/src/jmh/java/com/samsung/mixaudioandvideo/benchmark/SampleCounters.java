@@ -0,0 +1,21 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/***
+ * Samples written to the sink, for benchmarks where one op is a whole export
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class SampleCounters {
+    public long samples;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        samples = 0;
+    }
+}
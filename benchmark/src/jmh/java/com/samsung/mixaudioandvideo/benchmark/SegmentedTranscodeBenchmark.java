@@ -0,0 +1,89 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.SampleSource;
+import com.samsung.mixaudioandvideo.export.pipeline.SegmentCodecFactory;
+import com.samsung.mixaudioandvideo.export.pipeline.SegmentedTranscodeLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Transcode a long audio in segments through fake codecs, with one worker and with several.
+ * One op = one whole transcode of audioSeconds; the fake codecs only copy bytes,
+ * so the gain of more workers is a lower bound of what real codecs get.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SegmentedTranscodeBenchmark {
+    private static final int SAMPLE_SIZE = 441;
+    private static final long SAMPLE_DURATION_US = 10000; // 441 stereo frames at 44.1 kHz
+    private static final int PCM_EXPANSION = 4; // 1764 bytes of stereo 16 bit PCM per sample
+    private static final int CODEC_BUFFER_COUNT = 4;
+    private static final int CODEC_BUFFER_SIZE = 8192;
+    private static final long SEGMENT_DURATION_US = 10000000L;
+    private static final PcmFormat PCM_FORMAT = new PcmFormat(44100, 2);
+
+    @Param({"600"})
+    public int audioSeconds;
+
+    @Param({"1", "4"})
+    public int workerCount;
+
+    private SegmentCodecFactory mFactory;
+    private FakeSampleSink mSink;
+
+    @Setup
+    public void setup() {
+        int sampleCount = (int) (audioSeconds * 1000000L / SAMPLE_DURATION_US);
+        mFactory = new SegmentCodecFactory() {
+            @Override
+            public SampleSource createSource() {
+                return new FakeSampleSource(sampleCount, SAMPLE_SIZE, SAMPLE_DURATION_US, 1);
+            }
+
+            @Override
+            public SampleCodec createDecoder() {
+                return new FakeSampleCodec(CODEC_BUFFER_COUNT, CODEC_BUFFER_SIZE, CODEC_BUFFER_SIZE, PCM_EXPANSION, 1);
+            }
+
+            @Override
+            public SampleCodec createEncoder() {
+                return new FakeSampleCodec(CODEC_BUFFER_COUNT, CODEC_BUFFER_SIZE, CODEC_BUFFER_SIZE, 1, PCM_EXPANSION * 4);
+            }
+
+            @Override
+            public void releaseSource(SampleSource source) {
+            }
+
+            @Override
+            public void releaseCodec(SampleCodec codec) {
+            }
+        };
+        mSink = new FakeSampleSink();
+    }
+
+    @Benchmark
+    public long transcodeAudio(ByteCounters counters, SampleCounters samples) throws IOException {
+        SegmentedTranscodeLoop loop = new SegmentedTranscodeLoop(mFactory, mSink, 1, audioSeconds * 1000000L,
+                PCM_FORMAT, SEGMENT_DURATION_US, workerCount);
+        loop.run();
+        counters.bytes += loop.getByteCount();
+        samples.samples += loop.getSampleCount();
+        return mSink.getChecksum();
+    }
+}
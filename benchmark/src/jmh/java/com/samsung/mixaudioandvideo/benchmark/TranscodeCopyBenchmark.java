@@ -0,0 +1,66 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import com.samsung.mixaudioandvideo.export.pipeline.PcmFormat;
+import com.samsung.mixaudioandvideo.export.pipeline.TranscodeCopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleCodec;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Decode -> encode copy of an MP3-like track through fake codecs.
+ * The fake codecs return to their initial state after end of stream, so they are reused;
+ * the loop itself keeps end of stream state and is created per invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TranscodeCopyBenchmark {
+    private static final int SAMPLE_SIZE = 418; // 128 kbps MP3
+    private static final long SAMPLE_DURATION_US = 26122; // 1152 samples at 44.1 kHz
+    private static final int PCM_EXPANSION = 11; // 4608 bytes of stereo 16 bit PCM per MP3 frame
+    private static final int CODEC_BUFFER_COUNT = 4;
+    private static final int CODEC_BUFFER_SIZE = 8192;
+    private static final PcmFormat PCM_FORMAT = new PcmFormat(44100, 2);
+
+    @Param({"60"})
+    public int audioSeconds;
+
+    @Param({"8192", "2048"})
+    public int encoderInputSize;
+
+    private FakeSampleSource mSource;
+    private FakeSampleCodec mDecoder;
+    private FakeSampleCodec mEncoder;
+    private FakeSampleSink mSink;
+
+    @Setup
+    public void setup() {
+        int sampleCount = (int) (audioSeconds * 1000000L / SAMPLE_DURATION_US);
+        mSource = new FakeSampleSource(sampleCount, SAMPLE_SIZE, SAMPLE_DURATION_US, 1);
+        mDecoder = new FakeSampleCodec(CODEC_BUFFER_COUNT, CODEC_BUFFER_SIZE, CODEC_BUFFER_SIZE, PCM_EXPANSION, 1);
+        mEncoder = new FakeSampleCodec(CODEC_BUFFER_COUNT, encoderInputSize, CODEC_BUFFER_SIZE, 1, PCM_EXPANSION);
+        mSink = new FakeSampleSink();
+    }
+
+    @Benchmark
+    public long transcodeAudio(ByteCounters counters, SampleCounters samples) throws IOException {
+        mSource.seekTo(0);
+        TranscodeCopyLoop loop = new TranscodeCopyLoop(mSource, mDecoder, mEncoder, mSink, 1, mSource.getDurationUs(), PCM_FORMAT);
+        loop.run();
+        counters.bytes += loop.getByteCount();
+        samples.samples += loop.getSampleCount();
+        return mSink.getChecksum();
+    }
+}
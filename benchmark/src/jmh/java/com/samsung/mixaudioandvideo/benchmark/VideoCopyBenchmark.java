@@ -0,0 +1,54 @@
+package com.samsung.mixaudioandvideo.benchmark;
+
+import com.samsung.mixaudioandvideo.export.pipeline.PassthroughCopyLoop;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSink;
+import com.samsung.mixaudioandvideo.export.pipeline.fake.FakeSampleSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Passthrough video copy, one op = one sample
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VideoCopyBenchmark {
+    private static final int SAMPLE_COUNT = 900; // 30s at 30 fps
+    private static final long SAMPLE_DURATION_US = 33333;
+    private static final int SYNC_INTERVAL = 30;
+
+    @Param({"20000", "200000"})
+    public int sampleSize;
+
+    private FakeSampleSource mSource;
+    private FakeSampleSink mSink;
+    private PassthroughCopyLoop mLoop;
+
+    @Setup
+    public void setup() {
+        mSource = new FakeSampleSource(SAMPLE_COUNT, sampleSize, SAMPLE_DURATION_US, SYNC_INTERVAL);
+        mSink = new FakeSampleSink();
+        mLoop = new PassthroughCopyLoop(mSource, mSink, 0, sampleSize);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public long copyVideo(ByteCounters counters) throws IOException {
+        mSource.seekTo(0);
+        long bytesBefore = mLoop.getByteCount();
+        mLoop.run();
+        counters.bytes += mLoop.getByteCount() - bytesBefore;
+        return mSink.getChecksum();
+    }
+}